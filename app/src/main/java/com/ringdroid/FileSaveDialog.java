@@ -30,6 +30,8 @@ import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Spinner;
 
+import com.ringdroid.soundfile.ExportProfile;
+
 public class FileSaveDialog extends Dialog {
 
     // File kinds - these should correspond to the order in which
@@ -40,6 +42,7 @@ public class FileSaveDialog extends Dialog {
     public static final int FILE_KIND_RINGTONE = 3;
 
     private Spinner mTypeSpinner;
+    private Spinner mFormatSpinner;
     private EditText mFilename;
     private Message mResponse;
     private String mOriginalName;
@@ -70,6 +73,19 @@ public class FileSaveDialog extends Dialog {
                           Resources resources,
                           String originalName,
                           Message response) {
+        this(context, resources, originalName,
+             new ExportProfile[] {ExportProfile.DEFAULT}, response);
+    }
+
+    /**
+     * The index of the chosen profile in profiles is returned in
+     * response.arg2.
+     */
+    public FileSaveDialog(Context context,
+                          Resources resources,
+                          String originalName,
+                          ExportProfile[] profiles,
+                          Message response) {
         super(context);
 
         // Inflate our UI from its XML layout description.
@@ -95,6 +111,14 @@ public class FileSaveDialog extends Dialog {
         mTypeSpinner.setSelection(FILE_KIND_RINGTONE);
         mPreviousSelection = FILE_KIND_RINGTONE;
 
+        ArrayAdapter<ExportProfile> formatAdapter = new ArrayAdapter<ExportProfile>(
+            context, android.R.layout.simple_spinner_item, profiles);
+        formatAdapter.setDropDownViewResource(
+            android.R.layout.simple_spinner_dropdown_item);
+        mFormatSpinner = (Spinner) findViewById(R.id.file_format);
+        mFormatSpinner.setAdapter(formatAdapter);
+        mFormatSpinner.setSelection(0);
+
         setFilenameEditBoxFromName(false);
 
         mTypeSpinner.setOnItemSelectedListener(new OnItemSelectedListener() {
@@ -136,6 +160,7 @@ public class FileSaveDialog extends Dialog {
             public void onClick(View view) {
                 mResponse.obj = mFilename.getText();
                 mResponse.arg1 = mTypeSpinner.getSelectedItemPosition();
+                mResponse.arg2 = mFormatSpinner.getSelectedItemPosition();
                 mResponse.sendToTarget();
                 dismiss();
             }
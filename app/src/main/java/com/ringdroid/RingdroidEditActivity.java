@@ -24,6 +24,8 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
+import android.media.AudioManager;
+import android.media.AudioTrack;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Bundle;
@@ -32,6 +34,7 @@ import android.os.Handler;
 import android.os.Message;
 import android.provider.MediaStore;
 import android.text.Editable;
+import android.text.InputType;
 import android.text.TextWatcher;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -41,17 +44,34 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.ringdroid.soundfile.EncoderPool;
+import com.ringdroid.soundfile.EncoderRegistry;
+import com.ringdroid.soundfile.ExportProfile;
+import com.ringdroid.soundfile.ExportRegion;
+import com.ringdroid.soundfile.HighlightFinder;
+import com.ringdroid.soundfile.LoudnessStats;
+import com.ringdroid.soundfile.OnsetIndex;
+import com.ringdroid.soundfile.PcmConverter;
+import com.ringdroid.soundfile.PcmSource;
+import com.ringdroid.soundfile.SilenceDetector;
 import com.ringdroid.soundfile.SoundFile;
+import com.ringdroid.soundfile.SpectrogramEngine;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The activity for the Ringdroid main editor window.  Keeps track of
@@ -84,6 +104,11 @@ public class RingdroidEditActivity extends Activity
     private String mTitle;
     // 新文件种类
     private int mNewFileKind;
+    // 导出配置
+    private ExportProfile mExportProfile;
+    // Length of each piece when saving the selection in pieces, 0 for a normal save.
+    // 分段保存选区时每段的长度，正常保存为0。
+    private double mBatchPieceSecs;
     // 获得内容意图
     private boolean mWasGetContentIntent;
     // 波形图
@@ -112,6 +137,52 @@ public class RingdroidEditActivity extends Activity
     private int mStartPos;
     // 结束位置
     private int mEndPos;
+    // Zero crossings (in samples per channel) the markers were snapped to, valid while the
+    // markers stay at mSnappedStartPos / mSnappedEndPos, at zoom level mSnappedZoomLevel.
+    // 标记吸附到的过零点（以样本为单位），在标记保持在相同位置和缩放级别时有效。
+    private long mSnappedStartSample;
+    private long mSnappedEndSample;
+    private int mSnappedStartPos = -1;
+    private int mSnappedEndPos = -1;
+    private int mSnappedZoomLevel;
+    // Move the markers to the nearest beat (cf. OnsetIndex) when they are released.
+    // 释放标记时将其移动到最近的节拍。
+    private boolean mSnapToBeats;
+    // Length of the selection proposed when a file opens.
+    // 打开文件时建议的选区长度。
+    private static final double DEFAULT_SELECTION_SECS = 15.0;
+    // Fragmented .m4a written while recording (cf. recordAudio()), in the private files
+    // directory, and the name it is renamed to when it is recovered after a crash.
+    // 录音时写入的分段.m4a（位于私有文件目录），以及崩溃后恢复时重命名的名称。
+    private static final String RECORDING_FILE_NAME = "recording.m4a";
+    private static final String RECOVERED_FILE_NAME = "recovered.m4a";
+    // True once the recovered recording being edited was saved, or the user chose to discard it:
+    // it is then deleted when leaving (cf. onDestroy()).
+    // 恢复的录音已保存或用户选择丢弃后为true：离开时将其删除。
+    private boolean mRecoveredDone;
+    // Start (in seconds) of the chorus of the file being opened, found by the loading thread;
+    // -1 if unknown.
+    // 正在打开的文件的副歌起点（以秒为单位），由加载线程查找；未知则为-1。
+    private double mHighlightTime = -1;
+    // Normalization applied when saving (cf. LoudnessStats), to NORMALIZE_PEAK_DB dBFS or to
+    // NORMALIZE_LOUDNESS_LUFS.
+    // 保存时应用的标准化。
+    private static final float NORMALIZE_PEAK_DB = -1;
+    private static final float NORMALIZE_LOUDNESS_LUFS = -14;
+    private int mNormalization = LoudnessStats.NORMALIZE_NONE;
+    // Sampling rate of the exported files, 0 to keep the one of the source.
+    // 导出文件的采样率，0表示保留源文件的采样率。
+    private int mExportSampleRate = 0;
+    // Resampling to the native rate of the device done by the player (a PcmConverter.RESAMPLE_*
+    // constant), or PLAYBACK_RESAMPLING_OFF to play at the rate of the source and leave it to
+    // the audio framework.
+    // 播放器重采样到设备本机采样率的方式，或PLAYBACK_RESAMPLING_OFF表示以源采样率播放。
+    private static final int PLAYBACK_RESAMPLING_OFF = -1;
+    private int mPlaybackResampling = PLAYBACK_RESAMPLING_OFF;
+    // Selection whose statistics are displayed.
+    // 显示其统计信息的选区。
+    private int mLastStatsStartPos = -1;
+    private int mLastStatsEndPos = -1;
     private boolean mStartVisible;
     private boolean mEndVisible;
     // 最后显示的起始位置
@@ -129,6 +200,11 @@ public class RingdroidEditActivity extends Activity
     // 播放结束毫秒
     private int mPlayEndMsec;
     private Handler mHandler;
+    // Set when regions of a file decoded on demand have been decoded since the waveform was
+    // last refreshed.
+    // 自上次刷新波形以来已解码按需解码文件的区域时设置。
+    private volatile boolean mWaveformGainsChanged;
+    private long mLastWaveformRefreshMsec;
     // 播放中
     private boolean mIsPlaying;
     // 播放器
@@ -162,6 +238,13 @@ public class RingdroidEditActivity extends Activity
     private Thread mRecordAudioThread;
     // 保存声音文件线程
     private Thread mSaveSoundFileThread;
+    // Single worker for the snapping of the markers and the loop suggestions, so that the beats
+    // of a file decoded on demand are only looked for once at a time. mSnapGeneration counts
+    // the snapping requests: the ones superseded before they run are skipped.
+    // 用于标记吸附和循环建议的单个工作线程，使按需解码文件的节拍一次只查找一次。
+    // mSnapGeneration计数吸附请求：在运行前被取代的请求将被跳过。
+    private ExecutorService mAnalysisWorker;
+    private volatile int mSnapGeneration;
 
     // Result codes
     private static final int REQUEST_CODE_CHOOSE_CONTACT = 1;
@@ -193,6 +276,8 @@ public class RingdroidEditActivity extends Activity
         mLoadSoundFileThread = null;
         mRecordAudioThread = null;
         mSaveSoundFileThread = null;
+        mAnalysisWorker = Executors.newSingleThreadExecutor();
+        mSnapGeneration = 0;
 
         Intent intent = getIntent();
 
@@ -214,6 +299,43 @@ public class RingdroidEditActivity extends Activity
 
         mHandler.postDelayed(mTimerRunnable, 100);
 
+        mRecoveredDone = false;
+        offerRecordingRecoveryOrOpen();
+    }
+
+    // Offer to recover the recording left behind by a crash if there is one, otherwise open
+    // what was asked for.
+    // 如果崩溃后留下了录音，提供恢复它的选项，否则打开请求的内容。
+    private void offerRecordingRecoveryOrOpen() {
+        File leftover = findLeftoverRecording();
+        if (leftover != null) {
+            offerRecordingRecovery(leftover);
+        } else {
+            openRequestedFile();
+        }
+    }
+
+    // A recording left behind: a recovered recording whose editing was interrupted before it was
+    // saved or discarded first, then a recording interrupted while recording. null if none.
+    // 留下的录音：先是编辑被中断的恢复录音，然后是录音时被中断的录音。没有则为null。
+    private File findLeftoverRecording() {
+        File recovered = new File(getFilesDir(), RECOVERED_FILE_NAME);
+        if (recovered.length() > 0) {
+            return recovered;
+        }
+        File recording = new File(getFilesDir(), RECORDING_FILE_NAME);
+        if (recording.length() > 0) {
+            return recording;
+        }
+        return null;
+    }
+
+    private boolean isEditingRecoveredRecording() {
+        return mFilename != null
+                && mFilename.equals(new File(getFilesDir(), RECOVERED_FILE_NAME).getPath());
+    }
+
+    private void openRequestedFile() {
         if (!mFilename.equals("record")) {
             loadFromFile();
         } else {
@@ -221,6 +343,44 @@ public class RingdroidEditActivity extends Activity
         }
     }
 
+    // A recording is only left behind if the app died while recording (cf. recordAudio()), or
+    // while a recovered recording was being edited. Offer to open what was written, which is
+    // playable up to the last fragment, or to discard it, before opening what was asked for.
+    // 只有在录音时或编辑恢复的录音时应用终止才会留下录音文件。提供打开已写入内容或丢弃它的选项。
+    private void offerRecordingRecovery(final File leftover) {
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.recover_recording_title)
+                .setMessage(R.string.recover_recording_message)
+                .setPositiveButton(
+                        R.string.recover_recording_open,
+                        new DialogInterface.OnClickListener() {
+                            public void onClick(DialogInterface dialog, int whichButton) {
+                                // Out of the way of the next recording. There is no other
+                                // recovered recording: it would have been offered first.
+                                // 避免被下一次录音覆盖。没有其他恢复的录音：它会先被提供。
+                                File recovered = new File(getFilesDir(), RECOVERED_FILE_NAME);
+                                if (!leftover.equals(recovered)) {
+                                    recovered.delete();
+                                    if (!leftover.renameTo(recovered)) {
+                                        recovered = leftover;
+                                    }
+                                }
+                                mFilename = recovered.getPath();
+                                loadFromFile();
+                            }
+                        })
+                .setNegativeButton(
+                        R.string.recover_recording_discard,
+                        new DialogInterface.OnClickListener() {
+                            public void onClick(DialogInterface dialog, int whichButton) {
+                                leftover.delete();
+                                offerRecordingRecoveryOrOpen();
+                            }
+                        })
+                .setCancelable(false)
+                .show();
+    }
+
     private void closeThread(Thread thread) {
         if (thread != null && thread.isAlive()) {
             try {
@@ -246,6 +406,7 @@ public class RingdroidEditActivity extends Activity
         mLoadSoundFileThread = null;
         mRecordAudioThread = null;
         mSaveSoundFileThread = null;
+        mAnalysisWorker.shutdownNow();
         if (mProgressDialog != null) {
             mProgressDialog.dismiss();
             mProgressDialog = null;
@@ -262,6 +423,18 @@ public class RingdroidEditActivity extends Activity
             mPlayer.release();
             mPlayer = null;
         }
+        setShowSpectrogram(false);
+        if (mSoundFile != null) {
+            mSoundFile.release();
+            mSoundFile = null;
+        }
+        // A recovered recording is kept until it is saved or discarded (cf. onBackPressed()),
+        // to be offered again otherwise.
+        // 恢复的录音会保留到被保存或丢弃为止，否则会再次提供。
+        if (mRecoveredDone && isEditingRecoveredRecording()) {
+            new File(getFilesDir(), RECOVERED_FILE_NAME).delete();
+        }
+        EncoderPool.releaseAll();
 
         super.onDestroy();
     }
@@ -324,6 +497,58 @@ public class RingdroidEditActivity extends Activity
     public boolean onPrepareOptionsMenu(Menu menu) {
         super.onPrepareOptionsMenu(menu);
         menu.findItem(R.id.action_save).setVisible(true);
+        menu.findItem(R.id.action_batch_save).setVisible(true);
+        menu.findItem(R.id.action_trim_silence).setVisible(mSoundFile != null);
+        menu.findItem(R.id.action_suggest_loop).setVisible(mSoundFile != null);
+        menu.findItem(R.id.action_snap_to_beats).setVisible(mSoundFile != null);
+        menu.findItem(R.id.action_snap_to_beats).setChecked(mSnapToBeats);
+        menu.findItem(R.id.action_show_channels).setVisible(mSoundFile != null);
+        menu.findItem(R.id.action_show_channels).setChecked(mWaveformView.getShowChannels());
+        menu.findItem(R.id.action_spectrogram).setVisible(mSoundFile != null);
+        menu.findItem(R.id.action_spectrogram).setChecked(
+                mWaveformView.getSpectrogram() != null);
+        menu.findItem(R.id.action_normalize).setVisible(mSoundFile != null);
+        switch (mNormalization) {
+            case LoudnessStats.NORMALIZE_PEAK:
+                menu.findItem(R.id.action_normalize_peak).setChecked(true);
+                break;
+            case LoudnessStats.NORMALIZE_LOUDNESS:
+                menu.findItem(R.id.action_normalize_loudness).setChecked(true);
+                break;
+            default:
+                menu.findItem(R.id.action_normalize_none).setChecked(true);
+                break;
+        }
+        menu.findItem(R.id.action_export_rate).setVisible(mSoundFile != null);
+        switch (mExportSampleRate) {
+            case 48000:
+                menu.findItem(R.id.action_export_rate_48000).setChecked(true);
+                break;
+            case 44100:
+                menu.findItem(R.id.action_export_rate_44100).setChecked(true);
+                break;
+            case 22050:
+                menu.findItem(R.id.action_export_rate_22050).setChecked(true);
+                break;
+            case 16000:
+                menu.findItem(R.id.action_export_rate_16000).setChecked(true);
+                break;
+            default:
+                menu.findItem(R.id.action_export_rate_original).setChecked(true);
+                break;
+        }
+        menu.findItem(R.id.action_playback_resampling).setVisible(mSoundFile != null);
+        switch (mPlaybackResampling) {
+            case PcmConverter.RESAMPLE_LINEAR:
+                menu.findItem(R.id.action_playback_resampling_linear).setChecked(true);
+                break;
+            case PcmConverter.RESAMPLE_POLYPHASE:
+                menu.findItem(R.id.action_playback_resampling_polyphase).setChecked(true);
+                break;
+            default:
+                menu.findItem(R.id.action_playback_resampling_off).setChecked(true);
+                break;
+        }
         menu.findItem(R.id.action_reset).setVisible(true);
         menu.findItem(R.id.action_about).setVisible(true);
         return true;
@@ -333,8 +558,66 @@ public class RingdroidEditActivity extends Activity
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
             case R.id.action_save:
+                mBatchPieceSecs = 0;
                 onSave();
                 return true;
+            case R.id.action_batch_save:
+                onBatchSave();
+                return true;
+            case R.id.action_trim_silence:
+                onTrimSilence();
+                return true;
+            case R.id.action_suggest_loop_15:
+                onSuggestLoop(15);
+                return true;
+            case R.id.action_suggest_loop_30:
+                onSuggestLoop(30);
+                return true;
+            case R.id.action_snap_to_beats:
+                mSnapToBeats = !item.isChecked();
+                if (mSnapToBeats) {
+                    snapMarkers(true);
+                }
+                return true;
+            case R.id.action_normalize_none:
+                mNormalization = LoudnessStats.NORMALIZE_NONE;
+                return true;
+            case R.id.action_normalize_peak:
+                mNormalization = LoudnessStats.NORMALIZE_PEAK;
+                return true;
+            case R.id.action_normalize_loudness:
+                mNormalization = LoudnessStats.NORMALIZE_LOUDNESS;
+                return true;
+            case R.id.action_export_rate_original:
+                mExportSampleRate = 0;
+                return true;
+            case R.id.action_export_rate_48000:
+                mExportSampleRate = 48000;
+                return true;
+            case R.id.action_export_rate_44100:
+                mExportSampleRate = 44100;
+                return true;
+            case R.id.action_export_rate_22050:
+                mExportSampleRate = 22050;
+                return true;
+            case R.id.action_export_rate_16000:
+                mExportSampleRate = 16000;
+                return true;
+            case R.id.action_playback_resampling_off:
+                setPlaybackResampling(PLAYBACK_RESAMPLING_OFF);
+                return true;
+            case R.id.action_playback_resampling_linear:
+                setPlaybackResampling(PcmConverter.RESAMPLE_LINEAR);
+                return true;
+            case R.id.action_playback_resampling_polyphase:
+                setPlaybackResampling(PcmConverter.RESAMPLE_POLYPHASE);
+                return true;
+            case R.id.action_show_channels:
+                mWaveformView.setShowChannels(!item.isChecked());
+                return true;
+            case R.id.action_spectrogram:
+                setShowSpectrogram(!item.isChecked());
+                return true;
             case R.id.action_reset:
                 resetPositions();
                 mOffsetGoal = 0;
@@ -358,6 +641,36 @@ public class RingdroidEditActivity extends Activity
         return super.onKeyDown(keyCode, event);
     }
 
+    // Leaving a recovered recording which was not saved: ask whether to keep it for next time
+    // or to discard it.
+    // 离开未保存的恢复录音时：询问是保留到下次还是丢弃。
+    @Override
+    public void onBackPressed() {
+        if (!isEditingRecoveredRecording() || mRecoveredDone) {
+            super.onBackPressed();
+            return;
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.recover_recording_title)
+                .setMessage(R.string.recover_recording_unsaved_message)
+                .setPositiveButton(
+                        R.string.recover_recording_keep,
+                        new DialogInterface.OnClickListener() {
+                            public void onClick(DialogInterface dialog, int whichButton) {
+                                finish();
+                            }
+                        })
+                .setNegativeButton(
+                        R.string.recover_recording_discard,
+                        new DialogInterface.OnClickListener() {
+                            public void onClick(DialogInterface dialog, int whichButton) {
+                                mRecoveredDone = true;
+                                finish();
+                            }
+                        })
+                .show();
+    }
+
     //
     // WaveformListener
     //
@@ -475,6 +788,7 @@ public class RingdroidEditActivity extends Activity
         } else {
             setOffsetGoalEnd();
         }
+        snapMarkers(mSnapToBeats);
     }
 
     /**
@@ -545,6 +859,7 @@ public class RingdroidEditActivity extends Activity
     public void markerKeyUp() {
         mKeyDown = false;
         updateDisplay();
+        snapMarkers(mSnapToBeats);
     }
 
     public void markerFocus(MarkerView marker) {
@@ -736,7 +1051,19 @@ public class RingdroidEditActivity extends Activity
                         mHandler.post(runnable);
                         return;
                     }
-                    mPlayer = new SamplePlayer(mSoundFile);
+                    mPlayer = newSamplePlayer();
+                    // Open on the chorus rather than on the intro.
+                    // 打开时定位到副歌而不是前奏。
+                    HighlightFinder highlights = mSoundFile.getHighlightFinder();
+                    if (highlights != null) {
+                        long start = highlights.findHighlight(DEFAULT_SELECTION_SECS);
+                        if (start >= 0) {
+                            mHighlightTime = (double) start / mSoundFile.getSampleRate();
+                        }
+                    }
+                    // Probe the encoders now rather than when the save dialog opens.
+                    // 现在探测编码器，而不是在打开保存对话框时。
+                    EncoderRegistry.getEncoders(ExportProfile.DEFAULT.getMimeType());
                 } catch (final Exception e) {
                     mProgressDialog.dismiss();
                     e.printStackTrace();
@@ -831,13 +1158,21 @@ public class RingdroidEditActivity extends Activity
                     }
                 };
 
+        // The recording is also written to a fragmented .m4a, so that it survives if the app
+        // dies while recording: it is then offered for recovery the next time the editor opens
+        // (cf. offerRecordingRecovery()). Once the recording completes, the samples are in
+        // mSoundFile and the file is deleted.
+        // 录音也写入分段的.m4a，以便在录音时应用终止后保留：下次打开编辑器时会提供恢复。录音完成后将其删除。
+        final File recordingFile = new File(getFilesDir(), RECORDING_FILE_NAME);
+
         // Record the audio stream in a background thread
         // 在后台线程中记录音频流
         mRecordAudioThread = new Thread() {
             public void run() {
                 try {
-                    mSoundFile = SoundFile.record(listener);
+                    mSoundFile = SoundFile.record(listener, recordingFile);
                     if (mSoundFile == null) {
+                        recordingFile.delete();
                         mAlertDialog.dismiss();
                         Runnable runnable = new Runnable() {
                             public void run() {
@@ -850,8 +1185,9 @@ public class RingdroidEditActivity extends Activity
                         mHandler.post(runnable);
                         return;
                     }
-                    mPlayer = new SamplePlayer(mSoundFile);
+                    mPlayer = newSamplePlayer();
                 } catch (final Exception e) {
+                    recordingFile.delete();
                     mAlertDialog.dismiss();
                     e.printStackTrace();
                     mInfoContent = e.toString();
@@ -869,6 +1205,7 @@ public class RingdroidEditActivity extends Activity
                     mHandler.post(runnable);
                     return;
                 }
+                recordingFile.delete();
                 mAlertDialog.dismiss();
                 if (mFinishActivity) {
                     RingdroidEditActivity.this.finish();
@@ -885,9 +1222,45 @@ public class RingdroidEditActivity extends Activity
         mRecordAudioThread.start();
     }
 
+    /**
+     * Show the spectrogram of the sound file instead of its waveform, computed on one worker per
+     * core; or stop the workers and show the waveform again.
+     * 显示声音文件的频谱图而不是波形，每个核心一个工作线程计算；或者停止工作线程并再次显示波形。
+     */
+    private void setShowSpectrogram(boolean showSpectrogram) {
+        SpectrogramEngine spectrogram = mWaveformView.getSpectrogram();
+        if (spectrogram != null) {
+            mWaveformView.setSpectrogram(null);
+            spectrogram.release();
+        }
+        if (showSpectrogram && mSoundFile != null) {
+            final SoundFile soundFile = mSoundFile;
+            mWaveformView.setSpectrogram(new SpectrogramEngine(
+                    new SpectrogramEngine.SourceProvider() {
+                        public PcmSource openSource() {
+                            return soundFile.getPcmSource();
+                        }
+                    },
+                    Runtime.getRuntime().availableProcessors()));
+        }
+    }
+
     private void finishOpeningSoundFile() {
+        boolean showSpectrogram = mWaveformView.getSpectrogram() != null;
+        setShowSpectrogram(false);
         mWaveformView.setSoundFile(mSoundFile);
+        setShowSpectrogram(showSpectrogram);
+        if (mSoundFile.isDecodedOnDemand()) {
+            mWaveformGainsChanged = false;
+            mSoundFile.setRegionListener(new SoundFile.RegionListener() {
+                public void onRegionDecoded(int startFrame, int endFrame) {
+                    mWaveformGainsChanged = true;
+                }
+            });
+        }
         mWaveformView.recomputeHeights(mDensity);
+        mSnappedStartPos = -1;
+        mSnappedEndPos = -1;
 
         mMaxPos = mWaveformView.maxPos();
         mLastDisplayedStartPos = -1;
@@ -899,6 +1272,12 @@ public class RingdroidEditActivity extends Activity
         mOffsetGoal = 0;
         mFlingVelocity = 0;
         resetPositions();
+        boolean highlight = mHighlightTime >= 0;
+        if (highlight) {
+            mStartPos = trap(mWaveformView.secondsToPixels(mHighlightTime));
+            mEndPos = mWaveformView.secondsToPixels(mHighlightTime + DEFAULT_SELECTION_SECS);
+            mHighlightTime = -1;
+        }
         if (mEndPos > mMaxPos)
             mEndPos = mMaxPos;
 
@@ -909,8 +1288,14 @@ public class RingdroidEditActivity extends Activity
                         formatTime(mMaxPos) + " " +
                         getResources().getString(R.string.time_seconds);
         mInfo.setText(mCaption);
+        mLastStatsStartPos = -1;
+        mLastStatsEndPos = -1;
 
         updateDisplay();
+        if (highlight) {
+            setOffsetGoalStart();
+            snapMarkers(true);
+        }
     }
 
     private synchronized void updateDisplay() {
@@ -969,6 +1354,17 @@ public class RingdroidEditActivity extends Activity
         mWaveformView.setParameters(mStartPos, mEndPos, mOffset);
         mWaveformView.invalidate();
 
+        // Long files are decoded on demand: decode what is on screen.
+        // 长文件按需解码：解码屏幕上的内容。
+        if (mSoundFile != null) {
+            mSoundFile.prefetch(
+                    mWaveformView.secondsToFrames(mWaveformView.pixelsToSeconds(mOffset)),
+                    mWaveformView.secondsToFrames(
+                            mWaveformView.pixelsToSeconds(mOffset + mWidth)));
+        }
+
+        updateSelectionStats();
+
         mStartMarker.setContentDescription(
                 getResources().getText(R.string.start_marker) + " " +
                         formatTime(mStartPos));
@@ -1055,6 +1451,15 @@ public class RingdroidEditActivity extends Activity
                 mLastDisplayedEndPos = mEndPos;
             }
 
+            // Recomputing the waveform allocates a lot: do it at most once per second.
+            // 重新计算波形会分配大量内存：每秒最多执行一次。
+            long now = getCurrentTime();
+            if (mWaveformGainsChanged && now - mLastWaveformRefreshMsec >= 1000) {
+                mWaveformGainsChanged = false;
+                mLastWaveformRefreshMsec = now;
+                mWaveformView.refreshGains();
+            }
+
             mHandler.postDelayed(mTimerRunnable, 100);
         }
     };
@@ -1069,9 +1474,161 @@ public class RingdroidEditActivity extends Activity
         }
     }
 
+    // Look for the zero crossings nearest to the markers (at most 10 ms away), where the
+    // selection can be cut without a click. The markers stay on their pixels; the samples found
+    // are used when saving (cf. getSelectionStartSample()). If toBeats, the markers are first
+    // moved to the nearest beats, at most half a beat away.
+    // 查找最接近标记的过零点（最多10毫秒），在那里剪切选区不会产生咔嗒声。如果toBeats，先将标记移动到最近的节拍。
+    private void snapMarkers(final boolean toBeats) {
+        if (mSoundFile == null) {
+            return;
+        }
+        final SoundFile soundFile = mSoundFile;
+        final int startPos = mStartPos;
+        final int endPos = mEndPos;
+        final int zoomLevel = mWaveformView.getZoomLevel();
+        final double startTime = mWaveformView.pixelsToSeconds(startPos);
+        final double endTime = mWaveformView.pixelsToSeconds(endPos);
+        // Files decoded on demand may have to decode the samples around the markers, or the
+        // whole file to find the beats.
+        // 按需解码的文件可能需要解码标记周围的样本，或解码整个文件以查找节拍。
+        final int generation = ++mSnapGeneration;
+        mAnalysisWorker.execute(new Runnable() {
+            public void run() {
+                if (generation != mSnapGeneration) {
+                    return;
+                }
+                final int sampleRate = soundFile.getSampleRate();
+                long start = (long) (startTime * sampleRate);
+                long end = (long) (endTime * sampleRate);
+                try {
+                    if (toBeats) {
+                        notifyDetectingBeats(soundFile);
+                        OnsetIndex onsets = soundFile.getOnsetIndex();
+                        long maxDistance = onsets.getBeatPeriod() / 2;
+                        long beat = onsets.findNearestBeat(start, maxDistance);
+                        if (beat >= 0) {
+                            start = beat;
+                        }
+                        beat = onsets.findNearestBeat(end, maxDistance);
+                        if (beat > start) {
+                            end = beat;
+                        }
+                    }
+                    start = soundFile.snapToZeroCrossing(start, sampleRate / 100);
+                    end = soundFile.snapToZeroCrossing(end, sampleRate / 100);
+                } catch (Exception e) {
+                    Log.e("Ringdroid", "Error looking for zero crossings: " + e);
+                    return;
+                }
+                final long snappedStart = start;
+                final long snappedEnd = end;
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        if (soundFile != mSoundFile) {
+                            return;
+                        }
+                        mSnappedStartSample = snappedStart;
+                        mSnappedEndSample = snappedEnd;
+                        mSnappedStartPos = startPos;
+                        mSnappedEndPos = endPos;
+                        mSnappedZoomLevel = zoomLevel;
+                        if (toBeats && mStartPos == startPos && mEndPos == endPos
+                                && mWaveformView.getZoomLevel() == zoomLevel) {
+                            mStartPos = trap(mWaveformView.secondsToPixels(
+                                    (double) snappedStart / sampleRate));
+                            mEndPos = trap(mWaveformView.secondsToPixels(
+                                    (double) snappedEnd / sampleRate));
+                            mSnappedStartPos = mStartPos;
+                            mSnappedEndPos = mEndPos;
+                            updateDisplay();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // Called from mAnalysisWorker before asking for the beats: let the user know if the whole
+    // file has to be decoded for them.
+    // 在请求节拍之前从mAnalysisWorker调用：如果需要为此解码整个文件，通知用户。
+    private void notifyDetectingBeats(SoundFile soundFile) {
+        if (soundFile.hasOnsetIndex()) {
+            return;
+        }
+        mHandler.post(new Runnable() {
+            public void run() {
+                Toast.makeText(RingdroidEditActivity.this,
+                        R.string.detecting_beats,
+                        Toast.LENGTH_SHORT)
+                        .show();
+            }
+        });
+    }
+
+    // Bounds of the selection, in samples per channel: the zero crossings the markers were
+    // snapped to, if they didn't move since.
+    // 选区的边界（以样本为单位）：如果标记此后未移动，则为其吸附到的过零点。
+    private long getSelectionStartSample() {
+        if (mStartPos == mSnappedStartPos && mWaveformView.getZoomLevel() == mSnappedZoomLevel) {
+            return mSnappedStartSample;
+        }
+        return (long) (mWaveformView.pixelsToSeconds(mStartPos) * mSoundFile.getSampleRate());
+    }
+
+    private long getSelectionEndSample() {
+        if (mEndPos == mSnappedEndPos && mWaveformView.getZoomLevel() == mSnappedZoomLevel) {
+            return Math.max(mSnappedEndSample, getSelectionStartSample());
+        }
+        return (long) (mWaveformView.pixelsToSeconds(mEndPos) * mSoundFile.getSampleRate());
+    }
+
+    private double getSelectionStartTime() {
+        return (double) getSelectionStartSample() / mSoundFile.getSampleRate();
+    }
+
+    private double getSelectionEndTime() {
+        return (double) getSelectionEndSample() / mSoundFile.getSampleRate();
+    }
+
+    // Set the export gain of the sound file for the selection from startTime to endTime, as
+    // chosen in the menu.
+    // 根据菜单中的选择，为从startTime到endTime的选区设置声音文件的导出增益。
+    private void normalize(float startTime, float endTime) throws IOException {
+        float target = mNormalization == LoudnessStats.NORMALIZE_PEAK
+                ? NORMALIZE_PEAK_DB : NORMALIZE_LOUDNESS_LUFS;
+        mSoundFile.normalize(mNormalization, target, startTime, endTime);
+    }
+
+    // Show the loudness, RMS, peak and clipping of the selection under the file information. The
+    // statistics come from prefix sums and a sparse table (cf. LoudnessStats), so this is cheap
+    // enough to be done at every move of the markers.
+    // 在文件信息下显示选区的响度、RMS、峰值和削波。统计信息来自前缀和与稀疏表，因此可以在每次移动标记时执行。
+    private void updateSelectionStats() {
+        if (mSoundFile == null || mSoundFile.getLoudnessStats() == null
+                || (mStartPos == mLastStatsStartPos && mEndPos == mLastStatsEndPos)) {
+            return;
+        }
+        mLastStatsStartPos = mStartPos;
+        mLastStatsEndPos = mEndPos;
+        LoudnessStats stats = mSoundFile.getLoudnessStats();
+        int sampleRate = mSoundFile.getSampleRate();
+        long start = (long) (mWaveformView.pixelsToSeconds(mStartPos) * sampleRate);
+        long end = (long) (mWaveformView.pixelsToSeconds(mEndPos) * sampleRate);
+        if (end <= start) {
+            mInfo.setText(mCaption);
+            return;
+        }
+        mInfo.setText(mCaption + "\n" + getResources().getString(R.string.selection_stats,
+                Math.max(-99f, stats.getLoudness(start, end)),
+                Math.max(-99f, stats.getRmsDb(start, end)),
+                Math.max(-99f, stats.getPeakDb(start, end)),
+                stats.getClippedSamples(start, end)));
+    }
+
     private void resetPositions() {
         mStartPos = mWaveformView.secondsToPixels(0.0);
-        mEndPos = mWaveformView.secondsToPixels(15.0);
+        mEndPos = mWaveformView.secondsToPixels(DEFAULT_SELECTION_SECS);
     }
 
     private int trap(int pos) {
@@ -1306,10 +1863,13 @@ public class RingdroidEditActivity extends Activity
     }
 
     private void saveRingtone(final CharSequence title) {
-        double startTime = mWaveformView.pixelsToSeconds(mStartPos);
-        double endTime = mWaveformView.pixelsToSeconds(mEndPos);
-        final int startFrame = mWaveformView.secondsToFrames(startTime);
-        final int endFrame = mWaveformView.secondsToFrames(endTime);
+        // Samples rather than frames or times, so that cuts snapped to zero crossings are kept
+        // exactly.
+        // 使用样本而不是帧或时间，以便精确保留吸附到过零点的剪切点。
+        final long startSample = getSelectionStartSample();
+        final long numSamples = getSelectionEndSample() - startSample;
+        final float startTime = (float) getSelectionStartTime();
+        final float endTime = (float) getSelectionEndTime();
         final int duration = (int) (endTime - startTime + 0.5);
 
         // Create an indeterminate progress dialog
@@ -1327,7 +1887,7 @@ public class RingdroidEditActivity extends Activity
             public void run() {
                 // Try AAC first.
                 // 首先尝试AAC。
-                String outPath = makeRingtoneFilename(title, ".m4a");
+                String outPath = makeRingtoneFilename(title, mExportProfile.getExtension());
                 if (outPath == null) {
                     Runnable runnable = new Runnable() {
                         public void run() {
@@ -1340,9 +1900,10 @@ public class RingdroidEditActivity extends Activity
                 File outFile = new File(outPath);
                 Boolean fallbackToWAV = false;
                 try {
+                    normalize(startTime, endTime);
                     // Write the new file
                     // 写入新文件
-                    mSoundFile.WriteFile(outFile, startFrame, endFrame - startFrame);
+                    mSoundFile.WriteFile(outFile, startSample, numSamples, mExportProfile);
                 } catch (Exception e) {
                     // log the error and try to create a .wav file instead
                     // 记录错误并尝试创建.wav文件
@@ -1373,7 +1934,9 @@ public class RingdroidEditActivity extends Activity
                     try {
                         // create the .wav file
                         // 创建.wav文件
-                        mSoundFile.WriteWAVFile(outFile, startFrame, endFrame - startFrame);
+                        mSoundFile.WriteWAVFile(outFile, startSample, numSamples,
+                                mExportSampleRate > 0 ?
+                                        mExportSampleRate : mSoundFile.getSampleRate());
                     } catch (Exception e) {
                         // Creating the .wav file also failed. Stop the progress dialog, show an
                         // error message and exit.
@@ -1460,6 +2023,109 @@ public class RingdroidEditActivity extends Activity
         mSaveSoundFileThread.start();
     }
 
+    /**
+     * Save the current selection cut into consecutive pieces of mBatchPieceSecs
+     * seconds (the last one may be shorter). All the pieces are encoded in a
+     * single pass over the audio.
+     * 将当前选区切成连续的片段保存。所有片段在一次遍历中编码。
+     */
+    private void saveRingtonePieces(final CharSequence title) {
+        final double startTime = getSelectionStartTime();
+        final double endTime = getSelectionEndTime();
+        final List<ExportRegion> regions = new ArrayList<ExportRegion>();
+        final List<String> titles = new ArrayList<String>();
+        for (double t = startTime; t < endTime - 0.5; t += mBatchPieceSecs) {
+            String pieceTitle = title + " " + (regions.size() + 1);
+            String outPath = makeRingtoneFilename(pieceTitle, mExportProfile.getExtension());
+            if (outPath == null) {
+                showFinalAlert(new Exception(), R.string.no_unique_filename);
+                return;
+            }
+            regions.add(new ExportRegion((float) t,
+                    (float) Math.min(t + mBatchPieceSecs, endTime), new File(outPath)));
+            titles.add(pieceTitle);
+        }
+        if (regions.isEmpty()) {
+            return;
+        }
+
+        mProgressDialog = new ProgressDialog(this);
+        mProgressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        mProgressDialog.setTitle(R.string.progress_dialog_saving);
+        mProgressDialog.setCancelable(false);
+        mProgressDialog.show();
+
+        final SoundFile.ProgressListener listener =
+                new SoundFile.ProgressListener() {
+                    public boolean reportProgress(double fractionComplete) {
+                        mProgressDialog.setProgress(
+                                (int) (mProgressDialog.getMax() * fractionComplete));
+                        return true;
+                    }
+                };
+
+        // Save the pieces in a background thread
+        // 在后台线程中保存片段
+        mSaveSoundFileThread = new Thread() {
+            public void run() {
+                try {
+                    // All the pieces get the gain of the whole selection.
+                    // 所有片段都使用整个选区的增益。
+                    normalize((float) startTime, (float) endTime);
+                    mSoundFile.WriteFiles(regions, mExportProfile, listener);
+                } catch (final Exception e) {
+                    mProgressDialog.dismiss();
+                    for (ExportRegion region : regions) {
+                        region.getOutputFile().delete();
+                    }
+                    Runnable runnable = new Runnable() {
+                        public void run() {
+                            showFinalAlert(e, getResources().getText(R.string.write_error));
+                        }
+                    };
+                    mHandler.post(runnable);
+                    return;
+                }
+                mProgressDialog.dismiss();
+                Runnable runnable = new Runnable() {
+                    public void run() {
+                        afterSavingRingtonePieces(regions, titles);
+                    }
+                };
+                mHandler.post(runnable);
+            }
+        };
+        mSaveSoundFileThread.start();
+    }
+
+    private void afterSavingRingtonePieces(List<ExportRegion> regions, List<String> titles) {
+        Uri firstUri = null;
+        int numSaved = 0;
+        for (int i = 0; i < regions.size(); i++) {
+            ExportRegion region = regions.get(i);
+            String outPath = region.getOutputFile().getPath();
+            int duration = (int) (region.getEndTime() - region.getStartTime() + 0.5);
+            Uri newUri = addToMediaStore(titles.get(i), outPath, duration);
+            if (firstUri == null) {
+                firstUri = newUri;
+            }
+            numSaved++;
+        }
+        mRecoveredDone = true;
+        setResult(RESULT_OK, new Intent().setData(firstUri));
+
+        // If Ringdroid was launched to get content, just return the first piece
+        // 如果启动Ringdroid来获取内容，则只返回第一段
+        if (mWasGetContentIntent) {
+            finish();
+            return;
+        }
+        Toast.makeText(this,
+                getResources().getString(R.string.batch_save_success_message, numSaved),
+                Toast.LENGTH_SHORT)
+                .show();
+    }
+
     private void afterSavingRingtone(CharSequence title, String outPath, int duration) {
         File outFile = new File(outPath);
         long fileSize = outFile.length();
@@ -1474,43 +2140,8 @@ public class RingdroidEditActivity extends Activity
             return;
         }
 
-        // Create the database record, pointing to the existing file path
-        // 创建数据库记录，指向现有文件路径
-        String mimeType;
-        if (outPath.endsWith(".m4a")) {
-            mimeType = "audio/mp4a-latm";
-        } else if (outPath.endsWith(".wav")) {
-            mimeType = "audio/wav";
-        } else {
-            // This should never happen.
-            // 这永远都不会发生。
-            mimeType = "audio/mpeg";
-        }
-
-        String artist = "" + getResources().getText(R.string.artist_name);
-
-        ContentValues values = new ContentValues();
-        values.put(MediaStore.MediaColumns.DATA, outPath);
-        values.put(MediaStore.MediaColumns.TITLE, title.toString());
-        values.put(MediaStore.MediaColumns.SIZE, fileSize);
-        values.put(MediaStore.MediaColumns.MIME_TYPE, mimeType);
-
-        values.put(MediaStore.Audio.Media.ARTIST, artist);
-        values.put(MediaStore.Audio.Media.DURATION, duration);
-
-        values.put(MediaStore.Audio.Media.IS_RINGTONE,
-                mNewFileKind == FileSaveDialog.FILE_KIND_RINGTONE);
-        values.put(MediaStore.Audio.Media.IS_NOTIFICATION,
-                mNewFileKind == FileSaveDialog.FILE_KIND_NOTIFICATION);
-        values.put(MediaStore.Audio.Media.IS_ALARM,
-                mNewFileKind == FileSaveDialog.FILE_KIND_ALARM);
-        values.put(MediaStore.Audio.Media.IS_MUSIC,
-                mNewFileKind == FileSaveDialog.FILE_KIND_MUSIC);
-
-        // Insert it into the database
-        // 将其插入数据库
-        Uri uri = MediaStore.Audio.Media.getContentUriForPath(outPath);
-        final Uri newUri = getContentResolver().insert(uri, values);
+        final Uri newUri = addToMediaStore(title, outPath, duration);
+        mRecoveredDone = true;
         setResult(RESULT_OK, new Intent().setData(newUri));
 
         // If Ringdroid was launched to get content, just return
@@ -1601,6 +2232,49 @@ public class RingdroidEditActivity extends Activity
         dlog.show();
     }
 
+    // Create the database record, pointing to the existing file path
+    // 创建数据库记录，指向现有文件路径
+    private Uri addToMediaStore(CharSequence title, String outPath, int duration) {
+        long fileSize = new File(outPath).length();
+        String mimeType;
+        if (outPath.endsWith(".m4a")) {
+            mimeType = "audio/mp4a-latm";
+        } else if (outPath.endsWith(".awb")) {
+            mimeType = "audio/amr-wb";
+        } else if (outPath.endsWith(".wav")) {
+            mimeType = "audio/wav";
+        } else {
+            // This should never happen.
+            // 这永远都不会发生。
+            mimeType = "audio/mpeg";
+        }
+
+        String artist = "" + getResources().getText(R.string.artist_name);
+
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DATA, outPath);
+        values.put(MediaStore.MediaColumns.TITLE, title.toString());
+        values.put(MediaStore.MediaColumns.SIZE, fileSize);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, mimeType);
+
+        values.put(MediaStore.Audio.Media.ARTIST, artist);
+        values.put(MediaStore.Audio.Media.DURATION, duration);
+
+        values.put(MediaStore.Audio.Media.IS_RINGTONE,
+                mNewFileKind == FileSaveDialog.FILE_KIND_RINGTONE);
+        values.put(MediaStore.Audio.Media.IS_NOTIFICATION,
+                mNewFileKind == FileSaveDialog.FILE_KIND_NOTIFICATION);
+        values.put(MediaStore.Audio.Media.IS_ALARM,
+                mNewFileKind == FileSaveDialog.FILE_KIND_ALARM);
+        values.put(MediaStore.Audio.Media.IS_MUSIC,
+                mNewFileKind == FileSaveDialog.FILE_KIND_MUSIC);
+
+        // Insert it into the database
+        // 将其插入数据库
+        Uri uri = MediaStore.Audio.Media.getContentUriForPath(outPath);
+        return getContentResolver().insert(uri, values);
+    }
+
     private void chooseContactForRingtone(Uri uri) {
         try {
             Intent intent = new Intent(Intent.ACTION_EDIT, uri);
@@ -1617,20 +2291,204 @@ public class RingdroidEditActivity extends Activity
         if (mIsPlaying) {
             handlePause();
         }
+        if (mSoundFile == null) {
+            // Not loaded yet
+            // 尚未加载
+            return;
+        }
+
+        // Only offer the formats this device can encode.
+        // 仅提供此设备可以编码的格式。
+        ArrayList<ExportProfile> profiles = new ArrayList<ExportProfile>();
+        for (ExportProfile profile : ExportProfile.getAllProfiles()) {
+            if (EncoderRegistry.isSupported(
+                    profile, mSoundFile.getSampleRate(), mSoundFile.getChannels())) {
+                profiles.add(profile);
+            }
+        }
+        if (profiles.isEmpty()) {
+            // Saving will fall back to WAV anyway.
+            profiles.add(ExportProfile.DEFAULT);
+        }
+        final ExportProfile[] exportProfiles = profiles.toArray(new ExportProfile[0]);
 
         final Handler handler = new Handler() {
             public void handleMessage(Message response) {
                 CharSequence newTitle = (CharSequence) response.obj;
                 mNewFileKind = response.arg1;
-                saveRingtone(newTitle);
+                mExportProfile =
+                        exportProfiles[response.arg2].withSampleRate(mExportSampleRate);
+                if (mBatchPieceSecs > 0) {
+                    saveRingtonePieces(newTitle);
+                } else {
+                    saveRingtone(newTitle);
+                }
             }
         };
         Message message = Message.obtain(handler);
         FileSaveDialog dlog = new FileSaveDialog(
-                this, getResources(), mTitle, message);
+                this, getResources(), mTitle, exportProfiles, message);
         dlog.show();
     }
 
+    /**
+     * Ask for the length of the pieces, then show the save dialog.
+     * 询问片段的长度，然后显示保存对话框。
+     */
+    private void onBatchSave() {
+        if (mIsPlaying) {
+            handlePause();
+        }
+        if (mSoundFile == null) {
+            return;
+        }
+        final EditText pieceLength = new EditText(this);
+        pieceLength.setInputType(
+                InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_FLAG_DECIMAL);
+        pieceLength.setText("30");
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.batch_save_title)
+                .setMessage(R.string.batch_save_piece_length)
+                .setView(pieceLength)
+                .setPositiveButton(
+                        R.string.alert_ok_button,
+                        new DialogInterface.OnClickListener() {
+                            public void onClick(DialogInterface dialog, int whichButton) {
+                                try {
+                                    mBatchPieceSecs = Double.parseDouble(
+                                            pieceLength.getText().toString());
+                                } catch (NumberFormatException e) {
+                                    mBatchPieceSecs = 0;
+                                }
+                                if (mBatchPieceSecs >= 1.0) {
+                                    onSave();
+                                }
+                            }
+                        })
+                .setNegativeButton(R.string.progress_dialog_cancel, null)
+                .show();
+    }
+
+    // Move the markers to the first and last sounds of the file, cutting the silence around them.
+    // For files decoded on demand the ends of the file are decoded, hence the background thread.
+    // 将标记移动到文件的第一个和最后一个声音，剪掉它们周围的静音。
+    private void onTrimSilence() {
+        if (mIsPlaying) {
+            handlePause();
+        }
+        if (mSoundFile == null) {
+            return;
+        }
+        final SoundFile soundFile = mSoundFile;
+        new Thread() {
+            public void run() {
+                final SilenceDetector.Bounds bounds;
+                try {
+                    bounds = soundFile.detectSilence(new SilenceDetector());
+                } catch (Exception e) {
+                    Log.e("Ringdroid", "Error detecting silence: " + e);
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        if (soundFile != mSoundFile) {
+                            return;
+                        }
+                        if (bounds.isSilent()) {
+                            Toast.makeText(RingdroidEditActivity.this,
+                                    R.string.trim_silence_none,
+                                    Toast.LENGTH_SHORT)
+                                    .show();
+                            return;
+                        }
+                        mStartPos = trap(mWaveformView.millisecsToPixels(bounds.getStartMs()));
+                        mEndPos = trap(mWaveformView.millisecsToPixels(bounds.getEndMs()));
+                        setOffsetGoalStart();
+                        snapMarkers(false);
+                    }
+                });
+            }
+        }.start();
+    }
+
+    // Player for mSoundFile. Unless mPlaybackResampling is PLAYBACK_RESAMPLING_OFF, it resamples
+    // to the native rate of the device itself rather than leaving it to the resampler of the
+    // audio framework: better quality, but more CPU during playback.
+    // mSoundFile的播放器。除非关闭，否则自己重采样到设备的本机采样率：质量更好，但播放时更耗CPU。
+    private SamplePlayer newSamplePlayer() {
+        if (mPlaybackResampling == PLAYBACK_RESAMPLING_OFF) {
+            return new SamplePlayer(mSoundFile);
+        }
+        int nativeRate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+        return new SamplePlayer(mSoundFile, nativeRate, mPlaybackResampling);
+    }
+
+    // Switch the playback resampling, replacing the player if a file is loaded.
+    // 切换播放重采样方式，如果已加载文件则替换播放器。
+    private synchronized void setPlaybackResampling(int resampling) {
+        if (resampling == mPlaybackResampling) {
+            return;
+        }
+        mPlaybackResampling = resampling;
+        if (mPlayer == null) {
+            return;
+        }
+        if (mIsPlaying) {
+            handlePause();
+        }
+        if (mPlayer.isPlaying() || mPlayer.isPaused()) {
+            mPlayer.stop();
+        }
+        mPlayer.release();
+        mPlayer = newSamplePlayer();
+    }
+
+    // Select the loop of whole bars lasting about seconds with the most onsets (cf.
+    // OnsetIndex.suggestRegion()), with the markers on the beats.
+    // 选择持续约seconds秒、起始点最多的完整小节循环，标记位于节拍上。
+    private void onSuggestLoop(final double seconds) {
+        if (mIsPlaying) {
+            handlePause();
+        }
+        if (mSoundFile == null) {
+            return;
+        }
+        final SoundFile soundFile = mSoundFile;
+        mAnalysisWorker.execute(new Runnable() {
+            public void run() {
+                final OnsetIndex.Region region;
+                try {
+                    notifyDetectingBeats(soundFile);
+                    region = soundFile.getOnsetIndex().suggestRegion(seconds);
+                } catch (Exception e) {
+                    Log.e("Ringdroid", "Error detecting beats: " + e);
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        if (soundFile != mSoundFile) {
+                            return;
+                        }
+                        if (region == null) {
+                            Toast.makeText(RingdroidEditActivity.this,
+                                    R.string.suggest_loop_none,
+                                    Toast.LENGTH_SHORT)
+                                    .show();
+                            return;
+                        }
+                        int sampleRate = soundFile.getSampleRate();
+                        mStartPos = trap(mWaveformView.secondsToPixels(
+                                (double) region.getStartSample() / sampleRate));
+                        mEndPos = trap(mWaveformView.secondsToPixels(
+                                (double) region.getEndSample() / sampleRate));
+                        setOffsetGoalStart();
+                        snapMarkers(true);
+                    }
+                });
+            }
+        });
+    }
+
     private OnClickListener mPlayListener = new OnClickListener() {
         public void onClick(View sender) {
             onPlay(mStartPos);
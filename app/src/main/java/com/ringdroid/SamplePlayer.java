@@ -16,12 +16,14 @@
 
 package com.ringdroid;
 
-import java.nio.ShortBuffer;
+import java.io.IOException;
 
 import android.media.AudioFormat;
 import android.media.AudioManager;
 import android.media.AudioTrack;
 
+import com.ringdroid.soundfile.PcmConverter;
+import com.ringdroid.soundfile.PcmSource;
 import com.ringdroid.soundfile.SoundFile;
 
 class SamplePlayer {
@@ -29,42 +31,68 @@ class SamplePlayer {
         public void onCompletion();
     };
 
-    private ShortBuffer mSamples;
+    private PcmSource mSamples;
     private int mSampleRate;
     private int mChannels;
     private int mNumSamples;  // Number of samples per channel.
+    private int mTrackSampleRate;  // Sampling rate of mAudioTrack.
     private AudioTrack mAudioTrack;
     private short[] mBuffer;
+    // Resampling to mTrackSampleRate, null when the samples are played at their own rate.
+    // 重采样到mTrackSampleRate，当样本以其自身的采样率播放时为null。
+    private PcmConverter mConverter;
+    private short[] mConverted;  // output of mConverter.
     private int mPlaybackStart;  // Start offset, in samples.
     private Thread mPlayThread;
     private boolean mKeepPlaying;
     private OnCompletionListener mListener;
 
-    public SamplePlayer(ShortBuffer samples, int sampleRate, int channels, int numSamples) {
+    public SamplePlayer(PcmSource samples, int sampleRate, int channels, int numSamples) {
+        this(samples, sampleRate, channels, numSamples, 0, PcmConverter.RESAMPLE_POLYPHASE);
+    }
+
+    // Plays the samples at outputSampleRate (typically the native rate of the device, to spare
+    // the resampling done by the audio framework), or at their own rate if outputSampleRate is
+    // 0. resampling is one of PcmConverter.RESAMPLE_*: RESAMPLE_LINEAR uses less CPU.
+    // 以outputSampleRate（通常是设备的本机采样率）播放样本，如果为0，则以其自身的采样率播放。
+    public SamplePlayer(PcmSource samples, int sampleRate, int channels, int numSamples,
+                        int outputSampleRate, int resampling) {
         mSamples = samples;
         mSampleRate = sampleRate;
         mChannels = channels;
         mNumSamples = numSamples;
+        mTrackSampleRate = outputSampleRate > 0 ? outputSampleRate : sampleRate;
         mPlaybackStart = 0;
 
         int bufferSize = AudioTrack.getMinBufferSize(
-                mSampleRate,
+                mTrackSampleRate,
                 mChannels == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO,
                 AudioFormat.ENCODING_PCM_16BIT);
         // make sure minBufferSize can contain at least 1 second of audio (16 bits sample).
-        if (bufferSize < mChannels * mSampleRate * 2) {
-            bufferSize = mChannels * mSampleRate * 2;
+        if (bufferSize < mChannels * mTrackSampleRate * 2) {
+            bufferSize = mChannels * mTrackSampleRate * 2;
+        }
+        if (mTrackSampleRate != mSampleRate) {
+            mConverter = new PcmConverter(
+                    mSampleRate, mChannels, mTrackSampleRate, mChannels, resampling);
+            mBuffer = new short[mChannels * mSampleRate];  // 1 second of audio.
+            int maxOut = Math.max(mConverter.getMaxOutputFrames(mSampleRate),
+                    mConverter.getMaxOutputFrames(0));
+            mConverted = new short[Math.max(maxOut * mChannels, bufferSize / 2)];
+        } else {
+            mConverter = null;
+            mBuffer = new short[bufferSize/2]; // bufferSize is in Bytes.
         }
-        mBuffer = new short[bufferSize/2]; // bufferSize is in Bytes.
         mAudioTrack = new AudioTrack(
                 AudioManager.STREAM_MUSIC,
-                mSampleRate,
+                mTrackSampleRate,
                 mChannels == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO,
                 AudioFormat.ENCODING_PCM_16BIT,
-                mBuffer.length * 2,
+                bufferSize,
                 AudioTrack.MODE_STREAM);
         // Check when player played all the given data and notify user if mListener is set.
-        mAudioTrack.setNotificationMarkerPosition(mNumSamples - 1);  // Set the marker to the end.
+        // Set the marker to the end.
+        mAudioTrack.setNotificationMarkerPosition(toTrackSamples(mNumSamples) - 1);
         mAudioTrack.setPlaybackPositionUpdateListener(
                 new AudioTrack.OnPlaybackPositionUpdateListener() {
             @Override
@@ -83,8 +111,24 @@ class SamplePlayer {
         mListener = null;
     }
 
+    public SamplePlayer(PcmSource samples) {
+        this(samples, samples.getSampleRate(), samples.getChannels(),
+                (int) Math.min(samples.getNumSamples(), Integer.MAX_VALUE));
+    }
+
+    public SamplePlayer(PcmSource samples, int outputSampleRate, int resampling) {
+        this(samples, samples.getSampleRate(), samples.getChannels(),
+                (int) Math.min(samples.getNumSamples(), Integer.MAX_VALUE),
+                outputSampleRate, resampling);
+    }
+
+    // Plays the playback source of sf, which is a low rate copy for files opened in preview mode.
     public SamplePlayer(SoundFile sf) {
-        this(sf.getSamples(), sf.getSampleRate(), sf.getChannels(), sf.getNumSamples());
+        this(sf.getPlaybackSource());
+    }
+
+    public SamplePlayer(SoundFile sf, int outputSampleRate, int resampling) {
+        this(sf.getPlaybackSource(), outputSampleRate, resampling);
     }
 
     public void setOnCompletionListener(OnCompletionListener listener) {
@@ -110,27 +154,67 @@ class SamplePlayer {
         // (Assumes mChannels = 1 or 2).
         mPlayThread = new Thread () {
             public void run() {
-                int position = mPlaybackStart * mChannels;
-                mSamples.position(position);
-                int limit = mNumSamples * mChannels;
-                while (mSamples.position() < limit && mKeepPlaying) {
-                    int numSamplesLeft = limit - mSamples.position();
-                    if(numSamplesLeft >= mBuffer.length) {
-                        mSamples.get(mBuffer);
-                    } else {
-                        for(int i=numSamplesLeft; i<mBuffer.length; i++) {
+                long position = mPlaybackStart;
+                int bufferSamples = mBuffer.length / mChannels;
+                try {
+                    mSamples.seek(position);
+                    if (mConverter != null) {
+                        playConverted(position);
+                        return;
+                    }
+                    while (position < mNumSamples && mKeepPlaying) {
+                        int count = (int) Math.min(bufferSamples, mNumSamples - position);
+                        int numRead = mSamples.read(mBuffer, 0, count);
+                        if (numRead <= 0) {
+                            break;
+                        }
+                        for(int i=numRead * mChannels; i<mBuffer.length; i++) {
                             mBuffer[i] = 0;
                         }
-                        mSamples.get(mBuffer, 0, numSamplesLeft);
+                        position += numRead;
+                        // TODO(nfaralli): use the write method that takes a ByteBuffer as argument.
+                        mAudioTrack.write(mBuffer, 0, mBuffer.length);
                     }
-                    // TODO(nfaralli): use the write method that takes a ByteBuffer as argument.
-                    mAudioTrack.write(mBuffer, 0, mBuffer.length);
+                } catch (IOException e) {
+                    // Nothing more to play.
                 }
             }
         };
         mPlayThread.start();
     }
 
+    // Same as the loop in start(), resampling the samples to mTrackSampleRate.
+    // 与start（）中的循环相同，将样本重采样到mTrackSampleRate。
+    private void playConverted(long position) throws IOException {
+        int bufferSamples = mBuffer.length / mChannels;
+        mConverter.reset();
+        while (position < mNumSamples && mKeepPlaying) {
+            int count = (int) Math.min(bufferSamples, mNumSamples - position);
+            int numRead = mSamples.read(mBuffer, 0, count);
+            if (numRead <= 0) {
+                break;
+            }
+            position += numRead;
+            int numConverted = mConverter.process(mBuffer, 0, numRead, mConverted, 0);
+            mAudioTrack.write(mConverted, 0, numConverted * mChannels);
+        }
+        if (mKeepPlaying) {
+            // Last samples held by the resampler, then silence up to a full buffer.
+            // 重采样器保留的最后样本，然后用静音填满缓冲区。
+            int numConverted = mConverter.flush(mConverted, 0);
+            for (int i = numConverted * mChannels; i < mConverted.length; i++) {
+                mConverted[i] = 0;
+            }
+            mAudioTrack.write(mConverted, 0, mConverted.length);
+        }
+    }
+
+    // Number of samples per channel at mTrackSampleRate for numSamples at mSampleRate.
+    // 将mSampleRate下的numSamples转换为mTrackSampleRate下的样本数。
+    private int toTrackSamples(long numSamples) {
+        return (int) (numSamples * mTrackSampleRate / mSampleRate);
+    }
+
     public void pause() {
         if (isPlaying()) {
             mAudioTrack.pause();
@@ -154,9 +238,12 @@ class SamplePlayer {
         }
     }
 
+    // Stops the playback and closes the samples: the player owns its PcmSource.
+    // 停止播放并关闭样本：播放器拥有其PcmSource。
     public void release() {
         stop();
         mAudioTrack.release();
+        mSamples.close();
     }
 
     public void seekTo(int msec) {
@@ -166,14 +253,15 @@ class SamplePlayer {
         if (mPlaybackStart > mNumSamples) {
             mPlaybackStart = mNumSamples;  // Nothing to play...
         }
-        mAudioTrack.setNotificationMarkerPosition(mNumSamples - 1 - mPlaybackStart);
+        mAudioTrack.setNotificationMarkerPosition(
+                toTrackSamples(mNumSamples) - 1 - toTrackSamples(mPlaybackStart));
         if (wasPlaying) {
             start();
         }
     }
 
     public int getCurrentPosition() {
-        return (int)((mPlaybackStart + mAudioTrack.getPlaybackHeadPosition()) *
-                (1000.0 / mSampleRate));
+        return (int)(mPlaybackStart * (1000.0 / mSampleRate) +
+                mAudioTrack.getPlaybackHeadPosition() * (1000.0 / mTrackSampleRate));
     }
 }
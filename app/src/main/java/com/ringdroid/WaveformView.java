@@ -18,9 +18,11 @@ package com.ringdroid;
 
 import android.content.Context;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.DashPathEffect;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.GestureDetector;
@@ -28,7 +30,13 @@ import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 import android.view.View;
 
+import com.ringdroid.soundfile.FrameStats;
 import com.ringdroid.soundfile.SoundFile;
+import com.ringdroid.soundfile.SpectrogramEngine;
+import com.ringdroid.soundfile.WaveformZoomLevels;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * WaveformView is an Android view that displays a visual representation
@@ -124,6 +132,43 @@ public class WaveformView extends View {
 
     //已初始化
     private boolean mInitialized;
+    // Draw one lane per channel with the true min/max of the samples instead of the gains.
+    // 为每个通道绘制一个通道，显示样本的真实最小值/最大值，而不是增益。
+    private boolean mShowChannels;
+    // Draw the spectrogram computed by this engine instead of the waveform, if not null.
+    // 如果不为null，则绘制此引擎计算的频谱图而不是波形。
+    private SpectrogramEngine mSpectrogram;
+    // Bitmaps of the last drawn spectrogram tiles, by zoom level and tile index.
+    // 最近绘制的频谱图图块的位图，按缩放级别和图块索引。
+    private Map<Long, Bitmap> mSpectrogramBitmaps;
+    private int[] mSpectrogramPixels;
+    private Paint mSpectrogramPaint;
+    private Paint mUnselectedSpectrogramPaint;
+    private Rect mSpectrogramSrc;
+    private Rect mSpectrogramDst;
+
+    // Spectrogram colors, from silence to full scale: black, blue, red, yellow, white.
+    // 频谱图颜色，从静音到满刻度：黑色、蓝色、红色、黄色、白色。
+    private static final int[] SPECTROGRAM_PALETTE = new int[256];
+    // Bitmaps cached: enough for a few screens at any zoom level.
+    // 缓存的位图：足够任何缩放级别的几个屏幕。
+    private static final int MAX_SPECTROGRAM_BITMAPS = 64;
+
+    static {
+        int[][] stops = {
+                {0, 0, 0}, {0, 0, 160}, {200, 0, 80}, {255, 200, 0}, {255, 255, 255}};
+        for (int i = 0; i < 256; i++) {
+            float x = i * (stops.length - 1) / 256.0f;
+            int k = (int) x;
+            float f = x - k;
+            int[] a = stops[k];
+            int[] b = stops[k + 1];
+            int r = (int) (a[0] + (b[0] - a[0]) * f);
+            int g = (int) (a[1] + (b[1] - a[1]) * f);
+            int bl = (int) (a[2] + (b[2] - a[2]) * f);
+            SPECTROGRAM_PALETTE[i] = 0xFF000000 | (r << 16) | (g << 8) | bl;
+        }
+    }
 
     public WaveformView(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -153,6 +198,13 @@ public class WaveformView extends View {
         mPlaybackLinePaint = new Paint();
         mPlaybackLinePaint.setAntiAlias(false);
         mPlaybackLinePaint.setColor(res.getColor(R.color.playback_indicator));
+        mSpectrogramPaint = new Paint();
+        mSpectrogramPaint.setFilterBitmap(true);
+        mUnselectedSpectrogramPaint = new Paint();
+        mUnselectedSpectrogramPaint.setAntiAlias(false);
+        mUnselectedSpectrogramPaint.setColor(0x99000000);
+        mSpectrogramSrc = new Rect();
+        mSpectrogramDst = new Rect();
         mTimecodePaint = new Paint();
         mTimecodePaint.setTextSize(12);
         mTimecodePaint.setAntiAlias(true);
@@ -245,10 +297,64 @@ public class WaveformView extends View {
         mHeightsAtThisZoomLevel = null;
     }
 
+    /**
+     * Recompute the waveform from the frame gains of the sound file, keeping the zoom level. For
+     * files decoded on demand, whose gains are filled in as regions get decoded.
+     * 从声音文件的帧增益重新计算波形，保持缩放级别。
+     */
+    public void refreshGains() {
+        int zoomLevel = mZoomLevel;
+        computeDoublesForAllZoomLevels();
+        mZoomLevel = zoomLevel;
+        mHeightsAtThisZoomLevel = null;
+        invalidate();
+    }
+
     public boolean isInitialized() {
         return mInitialized;
     }
 
+    /**
+     * Show one lane per channel, drawn from the per channel min/max of the frames (cf.
+     * SoundFile.getFrameStats()), or the mixed gains of the frames.
+     * 每个通道显示一个通道，根据帧的每通道最小值/最大值绘制，或显示帧的混合增益。
+     */
+    public void setShowChannels(boolean showChannels) {
+        mShowChannels = showChannels;
+        invalidate();
+    }
+
+    public boolean getShowChannels() {
+        return mShowChannels;
+    }
+
+    /**
+     * Draw the spectrogram of the sound file, computed in the background by spectrogram, instead
+     * of the waveform; or the waveform if null. Tiles are drawn as they become ready.
+     * 绘制由spectrogram在后台计算的声音文件频谱图，而不是波形；如果为null则绘制波形。
+     */
+    public void setSpectrogram(SpectrogramEngine spectrogram) {
+        mSpectrogram = spectrogram;
+        mSpectrogramBitmaps = null;
+        if (spectrogram != null) {
+            spectrogram.setListener(new SpectrogramEngine.Listener() {
+                public void onTileReady(int zoomLevel, int tileIndex) {
+                    postInvalidate();
+                }
+            });
+            mSpectrogramBitmaps = new LinkedHashMap<Long, Bitmap>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<Long, Bitmap> eldest) {
+                    return size() > MAX_SPECTROGRAM_BITMAPS;
+                }
+            };
+        }
+        invalidate();
+    }
+
+    public SpectrogramEngine getSpectrogram() {
+        return mSpectrogram;
+    }
+
     public int getZoomLevel() {
         return mZoomLevel;
     }
@@ -450,6 +556,73 @@ public class WaveformView extends View {
         canvas.drawLine(x, y0, x, y1, paint);
     }
 
+    /**
+     * Draw pixel x of the waveform (pixel pos at this zoom level) as one line per channel, each in
+     * its own lane, spanning the min and max of the samples of the frames under the pixel.
+     * 将波形的像素x绘制为每个通道一条线，跨越像素下帧样本的最小值和最大值。
+     */
+    private void drawChannelLines(Canvas canvas, int x, int pos, FrameStats stats, int height,
+                                  Paint paint) {
+        double z = mZoomFactorByZoomLevel[mZoomLevel];
+        int numFrames = stats.getNumFrames();
+        int firstFrame = Math.min((int) (pos / z), numFrames - 1);
+        int endFrame = Math.min(Math.max((int) ((pos + 1) / z), firstFrame + 1), numFrames);
+        int channels = stats.getChannels();
+        int laneHeight = height / channels;
+        float scale = (laneHeight / 2 - 1) / 32768.0f;
+        for (int c = 0; c < channels; c++) {
+            int min = 0;
+            int max = 0;
+            for (int frame = firstFrame; frame < endFrame; frame++) {
+                min = Math.min(min, stats.getMin(frame, c));
+                max = Math.max(max, stats.getMax(frame, c));
+            }
+            int laneCtr = c * laneHeight + laneHeight / 2;
+            drawWaveformLine(canvas, x,
+                    laneCtr - (int) (max * scale),
+                    laneCtr + 1 - (int) (min * scale),
+                    paint);
+        }
+    }
+
+    /**
+     * Draw the spectrogram tiles under pixels start to start + width of this zoom level, lowest
+     * frequencies at the bottom. Tiles not computed yet are requested and left blank.
+     * 绘制此缩放级别下像素start到start + width的频谱图图块，最低频率在底部。
+     */
+    private void drawSpectrogram(Canvas canvas, int start, int width, int height) {
+        int columns = SpectrogramEngine.TILE_COLUMNS;
+        int bins = SpectrogramEngine.NUM_BINS;
+        double samplesPerColumn = mSamplesPerFrame / mZoomFactorByZoomLevel[mZoomLevel];
+        int firstTile = start / columns;
+        int lastTile = (start + width - 1) / columns;
+        for (int tile = firstTile; tile <= lastTile; tile++) {
+            Long key = ((long) mZoomLevel << 32) | tile;
+            Bitmap bitmap = mSpectrogramBitmaps.get(key);
+            if (bitmap == null) {
+                byte[] values = mSpectrogram.getTile(mZoomLevel, samplesPerColumn, tile);
+                if (values == null) {
+                    continue;
+                }
+                if (mSpectrogramPixels == null) {
+                    mSpectrogramPixels = new int[columns * bins];
+                }
+                for (int x = 0; x < columns; x++) {
+                    for (int bin = 0; bin < bins; bin++) {
+                        mSpectrogramPixels[(bins - 1 - bin) * columns + x] =
+                                SPECTROGRAM_PALETTE[values[x * bins + bin] & 0xFF];
+                    }
+                }
+                bitmap = Bitmap.createBitmap(
+                        mSpectrogramPixels, columns, bins, Bitmap.Config.ARGB_8888);
+                mSpectrogramBitmaps.put(key, bitmap);
+            }
+            mSpectrogramSrc.set(0, 0, columns, bins);
+            mSpectrogramDst.set(tile * columns - start, 0, (tile + 1) * columns - start, height);
+            canvas.drawBitmap(bitmap, mSpectrogramSrc, mSpectrogramDst, mSpectrogramPaint);
+        }
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
@@ -491,21 +664,39 @@ public class WaveformView extends View {
 
         // Draw waveform
         // 绘制声波
+        FrameStats stats = mShowChannels ? mSoundFile.getFrameStats() : null;
+        if (mSpectrogram != null && width > 0) {
+            drawSpectrogram(canvas, start, width, measuredHeight);
+        }
         for (i = 0; i < width; i++) {
-            Paint paint;
-            if (i + start >= mSelectionStart &&
-                    i + start < mSelectionEnd) {
-                paint = mSelectedLinePaint;
+            boolean selected = i + start >= mSelectionStart &&
+                    i + start < mSelectionEnd;
+            if (mSpectrogram != null) {
+                // Shade the unselected part of the spectrogram.
+                // 遮蔽频谱图未选中的部分。
+                if (!selected) {
+                    drawWaveformLine(canvas, i, 0, measuredHeight,
+                            mUnselectedSpectrogramPaint);
+                }
             } else {
-                drawWaveformLine(canvas, i, 0, measuredHeight,
-                        mUnselectedBkgndLinePaint);
-                paint = mUnselectedLinePaint;
+                Paint paint;
+                if (selected) {
+                    paint = mSelectedLinePaint;
+                } else {
+                    drawWaveformLine(canvas, i, 0, measuredHeight,
+                            mUnselectedBkgndLinePaint);
+                    paint = mUnselectedLinePaint;
+                }
+                if (stats != null) {
+                    drawChannelLines(canvas, i, start + i, stats, measuredHeight, paint);
+                } else {
+                    drawWaveformLine(
+                            canvas, i,
+                            ctr - mHeightsAtThisZoomLevel[start + i],
+                            ctr + 1 + mHeightsAtThisZoomLevel[start + i],
+                            paint);
+                }
             }
-            drawWaveformLine(
-                    canvas, i,
-                    ctr - mHeightsAtThisZoomLevel[start + i],
-                    ctr + 1 + mHeightsAtThisZoomLevel[start + i],
-                    paint);
 
             if (i + start == mPlaybackPos) {
                 canvas.drawLine(i, 0, i, measuredHeight, mPlaybackLinePaint);
@@ -581,139 +772,18 @@ public class WaveformView extends View {
      * 添加新的声音文件时调用一次
      */
     private void computeDoublesForAllZoomLevels() {
-        int numFrames = mSoundFile.getNumFrames();
-        int[] frameGains = mSoundFile.getFrameGains();
-        double[] smoothedGains = new double[numFrames];
-        if (numFrames == 1) {
-            smoothedGains[0] = frameGains[0];
-        } else if (numFrames == 2) {
-            smoothedGains[0] = frameGains[0];
-            smoothedGains[1] = frameGains[1];
-        } else if (numFrames > 2) {
-            smoothedGains[0] = (double) (
-                    (frameGains[0] / 2.0) +
-                            (frameGains[1] / 2.0));
-            for (int i = 1; i < numFrames - 1; i++) {
-                smoothedGains[i] = (double) (
-                        (frameGains[i - 1] / 3.0) +
-                                (frameGains[i] / 3.0) +
-                                (frameGains[i + 1] / 3.0));
-            }
-            smoothedGains[numFrames - 1] = (double) (
-                    (frameGains[numFrames - 2] / 2.0) +
-                            (frameGains[numFrames - 1] / 2.0));
-        }
-
-        // Make sure the range is no more than 0 - 255
-        // 确保范围不超过0-255
-        double maxGain = 1.0;
-        for (int i = 0; i < numFrames; i++) {
-            if (smoothedGains[i] > maxGain) {
-                maxGain = smoothedGains[i];
-            }
-        }
-        double scaleFactor = 1.0;
-        if (maxGain > 255.0) {
-            scaleFactor = 255 / maxGain;
-        }
-
-        // Build histogram of 256 bins and figure out the new scaled max
-        // 建立256个bin的直方图并找出新的缩放最大值
-        maxGain = 0;
-        int gainHist[] = new int[256];
-        for (int i = 0; i < numFrames; i++) {
-            int smoothedGain = (int) (smoothedGains[i] * scaleFactor);
-            if (smoothedGain < 0)
-                smoothedGain = 0;
-            if (smoothedGain > 255)
-                smoothedGain = 255;
-
-            if (smoothedGain > maxGain)
-                maxGain = smoothedGain;
-
-            gainHist[smoothedGain]++;
-        }
-
-        // Re-calibrate the min to be 5%
-        // 将最小值重新校准为5％
-        double minGain = 0;
-        int sum = 0;
-        while (minGain < 255 && sum < numFrames / 20) {
-            sum += gainHist[(int) minGain];
-            minGain++;
-        }
-
-        // Re-calibrate the max to be 99%
-        // 将最大值重新校准为99％
-        sum = 0;
-        while (maxGain > 2 && sum < numFrames / 100) {
-            sum += gainHist[(int) maxGain];
-            maxGain--;
-        }
-
-        // Compute the heights
-        // 计算高度
-        double[] heights = new double[numFrames];
-        double range = maxGain - minGain;
-        for (int i = 0; i < numFrames; i++) {
-            double value = (smoothedGains[i] * scaleFactor - minGain) / range;
-            if (value < 0.0)
-                value = 0.0;
-            if (value > 1.0)
-                value = 1.0;
-            heights[i] = value * value;
-        }
-
-        mNumZoomLevels = 5;
-        mLenByZoomLevel = new int[5];
-        mZoomFactorByZoomLevel = new double[5];
-        mValuesByZoomLevel = new double[5][];
-
-        // Level 0 is doubled, with interpolated values
-        // 级别0加倍，并带有插值
-        mLenByZoomLevel[0] = numFrames * 2;
-        mZoomFactorByZoomLevel[0] = 2.0;
-        mValuesByZoomLevel[0] = new double[mLenByZoomLevel[0]];
-        if (numFrames > 0) {
-            mValuesByZoomLevel[0][0] = 0.5 * heights[0];
-            mValuesByZoomLevel[0][1] = heights[0];
-        }
-        for (int i = 1; i < numFrames; i++) {
-            mValuesByZoomLevel[0][2 * i] = 0.5 * (heights[i - 1] + heights[i]);
-            mValuesByZoomLevel[0][2 * i + 1] = heights[i];
-        }
-
-        // Level 1 is normal
-        // 1级是正常的
-        mLenByZoomLevel[1] = numFrames;
-        mValuesByZoomLevel[1] = new double[mLenByZoomLevel[1]];
-        mZoomFactorByZoomLevel[1] = 1.0;
-        for (int i = 0; i < mLenByZoomLevel[1]; i++) {
-            mValuesByZoomLevel[1][i] = heights[i];
-        }
-
-        // 3 more levels are each halved
-        // 将另外3个级别减半
-        for (int j = 2; j < 5; j++) {
-            mLenByZoomLevel[j] = mLenByZoomLevel[j - 1] / 2;
-            mValuesByZoomLevel[j] = new double[mLenByZoomLevel[j]];
-            mZoomFactorByZoomLevel[j] = mZoomFactorByZoomLevel[j - 1] / 2.0;
-            for (int i = 0; i < mLenByZoomLevel[j]; i++) {
-                mValuesByZoomLevel[j][i] =
-                        0.5 * (mValuesByZoomLevel[j - 1][2 * i] +
-                                mValuesByZoomLevel[j - 1][2 * i + 1]);
-            }
-        }
-
-        if (numFrames > 5000) {
-            mZoomLevel = 3;
-        } else if (numFrames > 1000) {
-            mZoomLevel = 2;
-        } else if (numFrames > 300) {
-            mZoomLevel = 1;
-        } else {
-            mZoomLevel = 0;
+        WaveformZoomLevels zoomLevels = new WaveformZoomLevels(
+                mSoundFile.getFrameGains(), mSoundFile.getNumFrames());
+        mNumZoomLevels = zoomLevels.getNumZoomLevels();
+        mLenByZoomLevel = new int[mNumZoomLevels];
+        mZoomFactorByZoomLevel = new double[mNumZoomLevels];
+        mValuesByZoomLevel = new double[mNumZoomLevels][];
+        for (int i = 0; i < mNumZoomLevels; i++) {
+            mLenByZoomLevel[i] = zoomLevels.getLength(i);
+            mZoomFactorByZoomLevel[i] = zoomLevels.getZoomFactor(i);
+            mValuesByZoomLevel[i] = zoomLevels.getValues(i);
         }
+        mZoomLevel = zoomLevels.getDefaultZoomLevel();
 
         mInitialized = true;
     }
@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Encodes a stream of interleaved 16 bits PCM into a file, according to an ExportProfile.
+ * <p>
+ * The PCM is pushed with write(), converted to the format required by the profile, cut into
+ * codec frames and fed to a MediaCodec encoder (obtained from EncoderPool). Encoded frames are
+ * written to the container of the profile. finish() flushes the encoder and completes the file.
+ * <p>
+ * 根据ExportProfile将16位交错PCM流编码到文件中。
+ */
+class AudioEncoder implements PcmSink {
+    private static final String TAG = "Ringdroid";
+
+    private final ExportProfile mProfile;
+    private final File mOutputFile;
+    private final int mSampleRate;  // sampling rate of the encoded stream.
+    private int mChannels;          // number of channels of the encoded stream.
+    private final int mSrcSampleRate;
+    private final int mSrcChannels;
+    private int mBitrate;
+
+    private PcmConverter mConverter;
+    private short[] mConverted;     // output of mConverter.
+    private short[] mFrame;         // one codec frame, interleaved.
+    private int mFrameFill;         // number of samples per channel in mFrame.
+    private long mNumQueuedFrames;  // number of codec frames queued so far.
+
+    private String mCodecName;
+    private MediaCodec mCodec;
+    private ByteBuffer[] mInputBuffers;
+    private ByteBuffer[] mOutputBuffers;
+    private MediaCodec.BufferInfo mInfo;
+    private boolean mEndOfStream;
+    private byte[] mEncodedFrame;
+
+    // M4A output: frames are streamed to the file, the moov atom is written at the end.
+    private MP4FileWriter mMP4Writer;
+    // Fragmented M4A output.
+    private FragmentedMP4Writer mFragmentedWriter;
+    // AMR output.
+    private OutputStream mOutputStream;
+
+    AudioEncoder(ExportProfile profile, int srcSampleRate, int srcChannels, File outputFile) {
+        mProfile = profile;
+        mOutputFile = outputFile;
+        mSrcSampleRate = srcSampleRate;
+        mSrcChannels = srcChannels;
+        mSampleRate = profile.getOutputSampleRate(srcSampleRate);
+        mChannels = profile.getOutputChannels(srcChannels);
+        if (profile.isMP4() && mChannels == 1
+                && !EncoderRegistry.isMonoAACSupported(profile, mSampleRate)) {
+            // Some devices have problems reading mono AAC files (e.g. Samsung S3). Making it
+            // stereo only on those devices.
+            // 某些设备在读取单声道AAC文件时遇到问题（例如Samsung S3）。 仅在这些设备上使它立体声。
+            mChannels = 2;
+        }
+    }
+
+    // Sampling rate of the encoded stream.
+    int getSampleRate() {
+        return mSampleRate;
+    }
+
+    // Number of channels of the encoded stream.
+    int getChannels() {
+        return mChannels;
+    }
+
+    // Acquire and configure the encoder, and create the output file.
+    // 获取并配置编码器，然后创建输出文件。
+    public void start(long estimatedNumSamples) throws IOException {
+        EncoderRegistry.Encoder encoder =
+                EncoderRegistry.findEncoder(mProfile, mSampleRate, mChannels);
+        if (encoder == null) {
+            throw new IOException("No encoder available for " + mProfile);
+        }
+        mCodecName = encoder.name;
+        mCodec = EncoderPool.acquire(mCodecName);
+        try {
+            configure();
+        } catch (IllegalStateException e) {
+            if (mChannels != 1 || !mProfile.isMP4()) {
+                release();
+                throw new IOException("Cannot configure " + mCodecName + ": " + e);
+            }
+            // The encoder refused the mono configuration. Fall back to stereo, now and for the
+            // next exports.
+            // 编码器拒绝单声道配置。 回退到立体声，本次和之后的导出都是如此。
+            Log.w(TAG, "Mono AAC encoding not supported, falling back to stereo.");
+            EncoderRegistry.setMonoRejected(mCodecName);
+            mChannels = 2;
+            mCodec.release();
+            mCodec = EncoderPool.acquire(mCodecName);
+            configure();
+        }
+        mCodec.start();
+        mInputBuffers = mCodec.getInputBuffers();
+        mOutputBuffers = mCodec.getOutputBuffers();
+        mInfo = new MediaCodec.BufferInfo();
+        mEndOfStream = false;
+
+        mConverter = new PcmConverter(mSrcSampleRate, mSrcChannels, mSampleRate, mChannels);
+        mConverted = new short[0];
+        mFrame = new short[mProfile.getSamplesPerFrame() * mChannels];
+        mFrameFill = 0;
+        mNumQueuedFrames = 0;
+        mEncodedFrame = new byte[0];
+
+        switch (mProfile.getContainer()) {
+            case ExportProfile.CONTAINER_M4A:
+                mMP4Writer = new MP4FileWriter(mOutputFile, mSampleRate, mChannels, mBitrate,
+                        mProfile.getSamplesPerFrame(), mProfile.getAACObjectType());
+                break;
+            case ExportProfile.CONTAINER_FRAGMENTED_M4A:
+                mFragmentedWriter = new FragmentedMP4Writer(mOutputFile, mSampleRate, mChannels,
+                        mBitrate, mProfile.getSamplesPerFrame(), mProfile.getAACObjectType());
+                break;
+            case ExportProfile.CONTAINER_AMR:
+                mOutputStream = new BufferedOutputStream(new FileOutputStream(mOutputFile));
+                mOutputStream.write(new byte[] {'#', '!', 'A', 'M', 'R', '-', 'W', 'B', '\n'});
+                break;
+        }
+    }
+
+    private void configure() {
+        mBitrate = mProfile.getBitrate(mChannels);
+        MediaFormat format = MediaFormat.createAudioFormat(
+                mProfile.getMimeType(), mSampleRate, mChannels);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, mBitrate);
+        if (mProfile.getAACObjectType() == ExportProfile.AAC_OBJECT_HE) {
+            format.setInteger(MediaFormat.KEY_AAC_PROFILE,
+                    MediaCodecInfo.CodecProfileLevel.AACObjectHE);
+        }
+        mCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+    }
+
+    // Encode numFrames samples per channel from samples (interleaved, source format), starting at
+    // offset.
+    // 编码来自samples的numFrames个样本（交错，源格式）。
+    public void write(short[] samples, int offset, int numFrames) throws IOException {
+        int maxOut = mConverter.getMaxOutputFrames(numFrames);
+        if (mConverted.length < maxOut * mChannels) {
+            mConverted = new short[maxOut * mChannels];
+        }
+        int numConverted = mConverter.process(samples, offset, numFrames, mConverted, 0);
+        appendConverted(numConverted);
+    }
+
+    // Append the first numConverted samples per channel of mConverted to the frames to encode.
+    // 将mConverted的前numConverted个样本附加到要编码的帧。
+    private void appendConverted(int numConverted) throws IOException {
+        int samplesPerFrame = mProfile.getSamplesPerFrame();
+        int pos = 0;
+        while (pos < numConverted) {
+            int count = Math.min(samplesPerFrame - mFrameFill, numConverted - pos);
+            System.arraycopy(mConverted, pos * mChannels, mFrame, mFrameFill * mChannels,
+                    count * mChannels);
+            mFrameFill += count;
+            pos += count;
+            if (mFrameFill == samplesPerFrame) {
+                queueFrame(mFrameFill);
+                mFrameFill = 0;
+            }
+        }
+    }
+
+    // Signal the end of the stream, drain the encoder and complete the output file.
+    // 发出流结束信号，清空编码器并完成输出文件。
+    public void finish() throws IOException {
+        int samplesPerFrame = mProfile.getSamplesPerFrame();
+        // The resampler holds back the last few samples of the stream.
+        // 重采样器保留了流的最后几个样本。
+        int maxOut = mConverter.getMaxOutputFrames(0);
+        if (mConverted.length < maxOut * mChannels) {
+            mConverted = new short[maxOut * mChannels];
+        }
+        appendConverted(mConverter.flush(mConverted, 0));
+        if (mProfile.isMP4()) {
+            // Adding 2 frames of silence, Cf. priming frames for AAC.
+            // AAC 文件 在结尾的时候增加2帧
+            if (mFrameFill > 0) {
+                Arrays.fill(mFrame, mFrameFill * mChannels, mFrame.length, (short) 0);
+                queueFrame(samplesPerFrame);
+            }
+            Arrays.fill(mFrame, (short) 0);
+            queueFrame(samplesPerFrame);
+            queueFrame(samplesPerFrame);
+        } else if (mFrameFill > 0) {
+            // pad with extra 0s to make a full frame.
+            // 用额外的0填充以形成全帧。
+            Arrays.fill(mFrame, mFrameFill * mChannels, mFrame.length, (short) 0);
+            queueFrame(samplesPerFrame);
+        }
+        mFrameFill = 0;
+        while (true) {
+            int inputBufferIndex = mCodec.dequeueInputBuffer(100);
+            if (inputBufferIndex >= 0) {
+                mCodec.queueInputBuffer(
+                        inputBufferIndex, 0, 0, -1, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                break;
+            }
+            drainOutput();
+        }
+        while (!mEndOfStream) {
+            drainOutput();
+        }
+        completeFile();
+    }
+
+    // Give the codec back to the pool and close the output. Safe to call more than once.
+    // 将编解码器归还给池并关闭输出。
+    public void release() {
+        if (mCodec != null) {
+            EncoderPool.recycle(mCodecName, mCodec);
+            mCodec = null;
+        }
+        if (mOutputStream != null) {
+            try {
+                mOutputStream.close();
+            } catch (IOException e) {
+                // Nothing more we can do.
+            }
+            mOutputStream = null;
+        }
+        if (mMP4Writer != null) {
+            mMP4Writer.release();
+            mMP4Writer = null;
+        }
+        if (mFragmentedWriter != null) {
+            mFragmentedWriter.release();
+            mFragmentedWriter = null;
+        }
+    }
+
+    // Queue mFrame, containing numFrames samples per channel, waiting for an input buffer if needed.
+    private void queueFrame(int numFrames) throws IOException {
+        int numBytes = numFrames * mChannels * 2;
+        while (true) {
+            int inputBufferIndex = mCodec.dequeueInputBuffer(100);
+            if (inputBufferIndex >= 0) {
+                ByteBuffer inputBuffer = mInputBuffers[inputBufferIndex];
+                inputBuffer.clear();
+                if (numBytes > inputBuffer.remaining()) {
+                    // Input buffer is smaller than one frame. This should never happen.
+                    // 输入缓冲区小于一帧。 这永远都不会发生。
+                    throw new IOException("Encoder input buffer too small");
+                }
+                inputBuffer.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer()
+                        .put(mFrame, 0, numFrames * mChannels);
+                long presentationTime =
+                        (mNumQueuedFrames * mProfile.getSamplesPerFrame() * 1000000L) / mSampleRate;
+                mCodec.queueInputBuffer(inputBufferIndex, 0, numBytes, presentationTime, 0);
+                mNumQueuedFrames++;
+                break;
+            }
+            drainOutput();
+        }
+        drainOutput();
+    }
+
+    // Get the encoded frames available from the encoder, if any.
+    // 从编码器获取可用的编码帧。
+    private void drainOutput() throws IOException {
+        while (!mEndOfStream) {
+            int outputBufferIndex = mCodec.dequeueOutputBuffer(mInfo, 100);
+            if (outputBufferIndex >= 0) {
+                if (mInfo.size > 0 && mInfo.presentationTimeUs >= 0) {
+                    ByteBuffer outputBuffer = mOutputBuffers[outputBufferIndex];
+                    outputBuffer.position(mInfo.offset);
+                    outputBuffer.limit(mInfo.offset + mInfo.size);
+                    writeEncodedFrame(outputBuffer,
+                            (mInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0);
+                    outputBuffer.clear();
+                }
+                mCodec.releaseOutputBuffer(outputBufferIndex, false);
+                if ((mInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    // We got all the encoded data from the encoder.
+                    // 我们从编码器获取了所有编码数据。
+                    mEndOfStream = true;
+                }
+            } else if (outputBufferIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                mOutputBuffers = mCodec.getOutputBuffers();
+            } else if (outputBufferIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                // The containers are written by hand: the output format is not needed.
+                // 容器是手工写入的：不需要输出格式。
+            } else {
+                // No output available yet.
+                return;
+            }
+        }
+    }
+
+    private void writeEncodedFrame(ByteBuffer frame, boolean isCodecConfig) throws IOException {
+        int size = frame.remaining();
+        switch (mProfile.getContainer()) {
+            case ExportProfile.CONTAINER_M4A:
+                // The codec config is kept as the first frame, cf. MP4Header.
+                mMP4Writer.writeFrame(frame);
+                break;
+            case ExportProfile.CONTAINER_FRAGMENTED_M4A:
+                if (isCodecConfig) {
+                    return;  // the Audio Specific Config is in the header.
+                }
+                mFragmentedWriter.writeFrame(frame);
+                break;
+            case ExportProfile.CONTAINER_AMR:
+                if (isCodecConfig) {
+                    return;
+                }
+                if (mEncodedFrame.length < size) {
+                    mEncodedFrame = new byte[size];
+                }
+                frame.get(mEncodedFrame, 0, size);
+                mOutputStream.write(mEncodedFrame, 0, size);
+                break;
+        }
+    }
+
+    private void completeFile() throws IOException {
+        switch (mProfile.getContainer()) {
+            case ExportProfile.CONTAINER_M4A:
+                // Write the moov atom after the stream and complete the mdat header.
+                // 在编码流之后写入moov，并完成mdat标头。
+                mMP4Writer.finish();
+                mMP4Writer = null;
+                break;
+            case ExportProfile.CONTAINER_FRAGMENTED_M4A:
+                mFragmentedWriter.finish();
+                mFragmentedWriter = null;
+                break;
+            case ExportProfile.CONTAINER_AMR:
+                mOutputStream.close();
+                mOutputStream = null;
+                break;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs TrimJobs in parallel on a fixed number of worker threads.
+ * <p>
+ * Each job streams its input through a TrimPipeline, so the memory used is bounded by the number
+ * of workers, not by the number or the length of the inputs.
+ * <p>
+ * 在固定数量的工作线程上并行运行TrimJob。使用的内存受工作线程数限制。
+ */
+public class BatchTrimmer {
+    // Receives the outcome of each job. Called from the worker threads.
+    // 接收每个作业的结果。 从工作线程调用。
+    public interface Listener {
+        void onJobDone(TrimJob job, TrimResult result);
+
+        void onJobFailed(TrimJob job, Exception e);
+    }
+
+    private final PcmSinkFactory mSinkFactory;
+    private final ExportProfile mProfile;
+    private final int mNumWorkers;
+    private final PcmProcessor mProcessor;
+
+    public BatchTrimmer(PcmSinkFactory sinkFactory, ExportProfile profile, int numWorkers) {
+        mSinkFactory = sinkFactory;
+        mProfile = profile;
+        mNumWorkers = Math.max(1, numWorkers);
+        mProcessor = new PcmProcessor();
+    }
+
+    // Fades applied to every region of every job, in seconds.
+    // 应用于每个作业的每个区域的淡入淡出，以秒为单位。
+    public void setFades(float fadeInSecs, float fadeOutSecs) {
+        mProcessor.setFades(fadeInSecs, fadeOutSecs);
+    }
+
+    // Processing applied to every region of every job: fades, gain, limiter. The settings are
+    // shared by the workers and should not change while running.
+    // 应用于每个作业的每个区域的处理。设置由工作线程共享，运行时不应更改。
+    public PcmProcessor getProcessor() {
+        return mProcessor;
+    }
+
+    // Run all the jobs and wait until they are done. Returns the results, in the order of jobs
+    // (null for the jobs which failed).
+    // 运行所有作业并等待它们完成。
+    public List<TrimResult> run(List<TrimJob> jobs, final Listener listener)
+            throws InterruptedException {
+        final TrimResult[] results = new TrimResult[jobs.size()];
+        ExecutorService executor = Executors.newFixedThreadPool(mNumWorkers);
+        try {
+            for (int i = 0; i < jobs.size(); i++) {
+                final int index = i;
+                final TrimJob job = jobs.get(i);
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            results[index] = runJob(job);
+                        } catch (Exception e) {
+                            if (listener != null) {
+                                listener.onJobFailed(job, e);
+                            }
+                            return;
+                        }
+                        if (listener != null) {
+                            listener.onJobDone(job, results[index]);
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Keep waiting.
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        List<TrimResult> resultList = new ArrayList<TrimResult>();
+        for (TrimResult result : results) {
+            resultList.add(result);
+        }
+        return resultList;
+    }
+
+    // Join the selections of jobs, in order, into a single outputFile, cross-fading each one
+    // over crossfadeSecs with the previous one (cf. Timeline). The output has the format of the
+    // first input; the others are converted on the fly. Runs on the calling thread.
+    // 将各作业的选区按顺序拼接成单个outputFile，每个选区与前一个交叉淡入淡出。在调用线程上运行。
+    public TrimResult join(List<TrimJob> jobs, float crossfadeSecs, File outputFile)
+            throws IOException {
+        Timeline timeline = null;
+        try {
+            for (TrimJob job : jobs) {
+                PcmSource source = job.openSource();
+                boolean added = false;
+                try {
+                    if (timeline == null) {
+                        timeline = new Timeline(source.getSampleRate(), source.getChannels());
+                    }
+                    // In samples all along, so that the joins fall exactly where asked.
+                    // A split job is joined as a whole.
+                    // 全程使用样本，使拼接点精确。分段作业作为整体拼接。
+                    int rate = source.getSampleRate();
+                    long activeStart = 0;
+                    long activeEnd = source.getNumSamples();
+                    if (job.getSilenceDetector() != null) {
+                        SilenceDetector.Bounds bounds =
+                                job.getSilenceDetector().detect(source, null, 0);
+                        activeStart = bounds.getStartSample();
+                        activeEnd = bounds.getEndSample();
+                    }
+                    long start = job.getSelectionStart(rate, activeStart, activeEnd);
+                    long end = job.getSelectionEnd(rate, activeStart, activeEnd);
+                    if (end > start) {
+                        timeline.addSegment(source, start, end - start,
+                                (long) ((double) crossfadeSecs * timeline.getSampleRate()));
+                        added = true;
+                    }
+                } finally {
+                    if (!added) {
+                        source.close();
+                    }
+                }
+            }
+            if (timeline == null || timeline.getNumSegments() == 0) {
+                throw new IOException("Nothing to join");
+            }
+            return timeline.writeFile(mSinkFactory, mProfile, mProcessor, outputFile, null);
+        } finally {
+            if (timeline != null) {
+                timeline.close();
+            }
+        }
+    }
+
+    // Run a single job on the calling thread.
+    // 在调用线程上运行单个作业。
+    public TrimResult runJob(TrimJob job) throws java.io.IOException {
+        PcmSource source = job.openSource();
+        try {
+            TrimPipeline pipeline = new TrimPipeline(mSinkFactory, mProfile);
+            pipeline.setProcessor(mProcessor);
+            double rate = source.getSampleRate();
+            List<ExportRegion> regions;
+            if (job.getSilenceDetector() != null) {
+                SilenceDetector.Bounds bounds =
+                        job.getSilenceDetector().detect(source, null, 0);
+                regions = job.getRegions(bounds.getStartSample() / rate,
+                        bounds.getEndSample() / rate, mProfile);
+            } else {
+                regions = job.getRegions(source.getNumSamples() / rate, mProfile);
+            }
+            return pipeline.run(source, regions, null);
+        } finally {
+            source.close();
+        }
+    }
+}
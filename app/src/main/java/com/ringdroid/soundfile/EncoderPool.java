@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import android.media.MediaCodec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps stopped MediaCodec encoders around so that consecutive exports can reconfigure an
+ * existing instance instead of allocating a new codec component each time.
+ * <p>
+ * 保留已停止的MediaCodec编码器，以便连续导出时可以重新配置现有实例，而不是每次都分配新的编解码器。
+ */
+public class EncoderPool {
+    // Maximum number of idle codecs kept per codec name.
+    // 每个编解码器名称保留的最大空闲编解码器数。
+    private static final int MAX_IDLE_PER_NAME = 2;
+
+    private static final Map<String, List<MediaCodec>> sIdleCodecs =
+            new HashMap<String, List<MediaCodec>>();
+
+    private EncoderPool() {
+    }
+
+    // Returns an unconfigured encoder with the given name, reusing an idle one if possible.
+    // 返回具有给定名称的未配置编码器，尽可能重用空闲的编码器。
+    public static MediaCodec acquire(String name) throws IOException {
+        synchronized (sIdleCodecs) {
+            List<MediaCodec> idle = sIdleCodecs.get(name);
+            if (idle != null && !idle.isEmpty()) {
+                return idle.remove(idle.size() - 1);
+            }
+        }
+        return MediaCodec.createByCodecName(name);
+    }
+
+    // Give back an encoder obtained with acquire(). The codec is stopped (which brings it back to
+    // the uninitialized state, ready to be configured again) and kept for later use.
+    // 归还通过acquire（）获得的编码器。 编解码器被停止并保留以备后用。
+    public static void recycle(String name, MediaCodec codec) {
+        try {
+            codec.stop();
+        } catch (IllegalStateException e) {
+            // The codec is in an error state. Don't keep it.
+            codec.release();
+            return;
+        }
+        synchronized (sIdleCodecs) {
+            List<MediaCodec> idle = sIdleCodecs.get(name);
+            if (idle == null) {
+                idle = new ArrayList<MediaCodec>();
+                sIdleCodecs.put(name, idle);
+            }
+            if (idle.size() < MAX_IDLE_PER_NAME) {
+                idle.add(codec);
+                return;
+            }
+        }
+        codec.release();
+    }
+
+    // Release all the idle encoders. Should be called when no more exports are expected.
+    // 释放所有空闲的编码器。
+    public static void releaseAll() {
+        synchronized (sIdleCodecs) {
+            for (List<MediaCodec> idle : sIdleCodecs.values()) {
+                for (MediaCodec codec : idle) {
+                    codec.release();
+                }
+            }
+            sIdleCodecs.clear();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process wide cache of the audio encoders available on the device.
+ * <p>
+ * Querying MediaCodecList is slow (it parses the codec XML files and instantiates capability
+ * objects), so the list is read once, the first time an encoder is needed, and every later
+ * question (is this profile supported? which encoder should be used?) is answered from the cache.
+ * <p>
+ * 设备上可用的音频编码器的进程级缓存。MediaCodecList只查询一次。
+ */
+public class EncoderRegistry {
+    // Information about one encoder for one mime type.
+    // 关于一个mime类型的一个编码器的信息。
+    public static class Encoder {
+        public final String name;
+        public final String mimeType;
+        public final boolean isHardware;
+        public final int maxInstances;     // maximum number of concurrent instances.
+        public final int maxChannels;
+        public final boolean supportsHEAAC;
+        private final MediaCodecInfo.CodecCapabilities mCapabilities;
+        private final MediaCodecInfo.AudioCapabilities mAudioCapabilities;  // null before L.
+
+        private Encoder(String name, String mimeType, boolean isHardware, int maxInstances,
+                        int maxChannels, boolean supportsHEAAC,
+                        MediaCodecInfo.CodecCapabilities capabilities,
+                        MediaCodecInfo.AudioCapabilities audioCapabilities) {
+            this.name = name;
+            this.mimeType = mimeType;
+            this.isHardware = isHardware;
+            this.maxInstances = maxInstances;
+            this.maxChannels = maxChannels;
+            this.supportsHEAAC = supportsHEAAC;
+            mCapabilities = capabilities;
+            mAudioCapabilities = audioCapabilities;
+        }
+
+        public boolean isSampleRateSupported(int sampleRate) {
+            if (mAudioCapabilities == null) {
+                return true;  // no way to know, let configure() decide.
+            }
+            return mAudioCapabilities.isSampleRateSupported(sampleRate);
+        }
+
+        // True if the encoder claims to take one channel at sampleRate, and didn't refuse to
+        // be configured for it so far (cf. setMonoRejected()).
+        // 如果编码器声称支持sampleRate下的单声道，且此前未拒绝该配置，则返回true。
+        public boolean isMonoSupported(int sampleRate) {
+            if (isMonoRejected(name)) {
+                return false;
+            }
+            if (mAudioCapabilities == null) {
+                return true;  // no way to know, let configure() decide.
+            }
+            return mCapabilities.isFormatSupported(
+                    MediaFormat.createAudioFormat(mimeType, sampleRate, 1));
+        }
+    }
+
+    // Encoders by mime type (lower case), fastest first. null until the device is probed.
+    // 按mime类型分类的编码器，最快的排在前面。
+    private static Map<String, List<Encoder>> sEncoders = null;
+    // Names of the encoders which refused a mono configuration they claimed to support.
+    // 拒绝了其声称支持的单声道配置的编码器名称。
+    private static final Set<String> sMonoRejected = new HashSet<String>();
+
+    private EncoderRegistry() {
+    }
+
+    // Returns the encoders supporting the given mime type, fastest first (never null).
+    // 返回支持给定mime类型的编码器，最快的排在前面。
+    public static synchronized List<Encoder> getEncoders(String mimeType) {
+        if (sEncoders == null) {
+            sEncoders = probe();
+        }
+        List<Encoder> encoders = sEncoders.get(mimeType.toLowerCase());
+        return (encoders != null) ? encoders : new ArrayList<Encoder>();
+    }
+
+    // Returns the fastest encoder able to encode profile for the given sampling rate and number of
+    // channels (as given by the profile for the source), or null if there is none.
+    // 返回能够编码的最快编码器，如果没有则返回null。
+    public static Encoder findEncoder(ExportProfile profile, int sampleRate, int numChannels) {
+        for (Encoder encoder : getEncoders(profile.getMimeType())) {
+            if (profile.getAACObjectType() == ExportProfile.AAC_OBJECT_HE
+                    && !encoder.supportsHEAAC) {
+                continue;
+            }
+            if (numChannels > encoder.maxChannels || !encoder.isSampleRateSupported(sampleRate)) {
+                continue;
+            }
+            return encoder;
+        }
+        return null;
+    }
+
+    // Returns true if profile can be used for a source with the given format.
+    // 如果配置可用于给定格式的源，则返回true。
+    public static boolean isSupported(ExportProfile profile, int sampleRate, int numChannels) {
+        return findEncoder(profile,
+                profile.getOutputSampleRate(sampleRate),
+                profile.getOutputChannels(numChannels)) != null;
+    }
+
+    // Returns true if mono files of profile (an AAC one), sampled at sampleRate, can be created
+    // on this device. Old devices (e.g. Samsung S3, Android 4.x) cannot read back mono AAC files,
+    // so mono is only used from Lollipop on, and only if the encoder that would be used accepts
+    // a mono format.
+    // 如果可以在此设备上创建单声道AAC文件，则返回true。
+    public static boolean isMonoAACSupported(ExportProfile profile, int sampleRate) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+        Encoder encoder = findEncoder(profile, sampleRate, 1);
+        return encoder != null && encoder.isMonoSupported(sampleRate);
+    }
+
+    // Remember that the encoder codecName failed to be configured for mono, so that later
+    // exports go straight to stereo (cf. isMonoAACSupported()). Kept for the life of the process.
+    // 记住编码器codecName无法配置为单声道，以便之后的导出直接使用立体声。
+    public static void setMonoRejected(String codecName) {
+        synchronized (sMonoRejected) {
+            sMonoRejected.add(codecName);
+        }
+    }
+
+    private static boolean isMonoRejected(String codecName) {
+        synchronized (sMonoRejected) {
+            return sMonoRejected.contains(codecName);
+        }
+    }
+
+    private static Map<String, List<Encoder>> probe() {
+        Map<String, List<Encoder>> encoders = new HashMap<String, List<Encoder>>();
+        MediaCodecInfo[] infos;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            infos = new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos();
+        } else {
+            infos = new MediaCodecInfo[MediaCodecList.getCodecCount()];
+            for (int i = 0; i < infos.length; i++) {
+                infos[i] = MediaCodecList.getCodecInfoAt(i);
+            }
+        }
+        for (MediaCodecInfo info : infos) {
+            if (!info.isEncoder()) {
+                continue;
+            }
+            for (String type : info.getSupportedTypes()) {
+                if (!type.toLowerCase().startsWith("audio/")) {
+                    continue;
+                }
+                Encoder encoder;
+                try {
+                    encoder = describe(info, type);
+                } catch (IllegalArgumentException e) {
+                    // Some vendors list types they then refuse to describe...
+                    continue;
+                }
+                List<Encoder> list = encoders.get(type.toLowerCase());
+                if (list == null) {
+                    list = new ArrayList<Encoder>();
+                    encoders.put(type.toLowerCase(), list);
+                }
+                // Hardware encoders are usually faster and don't use the CPU: put them first,
+                // otherwise keep the platform order (which is the preferred order).
+                int index = list.size();
+                if (encoder.isHardware) {
+                    index = 0;
+                    while (index < list.size() && list.get(index).isHardware) {
+                        index++;
+                    }
+                }
+                list.add(index, encoder);
+            }
+        }
+        return encoders;
+    }
+
+    private static Encoder describe(MediaCodecInfo info, String type) {
+        MediaCodecInfo.CodecCapabilities caps = info.getCapabilitiesForType(type);
+        String name = info.getName();
+        boolean isHardware = !(name.startsWith("OMX.google.") || name.startsWith("c2.android.")
+                || name.startsWith("OMX.SEC.") && name.contains(".sw."));
+        int maxInstances = 1;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            maxInstances = caps.getMaxSupportedInstances();
+        }
+        int maxChannels = 2;
+        MediaCodecInfo.AudioCapabilities audioCaps = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            audioCaps = caps.getAudioCapabilities();
+            if (audioCaps != null) {
+                maxChannels = audioCaps.getMaxInputChannelCount();
+            }
+        }
+        boolean supportsHEAAC = false;
+        if (caps.profileLevels != null) {
+            for (MediaCodecInfo.CodecProfileLevel profileLevel : caps.profileLevels) {
+                if (profileLevel.profile == MediaCodecInfo.CodecProfileLevel.AACObjectHE) {
+                    supportsHEAAC = true;
+                }
+            }
+        }
+        return new Encoder(name, type.toLowerCase(), isHardware, maxInstances, maxChannels,
+                supportsHEAAC, caps, audioCaps);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * PcmSinkFactory using the encoders of the device (AudioEncoder) for the encoded profiles, and
+ * PcmFileSink for WAV and raw PCM.
+ * <p>
+ * 使用设备编码器的PcmSinkFactory。
+ */
+public class EncoderSinkFactory implements PcmSinkFactory {
+    // Maximum number of encoders running at the same time during a batch export.
+    // 批量导出期间同时运行的最大编码器数。
+    private static final int MAX_BATCH_ENCODERS = 4;
+
+    public PcmSink create(ExportProfile profile, int sampleRate, int numChannels, File outputFile) {
+        if (profile.isPCM()) {
+            return new PcmFileSink(outputFile, sampleRate, numChannels,
+                    profile.getOutputSampleRate(sampleRate),
+                    profile.getContainer() == ExportProfile.CONTAINER_WAV);
+        }
+        return new AudioEncoder(profile, sampleRate, numChannels, outputFile);
+    }
+
+    public int getMaxConcurrentSinks(ExportProfile profile, int sampleRate, int numChannels)
+            throws IOException {
+        if (profile.isPCM()) {
+            return MAX_BATCH_ENCODERS;
+        }
+        EncoderRegistry.Encoder encoder = EncoderRegistry.findEncoder(profile,
+                profile.getOutputSampleRate(sampleRate), profile.getOutputChannels(numChannels));
+        if (encoder == null) {
+            throw new IOException("No encoder available for " + profile);
+        }
+        return Math.max(1, Math.min(encoder.maxInstances, MAX_BATCH_ENCODERS));
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+/**
+ * Describes how a selection is encoded when it is exported: codec, container, bitrate and the
+ * constraints the codec puts on the PCM it is fed (sample rate, number of channels, frame size).
+ * <p>
+ * 描述导出选区时的编码方式：编解码器，容器，比特率以及编解码器对输入PCM的约束。
+ */
+public class ExportProfile {
+    // Containers.
+    // 容器。
+    public static final int CONTAINER_M4A = 0;
+    public static final int CONTAINER_AMR = 1;
+    public static final int CONTAINER_WAV = 2;
+    public static final int CONTAINER_RAW = 3;  // 16 bits little-endian PCM, no header.
+    public static final int CONTAINER_FRAGMENTED_M4A = 4;  // moov, then moof/mdat fragments.
+
+    // AAC object types, as used in the Audio Specific Config (cf. ISO/IEC 14496-3).
+    // AAC对象类型。
+    public static final int AAC_OBJECT_LC = 2;
+    public static final int AAC_OBJECT_HE = 5;
+
+    // AAC LC, 32kbps per channel. Small files, good enough for most ringtones.
+    public static final ExportProfile AAC_LC_32 = new ExportProfile(
+            "AAC 32 kbps", "audio/mp4a-latm", CONTAINER_M4A, ".m4a", 32000, AAC_OBJECT_LC,
+            0, 0, 1024);
+    // AAC LC, 64kbps per channel. This is what Ringdroid always used.
+    public static final ExportProfile AAC_LC_64 = new ExportProfile(
+            "AAC 64 kbps", "audio/mp4a-latm", CONTAINER_M4A, ".m4a", 64000, AAC_OBJECT_LC,
+            0, 0, 1024);
+    // AAC LC, 96kbps per channel.
+    public static final ExportProfile AAC_LC_96 = new ExportProfile(
+            "AAC 96 kbps", "audio/mp4a-latm", CONTAINER_M4A, ".m4a", 96000, AAC_OBJECT_LC,
+            0, 0, 1024);
+    // Same as AAC_LC_64, in a fragmented file written as the encoding goes (cf.
+    // FragmentedMP4Writer). Used for recordings: the file stays playable if the app dies.
+    public static final ExportProfile AAC_LC_64_FRAGMENTED = new ExportProfile(
+            "AAC 64 kbps (fragmented)", "audio/mp4a-latm", CONTAINER_FRAGMENTED_M4A, ".m4a",
+            64000, AAC_OBJECT_LC, 0, 0, 1024);
+    // HE-AAC (AAC + SBR), 24kbps per channel. Each access unit holds 2048 samples.
+    public static final ExportProfile HE_AAC = new ExportProfile(
+            "HE-AAC 24 kbps", "audio/mp4a-latm", CONTAINER_M4A, ".m4a", 24000, AAC_OBJECT_HE,
+            0, 0, 2048);
+    // AMR-WB at its highest mode. AMR-WB is always mono, 16kHz, with 20ms (320 samples) frames.
+    public static final ExportProfile AMR_WB = new ExportProfile(
+            "AMR-WB", "audio/amr-wb", CONTAINER_AMR, ".awb", 23850, 0,
+            16000, 1, 320);
+
+    // Uncompressed 16 bits PCM, in a WAV file or without any header. No codec is needed, these
+    // are written by PcmFileSink.
+    // 未压缩的16位PCM。不需要编解码器。
+    public static final ExportProfile WAV = new ExportProfile(
+            "WAV", "audio/raw", CONTAINER_WAV, ".wav", 0, 0,
+            0, 0, 1);
+    public static final ExportProfile RAW_PCM = new ExportProfile(
+            "Raw PCM", "audio/raw", CONTAINER_RAW, ".pcm", 0, 0,
+            0, 0, 1);
+
+    // Default profile, used when the caller doesn't ask for a specific one.
+    // 默认配置。
+    public static final ExportProfile DEFAULT = AAC_LC_64;
+
+    private final String mName;
+    private final String mMimeType;
+    private final int mContainer;
+    private final String mExtension;
+    private final int mBitratePerChannel;  // in bits per second.
+    private final int mAACObjectType;      // 0 for non AAC profiles.
+    private final int mSampleRate;         // 0 => keep the sampling rate of the source.
+    private final int mChannels;           // 0 => keep the number of channels of the source.
+    private final int mSamplesPerFrame;    // number of samples per channel in an encoded frame.
+
+    private ExportProfile(String name, String mimeType, int container, String extension,
+                          int bitratePerChannel, int aacObjectType,
+                          int sampleRate, int channels, int samplesPerFrame) {
+        mName = name;
+        mMimeType = mimeType;
+        mContainer = container;
+        mExtension = extension;
+        mBitratePerChannel = bitratePerChannel;
+        mAACObjectType = aacObjectType;
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mSamplesPerFrame = samplesPerFrame;
+    }
+
+    // All the encoded profiles, ordered from the most to the least compatible.
+    // 所有配置，按兼容性从高到低排序。
+    public static ExportProfile[] getAllProfiles() {
+        return new ExportProfile[] {AAC_LC_64, AAC_LC_32, AAC_LC_96, HE_AAC, AMR_WB};
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public String getMimeType() {
+        return mMimeType;
+    }
+
+    public int getContainer() {
+        return mContainer;
+    }
+
+    // File extension, including the leading dot.
+    // 文件扩展名，包括前导点。
+    public String getExtension() {
+        return mExtension;
+    }
+
+    public int getAACObjectType() {
+        return mAACObjectType;
+    }
+
+    // True for the profiles writing an .m4a file, fragmented or not.
+    // 对于写入.m4a文件的配置为true。
+    public boolean isMP4() {
+        return mContainer == CONTAINER_M4A || mContainer == CONTAINER_FRAGMENTED_M4A;
+    }
+
+    // True for the uncompressed profiles (WAV and raw PCM).
+    // 对于未压缩的配置为true。
+    public boolean isPCM() {
+        return mContainer == CONTAINER_WAV || mContainer == CONTAINER_RAW;
+    }
+
+    public int getSamplesPerFrame() {
+        return mSamplesPerFrame;
+    }
+
+    // Sampling rate of the encoded stream for a source sampled at sourceSampleRate.
+    // 编码流的采样率。
+    public int getOutputSampleRate(int sourceSampleRate) {
+        return (mSampleRate > 0) ? mSampleRate : sourceSampleRate;
+    }
+
+    // Same profile, resampled to sampleRate (cf. PcmConverter). Profiles whose codec imposes its
+    // own sampling rate (AMR-WB) are returned unchanged, as they are for sampleRate <= 0.
+    // 重采样到sampleRate的相同配置。编解码器规定采样率的配置保持不变。
+    public ExportProfile withSampleRate(int sampleRate) {
+        if (sampleRate <= 0 || mSampleRate > 0) {
+            return this;
+        }
+        return new ExportProfile(mName, mMimeType, mContainer, mExtension, mBitratePerChannel,
+                mAACObjectType, sampleRate, mChannels, mSamplesPerFrame);
+    }
+
+    // Number of channels of the encoded stream for a source with sourceChannels channels.
+    // 编码流的通道数。
+    public int getOutputChannels(int sourceChannels) {
+        return (mChannels > 0) ? mChannels : sourceChannels;
+    }
+
+    // Bitrate of the encoded stream, in bits per second, for numChannels channels.
+    // 编码流的比特率（以比特/秒为单位）。
+    public int getBitrate(int numChannels) {
+        if (mChannels > 0) {
+            // Fixed channel count => fixed bitrate.
+            return mBitratePerChannel;
+        }
+        return mBitratePerChannel * numChannels;
+    }
+
+    public String toString() {
+        return mName;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.File;
+
+/**
+ * One region of a batch export: a start and end time (in seconds) and the file to create. A region
+ * can also be given in samples, for a stream at a known sampling rate: its bounds are then exact
+ * for that rate, which float seconds are not for long streams.
+ * <p>
+ * 批量导出的一个区域：开始和结束时间（以秒为单位）以及要创建的文件。
+ */
+public class ExportRegion {
+    private final float mStartTime;
+    private final float mEndTime;
+    private final File mOutputFile;
+    // Bounds in samples (per channel) at mSampleRate; mSampleRate is 0 for regions given in
+    // seconds.
+    // 以mSampleRate下的样本为单位的边界；以秒为单位给出的区域mSampleRate为0。
+    private final long mStartSample;
+    private final long mNumSamples;
+    private final int mSampleRate;
+
+    public ExportRegion(float startTime, float endTime, File outputFile) {
+        mStartTime = startTime;
+        mEndTime = endTime;
+        mOutputFile = outputFile;
+        mStartSample = 0;
+        mNumSamples = 0;
+        mSampleRate = 0;
+    }
+
+    public ExportRegion(long startSample, long numSamples, int sampleRate, File outputFile) {
+        mStartTime = (float) ((double) startSample / sampleRate);
+        mEndTime = (float) ((double) (startSample + numSamples) / sampleRate);
+        mOutputFile = outputFile;
+        mStartSample = startSample;
+        mNumSamples = numSamples;
+        mSampleRate = sampleRate;
+    }
+
+    public float getStartTime() {
+        return mStartTime;
+    }
+
+    public float getEndTime() {
+        return mEndTime;
+    }
+
+    public File getOutputFile() {
+        return mOutputFile;
+    }
+
+    // First sample (per channel) of the region for a stream sampled at sampleRate.
+    // 区域的第一个样本（每个通道）。
+    public long getStartSample(int sampleRate) {
+        if (sampleRate == mSampleRate) {
+            return mStartSample;
+        }
+        return (long) ((double) mStartTime * sampleRate);
+    }
+
+    // Number of samples (per channel) of the region for a stream sampled at sampleRate.
+    // 区域的样本数（每个通道）。
+    public long getNumSamples(int sampleRate) {
+        if (sampleRate == mSampleRate) {
+            return mNumSamples;
+        }
+        return (long) (((double) mEndTime - mStartTime) * sampleRate);
+    }
+}
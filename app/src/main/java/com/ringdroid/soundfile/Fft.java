@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+/**
+ * Fast Fourier transform of real input, of a fixed power of two size.
+ * <p>
+ * The N real samples are packed as N / 2 complex values, transformed with an iterative radix-2
+ * FFT, and the spectrum of the real input is recovered in a last pass. Twiddle factors and the
+ * bit reversal permutation are computed once, and the work buffers are reused: an instance is not
+ * thread safe, each thread should have its own.
+ * <p>
+ * 固定2的幂大小的实数输入快速傅里叶变换。旋转因子和位反转排列只计算一次，工作缓冲区被重用。实例不是线程安全的。
+ */
+public class Fft {
+    private final int mSize;
+    private final int mHalf;
+    private final int[] mBitReverse;
+    // exp(-2 pi i j / mHalf) for the complex FFT, exp(-2 pi i k / mSize) for the last pass.
+    // 复数FFT的旋转因子，以及最后一遍的旋转因子。
+    private final float[] mCos;
+    private final float[] mSin;
+    private final float[] mPostCos;
+    private final float[] mPostSin;
+    private final float[] mRe;
+    private final float[] mIm;
+
+    public Fft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Invalid FFT size: " + size);
+        }
+        mSize = size;
+        mHalf = size / 2;
+        int bits = Integer.numberOfTrailingZeros(mHalf);
+        mBitReverse = new int[mHalf];
+        for (int i = 0; i < mHalf; i++) {
+            mBitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        mCos = new float[mHalf / 2];
+        mSin = new float[mHalf / 2];
+        for (int j = 0; j < mHalf / 2; j++) {
+            mCos[j] = (float) Math.cos(2 * Math.PI * j / mHalf);
+            mSin[j] = (float) -Math.sin(2 * Math.PI * j / mHalf);
+        }
+        mPostCos = new float[mHalf];
+        mPostSin = new float[mHalf];
+        for (int k = 0; k < mHalf; k++) {
+            mPostCos[k] = (float) Math.cos(2 * Math.PI * k / mSize);
+            mPostSin[k] = (float) -Math.sin(2 * Math.PI * k / mSize);
+        }
+        mRe = new float[mHalf];
+        mIm = new float[mHalf];
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    // Squared magnitude of bins 0 to N / 2 - 1 of the spectrum of the N samples of input.
+    // input的N个样本频谱的第0到N / 2 - 1个频点的幅度平方。
+    public void powerSpectrum(float[] input, float[] power) {
+        float[] re = mRe;
+        float[] im = mIm;
+        int half = mHalf;
+        for (int i = 0; i < half; i++) {
+            int j = mBitReverse[i];
+            re[j] = input[2 * i];
+            im[j] = input[2 * i + 1];
+        }
+        for (int len = 2; len <= half; len <<= 1) {
+            int h = len >> 1;
+            int step = half / len;
+            for (int i = 0; i < half; i += len) {
+                for (int j = 0; j < h; j++) {
+                    float wr = mCos[j * step];
+                    float wi = mSin[j * step];
+                    int a = i + j;
+                    int b = a + h;
+                    float tr = wr * re[b] - wi * im[b];
+                    float ti = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+        // Z[k] is the FFT of even + i * odd samples: split it into the FFTs of the even and odd
+        // samples, and combine them.
+        // Z[k]是偶数样本 + i * 奇数样本的FFT：将其拆分为偶数和奇数样本的FFT，然后组合。
+        for (int k = 0; k < half; k++) {
+            int m = (half - k) & (half - 1);
+            float zr = re[k];
+            float zi = im[k];
+            float cr = re[m];
+            float ci = -im[m];
+            float er = (zr + cr) * 0.5f;
+            float ei = (zi + ci) * 0.5f;
+            float or = (zi - ci) * 0.5f;
+            float oi = (cr - zr) * 0.5f;
+            float xr = er + mPostCos[k] * or - mPostSin[k] * oi;
+            float xi = ei + mPostCos[k] * oi + mPostSin[k] * or;
+            power[k] = xr * xr + xi * xi;
+        }
+    }
+}
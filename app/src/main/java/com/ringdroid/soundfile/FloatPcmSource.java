@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.IOException;
+
+/**
+ * A PcmSource which can also return its samples as floats between -1 and 1, without going through
+ * 16 bits (e.g. for samples stored as floats, cf. PcmStore.ENCODING_PCM_FLOAT).
+ * <p>
+ * 也可以将其样本作为-1到1之间的浮点数返回的PcmSource。
+ */
+public interface FloatPcmSource extends PcmSource {
+    // Same as read(), with samples scaled to [-1, 1].
+    // 与read（）相同，样本缩放到[-1，1]。
+    int readFloat(float[] buffer, int offset, int numSamples) throws IOException;
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams a single AAC stream into a fragmented .m4a file:
+ * <pre>
+ *   ftyp | moov (empty sample tables, mvex) | moof | mdat | moof | mdat | ...
+ * </pre>
+ * The header is written when the file is created, then the frames are grouped in fragments of
+ * a fixed duration, each one written to the file as soon as it is complete. Memory use is bounded
+ * by the size of one fragment, and the file is playable up to its last complete fragment at any
+ * time, so a crash or a full disk during a recording or an export only loses the last fragment.
+ * <p>
+ * 将AAC流写入分段的.m4a文件。每个片段完成后立即写入文件，因此崩溃只会丢失最后一个片段。
+ */
+public class FragmentedMP4Writer {
+    // Default duration of a fragment.
+    // 片段的默认时长。
+    public static final int DEFAULT_FRAGMENT_DURATION_MS = 500;
+
+    private static final int MFHD_SIZE = 12 + 4;
+    private static final int TFHD_SIZE = 12 + 4;
+    private static final int TFDT_SIZE = 12 + 8;
+    private static final int TRUN_HEADER_SIZE = 12 + 8;
+    private static final int MDAT_HEADER_SIZE = 8;
+    private static final int TFHD_DEFAULT_BASE_IS_MOOF = 0x020000;
+    private static final int TRUN_DATA_OFFSET_PRESENT = 0x000001;
+    private static final int TRUN_SAMPLE_SIZE_PRESENT = 0x000200;
+
+    private final int mSamplesPerFrame;
+    private final int mFramesPerFragment;
+    private RandomAccessFile mFile;
+    private FileChannel mChannel;
+    private long mPosition;            // end of the file.
+    private int mSequenceNumber;       // of the next fragment, starting at 1.
+    private long mDecodeTime;          // first sample of the next fragment.
+    private long mNumFrames;           // frames written to the file.
+
+    // Current fragment.
+    private final int[] mFrameSize;
+    private int mNumFragmentFrames;
+    private ByteBuffer mFragmentData;  // the frames of the fragment.
+    private ByteBuffer mFragment;      // moof and mdat header, then the frames.
+
+    public FragmentedMP4Writer(File file, int sampleRate, int numChannels, int bitrate,
+                               int samplesPerFrame, int aacObjectType) throws IOException {
+        this(file, sampleRate, numChannels, bitrate, samplesPerFrame, aacObjectType,
+                DEFAULT_FRAGMENT_DURATION_MS);
+    }
+
+    // Create the file and write its header. Fragments last about fragmentDurationMs.
+    // 创建文件并写入其标头。
+    public FragmentedMP4Writer(File file, int sampleRate, int numChannels, int bitrate,
+                               int samplesPerFrame, int aacObjectType, int fragmentDurationMs)
+            throws IOException {
+        mSamplesPerFrame = samplesPerFrame;
+        mFramesPerFragment = Math.max(1,
+                (int) ((long) fragmentDurationMs * sampleRate / (1000L * samplesPerFrame)));
+        mFrameSize = new int[mFramesPerFragment];
+        mNumFragmentFrames = 0;
+        // Twice the nominal size of the frames at this bitrate, it grows if needed.
+        int estimatedSize = (int) ((long) bitrate * samplesPerFrame / (8L * sampleRate));
+        mFragmentData = ByteBuffer.allocate(Math.max(2 * estimatedSize * mFramesPerFragment, 4096));
+        mFragment = ByteBuffer.allocate(0);
+        mSequenceNumber = 1;
+        mDecodeTime = 0;
+        mNumFrames = 0;
+
+        MP4HeaderWriter header = MP4HeaderWriter.forFragments(
+                sampleRate, numChannels, bitrate, samplesPerFrame, aacObjectType);
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        mChannel = mFile.getChannel();
+        header.write(mChannel, 0);
+        mPosition = header.getSize();
+    }
+
+    // Number of AAC frames written so far (the current fragment included).
+    public long getNumFrames() {
+        return mNumFrames + mNumFragmentFrames;
+    }
+
+    // Append the remaining bytes of frame as one AAC frame. The codec config must not be given
+    // here: the Audio Specific Config is in the header already.
+    // 将frame的剩余字节追加为一个AAC帧。不要传入编解码器配置。
+    public void writeFrame(ByteBuffer frame) throws IOException {
+        int size = frame.remaining();
+        if (mFragmentData.remaining() < size) {
+            ByteBuffer data = ByteBuffer.allocate(2 * mFragmentData.capacity() + size);
+            mFragmentData.flip();
+            data.put(mFragmentData);
+            mFragmentData = data;
+        }
+        mFragmentData.put(frame);
+        mFrameSize[mNumFragmentFrames++] = size;
+        if (mNumFragmentFrames == mFramesPerFragment) {
+            flush();
+        }
+    }
+
+    // Append size bytes of frame, starting at offset, as one AAC frame.
+    public void writeFrame(byte[] frame, int offset, int size) throws IOException {
+        writeFrame(ByteBuffer.wrap(frame, offset, size));
+    }
+
+    // Write the current fragment now, even if it is not complete (e.g. when a recording is
+    // paused).
+    // 立即写入当前片段，即使它不完整。
+    public void flush() throws IOException {
+        if (mNumFragmentFrames == 0) {
+            return;
+        }
+        int trunSize = TRUN_HEADER_SIZE + 4 * mNumFragmentFrames;
+        int trafSize = 8 + TFHD_SIZE + TFDT_SIZE + trunSize;
+        int moofSize = 8 + MFHD_SIZE + trafSize;
+        int dataSize = mFragmentData.position();
+        int size = moofSize + MDAT_HEADER_SIZE + dataSize;
+        if (mFragment.capacity() < size) {
+            mFragment = ByteBuffer.allocate(size);
+        }
+        ByteBuffer out = mFragment;
+        out.clear();
+        out.order(ByteOrder.BIG_ENDIAN);
+        MP4HeaderWriter.putAtomHeader(out, moofSize, "moof");
+        MP4HeaderWriter.putFullAtomHeader(out, MFHD_SIZE, "mfhd", 0);
+        out.putInt(mSequenceNumber);
+        MP4HeaderWriter.putAtomHeader(out, trafSize, "traf");
+        MP4HeaderWriter.putFullAtomHeader(out, TFHD_SIZE, "tfhd", TFHD_DEFAULT_BASE_IS_MOOF);
+        out.putInt(1);                             // track ID
+        MP4HeaderWriter.putFullAtomHeader(out, TFDT_SIZE, "tfdt", 0x01000000);  // version 1.
+        out.putLong(mDecodeTime);                  // base media decode time, in samples.
+        MP4HeaderWriter.putFullAtomHeader(out, trunSize, "trun",
+                TRUN_DATA_OFFSET_PRESENT | TRUN_SAMPLE_SIZE_PRESENT);
+        out.putInt(mNumFragmentFrames);            // sample count
+        out.putInt(moofSize + MDAT_HEADER_SIZE);   // data offset, from the start of the moof.
+        for (int i = 0; i < mNumFragmentFrames; i++) {
+            out.putInt(mFrameSize[i]);
+        }
+        MP4HeaderWriter.putAtomHeader(out, MDAT_HEADER_SIZE + dataSize, "mdat");
+        mFragmentData.flip();
+        out.put(mFragmentData);
+        out.flip();
+        MP4HeaderWriter.writeFully(mChannel, out, mPosition);
+        mPosition += size;
+
+        mSequenceNumber++;
+        mDecodeTime += (long) mNumFragmentFrames * mSamplesPerFrame;
+        mNumFrames += mNumFragmentFrames;
+        mNumFragmentFrames = 0;
+        mFragmentData.clear();
+    }
+
+    // Write the last fragment and close the file.
+    // 写入最后一个片段并关闭文件。
+    public void finish() throws IOException {
+        flush();
+        close();
+    }
+
+    // Close the file, dropping the current fragment. Safe to call more than once.
+    public void release() {
+        try {
+            close();
+        } catch (IOException e) {
+            // Nothing more we can do.
+        }
+    }
+
+    private void close() throws IOException {
+        if (mFile != null) {
+            RandomAccessFile file = mFile;
+            mFile = null;
+            mChannel = null;
+            file.close();
+        }
+    }
+}
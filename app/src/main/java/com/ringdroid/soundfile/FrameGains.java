@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Computes the gain of each frame of decoded audio, as displayed by the waveform.
+ * <p>
+ * 计算解码音频每帧的增益，如波形所示。
+ */
+public class FrameGains {
+    private FrameGains() {
+    }
+
+    // Gain of each of the numFrames frames of samplesPerFrame samples (per channel) read from
+    // samples, starting at its current position. The gain of a frame is the square root of the
+    // maximum, over the frame, of the average absolute value of the channels.
+    // The position of samples is moved past the samples read.
+    // 每帧的增益是该帧内各通道平均绝对值的最大值的平方根。
+    public static int[] compute(ShortBuffer samples, int channels, int samplesPerFrame,
+                                int numFrames) {
+        int[] frameGains = new int[numFrames];
+        int j;
+        int gain, value;
+        for (int i = 0; i < numFrames; i++) {
+            gain = -1;
+            for (j = 0; j < samplesPerFrame; j++) {
+                value = 0;
+                for (int k = 0; k < channels; k++) {
+                    if (samples.remaining() > 0) {
+                        value += java.lang.Math.abs(samples.get());
+                    }
+                }
+                value /= channels;
+                if (gain < value) {
+                    gain = value;
+                }
+            }
+            // 这里增益= sqrt（第一个通道的最大值）...
+            // here gain = sqrt(max value of 1st channel)...
+            frameGains[i] = (int) Math.sqrt(gain);
+        }
+        return frameGains;
+    }
+
+    // Same as above, reading the samples from source (from its current position), one frame at a
+    // time, so that the whole stream never has to be in memory.
+    // 同上，从source逐帧读取样本。
+    public static int[] compute(PcmSource source, int samplesPerFrame, int numFrames)
+            throws IOException {
+        int channels = source.getChannels();
+        short[] frame = new short[samplesPerFrame * channels];
+        int[] frameGains = new int[numFrames];
+        int gain, value;
+        for (int i = 0; i < numFrames; i++) {
+            int count = 0;
+            while (count < samplesPerFrame) {
+                int n = source.read(frame, count * channels, samplesPerFrame - count);
+                if (n <= 0) {
+                    break;
+                }
+                count += n;
+            }
+            Arrays.fill(frame, count * channels, frame.length, (short) 0);
+            gain = -1;
+            for (int j = 0; j < frame.length; j += channels) {
+                value = 0;
+                for (int k = 0; k < channels; k++) {
+                    value += java.lang.Math.abs(frame[j + k]);
+                }
+                value /= channels;
+                if (gain < value) {
+                    gain = value;
+                }
+            }
+            frameGains[i] = (int) Math.sqrt(gain);
+        }
+        return frameGains;
+    }
+
+    // Computes the same gains as compute(), from samples given block by block as they are
+    // decoded, so that they don't have to be stored at all.
+    // 与compute（）计算相同的增益，样本在解码时逐块给出，因此根本不必存储它们。
+    public static class Accumulator {
+        private final int mChannels;
+        private final int mSamplesPerFrame;
+        private int[] mGains;
+        private int mNumFrames;        // number of complete frames.
+        private int mFrameSamples;     // number of samples (per channel) in the current frame.
+        private int mFrameGain;        // max of the current frame, -1 if empty.
+
+        public Accumulator(int channels, int samplesPerFrame) {
+            mChannels = channels;
+            mSamplesPerFrame = samplesPerFrame;
+            mGains = new int[1024];
+            mNumFrames = 0;
+            mFrameSamples = 0;
+            mFrameGain = -1;
+        }
+
+        // Add numSamples samples per channel (interleaved), starting at offset.
+        // 添加numSamples个样本（交错）。
+        public void add(short[] samples, int offset, int numSamples) {
+            int end = offset + numSamples * mChannels;
+            for (int j = offset; j < end; j += mChannels) {
+                int value = 0;
+                for (int k = 0; k < mChannels; k++) {
+                    value += java.lang.Math.abs(samples[j + k]);
+                }
+                value /= mChannels;
+                if (mFrameGain < value) {
+                    mFrameGain = value;
+                }
+                if (++mFrameSamples == mSamplesPerFrame) {
+                    if (mNumFrames == mGains.length) {
+                        mGains = Arrays.copyOf(mGains, mNumFrames * 2);
+                    }
+                    mGains[mNumFrames++] = (int) Math.sqrt(mFrameGain);
+                    mFrameSamples = 0;
+                    mFrameGain = -1;
+                }
+            }
+        }
+
+        // Gains of the first numFrames frames. The last frame may be incomplete.
+        // 前numFrames帧的增益。
+        public int[] getGains(int numFrames) {
+            int[] frameGains = Arrays.copyOf(mGains, numFrames);
+            if (mFrameSamples > 0 && mNumFrames < numFrames) {
+                frameGains[mNumFrames] = (int) Math.sqrt(mFrameGain);
+            }
+            return frameGains;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.util.Arrays;
+
+/**
+ * Byte offset, size and presentation time of every compressed access unit (AAC frame, MP3
+ * frame...) of an audio track, in primitive arrays.
+ * <p>
+ * The index is filled from the sample tables of MP4 files (cf. fromMP4()), or while the track is
+ * read with a MediaExtractor, which gives the size and time of each access unit but not its
+ * position in the file (offsets are -1 then). It can be mapped to the fixed size frames displayed
+ * by the waveform, so that the compressed data of a selection can be found without reading the
+ * file again.
+ * <p>
+ * 音轨每个压缩访问单元的字节偏移量、大小和显示时间。可以映射到波形显示的固定大小帧。
+ */
+public class FrameIndex {
+    private long[] mOffsets;  // in bytes from the start of the file, -1 if unknown.
+    private int[] mSizes;     // in bytes.
+    private long[] mTimesUs;
+    private int mNumUnits;
+
+    public FrameIndex() {
+        mOffsets = new long[1024];
+        mSizes = new int[1024];
+        mTimesUs = new long[1024];
+        mNumUnits = 0;
+    }
+
+    // Index of the frames of the audio track parsed by parser.
+    // parser解析的音轨帧的索引。
+    public static FrameIndex fromMP4(MP4Parser parser) {
+        FrameIndex index = new FrameIndex();
+        for (int i = 0; i < parser.getNumFrames(); i++) {
+            index.add(parser.getFrameOffset(i), parser.getFrameSize(i),
+                    parser.getFrameTimeUs(i));
+        }
+        return index;
+    }
+
+    // Append an access unit. Units must be added in decoding order. offset is -1 if unknown.
+    // 追加一个访问单元。 offset为-1表示未知。
+    public void add(long offset, int size, long timeUs) {
+        if (mNumUnits == mSizes.length) {
+            int capacity = mNumUnits * 2;
+            mOffsets = Arrays.copyOf(mOffsets, capacity);
+            mSizes = Arrays.copyOf(mSizes, capacity);
+            mTimesUs = Arrays.copyOf(mTimesUs, capacity);
+        }
+        mOffsets[mNumUnits] = offset;
+        mSizes[mNumUnits] = size;
+        mTimesUs[mNumUnits] = timeUs;
+        mNumUnits++;
+    }
+
+    public int getNumUnits() {
+        return mNumUnits;
+    }
+
+    // True if the position of the access units in the file is known.
+    // 如果访问单元在文件中的位置已知，则为true。
+    public boolean hasOffsets() {
+        return mNumUnits > 0 && mOffsets[0] >= 0;
+    }
+
+    public long getOffset(int i) {
+        return mOffsets[i];
+    }
+
+    public int getSize(int i) {
+        return mSizes[i];
+    }
+
+    public long getTimeUs(int i) {
+        return mTimesUs[i];
+    }
+
+    // Index of the access unit containing timeUs (the last one starting at or before it), 0 if
+    // timeUs is before the first unit, -1 if the index is empty.
+    // 包含timeUs的访问单元的索引。
+    public int findUnit(long timeUs) {
+        if (mNumUnits == 0) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(mTimesUs, 0, mNumUnits, timeUs);
+        if (index < 0) {
+            index = -index - 2;  // insertion point - 1.
+        } else {
+            // Units of zero duration (e.g. an AAC codec config) share their time with the next
+            // one: return the last of them.
+            while (index + 1 < mNumUnits && mTimesUs[index + 1] == mTimesUs[index]) {
+                index++;
+            }
+        }
+        return Math.max(index, 0);
+    }
+
+    // First sample (per channel, counted from the first access unit) of unit i.
+    // 访问单元i的第一个样本。
+    private long getStartSample(int i, int sampleRate) {
+        return Math.round((mTimesUs[i] - mTimesUs[0]) * (double) sampleRate / 1000000.0);
+    }
+
+    // Display frame (of samplesPerFrame samples) in which unit i starts.
+    // 访问单元i开始的显示帧。
+    private int getFrame(int i, int sampleRate, int samplesPerFrame, int numFrames) {
+        long frame = getStartSample(i, sampleRate) / samplesPerFrame;
+        return (int) Math.max(0, Math.min(frame, numFrames - 1));
+    }
+
+    // Byte offset of each of the numFrames display frames: the offset of the access unit
+    // containing the first sample of the frame, where decoding or copying the compressed data of
+    // a selection starts. Offsets are -1 if unknown.
+    // 每个显示帧的字节偏移量：包含该帧第一个样本的访问单元的偏移量。如果未知，则为-1。
+    public long[] getFrameOffsets(int sampleRate, int samplesPerFrame, int numFrames) {
+        long[] offsets = new long[numFrames];
+        if (mNumUnits == 0) {
+            Arrays.fill(offsets, -1);
+            return offsets;
+        }
+        int unit = 0;
+        for (int frame = 0; frame < numFrames; frame++) {
+            long start = (long) frame * samplesPerFrame;
+            while (unit + 1 < mNumUnits && getStartSample(unit + 1, sampleRate) <= start) {
+                unit++;
+            }
+            offsets[frame] = mOffsets[unit];
+        }
+        return offsets;
+    }
+
+    // Number of bytes of the access units starting in each of the numFrames display frames. The
+    // compressed size of frames a to b is the sum of the lengths of a to b, and each access unit
+    // is counted in exactly one frame.
+    // 在每个显示帧中开始的访问单元的字节数。
+    public int[] getFrameLengths(int sampleRate, int samplesPerFrame, int numFrames) {
+        int[] lengths = new int[numFrames];
+        if (numFrames == 0) {
+            return lengths;
+        }
+        for (int i = 0; i < mNumUnits; i++) {
+            lengths[getFrame(i, sampleRate, samplesPerFrame, numFrames)] += mSizes[i];
+        }
+        return lengths;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.util.Arrays;
+
+/**
+ * Per channel statistics of each frame of decoded audio: minimum, maximum (hence peak) and RMS,
+ * kept as 16 bits values, 6 bytes per channel and frame.
+ * <p>
+ * Unlike the frame gains, which mix the channels, these keep the channels apart and describe the
+ * actual shape of the signal, so that a waveform can show one lane per channel and the true
+ * extent of the samples. They are computed in the same pass as the gains (cf. Accumulator), or
+ * directly on blocks of samples for files decoded on demand.
+ * <p>
+ * 解码音频每帧的每通道统计信息：最小值、最大值（即峰值）和RMS，以16位值保存。
+ */
+public class FrameStats {
+    private final int mChannels;
+    private final int mSamplesPerFrame;
+    private int mNumFrames;
+    // Indexed by frame * channels + channel.
+    // 按帧*通道数+通道索引。
+    private short[] mMin;
+    private short[] mMax;
+    private short[] mRms;
+
+    // Statistics of numFrames frames, all 0 until they are computed.
+    // numFrames帧的统计信息，在计算之前全部为0。
+    public FrameStats(int channels, int samplesPerFrame, int numFrames) {
+        mChannels = channels;
+        mSamplesPerFrame = samplesPerFrame;
+        mNumFrames = numFrames;
+        mMin = new short[numFrames * channels];
+        mMax = new short[numFrames * channels];
+        mRms = new short[numFrames * channels];
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    public int getSamplesPerFrame() {
+        return mSamplesPerFrame;
+    }
+
+    public int getNumFrames() {
+        return mNumFrames;
+    }
+
+    public int getMin(int frame, int channel) {
+        return mMin[frame * mChannels + channel];
+    }
+
+    public int getMax(int frame, int channel) {
+        return mMax[frame * mChannels + channel];
+    }
+
+    // Largest absolute value of the samples of the frame (32768 for a full scale negative one).
+    // 帧样本的最大绝对值。
+    public int getPeak(int frame, int channel) {
+        int i = frame * mChannels + channel;
+        return Math.max(-mMin[i], mMax[i]);
+    }
+
+    public int getRms(int frame, int channel) {
+        return mRms[frame * mChannels + channel];
+    }
+
+    // Compute the statistics of the frames of numSamples samples per channel (interleaved), the
+    // first of which is frame firstFrame. Frames past the end are ignored.
+    // 计算从firstFrame帧开始的numSamples个样本的帧的统计信息。
+    public void compute(short[] samples, int numSamples, int firstFrame) {
+        for (int start = 0; start < numSamples && firstFrame < mNumFrames;
+             start += mSamplesPerFrame) {
+            int count = Math.min(mSamplesPerFrame, numSamples - start);
+            for (int c = 0; c < mChannels; c++) {
+                int min = 0;
+                int max = 0;
+                long sumSquares = 0;
+                int end = (start + count) * mChannels;
+                for (int j = start * mChannels + c; j < end; j += mChannels) {
+                    int value = samples[j];
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                    sumSquares += value * value;
+                }
+                set(firstFrame, c, min, max, sumSquares, count);
+            }
+            firstFrame++;
+        }
+    }
+
+    private void set(int frame, int channel, int min, int max, long sumSquares, int count) {
+        int i = frame * mChannels + channel;
+        mMin[i] = (short) min;
+        mMax[i] = (short) max;
+        mRms[i] = (short) Math.min(Short.MAX_VALUE,
+                Math.round(Math.sqrt((double) sumSquares / Math.max(1, count))));
+    }
+
+    // Computes the statistics from samples given block by block as they are decoded, in the same
+    // pass as FrameGains.Accumulator.
+    // 根据解码时逐块给出的样本计算统计信息。
+    public static class Accumulator {
+        private final int mChannels;
+        private final int mSamplesPerFrame;
+        private FrameStats mStats;
+        private int mFrame;            // current frame.
+        private int mFrameSamples;     // number of samples (per channel) in the current frame.
+        private final int[] mMin;
+        private final int[] mMax;
+        private final long[] mSumSquares;
+
+        public Accumulator(int channels, int samplesPerFrame) {
+            mChannels = channels;
+            mSamplesPerFrame = samplesPerFrame;
+            mStats = new FrameStats(channels, samplesPerFrame, 1024);
+            mFrame = 0;
+            mFrameSamples = 0;
+            mMin = new int[channels];
+            mMax = new int[channels];
+            mSumSquares = new long[channels];
+        }
+
+        // Add numSamples samples per channel (interleaved), starting at offset.
+        // 添加numSamples个样本（交错）。
+        public void add(short[] samples, int offset, int numSamples) {
+            while (numSamples > 0) {
+                int count = Math.min(numSamples, mSamplesPerFrame - mFrameSamples);
+                int end = offset + count * mChannels;
+                for (int c = 0; c < mChannels; c++) {
+                    int min = mMin[c];
+                    int max = mMax[c];
+                    long sumSquares = mSumSquares[c];
+                    for (int j = offset + c; j < end; j += mChannels) {
+                        int value = samples[j];
+                        min = Math.min(min, value);
+                        max = Math.max(max, value);
+                        sumSquares += value * value;
+                    }
+                    mMin[c] = min;
+                    mMax[c] = max;
+                    mSumSquares[c] = sumSquares;
+                }
+                offset = end;
+                numSamples -= count;
+                mFrameSamples += count;
+                if (mFrameSamples == mSamplesPerFrame) {
+                    endFrame();
+                }
+            }
+        }
+
+        private void endFrame() {
+            if (mFrame == mStats.mNumFrames) {
+                mStats.resize(mFrame * 2);
+            }
+            for (int c = 0; c < mChannels; c++) {
+                mStats.set(mFrame, c, mMin[c], mMax[c], mSumSquares[c], mFrameSamples);
+                mMin[c] = 0;
+                mMax[c] = 0;
+                mSumSquares[c] = 0;
+            }
+            mFrame++;
+            mFrameSamples = 0;
+        }
+
+        // Statistics of the first numFrames frames. The last frame may be incomplete.
+        // 前numFrames帧的统计信息。
+        public FrameStats getStats(int numFrames) {
+            if (mFrameSamples > 0) {
+                endFrame();
+            }
+            mStats.resize(numFrames);
+            return mStats;
+        }
+    }
+
+    private void resize(int numFrames) {
+        mNumFrames = numFrames;
+        mMin = Arrays.copyOf(mMin, numFrames * mChannels);
+        mMax = Arrays.copyOf(mMax, numFrames * mChannels);
+        mRms = Arrays.copyOf(mRms, numFrames * mChannels);
+    }
+}
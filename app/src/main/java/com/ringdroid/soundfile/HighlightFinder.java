@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Finds the highlight of a song, usually its chorus: the part repeated the most, and loud, to
+ * propose it as the ringtone.
+ * <p>
+ * Compact features are kept while the stream is decoded: the samples are mixed down to mono,
+ * low-passed and decimated to about 5.5 kHz, and every FRAME_SIZE decimated samples (about 0.19 s)
+ * the chroma (energy of each of the 12 pitch classes, from 80 to 1800 Hz) and the RMS are kept,
+ * 13 bytes per frame. The search compares windows of frames with all the windows at least a
+ * window away, one lag (diagonal of the self-similarity matrix) at a time, with running sums
+ * along the diagonal; a window scores the similarities above a threshold of all its repetitions,
+ * weighted by its loudness. Songs longer than MAX_FRAMES frames are compared on merged frames,
+ * so the cost is bounded.
+ * <p>
+ * 查找歌曲的高潮部分（通常是副歌）：重复最多且响亮的部分，建议作为铃声。
+ */
+public class HighlightFinder {
+    public static final int CHROMA_BINS = 12;
+
+    // The decimated rate is sampleRate / (sampleRate / ANALYSIS_SAMPLE_RATE), 5.5 - 11 kHz.
+    // 抽取后的采样率。
+    private static final int ANALYSIS_SAMPLE_RATE = 5500;
+    private static final int FFT_SIZE = 2048;
+    private static final int FRAME_SIZE = 1024;  // in decimated samples.
+    private static final double MIN_FREQUENCY = 80;
+    private static final double MAX_FREQUENCY = 1800;
+    // Frames are merged beyond this, to keep the comparison under MAX_FRAMES^2 / 2 steps.
+    // 超过此数量时合并帧，使比较步数保持在MAX_FRAMES^2 / 2以下。
+    private static final int MAX_FRAMES = 2048;
+    // Windows are compared over at most this long: choruses repeat over 5 - 20 s.
+    // 窗口最多比较这么长时间：副歌在5到20秒内重复。
+    private static final double MIN_WINDOW_SECONDS = 5;
+    private static final double MAX_WINDOW_SECONDS = 15;
+    // A repetition counts when its similarity is this many standard deviations above the mean.
+    // 当相似度比平均值高出这么多个标准差时，重复才算数。
+    private static final double THRESHOLD = 1.0;
+    // The statistics are estimated on every STATS_LAG_STEP lags only.
+    // 统计信息仅在每STATS_LAG_STEP个滞后上估计。
+    private static final int STATS_LAG_STEP = 4;
+    // The highlight starts where the score climbs to this fraction of its maximum.
+    // 高潮从分数升到其最大值的这个比例处开始。
+    private static final double START_FRACTION = 0.9;
+
+    private final int mSampleRate;
+    private final long mFirstSample;
+    private final long mNumSamples;
+    private final int mFrameSamples;  // in samples of the stream.
+    private final int mNumFrames;
+    private final byte[] mChroma;     // CHROMA_BINS per frame, 0 - 255 relative to the max bin.
+    private final byte[] mLevels;     // RMS of the frames, dB + 96 (0 - 96 dB).
+
+    private HighlightFinder(int sampleRate, long firstSample, long numSamples, int frameSamples,
+                            int numFrames, byte[] chroma, byte[] levels) {
+        mSampleRate = sampleRate;
+        mFirstSample = firstSample;
+        mNumSamples = numSamples;
+        mFrameSamples = frameSamples;
+        mNumFrames = numFrames;
+        mChroma = chroma;
+        mLevels = levels;
+    }
+
+    // Features of the samples from start to end (per channel) of source, read right away.
+    // source从start到end的样本的特征，立即读取。
+    public static HighlightFinder compute(PcmSource source, long start, long end)
+            throws IOException {
+        start = Math.max(0, start);
+        end = Math.min(source.getNumSamples(), end);
+        Accumulator accumulator =
+                new Accumulator(source.getSampleRate(), source.getChannels(), start);
+        short[] buffer = new short[4096 * source.getChannels()];
+        source.seek(start);
+        for (long position = start; position < end; ) {
+            int count = source.read(buffer, 0, (int) Math.min(4096, end - position));
+            if (count <= 0) {
+                break;
+            }
+            accumulator.add(buffer, 0, count);
+            position += count;
+        }
+        return accumulator.getFinder();
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getNumFrames() {
+        return mNumFrames;
+    }
+
+    // Start (in samples, per channel) of the region lasting seconds which is repeated the most,
+    // or the loudest if nothing repeats; -1 if the stream is shorter than seconds.
+    // 持续seconds秒且重复最多（如果没有重复则最响亮）的区域的起点；如果流短于seconds则返回-1。
+    public long findHighlight(double seconds) {
+        long length = (long) (seconds * mSampleRate);
+        if (length <= 0 || length > mNumSamples) {
+            return -1;
+        }
+        if (mNumFrames == 0) {
+            return mFirstSample;
+        }
+        // Merge the frames if there are too many.
+        // 如果帧太多则合并。
+        int merge = (mNumFrames + MAX_FRAMES - 1) / MAX_FRAMES;
+        int numFrames = (mNumFrames + merge - 1) / merge;
+        double frameSeconds = (double) mFrameSamples * merge / mSampleRate;
+        float[] chroma = new float[numFrames * CHROMA_BINS];
+        double[] energy = new double[numFrames];
+        for (int i = 0; i < numFrames; i++) {
+            int last = Math.min(mNumFrames, (i + 1) * merge);
+            for (int frame = i * merge; frame < last; frame++) {
+                for (int bin = 0; bin < CHROMA_BINS; bin++) {
+                    chroma[i * CHROMA_BINS + bin] += mChroma[frame * CHROMA_BINS + bin] & 0xFF;
+                }
+                energy[i] += Math.pow(10, ((mLevels[frame] & 0xFF) - 96) / 10.0);
+            }
+            normalize(chroma, i * CHROMA_BINS);
+        }
+
+        int regionFrames = Math.max(1, Math.min(numFrames, (int) (seconds / frameSeconds)));
+        int window = (int) Math.round(Math.max(MIN_WINDOW_SECONDS,
+                Math.min(MAX_WINDOW_SECONDS, seconds)) / frameSeconds);
+        window = Math.max(1, Math.min(window, regionFrames));
+        int numWindows = numFrames - window + 1;
+
+        // Two passes over the lags: the statistics of the window similarities (on a subset of
+        // the lags), then the scores of the windows from the similarities above the threshold.
+        // 对滞后进行两遍：窗口相似度的统计（在部分滞后上），然后根据超过阈值的相似度计算窗口分数。
+        double[] repeats = new double[numWindows];
+        double[] diagonal = new double[numFrames + 1];
+        double sum = 0;
+        double squares = 0;
+        long count = 0;
+        double threshold = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int lagStep = pass == 0 ? STATS_LAG_STEP : 1;
+            for (int lag = window; lag < numWindows; lag += lagStep) {
+                // Running sums of the similarities of frames i and i + lag.
+                // 帧i和i + lag的相似度的累积和。
+                for (int i = 0; i + lag < numFrames; i++) {
+                    double dot = 0;
+                    int a = i * CHROMA_BINS;
+                    int b = (i + lag) * CHROMA_BINS;
+                    for (int bin = 0; bin < CHROMA_BINS; bin++) {
+                        dot += chroma[a + bin] * chroma[b + bin];
+                    }
+                    diagonal[i + 1] = diagonal[i] + dot;
+                }
+                for (int i = 0; i + lag < numWindows; i++) {
+                    double similarity = (diagonal[i + window] - diagonal[i]) / window;
+                    if (pass == 0) {
+                        sum += similarity;
+                        squares += similarity * similarity;
+                        count++;
+                    } else if (similarity > threshold) {
+                        repeats[i] += similarity - threshold;
+                        repeats[i + lag] += similarity - threshold;
+                    }
+                }
+            }
+            if (count == 0) {
+                break;
+            }
+            double mean = sum / count;
+            threshold = mean + THRESHOLD * Math.sqrt(Math.max(0, squares / count - mean * mean));
+        }
+
+        // Scores of the regions: repetitions of their first window, times their loudness.
+        // 区域分数：其第一个窗口的重复次数乘以其响度。
+        int numRegions = numFrames - regionFrames + 1;
+        double[] loudness = new double[numRegions];
+        double runningEnergy = 0;
+        double maxLoudness = 0;
+        for (int i = 0; i < numFrames; i++) {
+            runningEnergy += energy[i];
+            if (i >= regionFrames) {
+                runningEnergy -= energy[i - regionFrames];
+            }
+            if (i >= regionFrames - 1) {
+                loudness[i - regionFrames + 1] = Math.sqrt(Math.max(0, runningEnergy));
+                maxLoudness = Math.max(maxLoudness, loudness[i - regionFrames + 1]);
+            }
+        }
+        double[] scores = new double[numRegions];
+        boolean repeated = false;
+        for (int i = 0; i < numRegions; i++) {
+            double repeat = i < numWindows ? repeats[i] : 0;
+            repeated |= repeat > 0;
+            scores[i] = maxLoudness > 0 ? loudness[i] / maxLoudness : 0;
+            scores[i] *= repeat;
+        }
+        if (!repeated) {
+            scores = loudness;
+        }
+        int best = 0;
+        for (int i = 1; i < numRegions; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        // The score plateaus while the window slides within the chorus: start at the beginning
+        // of the plateau.
+        // 窗口在副歌内滑动时分数保持平稳：从平台的开头开始。
+        double minScore = START_FRACTION * scores[best];
+        while (best > 0 && scores[best - 1] >= minScore) {
+            best--;
+        }
+        long start = mFirstSample + (long) best * merge * mFrameSamples;
+        return Math.max(mFirstSample, Math.min(start, mFirstSample + mNumSamples - length));
+    }
+
+    private static void normalize(float[] vector, int offset) {
+        double norm = 0;
+        for (int i = 0; i < CHROMA_BINS; i++) {
+            norm += vector[offset + i] * vector[offset + i];
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < CHROMA_BINS; i++) {
+                vector[offset + i] *= scale;
+            }
+        }
+    }
+
+    public static class Accumulator {
+        private final int mSampleRate;
+        private final int mChannels;
+        private final long mFirstSample;
+        private final int mDecimation;
+        private final Fft mFft = new Fft(FFT_SIZE);
+        private final float[] mWindow = new float[FFT_SIZE];
+        private final float[] mInput = new float[FFT_SIZE];
+        private final float[] mPower = new float[FFT_SIZE / 2];
+        private final int[] mBinChroma = new int[FFT_SIZE / 2];  // pitch class, or -1.
+        private final float[] mFrameChroma = new float[CHROMA_BINS];
+        // Low-pass filter before the decimation: two Butterworth biquads.
+        // 抽取前的低通滤波器：两个巴特沃斯双二阶滤波器。
+        private final double mB0;
+        private final double mB1;
+        private final double mB2;
+        private final double mA1;
+        private final double mA2;
+        private final double[] mState = new double[8];
+
+        // The last FFT_SIZE decimated samples, the oldest at mPosition.
+        // 最后FFT_SIZE个抽取后的样本。
+        private final float[] mSamples = new float[FFT_SIZE];
+        private int mPosition;
+        private int mPhase;        // of the decimation.
+        private int mNumDecimated;  // since the last frame.
+        private double mSquares;    // of the mono samples, since the last frame.
+        private long mNumSamples;
+
+        private byte[] mChroma = new byte[256 * CHROMA_BINS];
+        private byte[] mLevels = new byte[256];
+        private int mNumFrames;
+
+        public Accumulator(int sampleRate, int channels) {
+            this(sampleRate, channels, 0);
+        }
+
+        // Features of a part of a stream, the first sample added being sample firstSample.
+        // 流的一部分的特征，第一个添加的样本是firstSample。
+        public Accumulator(int sampleRate, int channels, long firstSample) {
+            mSampleRate = sampleRate;
+            mChannels = channels;
+            mFirstSample = firstSample;
+            mDecimation = Math.max(1, sampleRate / ANALYSIS_SAMPLE_RATE);
+            double rate = (double) sampleRate / mDecimation;
+            for (int i = 0; i < FFT_SIZE; i++) {
+                mWindow[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / FFT_SIZE));
+            }
+            for (int bin = 0; bin < FFT_SIZE / 2; bin++) {
+                double frequency = bin * rate / FFT_SIZE;
+                mBinChroma[bin] = -1;
+                if (frequency >= MIN_FREQUENCY && frequency <= MAX_FREQUENCY) {
+                    // Pitch class, C = 0 (A4 = 440 Hz is 9).
+                    // 音级，C = 0。
+                    long note = Math.round(12 * Math.log(frequency / 440) / Math.log(2)) + 9;
+                    mBinChroma[bin] = (int) (((note % CHROMA_BINS) + CHROMA_BINS) % CHROMA_BINS);
+                }
+            }
+            double k = Math.tan(Math.PI * 0.35 * rate / sampleRate);
+            double q = Math.sqrt(0.5);
+            double a0 = 1 + k / q + k * k;
+            mB0 = k * k / a0;
+            mB1 = 2 * mB0;
+            mB2 = mB0;
+            mA1 = 2 * (k * k - 1) / a0;
+            mA2 = (1 - k / q + k * k) / a0;
+        }
+
+        // Add numSamples samples per channel (interleaved), starting at offset.
+        // 添加numSamples个样本（交错）。
+        public void add(short[] samples, int offset, int numSamples) {
+            double scale = 1.0 / (32768.0 * mChannels);
+            double[] s = mState;
+            for (int i = 0; i < numSamples; i++) {
+                int sum = 0;
+                for (int c = 0; c < mChannels; c++) {
+                    sum += samples[offset++];
+                }
+                double x = sum * scale;
+                mSquares += x * x;
+                if (mDecimation > 1) {
+                    // Direct form I, twice.
+                    // 直接I型，两次。
+                    double y = mB0 * x + mB1 * s[0] + mB2 * s[1] - mA1 * s[2] - mA2 * s[3];
+                    s[1] = s[0];
+                    s[0] = x;
+                    s[3] = s[2];
+                    s[2] = y;
+                    x = mB0 * y + mB1 * s[4] + mB2 * s[5] - mA1 * s[6] - mA2 * s[7];
+                    s[5] = s[4];
+                    s[4] = y;
+                    s[7] = s[6];
+                    s[6] = x;
+                    if (++mPhase < mDecimation) {
+                        continue;
+                    }
+                    mPhase = 0;
+                }
+                mSamples[mPosition] = (float) x;
+                mPosition = (mPosition + 1) % FFT_SIZE;
+                if (++mNumDecimated == FRAME_SIZE) {
+                    endFrame();
+                }
+            }
+            mNumSamples += numSamples;
+        }
+
+        private void endFrame() {
+            for (int i = 0; i < FFT_SIZE; i++) {
+                mInput[i] = mSamples[(mPosition + i) % FFT_SIZE] * mWindow[i];
+            }
+            mFft.powerSpectrum(mInput, mPower);
+            Arrays.fill(mFrameChroma, 0);
+            float max = 0;
+            for (int bin = 0; bin < FFT_SIZE / 2; bin++) {
+                int pitchClass = mBinChroma[bin];
+                if (pitchClass >= 0) {
+                    float value = mFrameChroma[pitchClass] + (float) Math.sqrt(mPower[bin]);
+                    mFrameChroma[pitchClass] = value;
+                    max = Math.max(max, value);
+                }
+            }
+            if (mNumFrames == mLevels.length) {
+                mLevels = Arrays.copyOf(mLevels, mNumFrames * 2);
+                mChroma = Arrays.copyOf(mChroma, mNumFrames * 2 * CHROMA_BINS);
+            }
+            for (int bin = 0; bin < CHROMA_BINS; bin++) {
+                mChroma[mNumFrames * CHROMA_BINS + bin] =
+                        (byte) (max > 0 ? Math.round(255 * mFrameChroma[bin] / max) : 0);
+            }
+            double meanSquare = mSquares / (FRAME_SIZE * mDecimation);
+            double db = 10 * Math.log10(meanSquare + 1e-10);
+            mLevels[mNumFrames] = (byte) Math.max(0, Math.min(96, Math.round(db + 96)));
+            mNumFrames++;
+            mNumDecimated = 0;
+            mSquares = 0;
+        }
+
+        // Features of all the samples added. A last incomplete frame is left out.
+        // 所有添加的样本的特征。最后一个不完整的帧被忽略。
+        public HighlightFinder getFinder() {
+            return new HighlightFinder(mSampleRate, mFirstSample, mNumSamples,
+                    FRAME_SIZE * mDecimation, mNumFrames, mChroma, mLevels);
+        }
+    }
+}
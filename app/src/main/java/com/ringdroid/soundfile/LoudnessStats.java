@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Peak, RMS, clipping and loudness of any part of a stream in constant time, from statistics
+ * gathered block by block in the same pass as the frame gains.
+ * <p>
+ * For each block of BLOCK_SAMPLES samples, the K-weighted energy (ITU-R BS.1770), the mean
+ * square of the samples and the number of clipped samples are kept as prefix sums, so the sums
+ * over a selection are differences of two entries; the block peaks are kept in a sparse table (maxima of 2^k consecutive blocks), so
+ * the peak of a selection is the max of two entries. Selections are rounded out to whole blocks.
+ * <p>
+ * Loudness uses the absolute gate of BS.1770 (blocks below -70 LUFS are ignored), applied per
+ * block. The relative gate depends on the whole selection and cannot be precomputed; it is left
+ * out, which makes a difference only for selections with long quiet parts.
+ * <p>
+ * 在常数时间内获取流的任何部分的峰值、RMS和响度。统计信息以前缀和与稀疏表的形式保存。
+ */
+public class LoudnessStats {
+    // Number of samples (per channel) of a block, about 46 ms at 44.1 kHz.
+    // 块的样本数（每个通道）。
+    public static final int BLOCK_SAMPLES = 2048;
+
+    public static final int NORMALIZE_NONE = 0;
+    public static final int NORMALIZE_PEAK = 1;      // target in dBFS.
+    public static final int NORMALIZE_LOUDNESS = 2;  // target in LUFS.
+
+    private static final double ABSOLUTE_GATE_LUFS = -70;
+
+    private final int mSampleRate;
+    private final long mFirstSample;  // position of the first sample, in the stream.
+    private final long mNumSamples;
+    private final int mNumBlocks;
+    // Prefix sums, over the blocks before each index: K-weighted energy of the blocks above the
+    // absolute gate, their number of samples, and the mean over the channels of the squares.
+    // 每个索引之前的块的前缀和。
+    private final double[] mGatedEnergy;
+    private final long[] mGatedSamples;
+    private final double[] mSquares;
+    private final long[] mClipped;
+    // mPeaks[k][i]: max of the peaks of blocks i to i + 2^k - 1.
+    // mPeaks[k][i]：块i到i + 2^k - 1的峰值的最大值。
+    private final short[][] mPeaks;
+
+    private LoudnessStats(int sampleRate, long firstSample, long numSamples, int numBlocks,
+                          double[] energy, double[] squares, int[] clipped, short[] peaks) {
+        mSampleRate = sampleRate;
+        mFirstSample = firstSample;
+        mNumSamples = numSamples;
+        mNumBlocks = numBlocks;
+        mGatedEnergy = new double[numBlocks + 1];
+        mGatedSamples = new long[numBlocks + 1];
+        mSquares = new double[numBlocks + 1];
+        mClipped = new long[numBlocks + 1];
+        for (int i = 0; i < numBlocks; i++) {
+            long count = Math.min(BLOCK_SAMPLES, numSamples - (long) i * BLOCK_SAMPLES);
+            boolean gated = toLufs(energy[i] / count) < ABSOLUTE_GATE_LUFS;
+            mGatedEnergy[i + 1] = mGatedEnergy[i] + (gated ? 0 : energy[i]);
+            mGatedSamples[i + 1] = mGatedSamples[i] + (gated ? 0 : count);
+            mSquares[i + 1] = mSquares[i] + squares[i];
+            mClipped[i + 1] = mClipped[i] + clipped[i];
+        }
+        int numLevels = 1;
+        while ((1 << numLevels) <= numBlocks) {
+            numLevels++;
+        }
+        mPeaks = new short[numLevels][];
+        mPeaks[0] = Arrays.copyOf(peaks, numBlocks);
+        for (int k = 1; k < numLevels; k++) {
+            int half = 1 << (k - 1);
+            short[] previous = mPeaks[k - 1];
+            short[] level = new short[numBlocks - (1 << k) + 1];
+            for (int i = 0; i < level.length; i++) {
+                level[i] = (short) Math.max(previous[i], previous[i + half]);
+            }
+            mPeaks[k] = level;
+        }
+    }
+
+    // Statistics of the samples from start to end (per channel) of source, read right away. Used
+    // where there was no analysis pass (files decoded on demand).
+    // source从start到end的样本的统计信息，立即读取。
+    public static LoudnessStats compute(PcmSource source, long start, long end)
+            throws IOException {
+        start = Math.max(0, start);
+        end = Math.min(source.getNumSamples(), end);
+        Accumulator accumulator =
+                new Accumulator(source.getSampleRate(), source.getChannels(), start);
+        short[] buffer = new short[BLOCK_SAMPLES * source.getChannels()];
+        source.seek(start);
+        for (long position = start; position < end; ) {
+            int count = source.read(buffer, 0, (int) Math.min(BLOCK_SAMPLES, end - position));
+            if (count <= 0) {
+                break;
+            }
+            accumulator.add(buffer, 0, count);
+            position += count;
+        }
+        return accumulator.getStats();
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    // First and last (excluded) samples covered, in the stream.
+    // 覆盖的第一个和最后一个（不包括）样本。
+    public long getStartSample() {
+        return mFirstSample;
+    }
+
+    public long getEndSample() {
+        return mFirstSample + mNumSamples;
+    }
+
+    // Largest absolute value of the samples from start to end (0 to 32767).
+    // 从start到end的样本的最大绝对值。
+    public int getPeak(long start, long end) {
+        int first = getFirstBlock(start);
+        int last = getEndBlock(end);
+        if (last <= first) {
+            return 0;
+        }
+        int k = 31 - Integer.numberOfLeadingZeros(last - first);
+        return Math.max(mPeaks[k][first], mPeaks[k][last - (1 << k)]);
+    }
+
+    public float getPeakDb(long start, long end) {
+        return (float) (20 * Math.log10(getPeak(start, end) / 32768.0));
+    }
+
+    // Root mean square of the samples from start to end, in dB relative to full scale.
+    // 从start到end的样本的均方根，以dBFS为单位。
+    public float getRmsDb(long start, long end) {
+        int first = getFirstBlock(start);
+        int last = getEndBlock(end);
+        long count = getNumSamples(first, last);
+        if (count == 0) {
+            return Float.NEGATIVE_INFINITY;
+        }
+        return (float) (10 * Math.log10((mSquares[last] - mSquares[first]) / count));
+    }
+
+    // Number of clipped values (at full scale, any channel) from start to end.
+    // 从start到end的削波值的数量（满刻度，任何通道）。
+    public long getClippedSamples(long start, long end) {
+        int first = getFirstBlock(start);
+        int last = getEndBlock(end);
+        return last > first ? mClipped[last] - mClipped[first] : 0;
+    }
+
+    // Loudness of the samples from start to end, in LUFS (NEGATIVE_INFINITY for silence).
+    // 从start到end的样本的响度，以LUFS为单位。
+    public float getLoudness(long start, long end) {
+        int first = getFirstBlock(start);
+        int last = getEndBlock(end);
+        if (last <= first || mGatedSamples[last] == mGatedSamples[first]) {
+            return Float.NEGATIVE_INFINITY;
+        }
+        return (float) toLufs((mGatedEnergy[last] - mGatedEnergy[first])
+                / (mGatedSamples[last] - mGatedSamples[first]));
+    }
+
+    // Gain, in dB, bringing the peak (NORMALIZE_PEAK) or the loudness (NORMALIZE_LOUDNESS) of
+    // the samples from start to end to target. 0 for NORMALIZE_NONE or silence.
+    // 将从start到end的样本的峰值或响度调整到target的增益（以dB为单位）。
+    public float getNormalizationGainDb(int normalization, float target, long start, long end) {
+        float level;
+        switch (normalization) {
+            case NORMALIZE_PEAK:
+                level = getPeakDb(start, end);
+                break;
+            case NORMALIZE_LOUDNESS:
+                level = getLoudness(start, end);
+                break;
+            default:
+                return 0;
+        }
+        if (Float.isInfinite(level)) {
+            return 0;
+        }
+        return target - level;
+    }
+
+    private int getFirstBlock(long sample) {
+        return (int) Math.min(mNumBlocks, Math.max(0, sample - mFirstSample) / BLOCK_SAMPLES);
+    }
+
+    private int getEndBlock(long sample) {
+        return (int) Math.min(mNumBlocks,
+                (Math.max(0, sample - mFirstSample) + BLOCK_SAMPLES - 1) / BLOCK_SAMPLES);
+    }
+
+    private long getNumSamples(int first, int last) {
+        if (last <= first) {
+            return 0;
+        }
+        return Math.min(mNumSamples, (long) last * BLOCK_SAMPLES) - (long) first * BLOCK_SAMPLES;
+    }
+
+    private static double toLufs(double energy) {
+        return -0.691 + 10 * Math.log10(energy);
+    }
+
+    // Gathers the statistics from samples given block by block as they are decoded, in the same
+    // pass as FrameGains.Accumulator.
+    // 根据解码时逐块给出的样本收集统计信息。
+    public static class Accumulator {
+        private final int mSampleRate;
+        private final int mChannels;
+        private final long mFirstSample;
+        private final double[] mWeights;  // of the channels, cf. BS.1770.
+        // K-weighting filter: a high shelf then a high pass, as biquads.
+        // K加权滤波器：高架滤波器，然后是高通滤波器。
+        private final double[] mShelfB = new double[3];
+        private final double[] mShelfA = new double[3];
+        private final double[] mPassB = new double[3];
+        private final double[] mPassA = new double[3];
+        private final double[] mState;  // 4 per channel and filter.
+
+        private double[] mEnergy = new double[256];
+        private double[] mSquares = new double[256];
+        private int[] mClipped = new int[256];
+        private short[] mPeaks = new short[256];
+        private int mNumBlocks;
+        private long mNumSamples;
+        private int mBlockSamples;  // in the current block.
+        private double mBlockEnergy;
+        private double mBlockSquares;
+        private int mBlockPeak;
+        private int mBlockClipped;
+
+        public Accumulator(int sampleRate, int channels) {
+            this(sampleRate, channels, 0);
+        }
+
+        // Statistics of a part of a stream, the first sample added being sample firstSample.
+        // 流的一部分的统计信息，第一个添加的样本是firstSample。
+        public Accumulator(int sampleRate, int channels, long firstSample) {
+            mSampleRate = sampleRate;
+            mChannels = channels;
+            mFirstSample = firstSample;
+            mWeights = new double[channels];
+            for (int c = 0; c < channels; c++) {
+                mWeights[c] = 1.0;
+            }
+            if (channels == 6) {
+                // 5.1: no LFE, surround channels count more.
+                // 5.1：无LFE，环绕声道权重更大。
+                mWeights[3] = 0;
+                mWeights[4] = 1.41;
+                mWeights[5] = 1.41;
+            }
+            mState = new double[8 * channels];
+
+            double k = Math.tan(Math.PI * 1681.974450955533 / sampleRate);
+            double q = 0.7071752369554196;
+            double vh = Math.pow(10, 3.999843853973347 / 20);
+            double vb = Math.pow(vh, 0.4996667741545416);
+            double a0 = 1 + k / q + k * k;
+            mShelfB[0] = (vh + vb * k / q + k * k) / a0;
+            mShelfB[1] = 2 * (k * k - vh) / a0;
+            mShelfB[2] = (vh - vb * k / q + k * k) / a0;
+            mShelfA[1] = 2 * (k * k - 1) / a0;
+            mShelfA[2] = (1 - k / q + k * k) / a0;
+
+            k = Math.tan(Math.PI * 38.13547087602444 / sampleRate);
+            q = 0.5003270373238773;
+            a0 = 1 + k / q + k * k;
+            mPassB[0] = 1;
+            mPassB[1] = -2;
+            mPassB[2] = 1;
+            mPassA[1] = 2 * (k * k - 1) / a0;
+            mPassA[2] = (1 - k / q + k * k) / a0;
+        }
+
+        // Add numSamples samples per channel (interleaved), starting at offset.
+        // 添加numSamples个样本（交错）。
+        public void add(short[] samples, int offset, int numSamples) {
+            for (int i = 0; i < numSamples; i++) {
+                double energy = 0;
+                double squares = 0;
+                int peak = mBlockPeak;
+                for (int c = 0; c < mChannels; c++) {
+                    int value = samples[offset++];
+                    int abs = Math.abs(value);
+                    peak = Math.max(peak, abs);
+                    if (abs >= Short.MAX_VALUE) {
+                        mBlockClipped++;
+                    }
+                    double x = value / 32768.0;
+                    squares += x * x;
+                    double y = filter(x, c);
+                    energy += mWeights[c] * y * y;
+                }
+                mBlockPeak = peak;
+                mBlockEnergy += energy;
+                mBlockSquares += squares / mChannels;
+                if (++mBlockSamples == BLOCK_SAMPLES) {
+                    endBlock();
+                }
+            }
+        }
+
+        // Both biquads in direct form I, for channel c.
+        private double filter(double x, int c) {
+            double[] s = mState;
+            int j = 8 * c;
+            double y = mShelfB[0] * x + mShelfB[1] * s[j] + mShelfB[2] * s[j + 1]
+                    - mShelfA[1] * s[j + 2] - mShelfA[2] * s[j + 3];
+            s[j + 1] = s[j];
+            s[j] = x;
+            s[j + 3] = s[j + 2];
+            s[j + 2] = y;
+            double z = y - 2 * s[j + 4] + s[j + 5] - mPassA[1] * s[j + 6] - mPassA[2] * s[j + 7];
+            s[j + 5] = s[j + 4];
+            s[j + 4] = y;
+            s[j + 7] = s[j + 6];
+            s[j + 6] = z;
+            return z;
+        }
+
+        private void endBlock() {
+            if (mNumBlocks == mPeaks.length) {
+                mEnergy = Arrays.copyOf(mEnergy, mNumBlocks * 2);
+                mSquares = Arrays.copyOf(mSquares, mNumBlocks * 2);
+                mClipped = Arrays.copyOf(mClipped, mNumBlocks * 2);
+                mPeaks = Arrays.copyOf(mPeaks, mNumBlocks * 2);
+            }
+            mEnergy[mNumBlocks] = mBlockEnergy;
+            mSquares[mNumBlocks] = mBlockSquares;
+            mClipped[mNumBlocks] = mBlockClipped;
+            mPeaks[mNumBlocks] = (short) Math.min(Short.MAX_VALUE, mBlockPeak);
+            mNumBlocks++;
+            mNumSamples += mBlockSamples;
+            mBlockSamples = 0;
+            mBlockEnergy = 0;
+            mBlockSquares = 0;
+            mBlockPeak = 0;
+            mBlockClipped = 0;
+        }
+
+        // Statistics of all the samples added. The last block may be incomplete.
+        // 所有添加的样本的统计信息。
+        public LoudnessStats getStats() {
+            if (mBlockSamples > 0) {
+                endBlock();
+            }
+            return new LoudnessStats(mSampleRate, mFirstSample, mNumSamples, mNumBlocks, mEnergy,
+                    mSquares, mClipped, mPeaks);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Streams a single AAC stream into an .m4a file. Frames are written to the file as they come, so
+ * only their sizes are kept in memory (4 bytes per frame), and the moov atom is written after the
+ * stream by finish():
+ * <pre>
+ *   ftyp | free (8 bytes) | mdat (8 bytes header) | AAC frames... | moov
+ * </pre>
+ * If the stream does not fit in a 32 bits mdat atom, the free atom and the mdat header are
+ * replaced by a single 16 bytes mdat header with a 64 bits 'largesize', so the stream never has
+ * to move.
+ */
+public class MP4FileWriter {
+    private static final int FREE_SIZE = 8;
+    private static final int MDAT_HEADER_SIZE = 8;
+    // Offset of the AAC stream in the file.
+    private static final long DATA_OFFSET =
+            MP4HeaderWriter.FTYP_SIZE + FREE_SIZE + MDAT_HEADER_SIZE;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int mSampleRate;
+    private final int mChannels;
+    private final int mBitrate;
+    private final int mSamplesPerFrame;
+    private final int mAACObjectType;
+    private RandomAccessFile mFile;
+    private FileChannel mChannel;
+    private final ByteBuffer mBuffer;  // frames not written to the file yet.
+    private long mPosition;            // position of mBuffer in the file.
+    private int[] mFrameSize;
+    private int mNumFrames;
+
+    // Create the file. The first frame written must be the codec config.
+    public MP4FileWriter(File file, int sampleRate, int numChannels, int bitrate,
+                         int samplesPerFrame, int aacObjectType) throws IOException {
+        mSampleRate = sampleRate;
+        mChannels = numChannels;
+        mBitrate = bitrate;
+        mSamplesPerFrame = samplesPerFrame;
+        mAACObjectType = aacObjectType;
+        mFrameSize = new int[1024];
+        mNumFrames = 0;
+        mBuffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        mChannel = mFile.getChannel();
+        // ftyp, free and an mdat header that will be completed by finish().
+        MP4HeaderWriter.writeFTYP(mBuffer);
+        mBuffer.putInt(FREE_SIZE);
+        mBuffer.put(new byte[] {'f', 'r', 'e', 'e'});
+        mBuffer.putInt(0);
+        mBuffer.put(new byte[] {'m', 'd', 'a', 't'});
+        mPosition = 0;
+    }
+
+    // Number of frames written so far, codec config included.
+    public int getNumFrames() {
+        return mNumFrames;
+    }
+
+    // Size of the AAC stream written so far, in bytes.
+    public long getStreamSize() {
+        return mPosition + mBuffer.position() - DATA_OFFSET;
+    }
+
+    // Append the remaining bytes of frame as one AAC frame.
+    public void writeFrame(ByteBuffer frame) throws IOException {
+        int size = frame.remaining();
+        if (mNumFrames == mFrameSize.length) {
+            mFrameSize = Arrays.copyOf(mFrameSize, 2 * mFrameSize.length);
+        }
+        mFrameSize[mNumFrames++] = size;
+        if (size > mBuffer.remaining()) {
+            flush();
+        }
+        if (size > mBuffer.remaining()) {
+            // Larger than the buffer itself: write it directly.
+            MP4HeaderWriter.writeFully(mChannel, frame, mPosition);
+            mPosition += size;
+            return;
+        }
+        mBuffer.put(frame);
+    }
+
+    // Append size bytes of frame, starting at offset, as one AAC frame.
+    public void writeFrame(byte[] frame, int offset, int size) throws IOException {
+        writeFrame(ByteBuffer.wrap(frame, offset, size));
+    }
+
+    // Write the moov atom, complete the mdat header and close the file.
+    public void finish() throws IOException {
+        if (mNumFrames < 2) {
+            throw new IOException("Failed to create the .m4a header.");
+        }
+        flush();
+        long streamSize = mPosition - DATA_OFFSET;
+        MP4HeaderWriter header = new MP4HeaderWriter(mSampleRate, mChannels, mFrameSize,
+                mNumFrames, mBitrate, mSamplesPerFrame, mAACObjectType);
+        header.setChunkOffset(DATA_OFFSET);
+        header.writeMoov(mChannel, mPosition);
+
+        ByteBuffer mdat = ByteBuffer.allocate(FREE_SIZE + MDAT_HEADER_SIZE);
+        long mdatPosition = DATA_OFFSET - MP4HeaderWriter.getMdatHeaderSize(streamSize);
+        MP4HeaderWriter.putMdatHeader(mdat, streamSize);
+        mdat.flip();
+        MP4HeaderWriter.writeFully(mChannel, mdat, mdatPosition);
+        close();
+    }
+
+    // Close the file without completing it. Safe to call more than once.
+    public void release() {
+        try {
+            close();
+        } catch (IOException e) {
+            // Nothing more we can do.
+        }
+    }
+
+    private void flush() throws IOException {
+        mBuffer.flip();
+        int size = mBuffer.remaining();
+        MP4HeaderWriter.writeFully(mChannel, mBuffer, mPosition);
+        mPosition += size;
+        mBuffer.clear();
+    }
+
+    private void close() throws IOException {
+        if (mFile != null) {
+            RandomAccessFile file = mFile;
+            mFile = null;
+            mChannel = null;
+            file.close();
+        }
+    }
+}
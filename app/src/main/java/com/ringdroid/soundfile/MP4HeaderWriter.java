@@ -0,0 +1,585 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes the header of an .m4a file (ftyp, moov and the mdat atom header) holding a single AAC
+ * stream, as MP4Header does, but without building a tree of atoms: the size of every atom is
+ * computed first, then the header is serialized in one go into a single buffer. The only
+ * allocation is the output buffer (none if the caller provides it), and the time is linear in
+ * the number of frames.
+ * <p>
+ * Sizes and offsets are 64 bits: the mdat atom uses the 'largesize' form when the stream does not
+ * fit in 4GB, the chunk offset table is written as co64 when the chunk starts beyond 4GB, and mdhd
+ * switches to version 1 when the duration in samples does not fit in 32 bits. The moov atom can
+ * also be written on its own (see MP4FileWriter, which puts it after the stream).
+ * <p>
+ * forFragments() creates the header of a fragmented file instead: ftyp and a moov atom with empty
+ * sample tables and an mvex atom, the frames being described by the moof atoms written by
+ * FragmentedMP4Writer.
+ */
+public class MP4HeaderWriter {
+    // Fixed atom sizes, headers included.
+    static final int FTYP_SIZE = 8 + 20;
+    private static final int MVHD_SIZE = 12 + 96;
+    private static final int TKHD_SIZE = 12 + 80;
+    private static final int MDHD_SIZE = 12 + 20;
+    private static final int MDHD_V1_SIZE = 12 + 32;
+    private static final int HDLR_SIZE = 12 + 32;
+    private static final int SMHD_SIZE = 12 + 4;
+    private static final int URL_SIZE = 12;
+    private static final int DREF_SIZE = 12 + 4 + URL_SIZE;
+    private static final int DINF_SIZE = 8 + DREF_SIZE;
+    private static final int STTS_SIZE = 12 + 20;
+    private static final int STSC_SIZE = 12 + 16;
+    private static final int STCO_SIZE = 12 + 8;
+    private static final int EMPTY_TABLE_SIZE = 12 + 4;  // stts, stsc or stco with no entry.
+    private static final int TREX_SIZE = 12 + 20;
+    private static final int MVEX_SIZE = 8 + TREX_SIZE;
+    private static final int CO64_SIZE = 12 + 12;
+    private static final int MDAT_HEADER_SIZE = 8;
+    private static final int MDAT_LARGE_HEADER_SIZE = 16;
+    private static final long MAX_32_BITS = 0xFFFFFFFFL;
+
+    private final int mSampleRate;
+    private final int mChannels;
+    private final int[] mFrameSize;  // size of each AAC frames, in bytes. First one is the codec
+                                     // config (2 bytes for AAC LC).
+    private final int mNumFrames;    // number of valid entries in mFrameSize.
+    private final int mBitrate;
+    private final int mSamplesPerFrame;
+    private final int mAACObjectType;
+    private final int mTime;         // 'creation time' and 'modification time', since 1904.
+    private final boolean mFragmented;
+    private int mMaxFrameSize;
+    private long mTotSize;           // size of the AAC stream.
+    private long mNumSamples;        // number of samples (per channel) in the stream.
+    private long mDurationMS;
+    private long mChunkOffset;       // offset of the AAC stream in the file, -1 if it follows the
+                                     // header immediately.
+
+    // Layout.
+    private long mAudioSpecificConfig;  // left aligned in mAudioSpecificConfigLength bytes.
+    private int mAudioSpecificConfigLength;
+    private int mESDescriptorSize;
+    private int mESDSSize;
+    private int mMP4ASize;
+    private int mSTSDSize;
+    private int mMDHDSize;
+    private int mSTTSSize;
+    private int mSTSCSize;
+    private int mSTSZSize;
+    private int mChunkOffsetSize;
+    private int mSTBLSize;
+    private int mMINFSize;
+    private int mMDIASize;
+    private int mTRAKSize;
+    private int mMOOVSize;
+    private int mHeaderSize;
+
+    // frameSize contains the size of numFrames frames: the codec config first, then the AAC
+    // frames of samplesPerFrame samples per channel (1024 for AAC LC, 2048 for HE-AAC).
+    public MP4HeaderWriter(int sampleRate, int numChannels, int[] frameSize, int numFrames,
+                           int bitrate, int samplesPerFrame, int aacObjectType) {
+        this(sampleRate, numChannels, frameSize, numFrames, bitrate, samplesPerFrame,
+                aacObjectType, false);
+        if (frameSize == null || numFrames < 2 || numFrames > frameSize.length
+                || frameSize[0] < 1) {
+            throw new IllegalArgumentException("Invalid frame sizes");
+        }
+        computeLayout();
+    }
+
+    // Header (ftyp and moov, no mdat) of a fragmented file with a single AAC track of
+    // samplesPerFrame samples per frame.
+    public static MP4HeaderWriter forFragments(int sampleRate, int numChannels, int bitrate,
+                                               int samplesPerFrame, int aacObjectType) {
+        MP4HeaderWriter header = new MP4HeaderWriter(sampleRate, numChannels, new int[0], 0,
+                bitrate, samplesPerFrame, aacObjectType, true);
+        header.computeLayout();
+        return header;
+    }
+
+    private MP4HeaderWriter(int sampleRate, int numChannels, int[] frameSize, int numFrames,
+                            int bitrate, int samplesPerFrame, int aacObjectType,
+                            boolean fragmented) {
+        mSampleRate = sampleRate;
+        mChannels = numChannels;
+        mFrameSize = frameSize;
+        mNumFrames = numFrames;
+        mBitrate = bitrate;
+        mSamplesPerFrame = samplesPerFrame;
+        mAACObjectType = aacObjectType;
+        long time = System.currentTimeMillis() / 1000;
+        time += (66 * 365 + 16) * 24 * 60 * 60;  // number of seconds between 1904 and 1970
+        mTime = (int) time;
+        mFragmented = fragmented;
+        mChunkOffset = -1;
+    }
+
+    // Total size of the header, in bytes. The AAC stream should follow immediately.
+    public int getSize() {
+        return mHeaderSize;
+    }
+
+    // Size of the moov atom alone, in bytes.
+    public int getMoovSize() {
+        return mMOOVSize;
+    }
+
+    // Size of the AAC stream, in bytes.
+    public long getStreamSize() {
+        return mTotSize;
+    }
+
+    // Set the offset of the AAC stream in the file, for files where it does not follow the header
+    // (e.g. when the moov atom is written after it). A negative offset restores the default.
+    public void setChunkOffset(long offset) {
+        mChunkOffset = offset;
+        computeLayout();
+    }
+
+    // Returns the header in a new array.
+    public byte[] getHeader() {
+        byte[] header = new byte[mHeaderSize];
+        write(ByteBuffer.wrap(header));
+        return header;
+    }
+
+    // Writes the header at the current position of out (at least getSize() bytes must remain).
+    // The byte order of out is not used: MP4 is big-endian.
+    public void write(ByteBuffer out) {
+        if (out.remaining() < mHeaderSize) {
+            throw new IllegalArgumentException("Buffer too small for the header");
+        }
+        ByteOrder order = out.order();
+        out.order(ByteOrder.BIG_ENDIAN);
+        writeFTYP(out);
+        writeMOOV(out);
+        if (!mFragmented) {
+            // Empty mdat atom, with the size of the AAC stream that should follow.
+            putMdatHeader(out, mTotSize);
+        }
+        out.order(order);
+    }
+
+    // Writes the moov atom alone at the current position of out (at least getMoovSize() bytes
+    // must remain).
+    public void writeMoov(ByteBuffer out) {
+        if (out.remaining() < mMOOVSize) {
+            throw new IllegalArgumentException("Buffer too small for the moov atom");
+        }
+        ByteOrder order = out.order();
+        out.order(ByteOrder.BIG_ENDIAN);
+        writeMOOV(out);
+        out.order(order);
+    }
+
+    // Writes the header into channel, at the given position.
+    public void write(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(mHeaderSize);
+        write(buffer);
+        buffer.flip();
+        writeFully(channel, buffer, position);
+    }
+
+    // Writes the moov atom alone into channel, at the given position.
+    public void writeMoov(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(mMOOVSize);
+        writeMoov(buffer);
+        buffer.flip();
+        writeFully(channel, buffer, position);
+    }
+
+    // Size of the header of an mdat atom holding dataSize bytes.
+    static int getMdatHeaderSize(long dataSize) {
+        return (MDAT_HEADER_SIZE + dataSize > MAX_32_BITS)
+                ? MDAT_LARGE_HEADER_SIZE : MDAT_HEADER_SIZE;
+    }
+
+    // Header of an mdat atom holding dataSize bytes: 32 bits size, or size 1 followed by a 64
+    // bits 'largesize' if the atom does not fit in 4GB.
+    static void putMdatHeader(ByteBuffer out, long dataSize) {
+        if (getMdatHeaderSize(dataSize) == MDAT_HEADER_SIZE) {
+            putAtomHeader(out, (int) (MDAT_HEADER_SIZE + dataSize), "mdat");
+        } else {
+            putAtomHeader(out, 1, "mdat");
+            out.putLong(MDAT_LARGE_HEADER_SIZE + dataSize);
+        }
+    }
+
+    static void writeFTYP(ByteBuffer out) {
+        putAtomHeader(out, FTYP_SIZE, "ftyp");
+        putType(out, "M4A ");  // Major brand
+        out.putInt(0);         // Minor version
+        putType(out, "M4A ");  // compatible brands
+        putType(out, "mp42");
+        putType(out, "isom");
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void writeMOOV(ByteBuffer out) {
+        putAtomHeader(out, mMOOVSize, "moov");
+        writeMVHD(out);
+        putAtomHeader(out, mTRAKSize, "trak");
+        writeTKHD(out);
+        putAtomHeader(out, mMDIASize, "mdia");
+        writeMDHD(out);
+        writeHDLR(out);
+        putAtomHeader(out, mMINFSize, "minf");
+        writeSMHD(out);
+        writeDINF(out);
+        putAtomHeader(out, mSTBLSize, "stbl");
+        writeSTSD(out);
+        writeSTTS(out);
+        writeSTSC(out);
+        writeSTSZ(out);
+        writeSTCO(out);
+        if (mFragmented) {
+            writeMVEX(out);
+        }
+    }
+
+    private void computeLayout() {
+        mMaxFrameSize = 0;
+        mTotSize = 0;
+        for (int i = 0; i < mNumFrames; i++) {
+            if (mMaxFrameSize < mFrameSize[i]) {
+                mMaxFrameSize = mFrameSize[i];
+            }
+            mTotSize += mFrameSize[i];
+        }
+        // 1st frame does not contain samples.
+        mNumSamples = mFragmented ? 0 : (long) mSamplesPerFrame * (mNumFrames - 1);
+        mDurationMS = (mNumSamples * 1000 + mSampleRate - 1) / mSampleRate;  // round up
+        mMDHDSize = (mNumSamples > MAX_32_BITS) ? MDHD_V1_SIZE : MDHD_SIZE;
+        // The default chunk offset (right after the header) is always small: a 64 bits table is
+        // only needed when the caller puts the stream beyond 4GB.
+        mChunkOffsetSize = (mChunkOffset > MAX_32_BITS) ? CO64_SIZE : STCO_SIZE;
+
+        computeAudioSpecificConfig();
+        // ES Descriptor: tag, length, ES ID, flags, Decoder Configuration Descriptor (tag, length,
+        // 13 bytes, Audio Specific Config), SL Config Descriptor (3 bytes).
+        mESDescriptorSize = 2 + 3 + (2 + 13 + 2 + mAudioSpecificConfigLength) + 3;
+        mESDSSize = 12 + mESDescriptorSize;
+        mMP4ASize = 8 + 28 + mESDSSize;
+        mSTSDSize = 12 + 4 + mMP4ASize;
+        mSTTSSize = mFragmented ? EMPTY_TABLE_SIZE : STTS_SIZE;
+        mSTSCSize = mFragmented ? EMPTY_TABLE_SIZE : STSC_SIZE;
+        mSTSZSize = 12 + 8 + 4 * mNumFrames;
+        if (mFragmented) {
+            mChunkOffsetSize = EMPTY_TABLE_SIZE;
+        }
+        mSTBLSize = 8 + mSTSDSize + mSTTSSize + mSTSCSize + mSTSZSize + mChunkOffsetSize;
+        mMINFSize = 8 + SMHD_SIZE + DINF_SIZE + mSTBLSize;
+        mMDIASize = 8 + mMDHDSize + HDLR_SIZE + mMINFSize;
+        mTRAKSize = 8 + TKHD_SIZE + mMDIASize;
+        mMOOVSize = 8 + MVHD_SIZE + mTRAKSize;
+        if (mFragmented) {
+            mMOOVSize += MVEX_SIZE;
+            mHeaderSize = FTYP_SIZE + mMOOVSize;
+        } else {
+            mHeaderSize = FTYP_SIZE + mMOOVSize + getMdatHeaderSize(mTotSize);
+        }
+    }
+
+    // AAC LC: object type (5 bits), sampling frequency index (4), channels (4), GASpecificConfig
+    // (3 bits: 1024 samples/frame, no core coder, no extension).
+    // HE-AAC, explicit hierarchical signaling (cf. section 1.6.5.2 of ISO/IEC 14496-3): object
+    // type 5, core sampling frequency index, channels, extension (output) sampling frequency
+    // index, object type 2 of the core and its GASpecificConfig.
+    private void computeAudioSpecificConfig() {
+        int index = getSamplingFrequencyIndex(mSampleRate);
+        long bits;
+        int numBits;
+        if (mAACObjectType == ExportProfile.AAC_OBJECT_HE) {
+            int coreIndex = getSamplingFrequencyIndex(mSampleRate / 2);
+            bits = ExportProfile.AAC_OBJECT_HE;
+            bits = (bits << 4) | coreIndex;
+            bits = (bits << 4) | (mChannels & 0x0F);
+            bits = (bits << 4) | index;
+            bits = (bits << 5) | ExportProfile.AAC_OBJECT_LC;
+            bits = (bits << 3);
+            numBits = 25;
+        } else {
+            bits = ExportProfile.AAC_OBJECT_LC;
+            bits = (bits << 4) | index;
+            bits = (bits << 4) | (mChannels & 0x0F);
+            bits = (bits << 3);
+            numBits = 16;
+        }
+        mAudioSpecificConfigLength = (numBits + 7) / 8;
+        mAudioSpecificConfig = bits << (mAudioSpecificConfigLength * 8 - numBits);
+    }
+
+    private static int getSamplingFrequencyIndex(int sampleRate) {
+        switch (sampleRate) {
+            case 96000: return 0;
+            case 88200: return 1;
+            case 64000: return 2;
+            case 48000: return 3;
+            case 44100: return 4;
+            case 32000: return 5;
+            case 24000: return 6;
+            case 22050: return 7;
+            case 16000: return 8;
+            case 12000: return 9;
+            case 11025: return 10;
+            case 8000: return 11;
+            case 7350: return 12;
+            default: return 4;  // Invalid sampling frequency. Default to 44100Hz...
+        }
+    }
+
+    static void putAtomHeader(ByteBuffer out, int size, String type) {
+        out.putInt(size);
+        putType(out, type);
+    }
+
+    static void putFullAtomHeader(ByteBuffer out, int size, String type, int flags) {
+        putAtomHeader(out, size, type);
+        out.putInt(flags);  // version 0, flags.
+    }
+
+    static void putType(ByteBuffer out, String type) {
+        out.put((byte) type.charAt(0));
+        out.put((byte) type.charAt(1));
+        out.put((byte) type.charAt(2));
+        out.put((byte) type.charAt(3));
+    }
+
+    private static void putZeros(ByteBuffer out, int count) {
+        for (int i = 0; i < count; i++) {
+            out.put((byte) 0);
+        }
+    }
+
+    private static void putUnityMatrix(ByteBuffer out) {
+        out.putInt(0x00010000);
+        out.putInt(0);
+        out.putInt(0);
+        out.putInt(0);
+        out.putInt(0x00010000);
+        out.putInt(0);
+        out.putInt(0);
+        out.putInt(0);
+        out.putInt(0x40000000);
+    }
+
+    private void writeMVHD(ByteBuffer out) {
+        putFullAtomHeader(out, MVHD_SIZE, "mvhd", 0);
+        out.putInt(mTime);         // creation time.
+        out.putInt(mTime);         // modification time.
+        out.putInt(1000);          // timescale = 1000 => duration expressed in ms.
+        out.putInt((int) mDurationMS);  // duration in ms (32 bits is about 49 days).
+        out.putInt(0x00010000);    // rate = 1.0
+        out.putShort((short) 0x0100);  // volume = 1.0
+        putZeros(out, 10);         // reserved
+        putUnityMatrix(out);
+        putZeros(out, 24);         // pre-defined
+        out.putInt(2);             // next track ID
+    }
+
+    private void writeTKHD(ByteBuffer out) {
+        putFullAtomHeader(out, TKHD_SIZE, "tkhd", 0x07);  // track enabled, in movie, and in preview.
+        out.putInt(mTime);         // creation time.
+        out.putInt(mTime);         // modification time.
+        out.putInt(1);             // track ID
+        out.putInt(0);             // reserved
+        out.putInt((int) mDurationMS);  // duration in ms.
+        putZeros(out, 8);          // reserved
+        out.putShort((short) 0);   // layer
+        out.putShort((short) 0);   // alternate group
+        out.putShort((short) 0x0100);  // volume = 1.0
+        out.putShort((short) 0);   // reserved
+        putUnityMatrix(out);
+        out.putInt(0);             // width
+        out.putInt(0);             // height
+    }
+
+    private void writeMDHD(ByteBuffer out) {
+        if (mMDHDSize == MDHD_V1_SIZE) {
+            // Version 1: 64 bits times and duration.
+            putFullAtomHeader(out, MDHD_V1_SIZE, "mdhd", 0x01000000);
+            out.putLong(mTime & MAX_32_BITS);  // creation time.
+            out.putLong(mTime & MAX_32_BITS);  // modification time.
+            out.putInt(mSampleRate);   // timescale = Fs => duration expressed in samples.
+            out.putLong(mNumSamples);  // duration
+        } else {
+            putFullAtomHeader(out, MDHD_SIZE, "mdhd", 0);
+            out.putInt(mTime);         // creation time.
+            out.putInt(mTime);         // modification time.
+            out.putInt(mSampleRate);   // timescale = Fs => duration expressed in samples.
+            out.putInt((int) mNumSamples);  // duration
+        }
+        out.putShort((short) 0);   // languages
+        out.putShort((short) 0);   // pre-defined
+    }
+
+    private void writeHDLR(ByteBuffer out) {
+        putFullAtomHeader(out, HDLR_SIZE, "hdlr", 0);
+        out.putInt(0);             // pre-defined
+        putType(out, "soun");      // handler type
+        putZeros(out, 12);         // reserved
+        putType(out, "Soun");      // name (used only for debugging and inspection purposes).
+        putType(out, "dHan");
+        putType(out, "dle\0");
+    }
+
+    private void writeSMHD(ByteBuffer out) {
+        putFullAtomHeader(out, SMHD_SIZE, "smhd", 0);
+        out.putShort((short) 0);   // balance (center)
+        out.putShort((short) 0);   // reserved
+    }
+
+    private void writeDINF(ByteBuffer out) {
+        putAtomHeader(out, DINF_SIZE, "dinf");
+        putFullAtomHeader(out, DREF_SIZE, "dref", 0);
+        out.putInt(1);             // entry count = 1
+        putFullAtomHeader(out, URL_SIZE, "url ", 0x01);  // flags = 0x01: data is self contained.
+    }
+
+    private void writeSTSD(ByteBuffer out) {
+        putFullAtomHeader(out, mSTSDSize, "stsd", 0);
+        out.putInt(1);             // entry count = 1
+        // See also Part 14 section 5.6.1 of ISO/IEC 14496 for this atom.
+        putAtomHeader(out, mMP4ASize, "mp4a");
+        putZeros(out, 6);          // reserved
+        out.putShort((short) 1);   // data reference index
+        putZeros(out, 8);          // reserved
+        out.putShort((short) mChannels);  // channel count
+        out.putShort((short) 16);  // sample size
+        out.putShort((short) 0);   // pre-defined
+        out.putShort((short) 0);   // reserved
+        out.putShort((short) mSampleRate);  // sample rate (16.16)
+        out.putShort((short) 0);
+        putFullAtomHeader(out, mESDSSize, "esds", 0);
+        writeESDescriptor(out);
+    }
+
+    // ES Descriptor for an ISO/IEC 14496-3 audio stream, AAC LC or HE-AAC. The decoder buffer size
+    // is set so that it can contain at least 2 frames. (See section 7.2.6.5 of ISO/IEC 14496-1 for
+    // more details).
+    private void writeESDescriptor(ByteBuffer out) {
+        int bufferSize = 0x300;
+        while (bufferSize < 2 * mMaxFrameSize) {
+            bufferSize += 0x100;
+        }
+        out.put((byte) 0x03);  // ES Descriptor tag
+        out.put((byte) (mESDescriptorSize - 2));
+        out.put((byte) 0);     // ES ID
+        out.put((byte) 0);
+        out.put((byte) 0);     // flags
+        // Decoder Configuration Descriptor. Audio ISO/IEC 14496-3, AudioStream.
+        out.put((byte) 0x04);
+        out.put((byte) (13 + 2 + mAudioSpecificConfigLength));
+        out.put((byte) 0x40);
+        out.put((byte) 0x15);
+        out.put((byte) (bufferSize >> 16));
+        out.putShort((short) bufferSize);
+        out.putInt(mBitrate);  // max bitrate
+        out.putInt(mBitrate);  // average bitrate
+        // Audio Specific Config.
+        out.put((byte) 0x05);
+        out.put((byte) mAudioSpecificConfigLength);
+        for (int i = 0; i < mAudioSpecificConfigLength; i++) {
+            out.put((byte) (mAudioSpecificConfig >> (8 * (mAudioSpecificConfigLength - 1 - i))));
+        }
+        // SL Config Descriptor, specific for MP4 file.
+        out.put((byte) 0x06);
+        out.put((byte) 0x01);
+        out.put((byte) 0x02);
+    }
+
+    private void writeSTTS(ByteBuffer out) {
+        if (mFragmented) {
+            putFullAtomHeader(out, EMPTY_TABLE_SIZE, "stts", 0);
+            out.putInt(0);                   // entry count
+            return;
+        }
+        putFullAtomHeader(out, STTS_SIZE, "stts", 0);
+        out.putInt(2);                   // entry count
+        out.putInt(1);                   // first frame contains no audio
+        out.putInt(0);
+        out.putInt(mNumFrames - 1);
+        out.putInt(mSamplesPerFrame);    // delay between frames = mSamplesPerFrame samples
+                                         // (cf. timescale = Fs)
+    }
+
+    private void writeSTSC(ByteBuffer out) {
+        if (mFragmented) {
+            putFullAtomHeader(out, EMPTY_TABLE_SIZE, "stsc", 0);
+            out.putInt(0);             // entry count
+            return;
+        }
+        putFullAtomHeader(out, STSC_SIZE, "stsc", 0);
+        out.putInt(1);             // entry count
+        out.putInt(1);             // first chunk
+        out.putInt(mNumFrames);    // samples per chunk
+        out.putInt(1);             // sample description index
+    }
+
+    private void writeSTSZ(ByteBuffer out) {
+        putFullAtomHeader(out, mSTSZSize, "stsz", 0);
+        out.putInt(0);             // sample size (=0 => each frame can have a different size)
+        out.putInt(mNumFrames);    // sample count
+        for (int i = 0; i < mNumFrames; i++) {
+            out.putInt(mFrameSize[i]);
+        }
+    }
+
+    private void writeSTCO(ByteBuffer out) {
+        if (mFragmented) {
+            putFullAtomHeader(out, EMPTY_TABLE_SIZE, "stco", 0);
+            out.putInt(0);             // entry count
+            return;
+        }
+        long offset = (mChunkOffset < 0) ? mHeaderSize : mChunkOffset;
+        if (mChunkOffsetSize == CO64_SIZE) {
+            putFullAtomHeader(out, CO64_SIZE, "co64", 0);
+            out.putInt(1);         // entry count
+            out.putLong(offset);   // chunk offset
+        } else {
+            putFullAtomHeader(out, STCO_SIZE, "stco", 0);
+            out.putInt(1);         // entry count
+            out.putInt((int) offset);  // chunk offset: by default, the AAC stream follows the
+                                       // header immediately.
+        }
+    }
+
+    // Movie extends: the frames are in fragments. Every frame lasts mSamplesPerFrame samples.
+    private void writeMVEX(ByteBuffer out) {
+        putAtomHeader(out, MVEX_SIZE, "mvex");
+        putFullAtomHeader(out, TREX_SIZE, "trex", 0);
+        out.putInt(1);                   // track ID
+        out.putInt(1);                   // default sample description index
+        out.putInt(mSamplesPerFrame);    // default sample duration
+        out.putInt(0);                   // default sample size
+        out.putInt(0);                   // default sample flags (every AAC frame is a sync sample)
+    }
+}
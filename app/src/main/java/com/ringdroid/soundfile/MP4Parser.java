@@ -0,0 +1,592 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Reads the sample tables of the first audio track of an MP4 (.m4a) file into primitive arrays:
+ * for every access unit ("frame" here, to avoid confusion with PCM samples), its offset in the
+ * file, its size and its decode time. Any frame can then be located in constant time, and the
+ * frame containing a given time by a binary search, without decoding anything.
+ * <p>
+ * Regular files (stsz, stco or co64, stsc, stts) and fragmented files (moof atoms with tfhd, tfdt
+ * and trun, as written by FragmentedMP4Writer) are supported. Only the atoms needed for the index
+ * are read: the media data is never touched.
+ * <p>
+ * 将MP4文件第一个音轨的样本表读入基本数组：每个访问单元在文件中的偏移量、大小和解码时间。
+ */
+public class MP4Parser {
+    // Largest container atom (moov or moof) read into memory.
+    private static final int MAX_ATOM_SIZE = 64 << 20;
+
+    private int mTrackId;
+    private int mTimescale;
+    private int mSampleRate;
+    private int mChannels;
+    private byte[] mAudioSpecificConfig;  // null if the track is not AAC.
+    private int mMaxFrameSize;
+
+    // Defaults of the track for the fragments (trex).
+    private int mDefaultFrameDuration;
+    private int mDefaultFrameSize;
+
+    private int mNumFrames;
+    private long[] mFrameOffsets;  // in bytes, from the start of the file.
+    private int[] mFrameSizes;     // in bytes.
+    private long[] mFrameTimes;    // decode times, in timescale units.
+    private long mDuration;        // end of the last frame, in timescale units.
+
+    private MP4Parser() {
+        mTrackId = -1;
+        mNumFrames = 0;
+        mFrameOffsets = new long[0];
+        mFrameSizes = new int[0];
+        mFrameTimes = new long[0];
+    }
+
+    // Parse file. Throws an IOException if it is not an MP4 file with an audio track.
+    // 解析文件。如果不是带有音轨的MP4文件，则抛出IOException。
+    public static MP4Parser parse(File file) throws IOException {
+        MP4Parser parser = new MP4Parser();
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            parser.parseFile(input);
+        } catch (RuntimeException e) {
+            // Buffer underflow or bad position in a truncated or malformed atom.
+            throw new IOException("Malformed MP4 file: " + file, e);
+        } finally {
+            input.close();
+        }
+        if (parser.mTrackId < 0) {
+            throw new IOException("No audio track found in " + file);
+        }
+        return parser;
+    }
+
+    // Timescale of the track: number of time units per second.
+    public int getTimescale() {
+        return mTimescale;
+    }
+
+    // Output sampling rate (from the Audio Specific Config for AAC, from the track otherwise).
+    // 输出采样率。
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    // Audio Specific Config of an AAC track, null for other codecs.
+    public byte[] getAudioSpecificConfig() {
+        return mAudioSpecificConfig;
+    }
+
+    public int getNumFrames() {
+        return mNumFrames;
+    }
+
+    public int getMaxFrameSize() {
+        return mMaxFrameSize;
+    }
+
+    // Offset of frame i in the file, in bytes.
+    // 第i帧在文件中的偏移量（以字节为单位）。
+    public long getFrameOffset(int i) {
+        return mFrameOffsets[i];
+    }
+
+    // Size of frame i, in bytes.
+    public int getFrameSize(int i) {
+        return mFrameSizes[i];
+    }
+
+    // Decode time of frame i, in timescale units.
+    // 第i帧的解码时间，以时间刻度单位表示。
+    public long getFrameTime(int i) {
+        return mFrameTimes[i];
+    }
+
+    // Decode time of frame i, in microseconds.
+    public long getFrameTimeUs(int i) {
+        return mFrameTimes[i] * 1000000L / mTimescale;
+    }
+
+    // Duration of the track, in timescale units.
+    public long getDuration() {
+        return mDuration;
+    }
+
+    public long getDurationUs() {
+        return mDuration * 1000000L / mTimescale;
+    }
+
+    // Index of the frame containing timeUs (the last frame starting at or before it), 0 if timeUs
+    // is before the first frame, -1 if there is no frame.
+    // 包含timeUs的帧的索引。
+    public int findFrame(long timeUs) {
+        if (mNumFrames == 0) {
+            return -1;
+        }
+        long time = timeUs * mTimescale / 1000000L;
+        int index = Arrays.binarySearch(mFrameTimes, 0, mNumFrames, time);
+        if (index < 0) {
+            index = -index - 2;  // insertion point - 1.
+        } else {
+            // Frames of zero duration (e.g. an AAC codec config) share their time with the next
+            // one: return the last of them.
+            while (index + 1 < mNumFrames && mFrameTimes[index + 1] == time) {
+                index++;
+            }
+        }
+        return Math.max(index, 0);
+    }
+
+    private void parseFile(RandomAccessFile input) throws IOException {
+        long length = input.length();
+        long position = 0;
+        byte[] header = new byte[16];
+        while (position + 8 <= length) {
+            input.seek(position);
+            input.readFully(header, 0, 8);
+            ByteBuffer buffer = ByteBuffer.wrap(header);
+            long size = buffer.getInt() & 0xFFFFFFFFL;
+            String type = getType(buffer);
+            int headerSize = 8;
+            if (size == 1) {
+                input.readFully(header, 8, 8);
+                size = buffer.getLong();
+                headerSize = 16;
+            } else if (size == 0) {
+                size = length - position;  // the atom extends to the end of the file.
+            }
+            if (size < headerSize) {
+                throw new IOException("Invalid size for atom " + type + " at " + position);
+            }
+            if (type.equals("moov")) {
+                parseMoov(readBody(input, position + headerSize, size - headerSize));
+            } else if (type.equals("moof") && mTrackId >= 0) {
+                parseMoof(readBody(input, position + headerSize, size - headerSize), position);
+            }
+            position += size;
+        }
+    }
+
+    private static ByteBuffer readBody(RandomAccessFile input, long position, long size)
+            throws IOException {
+        if (size > MAX_ATOM_SIZE) {
+            throw new IOException("Atom too large: " + size + " bytes");
+        }
+        byte[] body = new byte[(int) size];
+        input.seek(position);
+        input.readFully(body);
+        return ByteBuffer.wrap(body).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    private static String getType(ByteBuffer buffer) {
+        char[] type = new char[4];
+        for (int i = 0; i < 4; i++) {
+            type[i] = (char) (buffer.get() & 0xFF);
+        }
+        return new String(type);
+    }
+
+    // Body of the first child atom of container (from its position) with the given type, or
+    // null. The position of container is not modified.
+    private static ByteBuffer findChild(ByteBuffer container, String type) throws IOException {
+        return nextChild(container.duplicate(), type);
+    }
+
+    // Same as findChild(), but the position of buffer is moved past the atom found (to its limit
+    // if there is none), so that consecutive calls return all the atoms of the given type.
+    private static ByteBuffer nextChild(ByteBuffer buffer, String type) throws IOException {
+        while (buffer.remaining() >= 8) {
+            int start = buffer.position();
+            long size = buffer.getInt() & 0xFFFFFFFFL;
+            String childType = getType(buffer);
+            if (size == 1) {
+                size = buffer.getLong();
+            } else if (size == 0) {
+                size = buffer.limit() - start;
+            }
+            int headerSize = buffer.position() - start;
+            if (size < headerSize || start + size > buffer.limit()) {
+                throw new IOException("Invalid size for atom " + childType);
+            }
+            ByteBuffer body = null;
+            if (childType.equals(type)) {
+                body = buffer.slice();
+                body.limit((int) size - headerSize);
+                body.order(ByteOrder.BIG_ENDIAN);
+            }
+            buffer.position((int) (start + size));
+            if (body != null) {
+                return body;
+            }
+        }
+        buffer.position(buffer.limit());
+        return null;
+    }
+
+    // Same as findChild(), but throws if the atom is missing.
+    private static ByteBuffer getChild(ByteBuffer container, String type) throws IOException {
+        ByteBuffer child = findChild(container, type);
+        if (child == null) {
+            throw new IOException("Missing " + type + " atom");
+        }
+        return child;
+    }
+
+    private void parseMoov(ByteBuffer moov) throws IOException {
+        if (mTrackId >= 0) {
+            return;  // only the first moov matters.
+        }
+        ByteBuffer buffer = moov.duplicate();
+        ByteBuffer trak;
+        while ((trak = nextChild(buffer, "trak")) != null) {
+            ByteBuffer mdia = getChild(trak, "mdia");
+            ByteBuffer hdlr = getChild(mdia, "hdlr");
+            hdlr.position(8);  // version, flags and pre-defined.
+            if (!getType(hdlr).equals("soun")) {
+                continue;
+            }
+            parseTkhd(getChild(trak, "tkhd"));
+            parseMdhd(getChild(mdia, "mdhd"));
+            ByteBuffer stbl = getChild(getChild(mdia, "minf"), "stbl");
+            parseStsd(getChild(stbl, "stsd"));
+            parseSampleTables(stbl);
+            break;
+        }
+        if (mTrackId < 0) {
+            return;
+        }
+        ByteBuffer mvex = findChild(moov, "mvex");
+        if (mvex != null) {
+            ByteBuffer rest = mvex.duplicate();
+            ByteBuffer trex;
+            while ((trex = nextChild(rest, "trex")) != null) {
+                trex.position(4);
+                if (trex.getInt() == mTrackId) {
+                    trex.getInt();  // default sample description index.
+                    mDefaultFrameDuration = trex.getInt();
+                    mDefaultFrameSize = trex.getInt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private void parseTkhd(ByteBuffer tkhd) {
+        int version = tkhd.get() & 0xFF;
+        tkhd.position(version == 1 ? 4 + 16 : 4 + 8);  // skip creation and modification times.
+        mTrackId = tkhd.getInt();
+    }
+
+    private void parseMdhd(ByteBuffer mdhd) {
+        int version = mdhd.get() & 0xFF;
+        mdhd.position(version == 1 ? 4 + 16 : 4 + 8);
+        mTimescale = mdhd.getInt();
+        if (mTimescale <= 0) {
+            mTimescale = 1000;
+        }
+        mSampleRate = mTimescale;
+    }
+
+    // Sample description: number of channels and sampling rate of the first entry, and the
+    // Audio Specific Config of AAC streams (from esds).
+    private void parseStsd(ByteBuffer stsd) throws IOException {
+        stsd.position(8);  // version, flags and entry count.
+        ByteBuffer entry = stsd.slice();
+        // Audio sample entry: 8 bytes header, 6 reserved, data reference index, 8 reserved,
+        // channel count, sample size, 4 reserved, sample rate (16.16), then the child atoms.
+        entry.position(8 + 16);
+        mChannels = entry.getShort() & 0xFFFF;
+        entry.position(8 + 24);
+        int sampleRate = entry.getShort() & 0xFFFF;
+        if (sampleRate > 0) {
+            mSampleRate = sampleRate;
+        }
+        entry.position(8 + 28);
+        ByteBuffer esds = findChild(entry, "esds");
+        if (esds != null) {
+            esds.position(4);  // version and flags.
+            parseESDescriptor(esds);
+        }
+    }
+
+    // Look for the Decoder Specific Info (tag 5) in the ES Descriptor (cf. ISO/IEC 14496-1).
+    private void parseESDescriptor(ByteBuffer esds) {
+        while (esds.remaining() >= 2) {
+            int tag = esds.get() & 0xFF;
+            int length = readDescriptorLength(esds);
+            if (tag == 0x03) {
+                esds.position(esds.position() + 2);  // ES ID.
+                int flags = esds.get() & 0xFF;
+                if ((flags & 0x80) != 0) {
+                    esds.position(esds.position() + 2);  // depends on ES ID.
+                }
+                if ((flags & 0x40) != 0) {
+                    esds.position(esds.position() + 1 + (esds.get(esds.position()) & 0xFF));
+                }
+                if ((flags & 0x20) != 0) {
+                    esds.position(esds.position() + 2);  // OCR ES ID.
+                }
+            } else if (tag == 0x04) {
+                esds.position(esds.position() + 13);  // object type, stream type, bitrates...
+            } else if (tag == 0x05) {
+                length = Math.min(length, esds.remaining());
+                mAudioSpecificConfig = new byte[length];
+                esds.get(mAudioSpecificConfig);
+                parseAudioSpecificConfig();
+                return;
+            } else {
+                esds.position(Math.min(esds.limit(), esds.position() + length));
+            }
+        }
+    }
+
+    private static int readDescriptorLength(ByteBuffer buffer) {
+        int length = 0;
+        for (int i = 0; i < 4 && buffer.hasRemaining(); i++) {
+            int b = buffer.get() & 0xFF;
+            length = (length << 7) | (b & 0x7F);
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return length;
+    }
+
+    // Output sampling rate and channels from the Audio Specific Config (cf. ISO/IEC 14496-3,
+    // section 1.6.2.1), including HE-AAC with explicit signaling.
+    private void parseAudioSpecificConfig() {
+        if (mAudioSpecificConfig.length < 2) {
+            return;
+        }
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits <<= 8;
+            if (i < mAudioSpecificConfig.length) {
+                bits |= mAudioSpecificConfig[i] & 0xFF;
+            }
+        }
+        int position = 64;
+        position -= 5;
+        int objectType = (int) (bits >>> position) & 0x1F;
+        position -= 4;
+        int sampleRate = getSamplingFrequency((int) (bits >>> position) & 0x0F);
+        if (((bits >>> position) & 0x0F) == 0x0F) {
+            position -= 24;
+            sampleRate = (int) (bits >>> position) & 0xFFFFFF;
+        }
+        position -= 4;
+        int channels = (int) (bits >>> position) & 0x0F;
+        if ((objectType == 5 || objectType == 29) && position >= 4) {
+            // SBR: the extension sampling frequency is the output one.
+            position -= 4;
+            int index = (int) (bits >>> position) & 0x0F;
+            if (index != 0x0F) {
+                sampleRate = getSamplingFrequency(index);
+            }
+        }
+        if (sampleRate > 0) {
+            mSampleRate = sampleRate;
+        }
+        if (channels > 0 && channels < 7) {
+            mChannels = channels;
+        }
+    }
+
+    private static int getSamplingFrequency(int index) {
+        final int[] frequencies = {96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050,
+                16000, 12000, 11025, 8000, 7350};
+        return (index < frequencies.length) ? frequencies[index] : 0;
+    }
+
+    // stsz, stco or co64, stsc and stts into the frame arrays.
+    private void parseSampleTables(ByteBuffer stbl) throws IOException {
+        ByteBuffer stsz = getChild(stbl, "stsz");
+        stsz.position(4);
+        int fixedSize = stsz.getInt();
+        int numFrames = stsz.getInt();
+        ensureCapacity(numFrames);
+        for (int i = 0; i < numFrames; i++) {
+            mFrameSizes[i] = (fixedSize != 0) ? fixedSize : stsz.getInt();
+            mMaxFrameSize = Math.max(mMaxFrameSize, mFrameSizes[i]);
+        }
+
+        // Chunk offsets.
+        long[] chunkOffsets;
+        ByteBuffer stco = findChild(stbl, "stco");
+        if (stco != null) {
+            stco.position(4);
+            chunkOffsets = new long[stco.getInt()];
+            for (int i = 0; i < chunkOffsets.length; i++) {
+                chunkOffsets[i] = stco.getInt() & 0xFFFFFFFFL;
+            }
+        } else {
+            ByteBuffer co64 = getChild(stbl, "co64");
+            co64.position(4);
+            chunkOffsets = new long[co64.getInt()];
+            for (int i = 0; i < chunkOffsets.length; i++) {
+                chunkOffsets[i] = co64.getLong();
+            }
+        }
+
+        // Frame offsets: walk the chunks, using the runs of stsc for the number of frames in each.
+        ByteBuffer stsc = getChild(stbl, "stsc");
+        stsc.position(4);
+        int numRuns = stsc.getInt();
+        int frame = 0;
+        for (int run = 0; run < numRuns && frame < numFrames; run++) {
+            int firstChunk = stsc.getInt() - 1;
+            int framesPerChunk = stsc.getInt();
+            stsc.getInt();  // sample description index.
+            int lastChunk = chunkOffsets.length;  // exclusive.
+            if (run + 1 < numRuns) {
+                lastChunk = Math.min(lastChunk, stsc.getInt(stsc.position()) - 1);
+            }
+            for (int chunk = firstChunk; chunk < lastChunk && frame < numFrames; chunk++) {
+                long offset = chunkOffsets[chunk];
+                for (int i = 0; i < framesPerChunk && frame < numFrames; i++) {
+                    mFrameOffsets[frame] = offset;
+                    offset += mFrameSizes[frame];
+                    frame++;
+                }
+            }
+        }
+        if (frame < numFrames) {
+            throw new IOException("Inconsistent sample tables: " + frame + " of " + numFrames
+                    + " frames located");
+        }
+
+        // Decode times.
+        ByteBuffer stts = getChild(stbl, "stts");
+        stts.position(4);
+        int numEntries = stts.getInt();
+        long time = 0;
+        frame = 0;
+        for (int entry = 0; entry < numEntries && frame < numFrames; entry++) {
+            int count = stts.getInt();
+            int delta = stts.getInt();
+            for (int i = 0; i < count && frame < numFrames; i++) {
+                mFrameTimes[frame++] = time;
+                time += delta;
+            }
+        }
+        while (frame < numFrames) {
+            mFrameTimes[frame++] = time;  // stts too short: give the remaining frames no length.
+        }
+        mNumFrames = numFrames;
+        mDuration = time;
+    }
+
+    // One movie fragment: the runs (trun) of the traf atoms of our track.
+    private void parseMoof(ByteBuffer moof, long moofOffset) throws IOException {
+        ByteBuffer buffer = moof.duplicate();
+        ByteBuffer traf;
+        while ((traf = nextChild(buffer, "traf")) != null) {
+            ByteBuffer tfhd = getChild(traf, "tfhd");
+            int flags = tfhd.getInt() & 0xFFFFFF;
+            if (tfhd.getInt() != mTrackId) {
+                continue;
+            }
+            long baseOffset = moofOffset;
+            if ((flags & 0x000001) != 0) {
+                baseOffset = tfhd.getLong();
+            }
+            if ((flags & 0x000002) != 0) {
+                tfhd.getInt();  // sample description index.
+            }
+            int defaultDuration = mDefaultFrameDuration;
+            int defaultSize = mDefaultFrameSize;
+            if ((flags & 0x000008) != 0) {
+                defaultDuration = tfhd.getInt();
+            }
+            if ((flags & 0x000010) != 0) {
+                defaultSize = tfhd.getInt();
+            }
+            ByteBuffer tfdt = findChild(traf, "tfdt");
+            if (tfdt != null) {
+                int version = tfdt.get() & 0xFF;
+                tfdt.position(4);
+                mDuration = (version == 1) ? tfdt.getLong() : (tfdt.getInt() & 0xFFFFFFFFL);
+            }
+            long dataOffset = baseOffset;
+            ByteBuffer rest = traf.duplicate();
+            ByteBuffer trun;
+            while ((trun = nextChild(rest, "trun")) != null) {
+                dataOffset = parseTrun(trun, baseOffset, dataOffset, defaultDuration, defaultSize);
+            }
+        }
+    }
+
+    // Returns the offset following the data of the run.
+    private long parseTrun(ByteBuffer trun, long baseOffset, long dataOffset,
+                           int defaultDuration, int defaultSize) {
+        int flags = trun.getInt() & 0xFFFFFF;
+        int count = trun.getInt();
+        if ((flags & 0x000001) != 0) {
+            dataOffset = baseOffset + trun.getInt();
+        }
+        if ((flags & 0x000004) != 0) {
+            trun.getInt();  // first sample flags.
+        }
+        ensureCapacity(mNumFrames + count);
+        for (int i = 0; i < count; i++) {
+            int duration = defaultDuration;
+            int size = defaultSize;
+            if ((flags & 0x000100) != 0) {
+                duration = trun.getInt();
+            }
+            if ((flags & 0x000200) != 0) {
+                size = trun.getInt();
+            }
+            if ((flags & 0x000400) != 0) {
+                trun.getInt();  // sample flags.
+            }
+            if ((flags & 0x000800) != 0) {
+                trun.getInt();  // composition time offset.
+            }
+            mFrameOffsets[mNumFrames] = dataOffset;
+            mFrameSizes[mNumFrames] = size;
+            mFrameTimes[mNumFrames] = mDuration;
+            mMaxFrameSize = Math.max(mMaxFrameSize, size);
+            mNumFrames++;
+            dataOffset += size;
+            mDuration += duration;
+        }
+        return dataOffset;
+    }
+
+    private void ensureCapacity(int numFrames) {
+        if (mFrameSizes.length >= numFrames) {
+            return;
+        }
+        int capacity = Math.max(numFrames, mNumFrames + mNumFrames / 2);
+        mFrameOffsets = Arrays.copyOf(mFrameOffsets, capacity);
+        mFrameSizes = Arrays.copyOf(mFrameSizes, capacity);
+        mFrameTimes = Arrays.copyOf(mFrameTimes, capacity);
+    }
+}
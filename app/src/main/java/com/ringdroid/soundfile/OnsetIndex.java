@@ -0,0 +1,544 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Onsets and beats of a stream, found from its spectral flux in the same pass as the frame gains,
+ * to snap the markers to the beat and suggest loops made of whole bars.
+ * <p>
+ * The samples are mixed down to mono, averaged down to 16 - 32 kHz and cut in hops of about
+ * 10 ms; for each hop, the spectral flux is the sum of the increases of the (compressed)
+ * magnitudes of the spectrum since the previous hop. Only this envelope is kept while the stream
+ * is read. Onsets are its peaks above a moving average. The tempo is the period maximizing its
+ * autocorrelation, weighted towards 120 BPM, and the beats follow the tempo through the peaks of
+ * the envelope, by dynamic programming (D. Ellis, "Beat Tracking by Dynamic Programming", 2007),
+ * so the grid can drift with the music. Bars are taken as 4 beats long, starting on the beats
+ * with the strongest onsets.
+ * <p>
+ * The index itself only keeps the positions of the onsets and beats, as hops.
+ * <p>
+ * 流的起始点和节拍，与帧增益在同一遍中从频谱通量中找到，用于将标记对齐到节拍，并建议由完整小节组成的循环。
+ */
+public class OnsetIndex {
+    public static final int BEATS_PER_BAR = 4;
+
+    // About this many hops per second (the hop is a power of 2, for the FFT).
+    // 大约每秒这么多跳。
+    private static final int HOPS_PER_SECOND = 64;
+    // The samples are averaged down to at least this rate before the FFT: onsets show well
+    // enough below 8 kHz, and this halves the work at 44.1 kHz.
+    // 在FFT之前将样本平均降到至少这个采样率。
+    private static final int ANALYSIS_SAMPLE_RATE = 16000;
+    private static final double MIN_BPM = 60;
+    private static final double MAX_BPM = 200;
+    private static final double PREFERRED_BPM = 120;
+    // Width, in octaves, of the preference for PREFERRED_BPM.
+    // 对PREFERRED_BPM偏好的宽度（以八度为单位）。
+    private static final double TEMPO_OCTAVES = 1.0;
+    // Cost of beat intervals differing from the period (cf. Ellis).
+    // 节拍间隔与周期不同的代价。
+    private static final double TIGHTNESS = 100;
+    // An onset is a peak of the envelope over +-PEAK_HOPS hops, at least THRESHOLD standard
+    // deviations above the average of the AVERAGE_HOPS hops around it.
+    // 起始点是包络在+-PEAK_HOPS跳内的峰值，比周围AVERAGE_HOPS跳的平均值至少高THRESHOLD个标准差。
+    private static final int PEAK_HOPS = 3;
+    private static final int AVERAGE_HOPS = 16;
+    private static final double THRESHOLD = 0.5;
+
+    private final int mSampleRate;
+    private final long mFirstSample;  // position of the first sample, in the stream.
+    private final int mHopSamples;
+    private final int[] mOnsets;  // hops.
+    private final int[] mBeats;   // hops.
+    private final int mFirstDownbeat;  // index in mBeats.
+    // Prefix sums of the envelope over the beats before each index.
+    // 每个索引之前节拍上包络的前缀和。
+    private final double[] mBeatFlux;
+
+    private OnsetIndex(int sampleRate, long firstSample, int hopSamples, float[] flux,
+                       int numHops) {
+        mSampleRate = sampleRate;
+        mFirstSample = firstSample;
+        mHopSamples = hopSamples;
+
+        double mean = 0;
+        for (int i = 0; i < numHops; i++) {
+            mean += flux[i];
+        }
+        mean /= Math.max(1, numHops);
+        double variance = 0;
+        for (int i = 0; i < numHops; i++) {
+            variance += (flux[i] - mean) * (flux[i] - mean);
+        }
+        double deviation = Math.sqrt(variance / Math.max(1, numHops));
+        if (deviation < 1e-9) {
+            // Silence or a steady tone: nothing to find.
+            // 静音或稳定音调：没有可找的。
+            mOnsets = new int[0];
+            mBeats = new int[0];
+            mFirstDownbeat = 0;
+            mBeatFlux = new double[1];
+            return;
+        }
+        // The envelope, in standard deviations.
+        // 以标准差为单位的包络。
+        double[] envelope = new double[numHops];
+        for (int i = 0; i < numHops; i++) {
+            envelope[i] = flux[i] / deviation;
+        }
+        mOnsets = findOnsets(envelope);
+        double period = findPeriod(envelope, mean / deviation, sampleRate / (double) hopSamples);
+        mBeats = trimBeats(trackBeats(envelope, period), mOnsets, period);
+
+        // Bars start on the beats, among every BEATS_PER_BAR, with the strongest envelope.
+        // 小节从每BEATS_PER_BAR个节拍中包络最强的节拍开始。
+        double[] phases = new double[BEATS_PER_BAR];
+        for (int i = 0; i < mBeats.length; i++) {
+            phases[i % BEATS_PER_BAR] += envelope[mBeats[i]];
+        }
+        int downbeat = 0;
+        for (int i = 1; i < BEATS_PER_BAR; i++) {
+            if (phases[i] > phases[downbeat]) {
+                downbeat = i;
+            }
+        }
+        mFirstDownbeat = downbeat;
+
+        mBeatFlux = new double[mBeats.length + 1];
+        for (int i = 0; i < mBeats.length; i++) {
+            int end = i + 1 < mBeats.length ? mBeats[i + 1] : numHops;
+            double sum = 0;
+            for (int hop = mBeats[i]; hop < end; hop++) {
+                sum += envelope[hop];
+            }
+            mBeatFlux[i + 1] = mBeatFlux[i] + sum;
+        }
+    }
+
+    // Index of the samples from start to end (per channel) of source, read right away. Used
+    // where there was no analysis pass (files decoded on demand).
+    // source从start到end的样本的索引，立即读取。
+    public static OnsetIndex compute(PcmSource source, long start, long end) throws IOException {
+        start = Math.max(0, start);
+        end = Math.min(source.getNumSamples(), end);
+        Accumulator accumulator =
+                new Accumulator(source.getSampleRate(), source.getChannels(), start);
+        short[] buffer = new short[4096 * source.getChannels()];
+        source.seek(start);
+        for (long position = start; position < end; ) {
+            int count = source.read(buffer, 0, (int) Math.min(4096, end - position));
+            if (count <= 0) {
+                break;
+            }
+            accumulator.add(buffer, 0, count);
+            position += count;
+        }
+        return accumulator.getIndex();
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getNumOnsets() {
+        return mOnsets.length;
+    }
+
+    // Position of onset i, in samples (per channel).
+    // 起始点i的位置（以样本为单位）。
+    public long getOnsetSample(int i) {
+        return toSample(mOnsets[i]);
+    }
+
+    public int getNumBeats() {
+        return mBeats.length;
+    }
+
+    public long getBeatSample(int i) {
+        return toSample(mBeats[i]);
+    }
+
+    // Index of the first beat starting a bar (0 to BEATS_PER_BAR - 1), if there are beats.
+    // 第一个开始小节的节拍的索引。
+    public int getFirstDownbeat() {
+        return mFirstDownbeat;
+    }
+
+    // Average interval between beats, in samples; 0 if there are less than 2 beats.
+    // 节拍之间的平均间隔（以样本为单位）。
+    public long getBeatPeriod() {
+        if (mBeats.length < 2) {
+            return 0;
+        }
+        return (long) mHopSamples * (mBeats[mBeats.length - 1] - mBeats[0])
+                / (mBeats.length - 1);
+    }
+
+    // Average tempo, in beats per minute; 0 if there are less than 2 beats.
+    // 平均速度（每分钟节拍数）。
+    public float getTempo() {
+        long period = getBeatPeriod();
+        return period > 0 ? 60.0f * mSampleRate / period : 0;
+    }
+
+    // The beat nearest to sample, if it is at most maxDistance samples away, otherwise -1.
+    // 最接近sample的节拍（如果距离最多maxDistance个样本），否则返回-1。
+    public long findNearestBeat(long sample, long maxDistance) {
+        return findNearest(mBeats, sample, maxDistance);
+    }
+
+    public long findNearestOnset(long sample, long maxDistance) {
+        return findNearest(mOnsets, sample, maxDistance);
+    }
+
+    // A region made of whole bars, starting and ending on a downbeat.
+    // 由完整小节组成的区域，在强拍上开始和结束。
+    public static class Region {
+        private final long mStartSample;
+        private final long mEndSample;
+        private final int mNumBars;
+
+        Region(long startSample, long endSample, int numBars) {
+            mStartSample = startSample;
+            mEndSample = endSample;
+            mNumBars = numBars;
+        }
+
+        public long getStartSample() {
+            return mStartSample;
+        }
+
+        public long getEndSample() {
+            return mEndSample;
+        }
+
+        public int getNumBars() {
+            return mNumBars;
+        }
+    }
+
+    // The region of the number of bars lasting closest to seconds with the most onset energy, to
+    // loop as a ringtone; null if there are not enough beats.
+    // 持续时间最接近seconds且起始能量最大的小节区域，可作为铃声循环；如果节拍不足则返回null。
+    public Region suggestRegion(double seconds) {
+        long period = getBeatPeriod();
+        if (period <= 0) {
+            return null;
+        }
+        double barSeconds = (double) period * BEATS_PER_BAR / mSampleRate;
+        int numBars = Math.max(1, (int) Math.round(seconds / barSeconds));
+        int numBeats = numBars * BEATS_PER_BAR;
+        int best = -1;
+        double bestFlux = -1;
+        for (int i = mFirstDownbeat; i + numBeats < mBeats.length; i += BEATS_PER_BAR) {
+            double flux = mBeatFlux[i + numBeats] - mBeatFlux[i];
+            if (flux > bestFlux) {
+                bestFlux = flux;
+                best = i;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        return new Region(getBeatSample(best), getBeatSample(best + numBeats), numBars);
+    }
+
+    private long toSample(int hop) {
+        return mFirstSample + (long) hop * mHopSamples;
+    }
+
+    private long findNearest(int[] hops, long sample, long maxDistance) {
+        long hop = Math.max(0, (sample - mFirstSample) / mHopSamples);
+        int i = Arrays.binarySearch(hops, (int) Math.min(hop, Integer.MAX_VALUE));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        long nearest = -1;
+        long distance = maxDistance + 1;
+        for (int j = Math.max(0, i - 1); j <= i && j < hops.length; j++) {
+            long d = Math.abs(toSample(hops[j]) - sample);
+            if (d < distance) {
+                distance = d;
+                nearest = toSample(hops[j]);
+            }
+        }
+        return nearest;
+    }
+
+    // Peaks of envelope over +-PEAK_HOPS hops, THRESHOLD above the average around them.
+    // 包络在+-PEAK_HOPS跳内的峰值，比周围的平均值高THRESHOLD。
+    private static int[] findOnsets(double[] envelope) {
+        int numHops = envelope.length;
+        int[] onsets = new int[16];
+        int numOnsets = 0;
+        // Sum of the envelope from hop i - AVERAGE_HOPS to i + AVERAGE_HOPS / 2, sliding.
+        // 从i - AVERAGE_HOPS到i + AVERAGE_HOPS / 2跳的包络之和，滑动计算。
+        double sum = 0;
+        for (int i = 0; i < Math.min(numHops, AVERAGE_HOPS / 2 + 1); i++) {
+            sum += envelope[i];
+        }
+        for (int i = 0; i < numHops; i++) {
+            int first = Math.max(0, i - AVERAGE_HOPS);
+            int last = Math.min(numHops - 1, i + AVERAGE_HOPS / 2);
+            double value = envelope[i];
+            if (value >= sum / (last - first + 1) + THRESHOLD) {
+                boolean peak = true;
+                for (int j = Math.max(0, i - PEAK_HOPS);
+                     peak && j <= Math.min(numHops - 1, i + PEAK_HOPS); j++) {
+                    // Ties go to the first hop.
+                    // 相等时取第一跳。
+                    peak = envelope[j] < value || (envelope[j] == value && j >= i);
+                }
+                if (peak) {
+                    if (numOnsets == onsets.length) {
+                        onsets = Arrays.copyOf(onsets, numOnsets * 2);
+                    }
+                    onsets[numOnsets++] = i;
+                }
+            }
+            if (i + AVERAGE_HOPS / 2 + 1 < numHops) {
+                sum += envelope[i + AVERAGE_HOPS / 2 + 1];
+            }
+            if (i - AVERAGE_HOPS >= 0) {
+                sum -= envelope[i - AVERAGE_HOPS];
+            }
+        }
+        return Arrays.copyOf(onsets, numOnsets);
+    }
+
+    // Beat period (in hops) maximizing the autocorrelation of the envelope, weighted by a log
+    // gaussian around PREFERRED_BPM, refined between hops by a parabola.
+    // 使包络自相关最大的节拍周期（以跳为单位）。
+    private static double findPeriod(double[] envelope, double mean, double hopsPerSecond) {
+        int numHops = envelope.length;
+        int minLag = (int) Math.floor(60 * hopsPerSecond / MAX_BPM);
+        int maxLag = Math.min(numHops - 1, (int) Math.ceil(60 * hopsPerSecond / MIN_BPM) + 1);
+        double preferredLag = 60 * hopsPerSecond / PREFERRED_BPM;
+        if (maxLag <= minLag + 1) {
+            return preferredLag;
+        }
+        double[] scores = new double[maxLag + 1];
+        int best = -1;
+        for (int lag = minLag; lag <= maxLag; lag++) {
+            double sum = 0;
+            for (int i = lag; i < numHops; i++) {
+                sum += (envelope[i] - mean) * (envelope[i - lag] - mean);
+            }
+            double octaves = Math.log(lag / preferredLag) / Math.log(2) / TEMPO_OCTAVES;
+            scores[lag] = sum / (numHops - lag) * Math.exp(-0.5 * octaves * octaves);
+        }
+        // The ends of the range have no neighbors to refine them.
+        // 范围的两端没有邻居可用于细化。
+        for (int lag = minLag + 1; lag < maxLag; lag++) {
+            if (best < 0 || scores[lag] > scores[best]) {
+                best = lag;
+            }
+        }
+        double a = scores[best - 1];
+        double b = scores[best];
+        double c = scores[best + 1];
+        double denominator = a - 2 * b + c;
+        double shift = denominator < 0 ? 0.5 * (a - c) / denominator : 0;
+        return best + Math.max(-0.5, Math.min(0.5, shift));
+    }
+
+    // Beats, as hops: the path through the envelope maximizing the envelope at the beats minus
+    // TIGHTNESS times the squared log ratio of each interval to period.
+    // 节拍（以跳为单位）：通过包络的路径，使节拍处的包络减去每个间隔与周期比值对数平方的TIGHTNESS倍最大。
+    private static int[] trackBeats(double[] envelope, double period) {
+        int numHops = envelope.length;
+        int minInterval = Math.max(1, (int) Math.round(period / 2));
+        int maxInterval = Math.max(minInterval, (int) Math.round(period * 2));
+        double[] penalties = new double[maxInterval + 1];
+        for (int d = minInterval; d <= maxInterval; d++) {
+            double ratio = Math.log(d / period);
+            penalties[d] = TIGHTNESS * ratio * ratio;
+        }
+        double[] scores = new double[numHops];
+        int[] previous = new int[numHops];
+        for (int i = 0; i < numHops; i++) {
+            double best = 0;
+            int bestPrevious = -1;
+            for (int d = minInterval; d <= maxInterval && d <= i; d++) {
+                double score = scores[i - d] - penalties[d];
+                if (bestPrevious < 0 || score > best) {
+                    best = score;
+                    bestPrevious = i - d;
+                }
+            }
+            // Starting a new path is better than following a bad one.
+            // 开始新路径比沿着一条差的路径更好。
+            if (best < 0) {
+                best = 0;
+                bestPrevious = -1;
+            }
+            scores[i] = envelope[i] + best;
+            previous[i] = bestPrevious;
+        }
+        if (numHops == 0) {
+            return new int[0];
+        }
+        // The last beat is the best one of the last period.
+        // 最后一个节拍是最后一个周期中最好的。
+        int last = numHops - 1;
+        for (int i = Math.max(0, numHops - (int) Math.ceil(period)); i < numHops; i++) {
+            if (scores[i] > scores[last]) {
+                last = i;
+            }
+        }
+        int numBeats = 0;
+        for (int i = last; i >= 0; i = previous[i]) {
+            numBeats++;
+        }
+        int[] beats = new int[numBeats];
+        for (int i = last; i >= 0; i = previous[i]) {
+            beats[--numBeats] = i;
+        }
+        return beats;
+    }
+
+    // Drop the beats more than half a period before the first onset or after the last one: the
+    // tracking goes on through silence.
+    // 丢弃第一个起始点之前或最后一个起始点之后超过半个周期的节拍：跟踪会穿过静音继续。
+    private static int[] trimBeats(int[] beats, int[] onsets, double period) {
+        if (onsets.length == 0) {
+            return new int[0];
+        }
+        double first = onsets[0] - period / 2;
+        double last = onsets[onsets.length - 1] + period / 2;
+        int start = 0;
+        while (start < beats.length && beats[start] < first) {
+            start++;
+        }
+        int end = beats.length;
+        while (end > start && beats[end - 1] > last) {
+            end--;
+        }
+        return Arrays.copyOfRange(beats, start, end);
+    }
+
+    public static class Accumulator {
+        private final int mSampleRate;
+        private final int mChannels;
+        private final long mFirstSample;
+        private final int mDecimation;  // samples averaged into one.
+        private final int mHopSize;     // in averaged samples.
+        private final Fft mFft;
+        private final float[] mWindow;
+        private final float[] mInput;
+        private final float[] mPower;
+        private final float[] mMagnitudes;  // of the previous hop.
+        // Mono samples of the previous and current hops: the FFT covers both.
+        // 上一跳和当前跳的单声道样本：FFT覆盖两者。
+        private float[] mPrevious;
+        private float[] mCurrent;
+        private int mNumCurrent;
+        private int mSum;  // of the samples being averaged.
+        private int mNumSummed;
+
+        private float[] mFlux = new float[1024];
+        private int mNumHops;
+
+        public Accumulator(int sampleRate, int channels) {
+            this(sampleRate, channels, 0);
+        }
+
+        // Index of a part of a stream, the first sample added being sample firstSample.
+        // 流的一部分的索引，第一个添加的样本是firstSample。
+        public Accumulator(int sampleRate, int channels, long firstSample) {
+            mSampleRate = sampleRate;
+            mChannels = channels;
+            mFirstSample = firstSample;
+            mDecimation = Math.max(1, sampleRate / ANALYSIS_SAMPLE_RATE);
+            mHopSize = Math.max(16,
+                    Integer.highestOneBit(sampleRate / mDecimation / HOPS_PER_SECOND));
+            int size = 2 * mHopSize;
+            mFft = new Fft(size);
+            mWindow = new float[size];
+            for (int i = 0; i < size; i++) {
+                mWindow[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / size));
+            }
+            mInput = new float[size];
+            mPower = new float[mHopSize];
+            mMagnitudes = new float[mHopSize];
+            mPrevious = new float[mHopSize];
+            mCurrent = new float[mHopSize];
+        }
+
+        // Add numSamples samples per channel (interleaved), starting at offset.
+        // 添加numSamples个样本（交错）。
+        public void add(short[] samples, int offset, int numSamples) {
+            float scale = 1.0f / (32768.0f * mChannels * mDecimation);
+            for (int i = 0; i < numSamples; i++) {
+                for (int c = 0; c < mChannels; c++) {
+                    mSum += samples[offset++];
+                }
+                if (++mNumSummed == mDecimation) {
+                    mCurrent[mNumCurrent++] = mSum * scale;
+                    mSum = 0;
+                    mNumSummed = 0;
+                    if (mNumCurrent == mHopSize) {
+                        endHop();
+                    }
+                }
+            }
+        }
+
+        // Spectral flux of the hop: the sum of the increases of the magnitudes of the bins,
+        // compressed by a fourth root of the power (cheaper than a log, and close enough for
+        // peaks).
+        // 跳的频谱通量：各频点幅度增加量之和，用功率的四次方根压缩。
+        private void endHop() {
+            for (int i = 0; i < mHopSize; i++) {
+                mInput[i] = mPrevious[i] * mWindow[i];
+                mInput[mHopSize + i] = mCurrent[i] * mWindow[mHopSize + i];
+            }
+            mFft.powerSpectrum(mInput, mPower);
+            float flux = 0;
+            for (int bin = 1; bin < mHopSize; bin++) {
+                float magnitude = (float) Math.sqrt(Math.sqrt(mPower[bin]));
+                float increase = magnitude - mMagnitudes[bin];
+                if (increase > 0) {
+                    flux += increase;
+                }
+                mMagnitudes[bin] = magnitude;
+            }
+            if (mNumHops == mFlux.length) {
+                mFlux = Arrays.copyOf(mFlux, mNumHops * 2);
+            }
+            mFlux[mNumHops++] = flux;
+            float[] previous = mPrevious;
+            mPrevious = mCurrent;
+            mCurrent = previous;
+            mNumCurrent = 0;
+        }
+
+        // Index of all the samples added.
+        // 所有添加的样本的索引。
+        public OnsetIndex getIndex() {
+            if (mNumCurrent > 0) {
+                Arrays.fill(mCurrent, mNumCurrent, mHopSize, 0);
+                endHop();
+            }
+            return new OnsetIndex(mSampleRate, mFirstSample, mHopSize * mDecimation, mFlux,
+                    mNumHops);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sparse store of interleaved 16 bits PCM, decoded on demand in fixed size blocks.
+ * <p>
+ * Instead of decoding a whole file up front, blocks are decoded the first time they are read
+ * (by the waveform, the player or an export) and kept in memory up to maxResidentBytes. When the
+ * limit is reached, the least recently used block is dropped; it is decoded again if it is
+ * needed later. Decoding a block is delegated to a BlockDecoder (cf. RegionDecoder), so that
+ * opening a three hours audiobook to cut 20 seconds out of it only decodes these 20 seconds
+ * (plus what was looked at).
+ * <p>
+ * All the methods can be called from any thread. Blocks are decoded one at a time.
+ * <p>
+ * 按需以固定大小的块解码的16位交错PCM稀疏存储。块在第一次读取时解码并保存在内存中，
+ * 超过maxResidentBytes时丢弃最近最少使用的块。
+ */
+public class PcmBlockCache {
+    // Number of samples per channel in a block (1.5 seconds at 44.1kHz, 256kB for a stereo
+    // stream). A multiple of the samples per frame of the waveform.
+    // 每个块中每个通道的样本数。
+    public static final int DEFAULT_BLOCK_SAMPLES = 1 << 16;
+
+    // Decodes one block of samples.
+    // 解码一个样本块。
+    public interface BlockDecoder {
+        // Decode numSamples samples per channel, starting at sample start, into block
+        // (interleaved). Samples which cannot be decoded must be set to 0.
+        // 从样本start开始将numSamples个样本解码到block中。
+        void decodeBlock(long start, short[] block, int numSamples) throws IOException;
+
+        void release();
+    }
+
+    // Lets the owner know when a block has been decoded (e.g. to update the waveform). Called on
+    // the thread which decoded the block.
+    // 块解码后通知所有者。
+    public interface Listener {
+        void onBlockDecoded(long start, short[] block, int numSamples);
+    }
+
+    private final BlockDecoder mDecoder;
+    private final int mChannels;
+    private final long mNumSamples;
+    private final int mBlockSamples;
+    private final int mNumBlocks;
+    private final int mMaxResidentBlocks;
+    // Resident blocks by index, in access order: the first one is the least recently used.
+    // 按索引的驻留块，按访问顺序排列。
+    private final LinkedHashMap<Integer, short[]> mBlocks;
+    private Listener mListener;
+    private boolean mReleased;
+
+    public PcmBlockCache(BlockDecoder decoder, int channels, long numSamples, int blockSamples,
+                         long maxResidentBytes) {
+        mDecoder = decoder;
+        mChannels = channels;
+        mNumSamples = numSamples;
+        mBlockSamples = blockSamples;
+        mNumBlocks = (int) ((numSamples + blockSamples - 1) / blockSamples);
+        // Keep at least a few blocks, so that a reader never loses the block it is working on.
+        // 至少保留几个块。
+        long blockBytes = (long) blockSamples * channels * 2;
+        mMaxResidentBlocks = (int) Math.max(4, maxResidentBytes / blockBytes);
+        mBlocks = new LinkedHashMap<Integer, short[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, short[]> eldest) {
+                return size() > mMaxResidentBlocks;
+            }
+        };
+        mReleased = false;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    // Number of samples per channel of the whole stream.
+    // 整个流的每个通道的样本数。
+    public long getNumSamples() {
+        return mNumSamples;
+    }
+
+    public int getBlockSamples() {
+        return mBlockSamples;
+    }
+
+    // Number of blocks kept in memory.
+    // 内存中保留的块数。
+    public int getMaxResidentBlocks() {
+        return mMaxResidentBlocks;
+    }
+
+    public int getNumBlocks() {
+        return mNumBlocks;
+    }
+
+    // Index of the block containing the given sample (per channel).
+    // 包含给定样本的块的索引。
+    public int getBlockIndex(long sample) {
+        return (int) Math.max(0, Math.min(sample / mBlockSamples, mNumBlocks - 1));
+    }
+
+    // Number of samples per channel in block index (the last one may be shorter).
+    // 块index中每个通道的样本数。
+    public int getBlockLength(int index) {
+        return (int) Math.min(mBlockSamples, mNumSamples - (long) index * mBlockSamples);
+    }
+
+    public boolean isResident(int index) {
+        synchronized (mBlocks) {
+            return mBlocks.containsKey(index);
+        }
+    }
+
+    // The samples of block index (interleaved, getBlockLength(index) samples per channel),
+    // decoded first if they are not resident. The returned array must not be modified.
+    // 块index的样本，如果不驻留，则先解码。
+    public short[] getBlock(int index) throws IOException {
+        short[] block;
+        synchronized (mBlocks) {
+            block = mBlocks.get(index);
+        }
+        if (block != null) {
+            return block;
+        }
+        int length = getBlockLength(index);
+        synchronized (mDecoder) {
+            // Another thread may have decoded it while we were waiting.
+            // 等待时，另一个线程可能已经解码了它。
+            synchronized (mBlocks) {
+                if (mReleased) {
+                    throw new IOException("Cache released");
+                }
+                block = mBlocks.get(index);
+            }
+            if (block != null) {
+                return block;
+            }
+            block = new short[length * mChannels];
+            mDecoder.decodeBlock((long) index * mBlockSamples, block, length);
+            synchronized (mBlocks) {
+                mBlocks.put(index, block);
+            }
+        }
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onBlockDecoded((long) index * mBlockSamples, block, length);
+        }
+        return block;
+    }
+
+    // A new reader of the samples. Each source has its own position, so several of them can be
+    // read at the same time (e.g. by the player and by an export).
+    // 样本的新读取器。每个源都有自己的位置。
+    public PcmSource newSource(final int sampleRate) {
+        return new PcmSource() {
+            private long mPosition = 0;  // in samples per channel.
+
+            public int getSampleRate() {
+                return sampleRate;
+            }
+
+            public int getChannels() {
+                return mChannels;
+            }
+
+            public long getNumSamples() {
+                return mNumSamples;
+            }
+
+            public void seek(long sample) {
+                mPosition = Math.max(0, Math.min(sample, mNumSamples));
+            }
+
+            public int read(short[] buffer, int offset, int numSamples) throws IOException {
+                int count = (int) Math.min(numSamples, mNumSamples - mPosition);
+                int left = count;
+                while (left > 0) {
+                    int index = (int) (mPosition / mBlockSamples);
+                    short[] block = getBlock(index);
+                    int inBlock = (int) (mPosition - (long) index * mBlockSamples);
+                    int n = Math.min(left, getBlockLength(index) - inBlock);
+                    System.arraycopy(block, inBlock * mChannels, buffer, offset, n * mChannels);
+                    offset += n * mChannels;
+                    left -= n;
+                    mPosition += n;
+                }
+                return count;
+            }
+
+            public void close() {
+            }
+        };
+    }
+
+    // Drop all the blocks and release the decoder. The cache must not be used after.
+    // 丢弃所有块并释放解码器。
+    public void release() {
+        synchronized (mBlocks) {
+            mBlocks.clear();
+            mReleased = true;
+        }
+        synchronized (mDecoder) {
+            mDecoder.release();
+        }
+    }
+}
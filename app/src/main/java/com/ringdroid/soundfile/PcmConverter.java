@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+/**
+ * Converts interleaved 16 bits PCM from one channel layout / sampling rate to another, block by
+ * block. Mono is duplicated to every output channel, multi-channel streams are averaged down to
+ * mono, and the sampling rate is changed by a PolyphaseResampler (RESAMPLE_POLYPHASE), or by
+ * linear interpolation (RESAMPLE_LINEAR: cheaper, but it aliases; fine for a preview).
+ * <p>
+ * No memory is allocated after construction. With RESAMPLE_POLYPHASE, flush() writes the last
+ * samples at the end of the stream.
+ * <p>
+ * 逐块转换16位交错PCM的通道布局/采样率。构造后不分配内存。
+ */
+public class PcmConverter {
+    public static final int RESAMPLE_POLYPHASE = 0;
+    public static final int RESAMPLE_LINEAR = 1;
+
+    private static final int MAPPED_FRAMES = 1024;
+
+    private final int mSrcSampleRate;
+    private final int mSrcChannels;
+    private final int mDstSampleRate;
+    private final int mDstChannels;
+    private final double mStep;  // number of source samples per output sample.
+
+    // Resampling state: last source frame (already mapped to the output channels) and position
+    // of the next output sample, in source samples, relative to that frame.
+    // 重采样状态。
+    private final float[] mPrev;
+    private final float[] mCur;
+    private boolean mHasPrev;
+    private double mTime;
+
+    // Polyphase resampling: the samples are mapped to the output channels in mMapped, a block at
+    // a time, then resampled.
+    // 多相重采样：样本一次一块地映射到mMapped中的输出通道，然后重采样。
+    private final PolyphaseResampler mResampler;
+    private final short[] mMapped;
+
+    public PcmConverter(int srcSampleRate, int srcChannels, int dstSampleRate, int dstChannels) {
+        this(srcSampleRate, srcChannels, dstSampleRate, dstChannels, RESAMPLE_POLYPHASE);
+    }
+
+    public PcmConverter(int srcSampleRate, int srcChannels, int dstSampleRate, int dstChannels,
+                        int resampling) {
+        mSrcSampleRate = srcSampleRate;
+        mSrcChannels = srcChannels;
+        mDstSampleRate = dstSampleRate;
+        mDstChannels = dstChannels;
+        mStep = (double) srcSampleRate / dstSampleRate;
+        mPrev = new float[dstChannels];
+        mCur = new float[dstChannels];
+        mHasPrev = false;
+        mTime = 0;
+        if (resampling == RESAMPLE_POLYPHASE && srcSampleRate != dstSampleRate) {
+            mResampler = new PolyphaseResampler(srcSampleRate, dstSampleRate, dstChannels);
+            mMapped = new short[MAPPED_FRAMES * dstChannels];
+        } else {
+            mResampler = null;
+            mMapped = null;
+        }
+    }
+
+    public int getOutputChannels() {
+        return mDstChannels;
+    }
+
+    public boolean isPassthrough() {
+        return mSrcSampleRate == mDstSampleRate && mSrcChannels == mDstChannels;
+    }
+
+    // Maximum number of output samples (per channel) produced by process() for numFrames input
+    // samples (per channel).
+    // process（）为numFrames输入样本产生的最大输出样本数（每个通道）。
+    public int getMaxOutputFrames(int numFrames) {
+        if (mResampler != null) {
+            return mResampler.getMaxOutputFrames(numFrames);
+        }
+        return (int) Math.ceil(numFrames / mStep) + 1;
+    }
+
+    // Convert numFrames samples per channel read from in (starting at inOffset, interleaved) and
+    // write the result in out, starting at outOffset. Returns the number of samples per channel
+    // written in out, at most getMaxOutputFrames(numFrames).
+    // 转换并返回写入out的每个通道的样本数。
+    public int process(short[] in, int inOffset, int numFrames, short[] out, int outOffset) {
+        if (mSrcSampleRate == mDstSampleRate) {
+            mapChannels(in, inOffset, numFrames, out, outOffset);
+            return numFrames;
+        }
+        if (mResampler != null) {
+            int numOut = 0;
+            while (numFrames > 0) {
+                int count = Math.min(numFrames, MAPPED_FRAMES);
+                mapChannels(in, inOffset, count, mMapped, 0);
+                numOut += mResampler.process(
+                        mMapped, 0, count, out, outOffset + numOut * mDstChannels);
+                inOffset += count * mSrcChannels;
+                numFrames -= count;
+            }
+            return numOut;
+        }
+        int numOut = 0;
+        int o = outOffset;
+        for (int i = 0; i < numFrames; i++) {
+            readFrame(in, inOffset + i * mSrcChannels, mCur);
+            if (!mHasPrev) {
+                System.arraycopy(mCur, 0, mPrev, 0, mDstChannels);
+                mHasPrev = true;
+                continue;
+            }
+            while (mTime < 1.0) {
+                float t = (float) mTime;
+                for (int c = 0; c < mDstChannels; c++) {
+                    out[o++] = clip(mPrev[c] + (mCur[c] - mPrev[c]) * t);
+                }
+                numOut++;
+                mTime += mStep;
+            }
+            mTime -= 1.0;
+            System.arraycopy(mCur, 0, mPrev, 0, mDstChannels);
+        }
+        return numOut;
+    }
+
+    // Forget the current stream, e.g. when seeking.
+    // 忘记当前流，例如在跳转时。
+    public void reset() {
+        mHasPrev = false;
+        mTime = 0;
+        if (mResampler != null) {
+            mResampler.reset();
+        }
+    }
+
+    // Write the samples still held by the resampler at the end of the stream, at most
+    // getMaxOutputFrames(0), and start a new stream. Returns the number of samples per channel
+    // written in out.
+    // 在流结束时写入重采样器中仍保留的样本，并开始一个新的流。
+    public int flush(short[] out, int outOffset) {
+        if (mResampler != null) {
+            return mResampler.flush(out, outOffset);
+        }
+        return 0;
+    }
+
+    // Same sampling rate: only the channel layout may change.
+    private void mapChannels(short[] in, int inOffset, int numFrames, short[] out, int outOffset) {
+        if (mSrcChannels == mDstChannels) {
+            System.arraycopy(in, inOffset, out, outOffset, numFrames * mSrcChannels);
+        } else if (mSrcChannels == 1) {
+            // Duplicate mono into every output channel.
+            int o = outOffset;
+            for (int i = 0; i < numFrames; i++) {
+                short s = in[inOffset + i];
+                for (int c = 0; c < mDstChannels; c++) {
+                    out[o++] = s;
+                }
+            }
+        } else {
+            int o = outOffset;
+            for (int i = 0; i < numFrames; i++) {
+                readFrame(in, inOffset + i * mSrcChannels, mCur);
+                for (int c = 0; c < mDstChannels; c++) {
+                    out[o++] = clip(mCur[c]);
+                }
+            }
+        }
+    }
+
+    // Read one interleaved source frame into frame, mapped to the output channels.
+    private void readFrame(short[] in, int offset, float[] frame) {
+        if (mSrcChannels == mDstChannels) {
+            for (int c = 0; c < mDstChannels; c++) {
+                frame[c] = in[offset + c];
+            }
+        } else if (mSrcChannels == 1) {
+            for (int c = 0; c < mDstChannels; c++) {
+                frame[c] = in[offset];
+            }
+        } else if (mDstChannels == 1) {
+            float sum = 0;
+            for (int c = 0; c < mSrcChannels; c++) {
+                sum += in[offset + c];
+            }
+            frame[0] = sum / mSrcChannels;
+        } else {
+            // Keep the first channels, repeat the last one if needed.
+            for (int c = 0; c < mDstChannels; c++) {
+                frame[c] = in[offset + Math.min(c, mSrcChannels - 1)];
+            }
+        }
+    }
+
+    private static short clip(float value) {
+        if (value > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (value < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) Math.round(value);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Writes 16 bits little-endian PCM to a file, either as a WAV file or as raw PCM (no header).
+ * Samples are streamed to the file through a small buffer; the WAV header is rewritten with the
+ * actual number of samples when the file is finished. The samples can be resampled on the way
+ * (cf. PcmConverter).
+ * <p>
+ * 将16位小端PCM写入文件（WAV文件或原始PCM）。
+ */
+public class PcmFileSink implements PcmSink {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File mOutputFile;
+    private final int mSampleRate;
+    private final int mChannels;
+    private final boolean mWriteWAVHeader;
+    private final PcmConverter mConverter;  // null when the sampling rate is kept.
+    private short[] mConverted;             // output of mConverter.
+    private RandomAccessFile mFile;
+    private byte[] mBuffer;
+    private int mBufferFill;
+    private long mNumSamples;  // number of samples per channel written so far.
+
+    public PcmFileSink(File outputFile, int sampleRate, int channels, boolean writeWAVHeader) {
+        this(outputFile, sampleRate, channels, sampleRate, writeWAVHeader);
+    }
+
+    // Samples passed to write() are sampled at srcSampleRate, the file at outputSampleRate.
+    // 传递给write（）的样本以srcSampleRate采样，文件以outputSampleRate采样。
+    public PcmFileSink(File outputFile, int srcSampleRate, int channels, int outputSampleRate,
+                       boolean writeWAVHeader) {
+        mOutputFile = outputFile;
+        mSampleRate = outputSampleRate;
+        mChannels = channels;
+        mWriteWAVHeader = writeWAVHeader;
+        if (srcSampleRate != outputSampleRate) {
+            mConverter = new PcmConverter(srcSampleRate, channels, outputSampleRate, channels);
+        } else {
+            mConverter = null;
+        }
+    }
+
+    public void start(long estimatedNumSamples) throws IOException {
+        mFile = new RandomAccessFile(mOutputFile, "rw");
+        mFile.setLength(0);
+        mBuffer = new byte[BUFFER_SIZE];
+        mBufferFill = 0;
+        mNumSamples = 0;
+        mConverted = new short[0];
+        if (mWriteWAVHeader) {
+            // The header is written again in finish(), with the actual number of samples.
+            // 标头在finish（）中使用实际样本数再次写入。
+            mFile.write(WAVHeader.getWAVHeader(mSampleRate, mChannels, 0));
+        }
+    }
+
+    public void write(short[] samples, int offset, int numSamples) throws IOException {
+        if (mConverter != null) {
+            int maxOut = mConverter.getMaxOutputFrames(numSamples);
+            if (mConverted.length < maxOut * mChannels) {
+                mConverted = new short[maxOut * mChannels];
+            }
+            writeSamples(mConverted, 0,
+                    mConverter.process(samples, offset, numSamples, mConverted, 0));
+        } else {
+            writeSamples(samples, offset, numSamples);
+        }
+    }
+
+    private void writeSamples(short[] samples, int offset, int numSamples) throws IOException {
+        int end = offset + numSamples * mChannels;
+        for (int i = offset; i < end; i++) {
+            if (mBufferFill == mBuffer.length) {
+                flush();
+            }
+            short sample = samples[i];
+            mBuffer[mBufferFill++] = (byte) sample;
+            mBuffer[mBufferFill++] = (byte) (sample >> 8);
+        }
+        mNumSamples += numSamples;
+    }
+
+    public void finish() throws IOException {
+        if (mConverter != null) {
+            int maxOut = mConverter.getMaxOutputFrames(0);
+            if (mConverted.length < maxOut * mChannels) {
+                mConverted = new short[maxOut * mChannels];
+            }
+            writeSamples(mConverted, 0, mConverter.flush(mConverted, 0));
+        }
+        flush();
+        if (mWriteWAVHeader) {
+            if (mNumSamples * 2 * mChannels > 0x7FFFFFFFL - 36) {
+                throw new IOException("Too many samples for a WAV file: " + mNumSamples);
+            }
+            mFile.seek(0);
+            mFile.write(WAVHeader.getWAVHeader(mSampleRate, mChannels, (int) mNumSamples));
+        }
+        mFile.close();
+        mFile = null;
+    }
+
+    public void release() {
+        if (mFile != null) {
+            try {
+                mFile.close();
+            } catch (IOException e) {
+                // Nothing more we can do.
+            }
+            mFile = null;
+        }
+        mBuffer = null;
+        mConverted = null;
+    }
+
+    private void flush() throws IOException {
+        mFile.write(mBuffer, 0, mBufferFill);
+        mBufferFill = 0;
+    }
+}
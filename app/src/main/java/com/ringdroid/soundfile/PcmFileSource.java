@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads 16 bits little-endian PCM from a file, either a WAV file or raw PCM, a block at a time.
+ * Only the block being read is kept in memory, so files of any length can be processed.
+ * <p>
+ * 从文件（WAV文件或原始PCM）中一次读取一个块的16位小端PCM。
+ */
+public class PcmFileSource implements PcmSource {
+    private final RandomAccessFile mFile;
+    private final int mSampleRate;
+    private final int mChannels;
+    private final long mDataOffset;  // offset of the first sample in the file, in bytes.
+    private final long mNumSamples;
+    private long mPosition;          // next sample (per channel) to read.
+    private byte[] mBytes;           // read buffer, grown if needed.
+
+    private PcmFileSource(RandomAccessFile file, int sampleRate, int channels,
+                          long dataOffset, long dataSize) {
+        mFile = file;
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mDataOffset = dataOffset;
+        mNumSamples = dataSize / (2 * channels);
+        mPosition = 0;
+        mBytes = new byte[0];
+    }
+
+    // Open a raw PCM file: 16 bits little-endian samples, interleaved, no header.
+    // 打开原始PCM文件：16位小端样本，交错，无标头。
+    public static PcmFileSource openRaw(File file, int sampleRate, int channels)
+            throws IOException {
+        if (sampleRate <= 0 || channels <= 0) {
+            throw new IOException("Invalid raw PCM format: " + sampleRate + "Hz, "
+                    + channels + " channels");
+        }
+        RandomAccessFile f = new RandomAccessFile(file, "r");
+        return new PcmFileSource(f, sampleRate, channels, 0, f.length());
+    }
+
+    // Open a WAV file. Only 16 bits PCM is supported.
+    // 打开WAV文件。 仅支持16位PCM。
+    public static PcmFileSource openWav(File file) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(file, "r");
+        try {
+            byte[] header = new byte[12];
+            f.readFully(header);
+            if (!isTag(header, 0, "RIFF") || !isTag(header, 8, "WAVE")) {
+                throw new IOException(file + " is not a WAV file");
+            }
+            int sampleRate = 0;
+            int channels = 0;
+            // Walk through the chunks until the data chunk, reading the format on the way.
+            // 遍历块直到数据块，并读取格式。
+            byte[] chunk = new byte[8];
+            while (true) {
+                f.readFully(chunk);
+                long chunkSize = readInt(chunk, 4) & 0xFFFFFFFFL;
+                if (isTag(chunk, 0, "fmt ")) {
+                    if (chunkSize < 16) {
+                        throw new IOException("Invalid fmt chunk in " + file);
+                    }
+                    byte[] fmt = new byte[16];
+                    f.readFully(fmt);
+                    int format = (fmt[0] & 0xFF) | ((fmt[1] & 0xFF) << 8);
+                    channels = (fmt[2] & 0xFF) | ((fmt[3] & 0xFF) << 8);
+                    sampleRate = readInt(fmt, 4);
+                    int bitsPerSample = (fmt[14] & 0xFF) | ((fmt[15] & 0xFF) << 8);
+                    // 1 is PCM, 0xFFFE is WAVE_FORMAT_EXTENSIBLE (PCM for our purpose).
+                    if ((format != 1 && format != 0xFFFE) || bitsPerSample != 16
+                            || channels <= 0 || sampleRate <= 0) {
+                        throw new IOException("Unsupported WAV format in " + file);
+                    }
+                    f.seek(f.getFilePointer() + chunkSize - 16 + (chunkSize & 1));
+                } else if (isTag(chunk, 0, "data")) {
+                    if (channels == 0) {
+                        throw new IOException("Missing fmt chunk in " + file);
+                    }
+                    long dataOffset = f.getFilePointer();
+                    long dataSize = f.length() - dataOffset;
+                    if (chunkSize > 0 && chunkSize < dataSize) {
+                        dataSize = chunkSize;  // otherwise the file is truncated or streamed.
+                    }
+                    return new PcmFileSource(f, sampleRate, channels, dataOffset, dataSize);
+                } else {
+                    // Chunks are padded to an even size.
+                    f.seek(f.getFilePointer() + chunkSize + (chunkSize & 1));
+                }
+            }
+        } catch (IOException e) {
+            f.close();
+            throw e;
+        }
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    public long getNumSamples() {
+        return mNumSamples;
+    }
+
+    public void seek(long sample) throws IOException {
+        mPosition = Math.max(0, Math.min(sample, mNumSamples));
+        mFile.seek(mDataOffset + mPosition * 2 * mChannels);
+    }
+
+    public int read(short[] buffer, int offset, int numSamples) throws IOException {
+        int count = (int) Math.min(numSamples, mNumSamples - mPosition);
+        if (count <= 0) {
+            return 0;
+        }
+        int numBytes = count * 2 * mChannels;
+        if (mBytes.length < numBytes) {
+            mBytes = new byte[numBytes];
+        }
+        mFile.readFully(mBytes, 0, numBytes);
+        ByteBuffer.wrap(mBytes, 0, numBytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer()
+                .get(buffer, offset, count * mChannels);
+        mPosition += count;
+        return count;
+    }
+
+    public void close() {
+        try {
+            mFile.close();
+        } catch (IOException e) {
+            // Nothing more we can do.
+        }
+    }
+
+    private static boolean isTag(byte[] bytes, int offset, String tag) {
+        for (int i = 0; i < 4; i++) {
+            if (bytes[offset + i] != tag.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8)
+                | ((bytes[offset + 2] & 0xFF) << 16) | ((bytes[offset + 3] & 0xFF) << 24);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+/**
+ * DSP stage applied to exported audio as it streams to the output: fade in and fade out curves,
+ * gain, and an optional peak limiter.
+ * <p>
+ * The settings are shared by all the regions of an export; each region being written gets its own
+ * Region (cf. start()), which keeps the position and the limiter state. Blocks are processed from
+ * the source buffer into an output buffer: the decoded samples are never modified, and nothing is
+ * allocated while processing. Blocks which need no processing (no fade, unity gain, no limiter)
+ * can be written as they are (cf. Region.isPassthrough()).
+ * <p>
+ * 在导出的音频流向输出时应用的DSP阶段：淡入淡出曲线、增益和可选的峰值限制器。
+ * 解码后的样本永远不会被修改，处理时不分配任何内存。
+ */
+public class PcmProcessor {
+    // Shapes of the fades: gain as a function of the position t in the fade (0 to 1).
+    // 淡入淡出的形状：增益作为淡入淡出中位置t（0到1）的函数。
+    public static final int CURVE_LINEAR = 0;       // t
+    public static final int CURVE_EQUAL_POWER = 1;  // sin(t * pi / 2)
+    public static final int CURVE_SQUARED = 2;      // t * t, slower start
+
+    // Time constant of the limiter gain going down on a peak, and time for it to come back to
+    // unity after the peak. The limiter has no lookahead (the output stays aligned with the
+    // input), so during the attack the samples above the threshold are clipped to it.
+    // 限制器增益在峰值处下降的时间常数，以及峰值后恢复到1的时间。限制器没有前瞻，
+    // 因此在起音期间超过阈值的样本被削波到阈值。
+    private static final float LIMITER_ATTACK_SECS = 0.001f;
+    private static final float LIMITER_RELEASE_SECS = 0.1f;
+
+    private float mFadeInSecs;
+    private float mFadeOutSecs;
+    private int mFadeCurve;
+    private float mGain;
+    private boolean mLimiterEnabled;
+    private float mLimiterThreshold;  // absolute, in 16 bits units.
+
+    public PcmProcessor() {
+        mFadeInSecs = 0;
+        mFadeOutSecs = 0;
+        mFadeCurve = CURVE_LINEAR;
+        mGain = 1.0f;
+        mLimiterEnabled = false;
+        mLimiterThreshold = Short.MAX_VALUE;
+    }
+
+    // Fade in and fade out applied to every region, in seconds (0 for none).
+    // 应用于每个区域的淡入和淡出，以秒为单位（0表示无）。
+    public void setFades(float fadeInSecs, float fadeOutSecs) {
+        mFadeInSecs = Math.max(0, fadeInSecs);
+        mFadeOutSecs = Math.max(0, fadeOutSecs);
+    }
+
+    public void setFadeCurve(int fadeCurve) {
+        if (fadeCurve < CURVE_LINEAR || fadeCurve > CURVE_SQUARED) {
+            throw new IllegalArgumentException("Invalid fade curve: " + fadeCurve);
+        }
+        mFadeCurve = fadeCurve;
+    }
+
+    // Gain applied to every sample, in dB.
+    // 应用于每个样本的增益，以dB为单位。
+    public void setGainDb(float gainDb) {
+        mGain = (float) Math.pow(10, gainDb / 20);
+    }
+
+    public float getGainDb() {
+        return (float) (20 * Math.log10(mGain));
+    }
+
+    // Keep the peaks below thresholdDb (relative to full scale) after the gain, by lowering the
+    // gain within about a millisecond on louder samples and bringing it back smoothly.
+    // 在增益之后将峰值保持在thresholdDb以下。
+    public void setLimiter(boolean enabled, float thresholdDb) {
+        mLimiterEnabled = enabled;
+        mLimiterThreshold = (float) Math.min(Short.MAX_VALUE,
+                Short.MAX_VALUE * Math.pow(10, thresholdDb / 20));
+    }
+
+    // True if the samples go through unchanged.
+    // 如果样本不变地通过，则为true。
+    public boolean isIdentity() {
+        return mFadeInSecs == 0 && mFadeOutSecs == 0 && mGain == 1.0f && !mLimiterEnabled;
+    }
+
+    // State for one region of numSamples samples (per channel) being written.
+    // 正在写入的一个区域的状态。
+    public Region start(int sampleRate, int channels, long numSamples) {
+        return new Region(sampleRate, channels, numSamples);
+    }
+
+    public class Region {
+        private final int mChannels;
+        private final long mNumSamples;
+        private final long mFadeInSamples;
+        private final long mFadeOutSamples;
+        private final float mAttackCoeff;  // fraction of the way to the target, per sample.
+        private final float mReleaseStep;  // per sample.
+        private float mLimiterGain;
+
+        private Region(int sampleRate, int channels, long numSamples) {
+            mChannels = channels;
+            mNumSamples = numSamples;
+            mFadeInSamples = (long) (mFadeInSecs * sampleRate);
+            mFadeOutSamples = (long) (mFadeOutSecs * sampleRate);
+            mAttackCoeff =
+                    (float) (1 - Math.exp(-1 / Math.max(1, LIMITER_ATTACK_SECS * sampleRate)));
+            mReleaseStep = 1.0f / Math.max(1, LIMITER_RELEASE_SECS * sampleRate);
+            mLimiterGain = 1.0f;
+        }
+
+        // True if the count samples starting at position (relative to the start of the region)
+        // need no processing.
+        // 如果从position开始的count个样本不需要处理，则为true。
+        public boolean isPassthrough(long position, int count) {
+            return mGain == 1.0f && !mLimiterEnabled && position >= mFadeInSamples
+                    && mNumSamples - (position + count) >= mFadeOutSamples;
+        }
+
+        // Process count samples per channel from in (starting at inOffset, interleaved) into out
+        // (starting at outOffset). position is that of the first sample relative to the start of
+        // the region; blocks must come in order for the limiter.
+        // 处理count个样本。position是第一个样本相对于区域开始的位置。
+        public void process(short[] in, int inOffset, int count, short[] out, int outOffset,
+                            long position) {
+            long fadeOutStart = mNumSamples - mFadeOutSamples;
+            int i = 0;
+            while (i < count) {
+                // Within the fades, the gain changes with each sample; in between, samples up to
+                // the fade out share the same gain.
+                // 在淡入淡出中，增益随每个样本变化；在两者之间，样本共享相同的增益。
+                long pos = position + i;
+                int run;
+                float gain;
+                if (pos < mFadeInSamples || pos >= fadeOutStart) {
+                    run = 1;
+                    gain = mGain * getFadeGain(pos);
+                } else {
+                    run = (int) Math.min(count - i, fadeOutStart - pos);
+                    gain = mGain;
+                }
+                processRun(in, inOffset + i * mChannels, run, out, outOffset + i * mChannels,
+                        gain);
+                i += run;
+            }
+        }
+
+        private float getFadeGain(long pos) {
+            float fade = 1.0f;
+            if (pos < mFadeInSamples) {
+                fade = curve((float) pos / mFadeInSamples);
+            }
+            long toEnd = mNumSamples - pos;
+            if (toEnd <= mFadeOutSamples) {
+                fade = Math.min(fade, curve((float) Math.max(0, toEnd - 1) / mFadeOutSamples));
+            }
+            return fade;
+        }
+
+        private float curve(float t) {
+            switch (mFadeCurve) {
+                case CURVE_EQUAL_POWER:
+                    return (float) Math.sin(t * Math.PI / 2);
+                case CURVE_SQUARED:
+                    return t * t;
+                default:
+                    return t;
+            }
+        }
+
+        // count samples per channel with the same gain (before limiting).
+        // count个样本使用相同的增益（限制之前）。
+        private void processRun(short[] in, int inOffset, int count, short[] out, int outOffset,
+                                float gain) {
+            int numValues = count * mChannels;
+            if (!mLimiterEnabled) {
+                for (int j = 0; j < numValues; j++) {
+                    out[outOffset + j] = clip(in[inOffset + j] * gain);
+                }
+                return;
+            }
+            float threshold = mLimiterThreshold;
+            float limiterGain = mLimiterGain;
+            for (int j = 0; j < numValues; j += mChannels) {
+                float peak = 0;
+                for (int c = 0; c < mChannels; c++) {
+                    peak = Math.max(peak, Math.abs(in[inOffset + j + c] * gain));
+                }
+                // Gain which would bring this sample to the threshold: the limiter gain moves
+                // towards it, rather than jumping to it, when it is lower.
+                // 使该样本达到阈值的增益：限制器增益在其更低时向其平滑移动，而不是跳变。
+                float target = (peak > threshold) ? threshold / peak : 1.0f;
+                if (target < limiterGain) {
+                    limiterGain += (target - limiterGain) * mAttackCoeff;
+                } else {
+                    limiterGain = Math.min(target, limiterGain + mReleaseStep);
+                }
+                float total = gain * limiterGain;
+                if (peak * limiterGain > threshold) {
+                    for (int c = 0; c < mChannels; c++) {
+                        out[outOffset + j + c] = clip(Math.max(-threshold,
+                                Math.min(threshold, in[inOffset + j + c] * total)));
+                    }
+                } else {
+                    for (int c = 0; c < mChannels; c++) {
+                        out[outOffset + j + c] = clip(in[inOffset + j + c] * total);
+                    }
+                }
+            }
+            mLimiterGain = limiterGain;
+        }
+    }
+
+    private static short clip(float value) {
+        if (value >= Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (value <= Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) value;
+    }
+}
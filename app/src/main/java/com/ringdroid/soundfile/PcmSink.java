@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.IOException;
+
+/**
+ * Receives a stream of interleaved 16 bits PCM and turns it into an output file (encoder, WAV
+ * writer, ...). Calls are start(), write() any number of times, finish(), and always release().
+ * <p>
+ * 接收16位交错PCM流并将其转换为输出文件。
+ */
+public interface PcmSink {
+    // Create the output. estimatedNumSamples is the expected number of samples per channel.
+    // 创建输出。
+    void start(long estimatedNumSamples) throws IOException;
+
+    // Consume numSamples samples per channel from samples (interleaved), starting at offset.
+    // 从samples中消耗numSamples个样本（交错）。
+    void write(short[] samples, int offset, int numSamples) throws IOException;
+
+    // Flush everything and complete the output file.
+    // 刷新所有内容并完成输出文件。
+    void finish() throws IOException;
+
+    // Free the resources held by the sink. Safe to call more than once.
+    // 释放资源。
+    void release();
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Creates the PcmSink writing an ExportProfile, for a source with a given format.
+ * <p>
+ * 为给定格式的源创建写入ExportProfile的PcmSink。
+ */
+public interface PcmSinkFactory {
+    // Create a sink writing outputFile with profile. sampleRate and numChannels describe the PCM
+    // the sink will receive.
+    // 创建一个使用profile写入outputFile的接收器。
+    PcmSink create(ExportProfile profile, int sampleRate, int numChannels, File outputFile)
+            throws IOException;
+
+    // Maximum number of sinks for profile which can be used at the same time.
+    // 可以同时使用的最大接收器数。
+    int getMaxConcurrentSinks(ExportProfile profile, int sampleRate, int numChannels)
+            throws IOException;
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.IOException;
+
+/**
+ * A stream of interleaved 16 bits PCM samples which can be read block by block, and repositioned.
+ * <p>
+ * 可以逐块读取和重新定位的16位交错PCM样本流。
+ */
+public interface PcmSource {
+    // Sampling rate in Hz.
+    int getSampleRate();
+
+    int getChannels();
+
+    // Total number of samples per channel.
+    // 每个通道的样本总数。
+    long getNumSamples();
+
+    // Move to the given sample (per channel). The next read() starts from there.
+    // 移动到给定的样本。
+    void seek(long sample) throws IOException;
+
+    // Read up to numSamples samples per channel into buffer (interleaved), starting at offset.
+    // Returns the number of samples per channel read, 0 at the end of the stream.
+    // 读取最多numSamples个样本。 返回读取的每个通道的样本数，在流的末尾为0。
+    int read(short[] buffer, int offset, int numSamples) throws IOException;
+
+    void close();
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Growable store of interleaved PCM, addressed with 64 bits sample indexes.
+ * <p>
+ * Samples are kept in fixed size chunks: growing the store never copies what is already stored
+ * (as reallocating one big buffer does) and the total size is not limited to 2GB. The first
+ * chunks are allocated on the heap. Once they use more than maxHeapBytes, the next chunks are
+ * memory-mapped from a temporary file, so that hours of decoded or recorded audio don't have to
+ * fit in the Java heap.
+ * <p>
+ * Samples are stored with one of three encodings, trading memory against fidelity: 16 bits (as
+ * decoded), 8 bits (half the memory, good enough for a waveform or a preview) or 32 bits float
+ * (twice the memory, for samples which will go through several processing steps). Whatever the
+ * encoding, they are appended and read as 16 bits samples; sources also implement
+ * FloatPcmSource.
+ * <p>
+ * append() must not be called while sources obtained from newSource() are being read.
+ * <p>
+ * 可增长的交错PCM存储，使用64位样本索引。样本保存在固定大小的块中；超过maxHeapBytes后，
+ * 新块从临时文件映射到内存。样本以16位、8位或32位浮点编码存储。
+ */
+public class PcmStore {
+    // Sample encodings (same values as the ENCODING_PCM_* constants of android.media.AudioFormat).
+    // 样本编码（与android.media.AudioFormat的ENCODING_PCM_*常量相同的值）。
+    public static final int ENCODING_PCM_16BIT = 2;
+    public static final int ENCODING_PCM_8BIT = 3;
+    public static final int ENCODING_PCM_FLOAT = 4;
+
+    // Number of samples per channel in a chunk (6 seconds at 44.1kHz, 1MB for a 16 bits stereo
+    // stream).
+    // 每个块中每个通道的样本数。
+    private static final int CHUNK_SAMPLES = 1 << 18;
+
+    private final int mChannels;
+    private final int mEncoding;
+    private final int mBytesPerSample;
+    private final int mChunkSize;      // in samples (all channels).
+    private final long mMaxHeapBytes;
+    private final File mSpillDir;      // null: heap only.
+    // Chunks, little-endian, with their position and limit left at 0 and capacity. They are
+    // accessed with absolute indexes (or through views).
+    private final List<ByteBuffer> mChunks;
+    private long mSize;                // number of samples (all channels) stored.
+    private long mHeapBytes;
+
+    // Temporary file backing the mapped chunks.
+    private File mSpillFile;
+    private RandomAccessFile mSpillRandomAccessFile;
+    private FileChannel mSpillChannel;
+    private long mSpillSize;           // bytes mapped so far.
+
+    // 16 bits samples. Chunks are kept on the heap until they use more than maxHeapBytes, then
+    // they are mapped from a temporary file created in spillDir. If spillDir is null, everything
+    // stays on the heap.
+    public PcmStore(int channels, long maxHeapBytes, File spillDir) {
+        this(channels, ENCODING_PCM_16BIT, maxHeapBytes, spillDir);
+    }
+
+    // Same as above, storing the samples with the given encoding.
+    // 同上，以给定的编码存储样本。
+    public PcmStore(int channels, int encoding, long maxHeapBytes, File spillDir) {
+        mChannels = channels;
+        mEncoding = encoding;
+        mBytesPerSample = getBytesPerSample(encoding);
+        mChunkSize = CHUNK_SAMPLES * channels;
+        mMaxHeapBytes = maxHeapBytes;
+        mSpillDir = spillDir;
+        mChunks = new ArrayList<ByteBuffer>();
+        mSize = 0;
+        mHeapBytes = 0;
+    }
+
+    public static int getBytesPerSample(int encoding) {
+        switch (encoding) {
+            case ENCODING_PCM_16BIT:
+                return 2;
+            case ENCODING_PCM_8BIT:
+                return 1;
+            case ENCODING_PCM_FLOAT:
+                return 4;
+            default:
+                throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+        }
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    public int getEncoding() {
+        return mEncoding;
+    }
+
+    // Number of samples per channel stored.
+    // 存储的每个通道的样本数。
+    public long getNumSamples() {
+        return mSize / mChannels;
+    }
+
+    // True if some of the samples are stored in a temporary file.
+    public boolean isSpilled() {
+        return mSpillChannel != null;
+    }
+
+    // Append the remaining bytes of bytes (16 bits little-endian PCM, interleaved). The position
+    // of bytes is moved to its limit.
+    // 追加bytes中剩余的字节（16位小端PCM，交错）。
+    public void append(ByteBuffer bytes) throws IOException {
+        ShortBuffer src = bytes.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        while (src.hasRemaining()) {
+            ByteBuffer chunk = getWritableChunk();
+            int index = (int) (mSize % mChunkSize);
+            int count = Math.min(src.remaining(), mChunkSize - index);
+            switch (mEncoding) {
+                case ENCODING_PCM_16BIT:
+                    int limit = src.limit();
+                    src.limit(src.position() + count);
+                    ShortBuffer view = chunk.asShortBuffer();
+                    view.position(index);
+                    view.put(src);
+                    src.limit(limit);
+                    break;
+                case ENCODING_PCM_8BIT:
+                    for (int i = 0; i < count; i++) {
+                        chunk.put(index + i, (byte) (src.get() >> 8));
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < count; i++) {
+                        chunk.putFloat((index + i) * 4, src.get() / 32768f);
+                    }
+                    break;
+            }
+            mSize += count;
+        }
+        bytes.position(bytes.limit());
+    }
+
+    // Append length shorts of samples (interleaved), starting at offset.
+    // 追加samples中的length个short（交错）。
+    public void append(short[] samples, int offset, int length) throws IOException {
+        while (length > 0) {
+            ByteBuffer chunk = getWritableChunk();
+            int index = (int) (mSize % mChunkSize);
+            int count = Math.min(length, mChunkSize - index);
+            switch (mEncoding) {
+                case ENCODING_PCM_16BIT:
+                    ShortBuffer view = chunk.asShortBuffer();
+                    view.position(index);
+                    view.put(samples, offset, count);
+                    break;
+                case ENCODING_PCM_8BIT:
+                    for (int i = 0; i < count; i++) {
+                        chunk.put(index + i, (byte) (samples[offset + i] >> 8));
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < count; i++) {
+                        chunk.putFloat((index + i) * 4, samples[offset + i] / 32768f);
+                    }
+                    break;
+            }
+            offset += count;
+            length -= count;
+            mSize += count;
+        }
+    }
+
+    // Append length floats (between -1 and 1) of samples (interleaved), starting at offset. Float
+    // stores keep them as they are, the others round them.
+    // 追加samples中的length个浮点数（交错）。
+    public void append(float[] samples, int offset, int length) throws IOException {
+        while (length > 0) {
+            ByteBuffer chunk = getWritableChunk();
+            int index = (int) (mSize % mChunkSize);
+            int count = Math.min(length, mChunkSize - index);
+            switch (mEncoding) {
+                case ENCODING_PCM_16BIT:
+                    for (int i = 0; i < count; i++) {
+                        chunk.putShort((index + i) * 2, toShort(samples[offset + i]));
+                    }
+                    break;
+                case ENCODING_PCM_8BIT:
+                    for (int i = 0; i < count; i++) {
+                        chunk.put(index + i, (byte) (toShort(samples[offset + i]) >> 8));
+                    }
+                    break;
+                default:
+                    FloatBuffer view = chunk.asFloatBuffer();
+                    view.position(index);
+                    view.put(samples, offset, count);
+                    break;
+            }
+            offset += count;
+            length -= count;
+            mSize += count;
+        }
+    }
+
+    // A new reader of the stored samples. Each source has its own position, so several of them
+    // can be read at the same time (e.g. by the player and by an export).
+    // 存储样本的新读取器。每个源都有自己的位置。
+    public FloatPcmSource newSource(final int sampleRate) {
+        return new FloatPcmSource() {
+            private long mPosition = 0;  // in samples (all channels).
+
+            public int getSampleRate() {
+                return sampleRate;
+            }
+
+            public int getChannels() {
+                return mChannels;
+            }
+
+            public long getNumSamples() {
+                return PcmStore.this.getNumSamples();
+            }
+
+            public void seek(long sample) {
+                mPosition = Math.max(0, Math.min(sample * mChannels, mSize));
+            }
+
+            public int read(short[] buffer, int offset, int numSamples) {
+                long end = Math.min(mPosition + (long) numSamples * mChannels, mSize);
+                int count = (int) ((end - mPosition) / mChannels);
+                int length = count * mChannels;
+                while (length > 0) {
+                    // Chunks are only read with absolute indexes, or through views created here,
+                    // so several sources can read the same chunk at the same time.
+                    // 块仅通过绝对索引或此处创建的视图读取。
+                    ByteBuffer chunk = mChunks.get((int) (mPosition / mChunkSize));
+                    int index = (int) (mPosition % mChunkSize);
+                    int n = Math.min(length, mChunkSize - index);
+                    switch (mEncoding) {
+                        case ENCODING_PCM_16BIT:
+                            ShortBuffer view = chunk.asShortBuffer();
+                            view.position(index);
+                            view.get(buffer, offset, n);
+                            break;
+                        case ENCODING_PCM_8BIT:
+                            for (int i = 0; i < n; i++) {
+                                buffer[offset + i] = (short) (chunk.get(index + i) << 8);
+                            }
+                            break;
+                        default:
+                            for (int i = 0; i < n; i++) {
+                                buffer[offset + i] = toShort(chunk.getFloat((index + i) * 4));
+                            }
+                            break;
+                    }
+                    offset += n;
+                    length -= n;
+                    mPosition += n;
+                }
+                return count;
+            }
+
+            public int readFloat(float[] buffer, int offset, int numSamples) {
+                long end = Math.min(mPosition + (long) numSamples * mChannels, mSize);
+                int count = (int) ((end - mPosition) / mChannels);
+                int length = count * mChannels;
+                while (length > 0) {
+                    ByteBuffer chunk = mChunks.get((int) (mPosition / mChunkSize));
+                    int index = (int) (mPosition % mChunkSize);
+                    int n = Math.min(length, mChunkSize - index);
+                    switch (mEncoding) {
+                        case ENCODING_PCM_16BIT:
+                            for (int i = 0; i < n; i++) {
+                                buffer[offset + i] = chunk.getShort((index + i) * 2) / 32768f;
+                            }
+                            break;
+                        case ENCODING_PCM_8BIT:
+                            for (int i = 0; i < n; i++) {
+                                buffer[offset + i] = chunk.get(index + i) / 128f;
+                            }
+                            break;
+                        default:
+                            FloatBuffer view = chunk.asFloatBuffer();
+                            view.position(index);
+                            view.get(buffer, offset, n);
+                            break;
+                    }
+                    offset += n;
+                    length -= n;
+                    mPosition += n;
+                }
+                return count;
+            }
+
+            public void close() {
+            }
+        };
+    }
+
+    // Free the chunks and delete the temporary file, if any. The store must not be used after.
+    // 释放块并删除临时文件。
+    public void release() {
+        mChunks.clear();
+        mSize = 0;
+        if (mSpillRandomAccessFile != null) {
+            try {
+                mSpillRandomAccessFile.close();
+            } catch (IOException e) {
+                // Nothing more we can do.
+            }
+            mSpillRandomAccessFile = null;
+            mSpillChannel = null;
+        }
+        if (mSpillFile != null) {
+            mSpillFile.delete();
+            mSpillFile = null;
+        }
+    }
+
+    // The chunk where the next sample goes: the last one if it is not full, a new one otherwise.
+    private ByteBuffer getWritableChunk() throws IOException {
+        if (mSize < (long) mChunks.size() * mChunkSize) {
+            return mChunks.get(mChunks.size() - 1);
+        }
+        int chunkBytes = mChunkSize * mBytesPerSample;
+        ByteBuffer bytes = null;
+        if (mSpillDir == null || mHeapBytes + chunkBytes <= mMaxHeapBytes) {
+            try {
+                bytes = ByteBuffer.allocate(chunkBytes);
+                mHeapBytes += chunkBytes;
+            } catch (OutOfMemoryError oome) {
+                if (mSpillDir == null) {
+                    throw new IOException("Out of memory after " + getNumSamples() + " samples");
+                }
+                // Fall back to the temporary file.
+            }
+        }
+        if (bytes == null) {
+            bytes = mapChunk(chunkBytes);
+        }
+        bytes.order(ByteOrder.LITTLE_ENDIAN);
+        mChunks.add(bytes);
+        return bytes;
+    }
+
+    private ByteBuffer mapChunk(int chunkBytes) throws IOException {
+        if (mSpillChannel == null) {
+            mSpillFile = File.createTempFile("pcm", ".raw", mSpillDir);
+            mSpillFile.deleteOnExit();
+            mSpillRandomAccessFile = new RandomAccessFile(mSpillFile, "rw");
+            mSpillChannel = mSpillRandomAccessFile.getChannel();
+            mSpillSize = 0;
+        }
+        ByteBuffer bytes =
+                mSpillChannel.map(FileChannel.MapMode.READ_WRITE, mSpillSize, chunkBytes);
+        mSpillSize += chunkBytes;
+        return bytes;
+    }
+
+    // Float sample to 16 bits, rounded and clipped.
+    private static short toShort(float value) {
+        float scaled = value * 32768f;
+        if (scaled >= Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (scaled <= Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) Math.round(scaled);
+    }
+}
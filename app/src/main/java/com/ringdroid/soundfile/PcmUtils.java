@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+/**
+ * Small helpers working on PCM buffers.
+ * <p>
+ * 处理PCM缓冲区的小工具。
+ */
+public class PcmUtils {
+    private PcmUtils() {
+    }
+
+    // Method used to swap the left and right channels (needed for stereo WAV files).
+    // buffer contains the PCM data: {sample 1 right, sample 1 left, sample 2 right, etc.}
+    // The size of a sample is assumed to be 16 bits (for a single channel).
+    // When done, buffer will contain {sample 1 left, sample 1 right, sample 2 left, etc.}
+    //用于交换左右声道的方法（立体声WAV文件需要）。
+    //缓冲区包含PCM数据：{样本1右，样本1左，样本2右，等等}
+    //样本大小假定为16位（对于单个通道）。
+    //完成后，缓冲区将包含{样本1左，样本1右，样本2左，等等}
+    public static void swapLeftRightChannels(byte[] buffer) {
+        byte left[] = new byte[2];
+        byte right[] = new byte[2];
+        if (buffer.length % 4 != 0) {  // 2 channels, 2 bytes per sample (for one channel).
+            // Invalid buffer size.
+            return;
+        }
+        for (int offset = 0; offset < buffer.length; offset += 4) {
+            left[0] = buffer[offset];
+            left[1] = buffer[offset + 1];
+            right[0] = buffer[offset + 2];
+            right[1] = buffer[offset + 3];
+            buffer[offset] = right[0];
+            buffer[offset + 1] = right[1];
+            buffer[offset + 2] = left[0];
+            buffer[offset + 3] = left[1];
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Changes the sampling rate of interleaved 16 bits PCM, block by block, with a polyphase
+ * windowed sinc filter.
+ * <p>
+ * For a ratio dst / src = L / M (reduced), output sample n falls at input position n * M / L: its
+ * integer part says which input samples are used, its fractional part (one of L phases) which set
+ * of coefficients. The coefficients of all the phases are computed once per pair of rates and
+ * shared by all the resamplers. The filter keeps ZERO_CROSSINGS zero crossings on each side, below
+ * the Nyquist frequency of the lower of the two rates, with a Kaiser window (about 75 dB of
+ * rejection). Ratios with more than MAX_PHASES phases use the nearest of MAX_PHASES phases.
+ * <p>
+ * The filter delays the output by half its length: flush() at the end of the stream writes the
+ * last samples, so that numFrames input samples give exactly getNumOutputFrames(numFrames) output
+ * samples, aligned with the input. No memory is allocated after construction.
+ * <p>
+ * 使用多相加窗sinc滤波器逐块改变16位交错PCM的采样率。所有相位的系数按采样率对计算一次并共享。构造后不分配内存。
+ */
+public class PolyphaseResampler {
+    private static final int ZERO_CROSSINGS = 24;
+    private static final double KAISER_BETA = 7.5;
+    // Cutoff, relative to the lower Nyquist frequency.
+    // 截止频率，相对于较低的奈奎斯特频率。
+    private static final double CUTOFF = 0.9;
+    private static final int MAX_PHASES = 1024;
+    // Input samples (per channel) buffered at a time, in addition to the filter length.
+    // 每次缓冲的输入样本数（每个通道），另加滤波器长度。
+    private static final int CHUNK_FRAMES = 1024;
+
+    // Coefficients by "src:dst", cf. getCoefficients().
+    // 按"src:dst"存储的系数。
+    private static final Map<String, float[]> sCoefficients = new HashMap<String, float[]>();
+
+    private final int mSrcSampleRate;
+    private final int mDstSampleRate;
+    private final int mChannels;
+    private final int mL;
+    private final int mM;
+    private final int mNumPhases;
+    private final int mNumTaps;  // per phase, even.
+    private final float[] mCoefficients;  // mNumTaps per phase, mNumPhases + 1 phases.
+
+    // Input samples, per channel: mBuffer[c][j] is input sample mBase + j.
+    // 输入样本，按通道存储：mBuffer[c][j]是输入样本mBase + j。
+    private final float[][] mBuffer;
+    private int mNumBuffered;
+    private long mBase;
+    // Position of the next output sample: input sample mIndex, phase mPhase / mL.
+    // 下一个输出样本的位置：输入样本mIndex，相位mPhase / mL。
+    private long mIndex;
+    private int mPhase;
+    private long mNumIn;
+    private long mNumOut;
+    private final short[] mZeros;
+
+    public PolyphaseResampler(int srcSampleRate, int dstSampleRate, int channels) {
+        mSrcSampleRate = srcSampleRate;
+        mDstSampleRate = dstSampleRate;
+        mChannels = channels;
+        int gcd = gcd(srcSampleRate, dstSampleRate);
+        mL = dstSampleRate / gcd;
+        mM = srcSampleRate / gcd;
+        mNumPhases = Math.min(mL, MAX_PHASES);
+        double cutoff = CUTOFF * Math.min(1.0, (double) dstSampleRate / srcSampleRate);
+        mNumTaps = 2 * (int) Math.ceil(ZERO_CROSSINGS / cutoff);
+        mCoefficients = getCoefficients(srcSampleRate, dstSampleRate, mNumPhases, mNumTaps,
+                cutoff);
+        mBuffer = new float[channels][mNumTaps + CHUNK_FRAMES];
+        mZeros = new short[CHUNK_FRAMES * channels];
+        reset();
+    }
+
+    // Number of output samples (per channel) for numFrames input samples (per channel).
+    // numFrames个输入样本对应的输出样本数（每个通道）。
+    public static long getNumOutputFrames(int srcSampleRate, int dstSampleRate, long numFrames) {
+        int gcd = gcd(srcSampleRate, dstSampleRate);
+        long l = dstSampleRate / gcd;
+        long m = srcSampleRate / gcd;
+        return (numFrames * l + m - 1) / m;
+    }
+
+    public int getSrcSampleRate() {
+        return mSrcSampleRate;
+    }
+
+    public int getDstSampleRate() {
+        return mDstSampleRate;
+    }
+
+    // Start a new stream.
+    // 开始一个新的流。
+    public void reset() {
+        // Zeros before the first sample, for the first outputs.
+        // 第一个样本之前的零，用于第一批输出。
+        int history = mNumTaps / 2 - 1;
+        for (int c = 0; c < mChannels; c++) {
+            Arrays.fill(mBuffer[c], 0, history, 0);
+        }
+        mNumBuffered = history;
+        mBase = -history;
+        mIndex = 0;
+        mPhase = 0;
+        mNumIn = 0;
+        mNumOut = 0;
+    }
+
+    // Maximum number of output samples (per channel) written by process() for numFrames input
+    // samples (per channel), or by flush() for numFrames = 0.
+    // process()为numFrames个输入样本写入的最大输出样本数（每个通道），numFrames = 0时为flush()的最大值。
+    public int getMaxOutputFrames(int numFrames) {
+        return (int) (((long) numFrames + mNumTaps) * mL / mM) + 2;
+    }
+
+    // Resample numFrames samples per channel read from in (starting at inOffset, interleaved)
+    // and write the result in out, starting at outOffset. Returns the number of samples per
+    // channel written in out, at most getMaxOutputFrames(numFrames).
+    // 重采样并返回写入out的每个通道的样本数。
+    public int process(short[] in, int inOffset, int numFrames, short[] out, int outOffset) {
+        mNumIn += numFrames;
+        return feed(in, inOffset, numFrames, out, outOffset, Long.MAX_VALUE);
+    }
+
+    // Write the output samples still held by the filter, at most getMaxOutputFrames(0), and
+    // start a new stream.
+    // 写入滤波器中仍保留的输出样本，并开始一个新的流。
+    public int flush(short[] out, int outOffset) {
+        long numOut = getNumOutputFrames(mSrcSampleRate, mDstSampleRate, mNumIn);
+        int written = 0;
+        while (mNumOut < numOut) {
+            written += feed(mZeros, 0, CHUNK_FRAMES, out, outOffset + written * mChannels,
+                    numOut);
+        }
+        reset();
+        return written;
+    }
+
+    // Buffer the input a chunk at a time, and write the outputs it completes, up to output
+    // sample maxOut.
+    // 一次缓冲一块输入，并写入它完成的输出，直到输出样本maxOut。
+    private int feed(short[] in, int inOffset, int numFrames, short[] out, int outOffset,
+                     long maxOut) {
+        int halfTaps = mNumTaps / 2;
+        int o = outOffset;
+        int written = 0;
+        while (numFrames > 0) {
+            int count = Math.min(numFrames, mBuffer[0].length - mNumBuffered);
+            for (int i = 0; i < count; i++) {
+                for (int c = 0; c < mChannels; c++) {
+                    mBuffer[c][mNumBuffered + i] = in[inOffset++];
+                }
+            }
+            mNumBuffered += count;
+            numFrames -= count;
+
+            // Outputs whose last input sample, mIndex + halfTaps, is buffered.
+            // 最后一个输入样本已缓冲的输出。
+            long last = mBase + mNumBuffered - 1;
+            while (mIndex + halfTaps <= last && mNumOut < maxOut) {
+                int phase = mNumPhases == mL
+                        ? mPhase : (int) (((long) mPhase * mNumPhases + mL / 2) / mL);
+                int first = (int) (mIndex - halfTaps + 1 - mBase);
+                int taps = phase * mNumTaps;
+                for (int c = 0; c < mChannels; c++) {
+                    float[] samples = mBuffer[c];
+                    float sum = 0;
+                    for (int k = 0; k < mNumTaps; k++) {
+                        sum += mCoefficients[taps + k] * samples[first + k];
+                    }
+                    out[o++] = clip(sum);
+                }
+                written++;
+                mNumOut++;
+                mPhase += mM;
+                if (mPhase >= mL) {
+                    mIndex += mPhase / mL;
+                    mPhase %= mL;
+                }
+            }
+
+            // Drop the input samples no output needs anymore.
+            // 丢弃不再需要的输入样本。
+            int drop = (int) Math.min(mNumBuffered, Math.max(0, mIndex - halfTaps + 1 - mBase));
+            if (drop > 0) {
+                for (int c = 0; c < mChannels; c++) {
+                    System.arraycopy(mBuffer[c], drop, mBuffer[c], 0, mNumBuffered - drop);
+                }
+                mNumBuffered -= drop;
+                mBase += drop;
+            }
+        }
+        return written;
+    }
+
+    // Coefficients of phases 0 to numPhases (the last one is phase 0 of the next input sample,
+    // used when rounding to the nearest phase), each normalized to a gain of 1.
+    // 相位0到numPhases的系数，每个相位归一化为增益1。
+    private static float[] getCoefficients(int srcSampleRate, int dstSampleRate, int numPhases,
+                                           int numTaps, double cutoff) {
+        String key = srcSampleRate + ":" + dstSampleRate;
+        synchronized (sCoefficients) {
+            float[] coefficients = sCoefficients.get(key);
+            if (coefficients != null) {
+                return coefficients;
+            }
+            coefficients = new float[(numPhases + 1) * numTaps];
+            int halfTaps = numTaps / 2;
+            double i0Beta = besselI0(KAISER_BETA);
+            for (int phase = 0; phase <= numPhases; phase++) {
+                double offset = (double) phase / numPhases;
+                double sum = 0;
+                for (int k = 0; k < numTaps; k++) {
+                    // Distance from the output sample to input sample k.
+                    // 输出样本到输入样本k的距离。
+                    double t = offset + halfTaps - 1 - k;
+                    double x = t / halfTaps;
+                    double window = Math.abs(x) < 1
+                            ? besselI0(KAISER_BETA * Math.sqrt(1 - x * x)) / i0Beta : 0;
+                    double value = cutoff * sinc(cutoff * t) * window;
+                    coefficients[phase * numTaps + k] = (float) value;
+                    sum += value;
+                }
+                for (int k = 0; k < numTaps; k++) {
+                    coefficients[phase * numTaps + k] /= sum;
+                }
+            }
+            sCoefficients.put(key, coefficients);
+            return coefficients;
+        }
+    }
+
+    private static double sinc(double x) {
+        if (x == 0) {
+            return 1;
+        }
+        return Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+
+    // Modified Bessel function of the first kind, order 0.
+    // 第一类零阶修正贝塞尔函数。
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50 && term > 1e-12 * sum; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+
+    private static short clip(float value) {
+        if (value > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (value < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) Math.round(value);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Decodes arbitrary regions of an audio file, for a PcmBlockCache.
+ * <p>
+ * Every compressed frame of the audio track is indexed when the file is opened (cf. FrameIndex):
+ * from the sample tables for MP4 files, by walking the track with the MediaExtractor otherwise
+ * (which reads the compressed data, but doesn't decode it). A region is then decoded by seeking
+ * the extractor to the frame containing its start, a couple of frames earlier so that the decoder
+ * has warmed up (overlapping transforms) when the region starts, flushing the codec and decoding
+ * until the region is complete. Decoded samples are placed using their
+ * presentation time, so the result lines up with a full decode of the file.
+ * <p>
+ * 解码音频文件的任意区域。打开文件时为音轨的每个压缩帧建立索引；
+ * 然后通过将提取器定位到区域开始之前的帧并解码到区域结束来解码区域。
+ */
+public class RegionDecoder implements PcmBlockCache.BlockDecoder {
+    // Number of frames decoded and dropped before a region, to let the decoder warm up.
+    // 区域之前解码并丢弃的帧数，以便解码器预热。
+    private static final int PREROLL_FRAMES = 2;
+    private static final long TIMEOUT_US = 10000;
+    // Number of empty dequeueOutputBuffer() calls tolerated once the input is complete (some
+    // devices never signal the end of the stream).
+    // 输入完成后允许的空dequeueOutputBuffer（）调用次数。
+    private static final int MAX_EMPTY_OUTPUTS = 50;
+
+    private final MediaExtractor mExtractor;
+    private final MediaCodec mCodec;
+    private final boolean mIsAAC;
+    private final int mSampleRate;
+    private final int mChannels;
+    private final FrameIndex mFrameIndex;
+    private ByteBuffer[] mInputBuffers;
+    private ByteBuffer[] mOutputBuffers;
+    private final MediaCodec.BufferInfo mInfo;
+
+    // Open the first audio track of file, described by format. frameIndex indexes its access units;
+    // if it is null, they are indexed here. Returns null if progressListener asked to stop while
+    // the frames were indexed.
+    // 打开文件的第一个音轨。如果frameIndex为null，则在此处建立索引。如果progressListener要求停止，则返回null。
+    public static RegionDecoder open(File file, MediaFormat format, FrameIndex frameIndex,
+                                     SoundFile.ProgressListener progressListener)
+            throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(file.getPath());
+            int track = 0;
+            while (track < extractor.getTrackCount() && !extractor.getTrackFormat(track)
+                    .getString(MediaFormat.KEY_MIME).startsWith("audio/")) {
+                track++;
+            }
+            if (track == extractor.getTrackCount()) {
+                throw new IOException("No audio track found in " + file);
+            }
+            extractor.selectTrack(track);
+            if (frameIndex == null) {
+                frameIndex = indexFrames(extractor, format, progressListener);
+                if (frameIndex == null) {
+                    extractor.release();
+                    return null;
+                }
+            }
+            return new RegionDecoder(extractor, format, frameIndex);
+        } catch (IOException e) {
+            extractor.release();
+            throw e;
+        }
+    }
+
+    private RegionDecoder(MediaExtractor extractor, MediaFormat format, FrameIndex frameIndex)
+            throws IOException {
+        mExtractor = extractor;
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        mIsAAC = mime.equals("audio/mp4a-latm");
+        mSampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        mChannels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        mFrameIndex = frameIndex;
+        mCodec = MediaCodec.createDecoderByType(mime);
+        mCodec.configure(format, null, null, 0);
+        mCodec.start();
+        mInputBuffers = mCodec.getInputBuffers();
+        mOutputBuffers = mCodec.getOutputBuffers();
+        mInfo = new MediaCodec.BufferInfo();
+    }
+
+    public FrameIndex getFrameIndex() {
+        return mFrameIndex;
+    }
+
+    // Index of the access units of the track, read with extractor (which is left at the end of
+    // the track). Their offsets in the file are unknown. Returns null if progressListener asked
+    // to stop.
+    // 用提取器读取的音轨访问单元的索引。如果progressListener要求停止，则返回null。
+    private static FrameIndex indexFrames(MediaExtractor extractor, MediaFormat format,
+                                          SoundFile.ProgressListener progressListener) {
+        long durationUs = Math.max(1, format.getLong(MediaFormat.KEY_DURATION));
+        int maxSize = 64 * 1024;
+        if (format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)) {
+            maxSize = Math.max(maxSize, format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE));
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(maxSize);
+        FrameIndex frameIndex = new FrameIndex();
+        int size;
+        while ((size = extractor.readSampleData(buffer, 0)) >= 0) {
+            long time = extractor.getSampleTime();
+            frameIndex.add(-1, size, time);
+            if (progressListener != null && (frameIndex.getNumUnits() & 1023) == 0
+                    && !progressListener.reportProgress((double) time / durationUs)) {
+                return null;
+            }
+            extractor.advance();
+        }
+        return frameIndex;
+    }
+
+    private long sampleToUs(long sample) {
+        return sample * 1000000L / mSampleRate;
+    }
+
+    private long usToSample(long timeUs) {
+        return Math.round(timeUs * (double) mSampleRate / 1000000.0);
+    }
+
+    public void decodeBlock(long start, short[] block, int numSamples) throws IOException {
+        Arrays.fill(block, 0, numSamples * mChannels, (short) 0);
+        if (mFrameIndex.getNumUnits() == 0) {
+            return;
+        }
+        long end = start + numSamples;
+        // Sample indexes count from the first frame, as they do when the whole file is decoded.
+        // 样本索引从第一帧开始计数，与解码整个文件时相同。
+        long originUs = mFrameIndex.getTimeUs(0);
+        long endUs = originUs + sampleToUs(end);
+        int unit = Math.max(0, mFrameIndex.findUnit(originUs + sampleToUs(start)) - PREROLL_FRAMES);
+        mExtractor.seekTo(mFrameIndex.getTimeUs(unit), MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        mCodec.flush();
+
+        boolean doneReading = false;
+        int emptyOutputs = 0;
+        while (true) {
+            if (!doneReading) {
+                int inputBufferIndex = mCodec.dequeueInputBuffer(TIMEOUT_US);
+                if (inputBufferIndex >= 0) {
+                    ByteBuffer inputBuffer = mInputBuffers[inputBufferIndex];
+                    int sampleSize = mExtractor.readSampleData(inputBuffer, 0);
+                    long time = mExtractor.getSampleTime();
+                    if (sampleSize == 2 && mIsAAC && time <= originUs) {
+                        // Skip the AAC stream info, as SoundFile.ReadFile() does.
+                        // 跳过AAC流信息。
+                        mExtractor.advance();
+                        sampleSize = mExtractor.readSampleData(inputBuffer, 0);
+                        time = mExtractor.getSampleTime();
+                    }
+                    if (sampleSize < 0 || time > endUs) {
+                        mCodec.queueInputBuffer(inputBufferIndex, 0, 0, 0,
+                                MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        doneReading = true;
+                    } else {
+                        mCodec.queueInputBuffer(inputBufferIndex, 0, sampleSize, time, 0);
+                        mExtractor.advance();
+                    }
+                }
+            }
+
+            int outputBufferIndex = mCodec.dequeueOutputBuffer(mInfo, TIMEOUT_US);
+            if (outputBufferIndex >= 0) {
+                emptyOutputs = 0;
+                boolean complete = (mInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                if (mInfo.size > 0) {
+                    ByteBuffer outputBuffer = mOutputBuffers[outputBufferIndex];
+                    outputBuffer.position(mInfo.offset);
+                    outputBuffer.limit(mInfo.offset + mInfo.size);
+                    long position = usToSample(mInfo.presentationTimeUs - originUs);
+                    copyOverlap(outputBuffer, position, block, start, end);
+                    outputBuffer.clear();
+                    complete |= position + mInfo.size / (2 * mChannels) >= end;
+                }
+                mCodec.releaseOutputBuffer(outputBufferIndex, false);
+                if (complete) {
+                    break;
+                }
+            } else if (outputBufferIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                mOutputBuffers = mCodec.getOutputBuffers();
+            } else if (doneReading && ++emptyOutputs > MAX_EMPTY_OUTPUTS) {
+                break;
+            }
+        }
+    }
+
+    // Copy the samples of decoded (16 bits little-endian, interleaved), which start at sample
+    // position, into the part of block (which starts at sample start) they overlap.
+    // 将解码的样本复制到它们重叠的block部分。
+    private void copyOverlap(ByteBuffer decoded, long position, short[] block, long start,
+                             long end) {
+        ShortBuffer samples = decoded.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        long decodedEnd = position + samples.remaining() / mChannels;
+        long from = Math.max(position, start);
+        long to = Math.min(decodedEnd, end);
+        if (from >= to) {
+            return;
+        }
+        samples.position((int) (from - position) * mChannels);
+        samples.get(block, (int) (from - start) * mChannels, (int) (to - from) * mChannels);
+    }
+
+    public void release() {
+        mCodec.stop();
+        mCodec.release();
+        mExtractor.release();
+    }
+}
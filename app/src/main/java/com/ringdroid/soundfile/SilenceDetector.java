@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.IOException;
+
+/**
+ * Finds the leading and trailing silence of a stream, to propose where to trim it.
+ * <p>
+ * A sample is active when the average absolute value of its channels reaches the threshold. The
+ * frame gains, when known, are scanned first: they tell which frames may contain an active sample,
+ * so that only the samples of those frames are read, near the boundaries. Without gains (e.g. for
+ * files decoded on demand), the stream is read from both ends until active samples are found,
+ * which only touches the silent parts.
+ * <p>
+ * 查找流开头和结尾的静音，以建议修剪位置。先扫描帧增益，仅在边界附近读取样本。
+ */
+public class SilenceDetector {
+    public static final float DEFAULT_THRESHOLD_DB = -50;
+    public static final int DEFAULT_PADDING_MS = 20;
+
+    // Number of samples (per channel) read at a time when there are no frame gains.
+    // 没有帧增益时一次读取的样本数（每个通道）。
+    private static final int SCAN_SAMPLES = 4096;
+
+    private final int mThreshold;  // average absolute value of the channels.
+    private final int mPaddingMs;
+
+    public SilenceDetector() {
+        this(DEFAULT_THRESHOLD_DB, DEFAULT_PADDING_MS);
+    }
+
+    // thresholdDb is relative to full scale (0 dB); paddingMs of silence are kept at both ends.
+    // thresholdDb相对于满刻度；两端保留paddingMs毫秒的静音。
+    public SilenceDetector(float thresholdDb, int paddingMs) {
+        mThreshold = Math.max(1, (int) Math.round(32768 * Math.pow(10, thresholdDb / 20)));
+        mPaddingMs = Math.max(0, paddingMs);
+    }
+
+    // The active part of a stream, in samples (per channel) and milliseconds.
+    // 流的活动部分。
+    public static class Bounds {
+        private final long mStartSample;
+        private final long mEndSample;
+        private final int mSampleRate;
+
+        Bounds(long startSample, long endSample, int sampleRate) {
+            mStartSample = startSample;
+            mEndSample = endSample;
+            mSampleRate = sampleRate;
+        }
+
+        public long getStartSample() {
+            return mStartSample;
+        }
+
+        public long getEndSample() {
+            return mEndSample;
+        }
+
+        public int getStartMs() {
+            return (int) (mStartSample * 1000 / mSampleRate);
+        }
+
+        public int getEndMs() {
+            return (int) ((mEndSample * 1000 + mSampleRate - 1) / mSampleRate);
+        }
+
+        // True if the stream has no active sample at all.
+        // 如果流根本没有活动样本，则为true。
+        public boolean isSilent() {
+            return mEndSample <= mStartSample;
+        }
+    }
+
+    // Bounds of the active part of source, scanning frameGains (frames of samplesPerFrame
+    // samples, cf. FrameGains) first, or reading from both ends if frameGains is null. The
+    // position of source is undefined afterwards.
+    // source活动部分的边界。先扫描frameGains，如果frameGains为null，则从两端读取。
+    public Bounds detect(PcmSource source, int[] frameGains, int samplesPerFrame)
+            throws IOException {
+        long numSamples = source.getNumSamples();
+        int frameSamples = frameGains != null ? samplesPerFrame : SCAN_SAMPLES;
+        int numFrames = (int) ((numSamples + frameSamples - 1) / frameSamples);
+        if (frameGains != null) {
+            numFrames = Math.min(numFrames, frameGains.length);
+        }
+        short[] buffer = new short[frameSamples * source.getChannels()];
+
+        long start = -1;
+        int frame;
+        for (frame = 0; frame < numFrames && start < 0; frame++) {
+            if (frameGains == null || mayBeActive(frameGains[frame])) {
+                int count = readFrame(source, frame, frameSamples, buffer);
+                int i = findActive(buffer, count, source.getChannels(), true);
+                if (i >= 0) {
+                    start = (long) frame * frameSamples + i;
+                }
+            }
+        }
+        if (start < 0) {
+            return new Bounds(0, 0, source.getSampleRate());
+        }
+        // The frame of the first active sample has one, so the backward scan stops there.
+        // 第一个活动样本的帧包含活动样本，因此反向扫描在那里停止。
+        int firstFrame = frame - 1;
+        long end = start + 1;
+        for (frame = numFrames - 1; frame >= firstFrame; frame--) {
+            if (frameGains == null || mayBeActive(frameGains[frame])) {
+                int count = readFrame(source, frame, frameSamples, buffer);
+                int i = findActive(buffer, count, source.getChannels(), false);
+                if (i >= 0) {
+                    end = (long) frame * frameSamples + i + 1;
+                    break;
+                }
+            }
+        }
+        long padding = (long) mPaddingMs * source.getSampleRate() / 1000;
+        return new Bounds(Math.max(0, start - padding), Math.min(numSamples, end + padding),
+                source.getSampleRate());
+    }
+
+    // Whether a frame of the given gain may contain an active sample. The gain is the square
+    // root of the largest average, rounded down, so that average is below (gain + 1)^2.
+    // 给定增益的帧是否可能包含活动样本。
+    private boolean mayBeActive(int gain) {
+        return (long) (gain + 1) * (gain + 1) > mThreshold;
+    }
+
+    private static int readFrame(PcmSource source, int frame, int frameSamples, short[] buffer)
+            throws IOException {
+        source.seek((long) frame * frameSamples);
+        int channels = source.getChannels();
+        int count = 0;
+        while (count < frameSamples) {
+            int n = source.read(buffer, count * channels, frameSamples - count);
+            if (n <= 0) {
+                break;
+            }
+            count += n;
+        }
+        return count;
+    }
+
+    // Index of the first (or last) active sample of the count samples of buffer, -1 if none.
+    // buffer中第一个（或最后一个）活动样本的索引，如果没有则为-1。
+    private int findActive(short[] buffer, int count, int channels, boolean first) {
+        int step = first ? 1 : -1;
+        for (int i = first ? 0 : count - 1; i >= 0 && i < count; i += step) {
+            int value = 0;
+            for (int c = 0; c < channels; c++) {
+                value += Math.abs(buffer[i * channels + c]);
+            }
+            if (value / channels >= mThreshold) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -22,7 +22,6 @@ import android.media.MediaCodec;
 import android.media.MediaExtractor;
 import android.media.MediaFormat;
 import android.media.MediaRecorder;
-import android.os.Build;
 import android.os.Environment;
 import android.util.Log;
 
@@ -37,8 +36,16 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 import java.util.Arrays;
+import java.util.List;
 
 public class SoundFile {
+    // Files lasting at least this long (e.g. audiobooks) are decoded on demand, cf. PcmBlockCache.
+    // 至少持续这么长时间的文件（例如有声读物）按需解码。
+    private static final long ON_DEMAND_MIN_DURATION_US = 30 * 60 * 1000000L;
+    // Sampling rate of the mono copy kept in preview mode.
+    // 预览模式下保留的单声道副本的采样率。
+    private static final int PREVIEW_SAMPLE_RATE = 8000;
+
     //进度
     private ProgressListener mProgressListener = null;
     //输入文件
@@ -50,7 +57,7 @@ public class SoundFile {
     //文件类型
     private String mFileType;
     // 文件大小
-    private int mFileSize;
+    private long mFileSize;
     // Average bit rate in kbps.
     // 平均比特率，以kbps为单位。
     private int mAvgBitRate;
@@ -62,32 +69,78 @@ public class SoundFile {
     // 音频文件中每个通道的样本总数
     private int mNumSamples;
 
-    // Raw audio data
+    // Raw audio data, in chunks on the heap or mapped from a temporary file, cf. PcmStore.
     // 原始音频数据
-    private ByteBuffer mDecodedBytes;
-
-    // shared buffer with mDecodedBytes.
-    // 具有mDecodedBytes的共享缓冲区。
-    private ShortBuffer mDecodedSamples;
-    // mDecodedSamples具有以下格式：{s1c1, s1c2, ..., s1cM, s2c1, ..., s2cM, ..., sNc1, ..., sNcM}
+    private PcmStore mPcmStore;
+    // Encoding of the samples in mPcmStore (PcmStore.ENCODING_PCM_*).
+    // mPcmStore中样本的编码。
+    private int mSampleEncoding = PcmStore.ENCODING_PCM_16BIT;
+    // Preview mode: mPcmStore only holds a mono copy at PREVIEW_SAMPLE_RATE, for playback, and
+    // full rate samples are decoded on demand by mBlockCache.
+    // 预览模式：mPcmStore仅保留单声道低采样率副本，全速率样本由mBlockCache按需解码。
+    private boolean mIsPreview = false;
+    // mPcmStore具有以下格式：{s1c1, s1c2, ..., s1cM, s2c1, ..., s2cM, ..., sNc1, ..., sNcM}
     // 其中sicj是第j个通道的第i个样本（样本是带符号的short）
     // M是通道数（例如2个立体声），N是每个通道的采样数。
     // hack的成员变量（使其与旧版本兼容，直到应用仅使用示例为止）。
-    // mDecodedSamples has the following format:
+    // mPcmStore has the following format:
     // {s1c1, s1c2, ..., s1cM, s2c1, ..., s2cM, ..., sNc1, ..., sNcM}
     // where sicj is the ith sample of the jth channel (a sample is a signed short)
     // M is the number of channels (e.g. 2 for stereo) and N is the number of samples per channel.
 
     // Member variables for hack (making it work with old version, until app just uses the samples).
 
+    // Samples decoded on demand, for long files (mPcmStore is null then).
+    // 按需解码的样本，用于长文件（此时mPcmStore为null）。
+    private PcmBlockCache mBlockCache;
+    private RegionListener mRegionListener;
+    // Background decoding of the regions requested with prefetch().
+    // 后台解码使用prefetch（）请求的区域。
+    private final Object mPrefetchLock = new Object();
+    private Thread mPrefetchThread;
+    private int mPrefetchFirstBlock = -1;
+    private int mPrefetchLastBlock = -1;
+    private int mPrefetchRequest = 0;
+    private boolean mReleased = false;
+
     // 帧数
     private int mNumFrames;
+    // Number of samples per channel in a frame, cf. getDefaultSamplesPerFrame().
+    // 每帧中每个通道的样本数。
+    private int mSamplesPerFrame = 1024;
     // 帧增益 ？
     private int[] mFrameGains;
+    // Per channel min, max and RMS of each frame, computed in the same pass as the gains.
+    // 每帧的每通道最小值、最大值和RMS，与增益在同一遍中计算。
+    private FrameStats mFrameStats;
+    // Zero crossings of the samples, computed in the same pass as the gains (null for files
+    // decoded on demand).
+    // 样本的过零点，与增益在同一遍中计算（按需解码的文件为null）。
+    private ZeroCrossingIndex mZeroCrossings;
+    // Peak, RMS and loudness of any selection, gathered in the same pass as the gains (null for
+    // files decoded on demand).
+    // 任何选区的峰值、RMS和响度，与增益在同一遍中收集（按需解码的文件为null）。
+    private LoudnessStats mLoudnessStats;
+    // Onsets and beats, found in the same pass as the gains (computed when first asked for files
+    // decoded on demand, by a single thread: cf. getOnsetIndex()).
+    // 起始点和节拍，与增益在同一遍中找到（按需解码的文件在第一次请求时由单个线程计算）。
+    private volatile OnsetIndex mOnsetIndex;
+    // Chroma and levels to find the chorus, gathered in the same pass as the gains (null for
+    // files decoded on demand).
+    // 用于查找副歌的色度和电平，与增益在同一遍中收集（按需解码的文件为null）。
+    private HighlightFinder mHighlightFinder;
+    // Fades, gain and limiter applied to the exported samples.
+    // 应用于导出样本的淡入淡出、增益和限制器。
+    private PcmProcessor mExportProcessor = new PcmProcessor();
+    // Compressed access units of the input file (null for recorded audio), and their bytes
+    // mapped to the frames: offset of the unit containing the first sample of each frame (-1 if
+    // unknown), and number of bytes of the units starting in each frame.
+    // 输入文件的压缩访问单元，以及映射到帧的字节：帧偏移量和帧长度。
+    private FrameIndex mFrameIndex;
     // 帧长度
     private int[] mFrameLens;
     // 帧偏移量
-    private int[] mFrameOffsets;
+    private long[] mFrameOffsets;
 
     // Progress listener interface.
     // 进度监听
@@ -100,6 +153,14 @@ public class SoundFile {
         boolean reportProgress(double fractionComplete);
     }
 
+    // Lets the UI know when a region of a file decoded on demand becomes available: the frame
+    // gains of frames startFrame (included) to endFrame (excluded) are up to date. Called on a
+    // background thread.
+    // 通知UI按需解码的文件区域何时可用。在后台线程中调用。
+    public interface RegionListener {
+        void onRegionDecoded(int startFrame, int endFrame);
+    }
+
     // Custom exception for invalid inputs.
     // 无效输入的自定义异常。
     public class InvalidInputException extends Exception {
@@ -114,7 +175,7 @@ public class SoundFile {
     // TODO(nfaralli): what is the real list of supported extensions? Is it device dependent?
     // ODO（nfaralli）：受支持的扩展的真正列表是什么？ 设备是否支持？
     public static String[] getSupportedExtensions() {
-        return new String[]{"mp3", "wav", "3gpp", "3gp", "amr", "aac", "m4a", "ogg"};
+        return new String[]{"mp3", "wav", "3gpp", "3gp", "amr", "awb", "aac", "m4a", "ogg"};
     }
 
     /**
@@ -139,6 +200,18 @@ public class SoundFile {
                                    ProgressListener progressListener)
             throws java.io.FileNotFoundException,
             java.io.IOException, InvalidInputException {
+        return create(fileName, progressListener, PcmStore.ENCODING_PCM_16BIT);
+    }
+
+    // Same as above, keeping the decoded samples with the given encoding (cf. PcmStore): 8 bits
+    // halves the memory used when only a preview is needed, float avoids quantizing the samples
+    // again in processing chains. Files decoded on demand always keep 16 bits samples.
+    // 同上，以给定的编码保存解码的样本。
+    public static SoundFile create(String fileName,
+                                   ProgressListener progressListener,
+                                   int sampleEncoding)
+            throws java.io.FileNotFoundException,
+            java.io.IOException, InvalidInputException {
         // First check that the file exists and that its extension is supported.
         // 首先，检查文件是否存在及其扩展名是否受支持。
         File f = new File(fileName);
@@ -155,13 +228,45 @@ public class SoundFile {
         }
         SoundFile soundFile = new SoundFile();
         soundFile.setProgressListener(progressListener);
-        soundFile.ReadFile(f);
+        soundFile.mSampleEncoding = sampleEncoding;
+        soundFile.ReadFile(f, false);
+        return soundFile;
+    }
+
+    // Create and return a SoundFile object using the file fileName, in preview mode: the frame
+    // gains are computed while the file is decoded, and only a mono copy of the audio at 8kHz is
+    // kept, for playback (cf. getPlaybackSource()). Full rate samples are decoded again, region
+    // by region, when they are read from getPcmSource() (e.g. by an export). A 44.1kHz stereo
+    // file uses 11 times less memory than when fully decoded.
+    // 以预览模式创建并返回SoundFile对象：仅保留8kHz的单声道副本用于播放，
+    // 从getPcmSource（）读取时按区域重新解码全速率样本。
+    public static SoundFile createPreview(String fileName, ProgressListener progressListener)
+            throws java.io.FileNotFoundException,
+            java.io.IOException, InvalidInputException {
+        File f = new File(fileName);
+        if (!f.exists()) {
+            throw new java.io.FileNotFoundException(fileName);
+        }
+        if (!isFilenameSupported(f.getName().toLowerCase())) {
+            return null;
+        }
+        SoundFile soundFile = new SoundFile();
+        soundFile.setProgressListener(progressListener);
+        soundFile.ReadFile(f, true);
         return soundFile;
     }
 
     // Create and return a SoundFile object by recording a mono audio stream.
     // 通过录制单声道音频流来创建并返回SoundFile对象。
     public static SoundFile record(ProgressListener progressListener) {
+        return record(progressListener, null);
+    }
+
+    // Same as above. If recordingFile is not null, the audio is also encoded into it while it is
+    // recorded, as a fragmented .m4a written every half second (cf. FragmentedMP4Writer): if the
+    // app dies during the recording, the file is playable up to its last fragment.
+    // 同上。如果recordingFile不为null，则录制时也将音频编码到其中（分段的.m4a）。
+    public static SoundFile record(ProgressListener progressListener, File recordingFile) {
         if (progressListener == null) {
             // must have a progessListener to stop the recording.
             // 必须具有progessListener才能停止录制。
@@ -169,7 +274,7 @@ public class SoundFile {
         }
         SoundFile soundFile = new SoundFile();
         soundFile.setProgressListener(progressListener);
-        soundFile.RecordAudio();
+        soundFile.RecordAudio(recordingFile);
         return soundFile;
     }
 
@@ -178,7 +283,7 @@ public class SoundFile {
     }
 
 
-    public int getFileSizeBytes() {
+    public long getFileSizeBytes() {
         return mFileSize;
     }
 
@@ -197,6 +302,13 @@ public class SoundFile {
         return mChannels;
     }
 
+    // How the decoded samples are kept in memory (PcmStore.ENCODING_PCM_*). Whatever the
+    // encoding, getPcmSource() reads them as 16 bits samples.
+    // 解码的样本如何保存在内存中。
+    public int getSampleEncoding() {
+        return mBlockCache != null ? PcmStore.ENCODING_PCM_16BIT : mSampleEncoding;
+    }
+
     // 每个通道的样本数。
     public int getNumSamples() {
         return mNumSamples;  // Number of samples per channel.
@@ -211,7 +323,23 @@ public class SoundFile {
     // Should be removed when the app will use directly the samples instead of the frames.
     // 应该删除，当该应用程序直接使用 sample 替换 帧
     public int getSamplesPerFrame() {
-        return 1024;  // just a fixed value here...
+        return mSamplesPerFrame;
+    }
+
+    // Frame size to analyse a stream of durationSeconds: short frames for ringtone sized sources
+    // where the cut has to be precise, long ones for hour long sources, to keep the gains small.
+    // Always a power of two, so that frames line up with the blocks of PcmBlockCache. The frame
+    // size is fixed once the file is analysed: zooming is done by WaveformView.
+    // 分析durationSeconds长的流的帧大小：铃声大小的源使用短帧，长达数小时的源使用长帧。分析后帧大小固定。
+    public static int getDefaultSamplesPerFrame(double durationSeconds) {
+        if (durationSeconds < 60) {
+            return 256;
+        } else if (durationSeconds < 15 * 60) {
+            return 1024;
+        } else if (durationSeconds < 2 * 60 * 60) {
+            return 4096;
+        }
+        return 8192;
     }
 
     // Should be removed when the app will use directly the samples instead of the frames.
@@ -220,20 +348,149 @@ public class SoundFile {
         return mFrameGains;
     }
 
-    public ShortBuffer getSamples() {
-        if (mDecodedSamples != null) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N &&
-                    Build.VERSION.SDK_INT <= Build.VERSION_CODES.N_MR1) {
-                // Hack for Nougat where asReadOnlyBuffer fails to respect byte ordering.
-                // See https://code.google.com/p/android/issues/detail?id=223824
-                //android N 无法返回
-                return mDecodedSamples;
-            } else {
-                return mDecodedSamples.asReadOnlyBuffer();
+    // Per channel statistics of the frames. For files decoded on demand, frames are all 0 until
+    // they get decoded, like the gains.
+    // 帧的每通道统计信息。对于按需解码的文件，帧在解码之前全部为0。
+    public FrameStats getFrameStats() {
+        return mFrameStats;
+    }
+
+    // Byte offset, in the input file, of the compressed access unit containing the first sample of
+    // each frame (-1 if the container doesn't tell, null for recorded audio).
+    // 包含每帧第一个样本的压缩访问单元在输入文件中的字节偏移量。
+    public long[] getFrameOffsets() {
+        return mFrameOffsets;
+    }
+
+    // Number of bytes of the compressed access units starting in each frame (null for recorded
+    // audio). The compressed size of a selection is the sum over its frames.
+    // 每帧中开始的压缩访问单元的字节数。
+    public int[] getFrameLens() {
+        return mFrameLens;
+    }
+
+    // Every compressed access unit of the input file, null for recorded audio.
+    // 输入文件的每个压缩访问单元。
+    public FrameIndex getFrameIndex() {
+        return mFrameIndex;
+    }
+
+    // True if the samples are decoded when they are needed rather than when the file is opened.
+    // The frame gains of the regions not decoded yet are 0.
+    // 如果样本在需要时才解码，则为true。
+    public boolean isDecodedOnDemand() {
+        return mBlockCache != null && !mIsPreview;
+    }
+
+    // True if the file was opened in preview mode (cf. createPreview()).
+    // 如果文件以预览模式打开，则为true。
+    public boolean isPreview() {
+        return mIsPreview;
+    }
+
+    public void setRegionListener(RegionListener regionListener) {
+        mRegionListener = regionListener;
+    }
+
+    // Decode, in the background, the frames startFrame to endFrame (e.g. the part of the waveform
+    // on screen) if the file is decoded on demand. A new call replaces the previous request. The
+    // region is clipped around its middle to what the cache can hold.
+    // 如果文件按需解码，则在后台解码帧startFrame到endFrame。新的调用将替换先前的请求。
+    public void prefetch(int startFrame, int endFrame) {
+        if (!isDecodedOnDemand()) {
+            return;
+        }
+        int first = mBlockCache.getBlockIndex((long) startFrame * getSamplesPerFrame());
+        int last = mBlockCache.getBlockIndex((long) endFrame * getSamplesPerFrame());
+        int maxBlocks = Math.max(1, mBlockCache.getMaxResidentBlocks() / 2);
+        if (last - first + 1 > maxBlocks) {
+            first = (first + last - maxBlocks) / 2;
+            last = first + maxBlocks - 1;
+        }
+        synchronized (mPrefetchLock) {
+            if (mReleased || (first == mPrefetchFirstBlock && last == mPrefetchLastBlock)) {
+                return;
             }
-        } else {
-            return null;
+            mPrefetchFirstBlock = first;
+            mPrefetchLastBlock = last;
+            mPrefetchRequest++;
+            if (mPrefetchThread == null) {
+                mPrefetchThread = new Thread() {
+                    public void run() {
+                        prefetchLoop();
+                    }
+                };
+                mPrefetchThread.start();
+            }
+            mPrefetchLock.notifyAll();
+        }
+    }
+
+    // Body of the prefetch thread: decode the blocks of the latest request, one at a time.
+    // 预取线程：一次解码一个最新请求的块。
+    private void prefetchLoop() {
+        int handled = 0;
+        while (true) {
+            int first;
+            int last;
+            synchronized (mPrefetchLock) {
+                while (!mReleased && handled == mPrefetchRequest) {
+                    try {
+                        mPrefetchLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (mReleased) {
+                    return;
+                }
+                first = mPrefetchFirstBlock;
+                last = mPrefetchLastBlock;
+                handled = mPrefetchRequest;
+            }
+            for (int i = first; i <= last; i++) {
+                synchronized (mPrefetchLock) {
+                    if (mReleased || handled != mPrefetchRequest) {
+                        break;
+                    }
+                }
+                try {
+                    mBlockCache.getBlock(i);
+                } catch (IOException e) {
+                    Log.w("Ringdroid", "Failed to decode block " + i + ": " + e);
+                    break;
+                }
+            }
+        }
+    }
+
+    // Free the decoded samples (and delete their temporary file, if any). The object must not be
+    // used after.
+    // 释放解码的样本（并删除其临时文件）。
+    public void release() {
+        synchronized (mPrefetchLock) {
+            mReleased = true;
+            mPrefetchLock.notifyAll();
         }
+        if (mPcmStore != null) {
+            mPcmStore.release();
+            mPcmStore = null;
+        }
+        if (mBlockCache != null) {
+            mBlockCache.release();
+        }
+    }
+
+    // Decoded samples are kept on the heap up to a quarter of the maximum heap size, then they go
+    // to a temporary file (java.io.tmpdir is the cache directory of the application).
+    // 解码的样本最多保留在堆上最大堆大小的四分之一，然后进入临时文件。
+    private PcmStore newPcmStore(int channels) {
+        return new PcmStore(channels, mSampleEncoding, getMaxPcmHeapBytes(),
+                new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    private static long getMaxPcmHeapBytes() {
+        return Runtime.getRuntime().maxMemory() / 4;
     }
 
     // A SoundFile object should only be created using the static methods create() and record().
@@ -247,13 +504,17 @@ public class SoundFile {
 
     /**
      * 读取文件
+     * Files lasting at least ON_DEMAND_MIN_DURATION_US are decoded on demand. Files whose samples
+     * would not fit in the memory kept for them are opened in preview mode, as with preview.
+     * 至少持续ON_DEMAND_MIN_DURATION_US的文件按需解码。样本无法放入内存的文件以预览模式打开。
      *
      * @param inputFile
+     * @param preview
      * @throws java.io.FileNotFoundException
      * @throws java.io.IOException
      * @throws InvalidInputException
      */
-    private void ReadFile(File inputFile) throws java.io.FileNotFoundException, java.io.IOException, InvalidInputException {
+    private void ReadFile(File inputFile, boolean preview) throws java.io.FileNotFoundException, java.io.IOException, InvalidInputException {
         // 媒体提取器
         MediaExtractor extractor = new MediaExtractor();
         // 媒体格式
@@ -263,7 +524,7 @@ public class SoundFile {
         mInputFile = inputFile;
         String[] components = mInputFile.getPath().split("\\.");
         mFileType = components[components.length - 1];
-        mFileSize = (int) mInputFile.length();
+        mFileSize = mInputFile.length();
         extractor.setDataSource(mInputFile.getPath());
         int numTracks = extractor.getTrackCount();
         // find and select the first audio track present in the file.
@@ -282,31 +543,69 @@ public class SoundFile {
         mSampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
         // Expected total number of samples per channel.
         // 每个通道的预期样本总数。
-        int expectedNumSamples =
-                (int) ((format.getLong(MediaFormat.KEY_DURATION) / 1000000.f) * mSampleRate + 0.5f);
+        long expectedNumSamples = (long) (
+                (format.getLong(MediaFormat.KEY_DURATION) / 1000000.0) * mSampleRate + 0.5);
+        mSamplesPerFrame = getDefaultSamplesPerFrame((double) expectedNumSamples / mSampleRate);
+        // The sample tables of MP4 files give the position of each access unit. For other
+        // containers, only their size and time are known, as they are read.
+        // MP4文件的样本表给出每个访问单元的位置。对于其他容器，只知道其大小和时间。
+        mFrameIndex = parseFrameIndex(mInputFile);
+        if (!preview && format.getLong(MediaFormat.KEY_DURATION) >= ON_DEMAND_MIN_DURATION_US) {
+            extractor.release();
+            ReadFileOnDemand(format, expectedNumSamples);
+            return;
+        }
+        long expectedBytes = expectedNumSamples * mChannels
+                * PcmStore.getBytesPerSample(mSampleEncoding);
+        if (expectedBytes > getMaxPcmHeapBytes()) {
+            preview = true;
+        }
+        mIsPreview = preview;
 
         MediaCodec codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
         codec.configure(format, null, null, 0);
         codec.start();
 
-        // 包含解码样本的输出缓冲区的大小。
-        int decodedSamplesSize = 0;
-        byte[] decodedSamples = null;
         ByteBuffer[] inputBuffers = codec.getInputBuffers();
         ByteBuffer[] outputBuffers = codec.getOutputBuffers();
         int sample_size;
         MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
         long presentation_time;
-        int tot_size_read = 0;
+        long tot_size_read = 0;
         boolean done_reading = false;
 
-        // Set the size of the decoded samples buffer to 1MB (~6sec of a stereo stream at 44.1kHz).
-        // For longer streams, the buffer size will be increased later on, calculating a rough
-        // estimate of the total size needed to store all the samples in order to resize the buffer
-        // only once.
-        // 将解码样本缓冲区的大小设置为1MB（44.1kHz的立体声流的〜6sec）。 对于较长的流，缓冲区大小将在以后增加，从而计算出存储所有样本所需的总大小的粗略估计，以便调整缓冲区大小
-        //只有一次。
-        mDecodedBytes = ByteBuffer.allocate(1 << 20);
+        // The decoded samples are appended to the store as they come: it grows chunk by chunk,
+        // and moves to a temporary file for long streams, so the size of the file doesn't matter.
+        // 解码的样本逐块追加到存储中；对于长流，存储将移至临时文件。
+        // In preview mode, only a mono copy at PREVIEW_SAMPLE_RATE is stored, and the frame gains
+        // are computed from the decoder output.
+        // 在预览模式下，仅存储单声道低采样率副本，并根据解码器输出计算帧增益。
+        FrameGains.Accumulator gains = null;
+        FrameStats.Accumulator stats = null;
+        ZeroCrossingIndex zeroCrossings = null;
+        LoudnessStats.Accumulator loudness = null;
+        OnsetIndex.Accumulator onsets = null;
+        HighlightFinder.Accumulator highlights = null;
+        PcmConverter downmix = null;
+        short[] decoded = null;
+        short[] previewSamples = null;
+        if (preview) {
+            gains = new FrameGains.Accumulator(mChannels, getSamplesPerFrame());
+            stats = new FrameStats.Accumulator(mChannels, getSamplesPerFrame());
+            zeroCrossings = new ZeroCrossingIndex(mChannels);
+            loudness = new LoudnessStats.Accumulator(mSampleRate, mChannels);
+            onsets = new OnsetIndex.Accumulator(mSampleRate, mChannels);
+            highlights = new HighlightFinder.Accumulator(mSampleRate, mChannels);
+            // Linear interpolation is enough for a preview, and much cheaper.
+            // 线性插值对于预览已经足够，而且便宜得多。
+            downmix = new PcmConverter(mSampleRate, mChannels, PREVIEW_SAMPLE_RATE, 1,
+                    PcmConverter.RESAMPLE_LINEAR);
+            mPcmStore = newPcmStore(1);
+        } else {
+            mPcmStore = newPcmStore(mChannels);
+        }
+        long numDecoded = 0;  // samples per channel.
+        FrameIndex frameIndex = mFrameIndex == null ? new FrameIndex() : null;
         Boolean firstSampleData = true;
         while (true) {
             // read data from file and feed it to the decoder input buffers.
@@ -336,6 +635,9 @@ public class SoundFile {
                     done_reading = true;
                 } else {
                     presentation_time = extractor.getSampleTime();
+                    if (frameIndex != null) {
+                        frameIndex.add(-1, sample_size, presentation_time);
+                    }
                     codec.queueInputBuffer(inputBufferIndex, 0, sample_size, presentation_time, 0);
                     extractor.advance();
                     tot_size_read += sample_size;
@@ -349,6 +651,7 @@ public class SoundFile {
                             codec.stop();
                             codec.release();
                             codec = null;
+                            release();
                             return;
                         }
                     }
@@ -360,51 +663,40 @@ public class SoundFile {
             // 从解码器输出缓冲区获取解码流。
             int outputBufferIndex = codec.dequeueOutputBuffer(info, 100);
             if (outputBufferIndex >= 0 && info.size > 0) {
-                if (decodedSamplesSize < info.size) {
-                    decodedSamplesSize = info.size;
-                    decodedSamples = new byte[decodedSamplesSize];
-                }
-                outputBuffers[outputBufferIndex].get(decodedSamples, 0, info.size);
-                outputBuffers[outputBufferIndex].clear();
-                // Check if buffer is big enough. Resize it if it's too small.
-                // 检查缓冲区是否足够大。 如果尺寸太小，请调整大小。
-                if (mDecodedBytes.remaining() < info.size) {
-                    // Getting a rough estimate of the total size, allocate 20% more, and
-                    // make sure to allocate at least 5MB more than the initial size.
-                    // 粗略估算总大小，多分配20％，并确保至少分配至少5MB的空间。
-                    int position = mDecodedBytes.position();
-                    int newSize = (int) ((position * (1.0 * mFileSize / tot_size_read)) * 1.2);
-                    if (newSize - position < info.size + 5 * (1 << 20)) {
-                        newSize = position + info.size + 5 * (1 << 20);
-                    }
-                    ByteBuffer newDecodedBytes = null;
-                    // Try to allocate memory. If we are OOM, try to run the garbage collector.
-                    // 尝试分配内存。 如果我们是OOM，请尝试运行垃圾回收器。
-                    int retry = 10;
-                    while (retry > 0) {
-                        try {
-                            newDecodedBytes = ByteBuffer.allocate(newSize);
-                            break;
-                        } catch (OutOfMemoryError oome) {
-                            // setting android:largeHeap="true" in <application> seem to help not
-                            // reaching this section.
-                            // 在<application>中设置android：largeHeap =“ true”似乎有助于解决此问题。
-                            retry--;
+                ByteBuffer outputBuffer = outputBuffers[outputBufferIndex];
+                outputBuffer.position(info.offset);
+                outputBuffer.limit(info.offset + info.size);
+                try {
+                    if (preview) {
+                        ShortBuffer samples = outputBuffer.slice()
+                                .order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+                        int numSamples = samples.remaining() / mChannels;
+                        if (decoded == null || decoded.length < samples.remaining()) {
+                            decoded = new short[samples.remaining()];
+                            previewSamples = new short[downmix.getMaxOutputFrames(numSamples)];
                         }
+                        samples.get(decoded, 0, numSamples * mChannels);
+                        gains.add(decoded, 0, numSamples);
+                        stats.add(decoded, 0, numSamples);
+                        zeroCrossings.add(decoded, 0, numSamples);
+                        loudness.add(decoded, 0, numSamples);
+                        onsets.add(decoded, 0, numSamples);
+                        highlights.add(decoded, 0, numSamples);
+                        int numPreview = downmix.process(decoded, 0, numSamples, previewSamples, 0);
+                        mPcmStore.append(previewSamples, 0, numPreview);
+                        numDecoded += numSamples;
+                    } else {
+                        mPcmStore.append(outputBuffer);
+                        numDecoded = mPcmStore.getNumSamples();
                     }
-                    if (retry == 0) {
-                        // Failed to allocate memory... Stop reading more data and finalize the
-                        // instance with the data decoded so far.
-                        // 无法分配内存...停止读取更多数据，并使用到目前为止已解码的数据来确定实例。
-                        break;
-                    }
-                    //ByteBuffer newDecodedBytes = ByteBuffer.allocate(newSize);
-                    mDecodedBytes.rewind();
-                    newDecodedBytes.put(mDecodedBytes);
-                    mDecodedBytes = newDecodedBytes;
-                    mDecodedBytes.position(position);
+                } catch (IOException e) {
+                    // Failed to store the samples (out of memory and disk space)... Stop reading
+                    // more data and finalize the instance with the data decoded so far.
+                    // 无法存储样本...停止读取更多数据，并使用到目前为止已解码的数据来确定实例。
+                    Log.w("Ringdroid", "Decoding stopped: " + e);
+                    break;
                 }
-                mDecodedBytes.put(decodedSamples, 0, info.size);
+                outputBuffer.clear();
                 codec.releaseOutputBuffer(outputBufferIndex, false);
             } else if (outputBufferIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
                 outputBuffers = codec.getOutputBuffers();
@@ -417,7 +709,7 @@ public class SoundFile {
                 // 这是我们期望的新输出格式。
             }
             if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0
-                    || (mDecodedBytes.position() / (2 * mChannels)) >= expectedNumSamples) {
+                    || numDecoded >= expectedNumSamples) {
                 // We got all the decoded data from the decoder. Stop here.
                 // Theoretically dequeueOutputBuffer(info, ...) should have set info.flags to
                 // MediaCodec.BUFFER_FLAG_END_OF_STREAM. However some phones (e.g. Samsung S3)
@@ -437,11 +729,11 @@ public class SoundFile {
                 break;
             }
         }
-        mNumSamples = mDecodedBytes.position() / (mChannels * 2);  // One sample = 2 bytes.
-        mDecodedBytes.rewind();
-        mDecodedBytes.order(ByteOrder.LITTLE_ENDIAN);
-        mDecodedSamples = mDecodedBytes.asShortBuffer();
+        mNumSamples = (int) Math.min(numDecoded, Integer.MAX_VALUE);
         mAvgBitRate = (int) ((mFileSize * 8) * ((float) mSampleRate / mNumSamples) / 1000);
+        if (frameIndex != null) {
+            mFrameIndex = frameIndex;
+        }
 
         extractor.release();
         extractor = null;
@@ -455,42 +747,129 @@ public class SoundFile {
         if (mNumSamples % getSamplesPerFrame() != 0) {
             mNumFrames++;
         }
-        mFrameGains = new int[mNumFrames];
-        mFrameLens = new int[mNumFrames];
-        mFrameOffsets = new int[mNumFrames];
-        int j;
-        int gain, value;
-        int frameLens = (int) ((1000 * mAvgBitRate / 8) *
-                ((float) getSamplesPerFrame() / mSampleRate));
-        for (i = 0; i < mNumFrames; i++) {
-            gain = -1;
-            for (j = 0; j < getSamplesPerFrame(); j++) {
-                value = 0;
-                for (int k = 0; k < mChannels; k++) {
-                    if (mDecodedSamples.remaining() > 0) {
-                        value += java.lang.Math.abs(mDecodedSamples.get());
-                    }
-                }
-                value /= mChannels;
-                if (gain < value) {
-                    gain = value;
-                }
-            }
-            // 这里增益= sqrt（第一个通道的最大值）...
-            // here gain = sqrt(max value of 1st channel)...
-            mFrameGains[i] = (int) Math.sqrt(gain);
-            // 完全不准确...
-            mFrameLens[i] = frameLens;  // totally not accurate...
-            mFrameOffsets[i] = (int) (i * (1000 * mAvgBitRate / 8) *  //  = i * frameLens
-                    ((float) getSamplesPerFrame() / mSampleRate));
-        }
-        mDecodedSamples.rewind();
+        if (preview) {
+            mFrameGains = gains.getGains(mNumFrames);
+            mFrameStats = stats.getStats(mNumFrames);
+            zeroCrossings.trimToSize();
+            mZeroCrossings = zeroCrossings;
+            mLoudnessStats = loudness.getStats();
+            mOnsetIndex = onsets.getIndex();
+            mHighlightFinder = highlights.getFinder();
+            // Full rate samples will be decoded from the file when they are read.
+            // 读取全速率样本时将从文件中解码。
+            mBlockCache = new PcmBlockCache(
+                    RegionDecoder.open(mInputFile, format, mFrameIndex, null), mChannels,
+                    mNumSamples, PcmBlockCache.DEFAULT_BLOCK_SAMPLES, getMaxPcmHeapBytes() / 2);
+        } else {
+            computeFrameGains();
+        }
+        computeFrameOffsets();
         // Uncomment this line to dump the samples in a TSV file.
         // 取消注释该行以将样本转储到TSV文件中。
         // DumpSamples();
     }
 
-    private void RecordAudio() {
+    // Open a long file without decoding it: its frames are indexed, and the samples are decoded
+    // block by block when they are read (cf. PcmBlockCache, RegionDecoder). The frame gains are
+    // filled in as blocks get decoded.
+    // 打开长文件而不解码：为其帧建立索引，读取样本时逐块解码。帧增益在块解码时填充。
+    private void ReadFileOnDemand(MediaFormat format, long numSamples) throws IOException {
+        RegionDecoder decoder =
+                RegionDecoder.open(mInputFile, format, mFrameIndex, mProgressListener);
+        if (decoder == null) {
+            // Asked to stop. The SoundFile object is invalid and should NOT be used afterward!
+            // 被要求停止。 SoundFile对象无效，以后不应使用！
+            return;
+        }
+        mNumSamples = (int) Math.min(numSamples, Integer.MAX_VALUE);
+        mAvgBitRate = (int) ((mFileSize * 8) * ((float) mSampleRate / mNumSamples) / 1000);
+        mNumFrames = mNumSamples / getSamplesPerFrame();
+        if (mNumSamples % getSamplesPerFrame() != 0) {
+            mNumFrames++;
+        }
+        mFrameIndex = decoder.getFrameIndex();
+        mFrameGains = new int[mNumFrames];
+        mFrameStats = new FrameStats(mChannels, getSamplesPerFrame(), mNumFrames);
+        // Decoded blocks use up to an eighth of the heap.
+        // 解码的块最多使用堆的八分之一。
+        mBlockCache = new PcmBlockCache(decoder, mChannels, mNumSamples,
+                PcmBlockCache.DEFAULT_BLOCK_SAMPLES, Runtime.getRuntime().maxMemory() / 8);
+        mBlockCache.setListener(new PcmBlockCache.Listener() {
+            public void onBlockDecoded(long start, short[] block, int numSamples) {
+                int samplesPerFrame = getSamplesPerFrame();
+                int firstFrame = (int) (start / samplesPerFrame);
+                int numFrames = Math.min((numSamples + samplesPerFrame - 1) / samplesPerFrame,
+                        mNumFrames - firstFrame);
+                int[] gains = FrameGains.compute(ShortBuffer.wrap(block), mChannels,
+                        samplesPerFrame, numFrames);
+                System.arraycopy(gains, 0, mFrameGains, firstFrame, numFrames);
+                mFrameStats.compute(block, numSamples, firstFrame);
+                RegionListener regionListener = mRegionListener;
+                if (regionListener != null) {
+                    regionListener.onRegionDecoded(firstFrame, firstFrame + numFrames);
+                }
+            }
+        });
+        computeFrameOffsets();
+    }
+
+    // Compute the frame gains and statistics from the stored samples, reading them only once.
+    // 从存储的样本计算帧增益和统计信息，只读取一次。
+    private void computeFrameGains() throws IOException {
+        int samplesPerFrame = getSamplesPerFrame();
+        FrameGains.Accumulator gains = new FrameGains.Accumulator(mChannels, samplesPerFrame);
+        FrameStats.Accumulator stats = new FrameStats.Accumulator(mChannels, samplesPerFrame);
+        ZeroCrossingIndex zeroCrossings = new ZeroCrossingIndex(mChannels);
+        LoudnessStats.Accumulator loudness = new LoudnessStats.Accumulator(mSampleRate, mChannels);
+        OnsetIndex.Accumulator onsets = new OnsetIndex.Accumulator(mSampleRate, mChannels);
+        HighlightFinder.Accumulator highlights =
+                new HighlightFinder.Accumulator(mSampleRate, mChannels);
+        short[] block = new short[samplesPerFrame * mChannels];
+        PcmSource source = getPcmSource();
+        try {
+            int count;
+            while ((count = source.read(block, 0, samplesPerFrame)) > 0) {
+                gains.add(block, 0, count);
+                stats.add(block, 0, count);
+                zeroCrossings.add(block, 0, count);
+                loudness.add(block, 0, count);
+                onsets.add(block, 0, count);
+                highlights.add(block, 0, count);
+            }
+        } finally {
+            source.close();
+        }
+        mFrameGains = gains.getGains(mNumFrames);
+        mFrameStats = stats.getStats(mNumFrames);
+        zeroCrossings.trimToSize();
+        mZeroCrossings = zeroCrossings;
+        mLoudnessStats = loudness.getStats();
+        mOnsetIndex = onsets.getIndex();
+        mHighlightFinder = highlights.getFinder();
+    }
+
+    // Map the access units of mFrameIndex to the frames.
+    // 将mFrameIndex的访问单元映射到帧。
+    private void computeFrameOffsets() {
+        mFrameOffsets = mFrameIndex.getFrameOffsets(mSampleRate, getSamplesPerFrame(), mNumFrames);
+        mFrameLens = mFrameIndex.getFrameLengths(mSampleRate, getSamplesPerFrame(), mNumFrames);
+    }
+
+    // Index of the access units of file if it is an MP4 file, null otherwise.
+    // 如果文件是MP4文件，则为其访问单元的索引，否则为null。
+    private static FrameIndex parseFrameIndex(File file) {
+        try {
+            MP4Parser parser = MP4Parser.parse(file);
+            if (parser.getNumFrames() > 0) {
+                return FrameIndex.fromMP4(parser);
+            }
+        } catch (IOException e) {
+            // Not an MP4 file.
+        }
+        return null;
+    }
+
+    private void RecordAudio(File recordingFile) {
         if (mProgressListener == null) {
             // 进度监听器在这里是必需的，因为它可以让我们知道何时停止录制。
             // A progress listener is mandatory here, as it will let us know when to stop recording.
@@ -521,53 +900,69 @@ public class SoundFile {
                 minBufferSize
         );
 
-        // Allocate memory for 20 seconds first. Reallocate later if more is needed.
-        // 首先分配内存20秒。 如果需要更多，请稍后重新分配。
-        mDecodedBytes = ByteBuffer.allocate(20 * mSampleRate * 2);
-        mDecodedBytes.order(ByteOrder.LITTLE_ENDIAN);
-        mDecodedSamples = mDecodedBytes.asShortBuffer();
+        // The store grows chunk by chunk, and moves to a temporary file for long recordings.
+        // 存储逐块增长，长时间录制时移至临时文件。
+        mPcmStore = newPcmStore(mChannels);
+        AudioEncoder encoder = null;
+        if (recordingFile != null) {
+            encoder = new AudioEncoder(
+                    ExportProfile.AAC_LC_64_FRAGMENTED, mSampleRate, mChannels, recordingFile);
+            try {
+                encoder.start(0);
+            } catch (IOException e) {
+                // Record anyway, without the file.
+                Log.w("Ringdroid", "Cannot encode the recording: " + e);
+                encoder.release();
+                encoder = null;
+            }
+        }
         audioRecord.startRecording();
         while (true) {
-            // check if mDecodedSamples can contain 1024 additional samples.
-            // 检查mDecodedSamples是否可以包含1024个其他样本。
-            if (mDecodedSamples.remaining() < 1024) {
-                // Try to allocate memory for 10 additional seconds.
-                // 尝试再分配内存10秒钟。
-                int newCapacity = mDecodedBytes.capacity() + 10 * mSampleRate * 2;
-                ByteBuffer newDecodedBytes = null;
+            // TODO(nfaralli): maybe use the read method that takes a direct ByteBuffer argument.
+            // 可能使用带有直接ByteBuffer参数的read方法。
+            int numRead = audioRecord.read(buffer, 0, buffer.length);
+            if (numRead > 0) {
                 try {
-                    newDecodedBytes = ByteBuffer.allocate(newCapacity);
-                } catch (OutOfMemoryError oome) {
+                    mPcmStore.append(buffer, 0, numRead);
+                } catch (IOException e) {
+                    // Out of memory and disk space: stop recording.
+                    // 内存和磁盘空间不足：停止录制。
                     break;
                 }
-                int position = mDecodedSamples.position();
-                mDecodedBytes.rewind();
-                newDecodedBytes.put(mDecodedBytes);
-                mDecodedBytes = newDecodedBytes;
-                mDecodedBytes.order(ByteOrder.LITTLE_ENDIAN);
-                mDecodedBytes.rewind();
-                mDecodedSamples = mDecodedBytes.asShortBuffer();
-                mDecodedSamples.position(position);
+                if (encoder != null) {
+                    try {
+                        encoder.write(buffer, 0, numRead);
+                    } catch (IOException e) {
+                        // Keep recording: the file is valid up to its last fragment.
+                        // 继续录制：文件在最后一个片段之前有效。
+                        Log.w("Ringdroid", "Stopped encoding the recording: " + e);
+                        encoder.release();
+                        encoder = null;
+                    }
+                }
             }
-            // TODO(nfaralli): maybe use the read method that takes a direct ByteBuffer argument.
-            // 可能使用带有直接ByteBuffer参数的read方法。
-            audioRecord.read(buffer, 0, buffer.length);
-            mDecodedSamples.put(buffer);
             // Let the progress listener know how many seconds have been recorded.
             // The returned value tells us if we should keep recording or stop.
             // 让进度监听器知道已记录了多少秒。
             // 返回的值告诉我们是否应该继续记录或停止。
             if (!mProgressListener.reportProgress(
-                    (float) (mDecodedSamples.position()) / mSampleRate)) {
+                    (float) (mPcmStore.getNumSamples()) / mSampleRate)) {
                 break;
             }
         }
         audioRecord.stop();
         audioRecord.release();
-        mNumSamples = mDecodedSamples.position();
-        mDecodedSamples.rewind();
-        mDecodedBytes.rewind();
+        if (encoder != null) {
+            try {
+                encoder.finish();
+            } catch (IOException e) {
+                Log.w("Ringdroid", "Failed to complete the recording file: " + e);
+            }
+            encoder.release();
+        }
+        mNumSamples = (int) Math.min(mPcmStore.getNumSamples(), Integer.MAX_VALUE);
         mAvgBitRate = mSampleRate * 16 / 1000;
+        mSamplesPerFrame = getDefaultSamplesPerFrame((double) mNumSamples / mSampleRate);
 
         // Temporary hack to make it work with the old version.
         // 临时破解使其可以与旧版本一起使用。
@@ -575,37 +970,36 @@ public class SoundFile {
         if (mNumSamples % getSamplesPerFrame() != 0) {
             mNumFrames++;
         }
-        mFrameGains = new int[mNumFrames];
         // not needed for recorded audio
         //录制音频不需要
+        mFrameIndex = null;
         mFrameLens = null;
         // not needed for recorded audio
         //录制音频不需要
         mFrameOffsets = null;
-        int i, j;
-        int gain, value;
-        for (i = 0; i < mNumFrames; i++) {
-            gain = -1;
-            for (j = 0; j < getSamplesPerFrame(); j++) {
-                if (mDecodedSamples.remaining() > 0) {
-                    value = java.lang.Math.abs(mDecodedSamples.get());
-                } else {
-                    value = 0;
-                }
-                if (gain < value) {
-                    gain = value;
-                }
-            }
-            // here gain = sqrt(max value of 1st channel)...
-            // 这里增益= sqrt（第一个通道的最大值）...
-            mFrameGains[i] = (int) Math.sqrt(gain);
+        try {
+            computeFrameGains();
+        } catch (IOException e) {
+            // Cannot happen when reading from the store.
+            mFrameGains = new int[mNumFrames];
+            mFrameStats = new FrameStats(mChannels, getSamplesPerFrame(), mNumFrames);
         }
-        mDecodedSamples.rewind();
         // 取消注释该行以将样本转储到TSV文件中。
         // Uncomment this line to dump the samples in a TSV file.
         // DumpSamples();
     }
 
+    // Processing applied by WriteFile(), WriteFiles() and WriteWAVFile(): fades, gain, limiter.
+    // The decoded samples themselves are never changed.
+    // WriteFile（）、WriteFiles（）和WriteWAVFile（）应用的处理。解码的样本本身永远不会改变。
+    public void setExportProcessor(PcmProcessor processor) {
+        mExportProcessor = processor;
+    }
+
+    public PcmProcessor getExportProcessor() {
+        return mExportProcessor;
+    }
+
     // should be removed in the near future...
     // 应该在不久的将来删除...
     public void WriteFile(File outputFile, int startFrame, int numFrames)
@@ -615,200 +1009,216 @@ public class SoundFile {
         WriteFile(outputFile, startTime, endTime);
     }
 
+    public void WriteFile(File outputFile, int startFrame, int numFrames, ExportProfile profile)
+            throws java.io.IOException {
+        float startTime = (float) startFrame * getSamplesPerFrame() / mSampleRate;
+        float endTime = (float) (startFrame + numFrames) * getSamplesPerFrame() / mSampleRate;
+        WriteFile(outputFile, startTime, endTime, profile);
+    }
+
     public void WriteFile(File outputFile, float startTime, float endTime)
             throws java.io.IOException {
-        int startOffset = (int) (startTime * mSampleRate) * 2 * mChannels;
-        int numSamples = (int) ((endTime - startTime) * mSampleRate);
-        // Some devices have problems reading mono AAC files (e.g. Samsung S3). Making it stereo.
-        // 某些设备在读取单声道AAC文件时遇到问题（例如Samsung S3）。 使它立体声。
-        int numChannels = (mChannels == 1) ? 2 : mChannels;
-
-        String mimeType = "audio/mp4a-latm";
-        // 高质量的经验法则：每个通道64kbps。
-        // rule of thumb for a good quality: 64kbps per channel.
-        int bitrate = 64000 * numChannels;
-        MediaCodec codec = MediaCodec.createEncoderByType(mimeType);
-        MediaFormat format = MediaFormat.createAudioFormat(mimeType, mSampleRate, numChannels);
-        format.setInteger(MediaFormat.KEY_BIT_RATE, bitrate);
-        codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
-        codec.start();
+        WriteFile(outputFile, startTime, endTime, ExportProfile.DEFAULT);
+    }
 
-        // 根据比特率获得编码数据的估计值。 加入10％。
-        // Get an estimation of the encoded data based on the bitrate. Add 10% to it.
-        int estimatedEncodedSize = (int) ((endTime - startTime) * (bitrate / 8) * 1.1);
-        ByteBuffer encodedBytes = ByteBuffer.allocate(estimatedEncodedSize);
-        ByteBuffer[] inputBuffers = codec.getInputBuffers();
-        ByteBuffer[] outputBuffers = codec.getOutputBuffers();
-        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
-        boolean done_reading = false;
-        long presentation_time = 0;
-
-        // mp4（AAC）流每通道每帧的样本数。
-        // number of samples per frame per channel for an mp4 (AAC) stream.
-        int frame_size = 1024;
-        // a sample is coded with a short.
-        // 样本用短码编码。
-        byte buffer[] = new byte[frame_size * numChannels * 2];
-        mDecodedBytes.position(startOffset);
-        // Adding 2 frames, Cf. priming frames for AAC.
-        // AAC 文件 在开始的时候增加2帧
-        numSamples += (2 * frame_size);
-        // 第一个AAC帧= 2个字节
-        // first AAC frame = 2 bytes
-        int tot_num_frames = 1 + (numSamples / frame_size);
-        if (numSamples % frame_size != 0) {
-            tot_num_frames++;
-        }
-        int[] frame_sizes = new int[tot_num_frames];
-        int num_out_frames = 0;
-        int num_frames = 0;
-        int num_samples_left = numSamples;
-        // size of the output buffer containing the encoded samples.
-        // 包含编码样本的输出缓冲区的大小。
-        int encodedSamplesSize = 0;
-        byte[] encodedSamples = null;
-        while (true) {
-            // Feed the samples to the encoder.
-            // 将样品送入编码器。
-            int inputBufferIndex = codec.dequeueInputBuffer(100);
-            if (!done_reading && inputBufferIndex >= 0) {
-                if (num_samples_left <= 0) {
-                    // All samples have been read.
-                    // 所有样本均已阅读。
-                    codec.queueInputBuffer(
-                            inputBufferIndex, 0, 0, -1, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
-                    done_reading = true;
+    // Encode the samples between startTime and endTime (in seconds) into outputFile, using the
+    // codec and container described by profile.
+    // 使用profile描述的编解码器和容器，将startTime和endTime之间的样本编码到outputFile中。
+    public void WriteFile(File outputFile, float startTime, float endTime, ExportProfile profile)
+            throws java.io.IOException {
+        long startSample = (long) ((double) startTime * mSampleRate);
+        long numSamples = (long) (((double) endTime - startTime) * mSampleRate);
+        WriteFile(outputFile, startSample, numSamples, profile);
+    }
+
+    // Same as above, with the selection in samples (per channel) rather than in seconds, e.g.
+    // for cuts snapped to zero crossings, which a float time can't hold exactly.
+    // 同上，选区以样本为单位，例如吸附到过零点的剪切点（float时间无法精确表示）。
+    public void WriteFile(File outputFile, long startSample, long numSamples,
+                          ExportProfile profile) throws java.io.IOException {
+        AudioEncoder encoder = new AudioEncoder(profile, mSampleRate, mChannels, outputFile);
+        PcmSource samples = getPcmSource();
+        try {
+            encoder.start(numSamples);
+            // Feed the samples to the encoder, 1024 samples per channel at a time.
+            // 将样品送入编码器，一次1024个样本。
+            samples.seek(startSample);
+            short[] buffer = new short[1024 * mChannels];
+            short[] processed = new short[1024 * mChannels];
+            PcmProcessor.Region processor =
+                    mExportProcessor.start(mSampleRate, mChannels, numSamples);
+            long position = 0;
+            while (position < numSamples) {
+                int count = samples.read(buffer, 0, (int) Math.min(1024, numSamples - position));
+                if (count <= 0) {
+                    break;
+                }
+                if (processor.isPassthrough(position, count)) {
+                    encoder.write(buffer, 0, count);
                 } else {
-                    inputBuffers[inputBufferIndex].clear();
-                    if (buffer.length > inputBuffers[inputBufferIndex].remaining()) {
-                        // Input buffer is smaller than one frame. This should never happen.
-                        // 输入缓冲区小于一帧。 这永远都不会发生。
-                        continue;
-                    }
-                    // bufferSize is a hack to create a stereo file from a mono stream.
-                    // bufferSize是一种通过单声道流创建立体声文件的工具。
-                    int bufferSize = (mChannels == 1) ? (buffer.length / 2) : buffer.length;
-                    if (mDecodedBytes.remaining() < bufferSize) {
-                        for (int i = mDecodedBytes.remaining(); i < bufferSize; i++) {
-                            // pad with extra 0s to make a full frame.
-                            // 用额外的0填充以形成全帧。
-                            buffer[i] = 0;
-                        }
-                        mDecodedBytes.get(buffer, 0, mDecodedBytes.remaining());
-                    } else {
-                        mDecodedBytes.get(buffer, 0, bufferSize);
-                    }
-                    if (mChannels == 1) {
-                        for (int i = bufferSize - 1; i >= 1; i -= 2) {
-                            buffer[2 * i + 1] = buffer[i];
-                            buffer[2 * i] = buffer[i - 1];
-                            buffer[2 * i - 1] = buffer[2 * i + 1];
-                            buffer[2 * i - 2] = buffer[2 * i];
-                        }
-                    }
-                    num_samples_left -= frame_size;
-                    inputBuffers[inputBufferIndex].put(buffer);
-                    presentation_time = (long) (((num_frames++) * frame_size * 1e6) / mSampleRate);
-                    codec.queueInputBuffer(
-                            inputBufferIndex, 0, buffer.length, presentation_time, 0);
+                    processor.process(buffer, 0, count, processed, 0, position);
+                    encoder.write(processed, 0, count);
                 }
+                position += count;
             }
+            encoder.finish();
+        } finally {
+            samples.close();
+            encoder.release();
+        }
+    }
 
-            // Get the encoded samples from the encoder.
-            // 从编码器获取编码样本。
-            int outputBufferIndex = codec.dequeueOutputBuffer(info, 100);
-            if (outputBufferIndex >= 0 && info.size > 0 && info.presentationTimeUs >= 0) {
-                if (num_out_frames < frame_sizes.length) {
-                    frame_sizes[num_out_frames++] = info.size;
-                }
-                if (encodedSamplesSize < info.size) {
-                    encodedSamplesSize = info.size;
-                    encodedSamples = new byte[encodedSamplesSize];
-                }
-                outputBuffers[outputBufferIndex].get(encodedSamples, 0, info.size);
-                outputBuffers[outputBufferIndex].clear();
-                codec.releaseOutputBuffer(outputBufferIndex, false);
-                // 希望这不会发生。
-                // Hopefully this should not happen.
-                if (encodedBytes.remaining() < info.size) {
-                    estimatedEncodedSize = (int) (estimatedEncodedSize * 1.2);  // Add 20%.
-                    ByteBuffer newEncodedBytes = ByteBuffer.allocate(estimatedEncodedSize);
-                    int position = encodedBytes.position();
-                    encodedBytes.rewind();
-                    newEncodedBytes.put(encodedBytes);
-                    encodedBytes = newEncodedBytes;
-                    encodedBytes.position(position);
+    // Export several regions in a single pass over the decoded samples, cf. TrimPipeline.
+    // The number of encoders running at the same time is bounded by the number of codec
+    // instances the device supports.
+    // Returns false if the progress listener asked to stop (files already written are kept, the
+    // others are deleted).
+    // 一次遍历解码样本即可导出多个区域。同时运行的编码器数量受设备支持的编解码器实例数量限制。
+    public boolean WriteFiles(List<ExportRegion> regions, ExportProfile profile,
+                              final ProgressListener progressListener) throws java.io.IOException {
+        TrimPipeline pipeline = new TrimPipeline(new EncoderSinkFactory(), profile);
+        pipeline.setProcessor(mExportProcessor);
+        TrimPipeline.ProgressListener listener = null;
+        if (progressListener != null) {
+            listener = new TrimPipeline.ProgressListener() {
+                public boolean reportProgress(double fractionComplete) {
+                    return progressListener.reportProgress(fractionComplete);
                 }
-                encodedBytes.put(encodedSamples, 0, info.size);
-            } else if (outputBufferIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
-                outputBuffers = codec.getOutputBuffers();
-            } else if (outputBufferIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
-                // Subsequent data will conform to new format.
-                // We could check that codec.getOutputFormat(), which is the new output format,
-                // is what we expect.
-                // 后续数据将采用新格式。
-                // 我们可以检查一下codec.getOutputFormat（），它是新的输出格式，
-                // 是我们的期望。
-            }
-            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
-                // We got all the encoded data from the encoder.
-                // 我们从编码器获取了所有编码数据。
-                break;
+            };
+        }
+        return !pipeline.run(getPcmSource(), regions, listener).isCancelled();
+    }
+
+    // Samples for the player: the mono low rate copy in preview mode, the decoded samples
+    // otherwise. The sampling rate and number of channels are those of the source.
+    // 播放器的样本：预览模式下为单声道低采样率副本，否则为解码后的样本。
+    public PcmSource getPlaybackSource() {
+        if (mIsPreview) {
+            return mPcmStore.newSource(PREVIEW_SAMPLE_RATE);
+        }
+        return getPcmSource();
+    }
+
+    // The decoded samples, as a PcmSource (e.g. for a TrimPipeline). Sources of files decoded
+    // up front are also FloatPcmSources.
+    // 解码后的样本，作为PcmSource。
+    public PcmSource getPcmSource() {
+        if (mBlockCache != null) {
+            return mBlockCache.newSource(mSampleRate);
+        }
+        return mPcmStore.newSource(mSampleRate);
+    }
+
+    // Append the samples between startTime and endTime (in seconds) to timeline, cross-faded
+    // over crossfadeSecs with its end (cf. Timeline.addSegment()). The segment reads the samples
+    // of this file through a source of its own: nothing is copied.
+    // Returns the position of the segment in the timeline, in samples per channel.
+    // 将startTime和endTime之间的样本追加到timeline，与其结尾交叉淡入淡出。不复制任何样本。
+    public long addToTimeline(Timeline timeline, float startTime, float endTime,
+                              float crossfadeSecs) {
+        return timeline.addSegment(getPcmSource(), startTime, endTime, crossfadeSecs);
+    }
+
+    // The zero crossing nearest to sample (per channel), if it is at most maxDistance samples
+    // away, or sample itself. Files decoded on demand have no index: the samples around are read
+    // instead.
+    // 最接近sample的过零点（如果距离最多maxDistance个样本），否则返回sample本身。
+    public long snapToZeroCrossing(long sample, long maxDistance) throws IOException {
+        ZeroCrossingIndex index = mZeroCrossings;
+        if (index == null) {
+            PcmSource source = getPcmSource();
+            try {
+                index = ZeroCrossingIndex.build(
+                        source, sample - maxDistance, sample + maxDistance + 1);
+            } finally {
+                source.close();
             }
         }
-        int encoded_size = encodedBytes.position();
-        encodedBytes.rewind();
-        codec.stop();
-        codec.release();
-        codec = null;
+        long crossing = index.findNearest(sample, maxDistance);
+        return crossing >= 0 ? crossing : sample;
+    }
+
+    // Peak, RMS and loudness statistics of the samples, null for files decoded on demand (cf.
+    // getLoudnessStats(float, float)).
+    // 样本的峰值、RMS和响度统计信息，按需解码的文件为null。
+    public LoudnessStats getLoudnessStats() {
+        return mLoudnessStats;
+    }
 
-        // 一次将编码后的流写入文件，大小为4kB。
-        // Write the encoded stream to the file, 4kB at a time.
-        buffer = new byte[4096];
+    // Statistics covering the samples between startTime and endTime (in seconds): those of the
+    // whole file if known, otherwise computed from the samples of that selection only.
+    // 覆盖startTime和endTime之间样本的统计信息。
+    public LoudnessStats getLoudnessStats(float startTime, float endTime) throws IOException {
+        if (mLoudnessStats != null) {
+            return mLoudnessStats;
+        }
+        PcmSource source = getPcmSource();
         try {
-            FileOutputStream outputStream = new FileOutputStream(outputFile);
-            outputStream.write(
-                    MP4Header.getMP4Header(mSampleRate, numChannels, frame_sizes, bitrate));
-            while (encoded_size - encodedBytes.position() > buffer.length) {
-                encodedBytes.get(buffer);
-                outputStream.write(buffer);
-            }
-            int remaining = encoded_size - encodedBytes.position();
-            if (remaining > 0) {
-                encodedBytes.get(buffer, 0, remaining);
-                outputStream.write(buffer, 0, remaining);
+            return LoudnessStats.compute(source, (long) ((double) startTime * mSampleRate),
+                    (long) ((double) endTime * mSampleRate));
+        } finally {
+            source.close();
+        }
+    }
+
+    // Onsets and beats of the samples. For files decoded on demand, the whole file is decoded
+    // the first time; callers from other threads wait for that decode rather than starting
+    // their own.
+    // 样本的起始点和节拍。对于按需解码的文件，第一次会解码整个文件；其他线程的调用者等待该解码完成。
+    public synchronized OnsetIndex getOnsetIndex() throws IOException {
+        if (mOnsetIndex == null) {
+            PcmSource source = getPcmSource();
+            try {
+                mOnsetIndex = OnsetIndex.compute(source, 0, source.getNumSamples());
+            } finally {
+                source.close();
             }
-            outputStream.close();
-        } catch (IOException e) {
-            Log.e("Ringdroid", "Failed to create the .m4a file.");
-            Log.e("Ringdroid", getStackTrace(e));
-        }
-    }
-
-    // Method used to swap the left and right channels (needed for stereo WAV files).
-    // buffer contains the PCM data: {sample 1 right, sample 1 left, sample 2 right, etc.}
-    // The size of a sample is assumed to be 16 bits (for a single channel).
-    // When done, buffer will contain {sample 1 left, sample 1 right, sample 2 left, etc.}
-    //用于交换左右声道的方法（立体声WAV文件需要）。
-    //缓冲区包含PCM数据：{样本1右，样本1左，样本2右，等等}
-    //样本大小假定为16位（对于单个通道）。
-    //完成后，缓冲区将包含{样本1左，样本1右，样本2左，等等}
-    private void swapLeftRightChannels(byte[] buffer) {
-        byte left[] = new byte[2];
-        byte right[] = new byte[2];
-        if (buffer.length % 4 != 0) {  // 2 channels, 2 bytes per sample (for one channel).
-            // Invalid buffer size.
-            return;
         }
-        for (int offset = 0; offset < buffer.length; offset += 4) {
-            left[0] = buffer[offset];
-            left[1] = buffer[offset + 1];
-            right[0] = buffer[offset + 2];
-            right[1] = buffer[offset + 3];
-            buffer[offset] = right[0];
-            buffer[offset + 1] = right[1];
-            buffer[offset + 2] = left[0];
-            buffer[offset + 3] = left[1];
+        return mOnsetIndex;
+    }
+
+    // True if getOnsetIndex() returns without decoding the file.
+    // 如果getOnsetIndex()无需解码文件即可返回，则为true。
+    public boolean hasOnsetIndex() {
+        return mOnsetIndex != null;
+    }
+
+    // Finder of the chorus of the samples, null for files decoded on demand: it is not worth
+    // decoding the whole file for it.
+    // 样本副歌的查找器，按需解码的文件为null。
+    public HighlightFinder getHighlightFinder() {
+        return mHighlightFinder;
+    }
+
+    // Set the gain of the export processor (cf. getExportProcessor()) to bring the samples
+    // between startTime and endTime to target (cf. LoudnessStats.getNormalizationGainDb()).
+    // Loudness normalization can raise the peaks above full scale, so the limiter is enabled at
+    // -1 dBFS for it. Returns the gain, in dB.
+    // 设置导出处理器的增益，将startTime和endTime之间的样本调整到target。返回增益（dB）。
+    public float normalize(int normalization, float target, float startTime, float endTime)
+            throws IOException {
+        float gainDb = 0;
+        if (normalization != LoudnessStats.NORMALIZE_NONE) {
+            gainDb = getLoudnessStats(startTime, endTime).getNormalizationGainDb(normalization,
+                    target, (long) ((double) startTime * mSampleRate),
+                    (long) ((double) endTime * mSampleRate));
+        }
+        mExportProcessor.setGainDb(gainDb);
+        mExportProcessor.setLimiter(normalization == LoudnessStats.NORMALIZE_LOUDNESS, -1);
+        return gainDb;
+    }
+
+    // Leading and trailing silence of the file, as found by detector. The frame gains narrow down
+    // the samples to read, except for files decoded on demand, whose gains are incomplete: those
+    // are read from both ends instead, decoding only the silent parts.
+    // 文件开头和结尾的静音。按需解码的文件从两端读取。
+    public SilenceDetector.Bounds detectSilence(SilenceDetector detector) throws IOException {
+        PcmSource source = getPcmSource();
+        try {
+            return detector.detect(
+                    source, isDecodedOnDemand() ? null : mFrameGains, getSamplesPerFrame());
+        } finally {
+            source.close();
         }
     }
 
@@ -823,65 +1233,117 @@ public class SoundFile {
 
     public void WriteWAVFile(File outputFile, float startTime, float endTime)
             throws java.io.IOException {
-        int startOffset = (int) (startTime * mSampleRate) * 2 * mChannels;
-        int numSamples = (int) ((endTime - startTime) * mSampleRate);
+        WriteWAVFile(outputFile, startTime, endTime, mSampleRate);
+    }
+
+    // Same as above, resampled to outputSampleRate (cf. PcmConverter).
+    // 同上，重采样到outputSampleRate。
+    public void WriteWAVFile(File outputFile, float startTime, float endTime,
+                             int outputSampleRate) throws java.io.IOException {
+        long startSample = (long) ((double) startTime * mSampleRate);
+        long numSamples = (long) (((double) endTime - startTime) * mSampleRate);
+        WriteWAVFile(outputFile, startSample, numSamples, outputSampleRate);
+    }
+
+    // Same as above, with the selection in samples (per channel) rather than in seconds.
+    // 同上，选区以样本为单位。
+    public void WriteWAVFile(File outputFile, long startSample, long numSamples,
+                             int outputSampleRate) throws java.io.IOException {
+        PcmConverter converter = null;
+        long numOutputSamples = numSamples;
+        if (outputSampleRate != mSampleRate) {
+            converter = new PcmConverter(mSampleRate, mChannels, outputSampleRate, mChannels);
+            numOutputSamples = PolyphaseResampler.getNumOutputFrames(
+                    mSampleRate, outputSampleRate, numSamples);
+        }
 
-        // Start by writing the RIFF header.
-        // 首先编写RIFF标头。
+        // Start by writing the RIFF header. A file which could not be completed is deleted: its
+        // header would not match its length.
+        // 首先编写RIFF标头。无法完成的文件将被删除：其标头与长度不符。
         FileOutputStream outputStream = new FileOutputStream(outputFile);
-        outputStream.write(WAVHeader.getWAVHeader(mSampleRate, mChannels, numSamples));
-
-        // Write the samples to the file, 1024 at a time.
-        // 将样本一次写入1024个字节到文件。
-        byte buffer[] = new byte[1024 * mChannels * 2];  // Each sample is coded with a short.
-        mDecodedBytes.position(startOffset);
-        int numBytesLeft = numSamples * mChannels * 2;
-        while (numBytesLeft >= buffer.length) {
-            if (mDecodedBytes.remaining() < buffer.length) {
-                // This should not happen.
-                // 这不应该发生。
-                for (int i = mDecodedBytes.remaining(); i < buffer.length; i++) {
-                    // 用额外的0填充以形成全帧。
-                    // pad with extra 0s to make a full frame.
-                    buffer[i] = 0;
+        PcmSource source = null;
+        boolean completed = false;
+        try {
+            outputStream.write(
+                    WAVHeader.getWAVHeader(outputSampleRate, mChannels, (int) numOutputSamples));
+
+            // Write the samples to the file, 1024 at a time.
+            // 将样本一次写入1024个字节到文件。
+            source = getPcmSource();
+            source.seek(startSample);
+            short[] samples = new short[1024 * mChannels];
+            short[] processed = new short[1024 * mChannels];
+            short[] converted = null;
+            int maxOut = 1024;
+            if (converter != null) {
+                maxOut = Math.max(converter.getMaxOutputFrames(1024),
+                        converter.getMaxOutputFrames(0));
+                converted = new short[maxOut * mChannels];
+            }
+            byte buffer[] = new byte[maxOut * mChannels * 2];  // Each sample is coded with a short.
+            PcmProcessor.Region processor =
+                    mExportProcessor.start(mSampleRate, mChannels, numSamples);
+            long numSamplesLeft = numSamples;
+            while (numSamplesLeft > 0) {
+                int count = (int) Math.min(1024, numSamplesLeft);
+                int numRead = source.read(samples, 0, count);
+                // This should not happen, but pad with extra 0s to make a full frame if needed.
+                // 这不应该发生。用额外的0填充以形成全帧。
+                Arrays.fill(samples, numRead * mChannels, count * mChannels, (short) 0);
+                long position = numSamples - numSamplesLeft;
+                short[] out = samples;
+                if (!processor.isPassthrough(position, count)) {
+                    processor.process(samples, 0, count, processed, 0, position);
+                    out = processed;
+                }
+                if (converter != null) {
+                    writeWAVSamples(outputStream, buffer, converted,
+                            converter.process(out, 0, count, converted, 0));
+                } else {
+                    writeWAVSamples(outputStream, buffer, out, count);
                 }
-                mDecodedBytes.get(buffer, 0, mDecodedBytes.remaining());
-            } else {
-                mDecodedBytes.get(buffer);
+                numSamplesLeft -= count;
             }
-            if (mChannels == 2) {
-                swapLeftRightChannels(buffer);
+            if (converter != null) {
+                writeWAVSamples(outputStream, buffer, converted, converter.flush(converted, 0));
             }
-            outputStream.write(buffer);
-            numBytesLeft -= buffer.length;
-        }
-        if (numBytesLeft > 0) {
-            if (mDecodedBytes.remaining() < numBytesLeft) {
-                // This should not happen.
-                // 这不应该发生。
-                for (int i = mDecodedBytes.remaining(); i < numBytesLeft; i++) {
-                    // 用额外的0填充以形成全帧。
-                    // pad with extra 0s to make a full frame.
-                    buffer[i] = 0;
-                }
-                mDecodedBytes.get(buffer, 0, mDecodedBytes.remaining());
-            } else {
-                mDecodedBytes.get(buffer, 0, numBytesLeft);
+            outputStream.close();
+            completed = true;
+        } finally {
+            if (source != null) {
+                source.close();
             }
-            if (mChannels == 2) {
-                swapLeftRightChannels(buffer);
+            if (!completed) {
+                try {
+                    outputStream.close();
+                } catch (IOException e) {
+                    // Nothing more we can do.
+                }
+                outputFile.delete();
             }
-            outputStream.write(buffer, 0, numBytesLeft);
         }
-        outputStream.close();
     }
 
-    // Debugging method dumping all the samples in mDecodedSamples in a TSV file.
+    // Write count samples per channel from samples to outputStream, using buffer.
+    // 使用buffer将samples中每个通道的count个样本写入outputStream。
+    private void writeWAVSamples(FileOutputStream outputStream, byte[] buffer, short[] samples,
+                                 int count) throws java.io.IOException {
+        for (int i = 0; i < count * mChannels; i++) {
+            buffer[2 * i] = (byte) samples[i];
+            buffer[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        if (mChannels == 2) {
+            PcmUtils.swapLeftRightChannels(buffer);
+        }
+        outputStream.write(buffer, 0, count * mChannels * 2);
+    }
+
+    // Debugging method dumping all the samples in mPcmStore in a TSV file.
     // Each row describes one sample and has the following format:
     // "<presentation time in seconds>\t<channel 1>\t...\t<channel N>\n"
     // File will be written on the SDCard under media/audio/debug/
     // If fileName is null or empty, then the default file name (samples.tsv) is used.
-    //调试方法将所有mDecodedSamples中的样本转储到TSV文件中。
+    //调试方法将所有mPcmStore中的样本转储到TSV文件中。
     //每行描述一个样本，并具有以下格式：
     //“ <以秒为单位的演示时间> \ t <通道1> \ t ... \ t <通道N> \ n”
     //文件将写在SDCard的media / audio / debug /目录下
@@ -910,15 +1372,17 @@ public class SoundFile {
         // 开始倾倒样品。
         BufferedWriter writer = null;
         float presentationTime = 0;
-        mDecodedSamples.rewind();
+        PcmSource source = getPcmSource();
+        short[] sample = new short[mChannels];
         String row;
         try {
             writer = new BufferedWriter(new FileWriter(outFile));
             for (int sampleIndex = 0; sampleIndex < mNumSamples; sampleIndex++) {
                 presentationTime = (float) (sampleIndex) / mSampleRate;
                 row = Float.toString(presentationTime);
+                source.read(sample, 0, 1);
                 for (int channelIndex = 0; channelIndex < mChannels; channelIndex++) {
-                    row += "\t" + mDecodedSamples.get();
+                    row += "\t" + sample[channelIndex];
                 }
                 row += "\n";
                 writer.write(row);
@@ -927,15 +1391,15 @@ public class SoundFile {
             Log.w("Ringdroid", "Failed to create the sample TSV file.");
             Log.w("Ringdroid", getStackTrace(e));
         }
-        // We are done here. Close the file and rewind the buffer.
-        // 我们在这里完成。 关闭文件并倒回缓冲区。
+        // We are done here. Close the file and the source.
+        // 我们在这里完成。 关闭文件和源。
         try {
             writer.close();
         } catch (Exception e) {
             Log.w("Ringdroid", "Failed to close sample TSV file.");
             Log.w("Ringdroid", getStackTrace(e));
         }
-        mDecodedSamples.rewind();
+        source.close();
     }
 
     // Helper method (samples will be dumped in media/audio/debug/samples.tsv).
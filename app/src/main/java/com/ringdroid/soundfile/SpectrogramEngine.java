@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes spectrogram columns on a pool of worker threads, grouped in tiles of TILE_COLUMNS
+ * columns, and caches the tiles of each zoom level.
+ * <p>
+ * A tile is requested with getTile(): it is returned if cached, otherwise it is scheduled and the
+ * listener is told when it is ready, so a view can draw what it has and refresh as tiles come in.
+ * The latest requests are served first, and tiles far from the last requested one are dropped
+ * before being computed, so scrolling quickly doesn't queue work for what is no longer visible.
+ * <p>
+ * Each column is the power spectrum of FFT_SIZE samples (mixed down to mono, Hann window)
+ * centered on the column, mapped to 0 - 255 over DYNAMIC_RANGE_DB.
+ * <p>
+ * 在工作线程池上计算频谱图列，按TILE_COLUMNS列分组为图块，并缓存每个缩放级别的图块。
+ */
+public class SpectrogramEngine {
+    public static final int FFT_SIZE = 512;
+    public static final int NUM_BINS = FFT_SIZE / 2;
+    public static final int TILE_COLUMNS = 64;
+    public static final float DYNAMIC_RANGE_DB = 96;
+
+    // About 4 MB of tiles.
+    // 大约4 MB的图块。
+    private static final int MAX_TILES = 256;
+    // Pending tiles further than this from the last requested one are not computed.
+    // 距离最后请求的图块超过此距离的待处理图块不会被计算。
+    private static final int MAX_TILE_DISTANCE = 32;
+
+    // Provides a new PcmSource for each tile: sources are not shared between threads.
+    // 为每个图块提供一个新的PcmSource：源不在线程之间共享。
+    public interface SourceProvider {
+        PcmSource openSource();
+    }
+
+    // Called from the worker threads when a tile is ready.
+    // 图块准备好时从工作线程调用。
+    public interface Listener {
+        void onTileReady(int zoomLevel, int tileIndex);
+    }
+
+    private final SourceProvider mSourceProvider;
+    private final ThreadPoolExecutor mExecutor;
+    private final Map<Long, byte[]> mTiles;
+    private final Set<Long> mPending;
+    private volatile Listener mListener;
+    private volatile int mLastZoomLevel;
+    private volatile int mLastTileIndex;
+
+    // Per worker FFT and buffers.
+    // 每个工作线程的FFT和缓冲区。
+    private final ThreadLocal<Worker> mWorkers = new ThreadLocal<Worker>() {
+        protected Worker initialValue() {
+            return new Worker();
+        }
+    };
+
+    public SpectrogramEngine(SourceProvider sourceProvider, int numWorkers) {
+        mSourceProvider = sourceProvider;
+        numWorkers = Math.max(1, numWorkers);
+        // Last in, first out: the tiles requested last are the ones on screen.
+        // 后进先出：最后请求的图块是屏幕上的图块。
+        mExecutor = new ThreadPoolExecutor(numWorkers, numWorkers, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingDeque<Runnable>() {
+                    public boolean offer(Runnable runnable) {
+                        return offerFirst(runnable);
+                    }
+                });
+        mTiles = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > MAX_TILES;
+            }
+        };
+        mPending = new HashSet<Long>();
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    // Tile tileIndex of zoom level zoomLevel, whose columns are samplesPerColumn samples apart:
+    // TILE_COLUMNS columns of NUM_BINS values, lowest frequency first. Returns null if it is not
+    // computed yet, in which case it is scheduled.
+    // 返回缩放级别zoomLevel的第tileIndex个图块。如果尚未计算，则返回null并安排计算。
+    public byte[] getTile(final int zoomLevel, final double samplesPerColumn,
+                          final int tileIndex) {
+        final Long key = getKey(zoomLevel, tileIndex);
+        synchronized (mTiles) {
+            mLastZoomLevel = zoomLevel;
+            mLastTileIndex = tileIndex;
+            byte[] tile = mTiles.get(key);
+            if (tile != null || mPending.contains(key) || mExecutor.isShutdown()) {
+                return tile;
+            }
+            mPending.add(key);
+        }
+        mExecutor.execute(new Runnable() {
+            public void run() {
+                byte[] tile = null;
+                if (zoomLevel == mLastZoomLevel
+                        && Math.abs(tileIndex - mLastTileIndex) <= MAX_TILE_DISTANCE) {
+                    try {
+                        tile = mWorkers.get().computeTile(samplesPerColumn, tileIndex);
+                    } catch (IOException e) {
+                        // Leave it out; it will be requested again.
+                    }
+                }
+                synchronized (mTiles) {
+                    mPending.remove(key);
+                    if (tile == null) {
+                        return;
+                    }
+                    mTiles.put(key, tile);
+                }
+                Listener listener = mListener;
+                if (listener != null) {
+                    listener.onTileReady(zoomLevel, tileIndex);
+                }
+            }
+        });
+        return null;
+    }
+
+    // Stop the workers and drop the tiles.
+    // 停止工作线程并丢弃图块。
+    public void release() {
+        mExecutor.shutdownNow();
+        synchronized (mTiles) {
+            mTiles.clear();
+            mPending.clear();
+        }
+    }
+
+    private static Long getKey(int zoomLevel, int tileIndex) {
+        return ((long) zoomLevel << 32) | (tileIndex & 0xFFFFFFFFL);
+    }
+
+    private class Worker {
+        private final Fft mFft = new Fft(FFT_SIZE);
+        private final float[] mWindow = new float[FFT_SIZE];
+        private final float[] mInput = new float[FFT_SIZE];
+        private final float[] mPower = new float[NUM_BINS];
+        private short[] mSamples = new short[0];
+        // Power of the peak bin for a full scale sine, with the window.
+        // 满刻度正弦波在加窗后峰值频点的功率。
+        private final double mReferenceDb;
+
+        Worker() {
+            double sum = 0;
+            for (int i = 0; i < FFT_SIZE; i++) {
+                mWindow[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / FFT_SIZE));
+                sum += mWindow[i];
+            }
+            mReferenceDb = 20 * Math.log10(sum / 2);
+        }
+
+        byte[] computeTile(double samplesPerColumn, int tileIndex) throws IOException {
+            byte[] tile = new byte[TILE_COLUMNS * NUM_BINS];
+            PcmSource source = mSourceProvider.openSource();
+            try {
+                int channels = source.getChannels();
+                long numSamples = source.getNumSamples();
+                if (mSamples.length < FFT_SIZE * channels) {
+                    mSamples = new short[FFT_SIZE * channels];
+                }
+                for (int column = 0; column < TILE_COLUMNS; column++) {
+                    long center = (long) (((long) tileIndex * TILE_COLUMNS + column + 0.5)
+                            * samplesPerColumn);
+                    if (center >= numSamples) {
+                        break;
+                    }
+                    readWindow(source, center - FFT_SIZE / 2, channels);
+                    mFft.powerSpectrum(mInput, mPower);
+                    int offset = column * NUM_BINS;
+                    for (int bin = 0; bin < NUM_BINS; bin++) {
+                        double db = 10 * Math.log10(mPower[bin] + 1e-12) - mReferenceDb;
+                        int value = (int) ((db + DYNAMIC_RANGE_DB) * 255 / DYNAMIC_RANGE_DB);
+                        tile[offset + bin] = (byte) Math.max(0, Math.min(255, value));
+                    }
+                }
+            } finally {
+                source.close();
+            }
+            return tile;
+        }
+
+        // Read FFT_SIZE samples from start (zeros outside of the source) into mInput, mixed
+        // down to mono and windowed.
+        // 从start读取FFT_SIZE个样本到mInput，混合为单声道并加窗。
+        private void readWindow(PcmSource source, long start, int channels) throws IOException {
+            int skip = (int) Math.max(0, -start);
+            int count = 0;
+            source.seek(Math.max(0, start));
+            while (skip + count < FFT_SIZE) {
+                int n = source.read(mSamples, count * channels, FFT_SIZE - skip - count);
+                if (n <= 0) {
+                    break;
+                }
+                count += n;
+            }
+            float scale = 1.0f / (32768.0f * channels);
+            for (int i = 0; i < FFT_SIZE; i++) {
+                int j = i - skip;
+                float value = 0;
+                if (j >= 0 && j < count) {
+                    for (int c = 0; c < channels; c++) {
+                        value += mSamples[j * channels + c];
+                    }
+                }
+                mInput[i] = value * scale * mWindow[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Stand-in for AudioEncoder where MediaCodec is not available (e.g. on a desktop JVM).
+ * <p>
+ * It does all the work AudioEncoder does around the codec: format conversion, framing, padding,
+ * container writing (MP4FileWriter for .m4a files, AMR-WB stream header), and replaces the codec
+ * itself by a trivial one producing frames of the size the real codec would produce at the
+ * profile's bitrate. The files have the right structure and duration but don't contain
+ * decodable audio: this is meant for measuring and testing the batch pipeline, not for shipping
+ * tones.
+ * <p>
+ * 在MediaCodec不可用的地方替代AudioEncoder。文件具有正确的结构和时长，但不包含可解码的音频。
+ */
+public class StandInEncoder implements PcmSink {
+    private final ExportProfile mProfile;
+    private final File mOutputFile;
+    private final int mSampleRate;
+    private final int mChannels;
+    private final int mBitrate;
+    private final PcmConverter mConverter;
+
+    private short[] mConverted;     // output of mConverter.
+    private short[] mFrame;         // one codec frame, interleaved.
+    private int mFrameFill;         // number of samples per channel in mFrame.
+    private byte[] mEncodedFrame;   // output of the stand-in codec.
+
+    // M4A output, streamed as AudioEncoder does.
+    private MP4FileWriter mMP4Writer;
+    // Fragmented M4A output.
+    private FragmentedMP4Writer mFragmentedWriter;
+    // AMR output.
+    private OutputStream mOutputStream;
+
+    public StandInEncoder(ExportProfile profile, int srcSampleRate, int srcChannels,
+                          File outputFile) throws IOException {
+        if (!profile.isMP4() && profile.getContainer() != ExportProfile.CONTAINER_AMR) {
+            throw new IOException("No stand-in encoder for " + profile);
+        }
+        mProfile = profile;
+        mOutputFile = outputFile;
+        mSampleRate = profile.getOutputSampleRate(srcSampleRate);
+        mChannels = profile.getOutputChannels(srcChannels);
+        mBitrate = profile.getBitrate(mChannels);
+        mConverter = new PcmConverter(srcSampleRate, srcChannels, mSampleRate, mChannels);
+    }
+
+    public void start(long estimatedNumSamples) throws IOException {
+        mConverted = new short[0];
+        mFrame = new short[mProfile.getSamplesPerFrame() * mChannels];
+        mFrameFill = 0;
+        int frameSize = (int) Math.ceil(
+                (double) mBitrate * mProfile.getSamplesPerFrame() / (8.0 * mSampleRate));
+        if (mProfile.getContainer() == ExportProfile.CONTAINER_M4A) {
+            mMP4Writer = new MP4FileWriter(mOutputFile, mSampleRate, mChannels, mBitrate,
+                    mProfile.getSamplesPerFrame(), mProfile.getAACObjectType());
+            mEncodedFrame = new byte[Math.max(frameSize, 1)];
+            // Like MediaCodec, start with a codec config "frame" (2 bytes for AAC LC).
+            // 与MediaCodec一样，从编解码器配置“帧”开始。
+            writeEncodedFrame(new byte[2], 2);
+        } else if (mProfile.getContainer() == ExportProfile.CONTAINER_FRAGMENTED_M4A) {
+            // No codec config: the Audio Specific Config is in the header.
+            mFragmentedWriter = new FragmentedMP4Writer(mOutputFile, mSampleRate, mChannels,
+                    mBitrate, mProfile.getSamplesPerFrame(), mProfile.getAACObjectType());
+            mEncodedFrame = new byte[Math.max(frameSize, 1)];
+        } else {
+            // One byte of frame header, then the payload.
+            mEncodedFrame = new byte[1 + frameSize];
+            mOutputStream = new BufferedOutputStream(new FileOutputStream(mOutputFile));
+            mOutputStream.write(new byte[] {'#', '!', 'A', 'M', 'R', '-', 'W', 'B', '\n'});
+        }
+    }
+
+    public void write(short[] samples, int offset, int numSamples) throws IOException {
+        int maxOut = mConverter.getMaxOutputFrames(numSamples);
+        if (mConverted.length < maxOut * mChannels) {
+            mConverted = new short[maxOut * mChannels];
+        }
+        int numConverted = mConverter.process(samples, offset, numSamples, mConverted, 0);
+        appendConverted(numConverted);
+    }
+
+    // Append the first numConverted samples per channel of mConverted to the frames to encode.
+    // 将mConverted的前numConverted个样本附加到要编码的帧。
+    private void appendConverted(int numConverted) throws IOException {
+        int samplesPerFrame = mProfile.getSamplesPerFrame();
+        int pos = 0;
+        while (pos < numConverted) {
+            int count = Math.min(samplesPerFrame - mFrameFill, numConverted - pos);
+            System.arraycopy(mConverted, pos * mChannels, mFrame, mFrameFill * mChannels,
+                    count * mChannels);
+            mFrameFill += count;
+            pos += count;
+            if (mFrameFill == samplesPerFrame) {
+                encodeFrame();
+                mFrameFill = 0;
+            }
+        }
+    }
+
+    public void finish() throws IOException {
+        // The resampler holds back the last few samples of the stream.
+        // 重采样器保留了流的最后几个样本。
+        int maxOut = mConverter.getMaxOutputFrames(0);
+        if (mConverted.length < maxOut * mChannels) {
+            mConverted = new short[maxOut * mChannels];
+        }
+        appendConverted(mConverter.flush(mConverted, 0));
+        if (mFrameFill > 0) {
+            Arrays.fill(mFrame, mFrameFill * mChannels, mFrame.length, (short) 0);
+            encodeFrame();
+            mFrameFill = 0;
+        }
+        if (mProfile.isMP4()) {
+            // Adding 2 frames of silence, as AudioEncoder does.
+            Arrays.fill(mFrame, (short) 0);
+            encodeFrame();
+            encodeFrame();
+        }
+        if (mMP4Writer != null) {
+            mMP4Writer.finish();
+            mMP4Writer = null;
+        } else if (mFragmentedWriter != null) {
+            mFragmentedWriter.finish();
+            mFragmentedWriter = null;
+        } else {
+            mOutputStream.close();
+            mOutputStream = null;
+        }
+    }
+
+    public void release() {
+        if (mOutputStream != null) {
+            try {
+                mOutputStream.close();
+            } catch (IOException e) {
+                // Nothing more we can do.
+            }
+            mOutputStream = null;
+        }
+        if (mMP4Writer != null) {
+            mMP4Writer.release();
+            mMP4Writer = null;
+        }
+        if (mFragmentedWriter != null) {
+            mFragmentedWriter.release();
+            mFragmentedWriter = null;
+        }
+    }
+
+    // The stand-in codec: folds the samples of mFrame into a payload of the size the real codec
+    // would produce, so that the cost of touching every sample is still there.
+    // 替代编解码器：将mFrame的样本折叠成真实编解码器将产生的大小的有效载荷。
+    private void encodeFrame() throws IOException {
+        int start = 0;
+        if (mProfile.getContainer() == ExportProfile.CONTAINER_AMR) {
+            mEncodedFrame[0] = 0x44;  // frame type 8 (23.85 kbps), quality bit set.
+            start = 1;
+        }
+        int payloadSize = mEncodedFrame.length - start;
+        Arrays.fill(mEncodedFrame, start, mEncodedFrame.length, (byte) 0);
+        for (int i = 0; i < mFrame.length; i++) {
+            mEncodedFrame[start + i % payloadSize] ^= (byte) (mFrame[i] >> 8);
+        }
+        writeEncodedFrame(mEncodedFrame, mEncodedFrame.length);
+    }
+
+    private void writeEncodedFrame(byte[] frame, int size) throws IOException {
+        if (mProfile.getContainer() == ExportProfile.CONTAINER_AMR) {
+            mOutputStream.write(frame, 0, size);
+            return;
+        }
+        if (mFragmentedWriter != null) {
+            mFragmentedWriter.writeFrame(frame, 0, size);
+        } else {
+            mMP4Writer.writeFrame(frame, 0, size);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * PcmSinkFactory usable without the Android framework: WAV and raw PCM are written for real, the
+ * encoded profiles go through StandInEncoder.
+ * <p>
+ * 无需Android框架即可使用的PcmSinkFactory。
+ */
+public class StandInSinkFactory implements PcmSinkFactory {
+    // Maximum number of files written at the same time by one pipeline.
+    // 一个管道同时写入的最大文件数。
+    private static final int MAX_CONCURRENT_SINKS = 8;
+
+    public PcmSink create(ExportProfile profile, int sampleRate, int numChannels, File outputFile)
+            throws IOException {
+        if (profile.isPCM()) {
+            return new PcmFileSink(outputFile, sampleRate, numChannels,
+                    profile.getOutputSampleRate(sampleRate),
+                    profile.getContainer() == ExportProfile.CONTAINER_WAV);
+        }
+        return new StandInEncoder(profile, sampleRate, numChannels, outputFile);
+    }
+
+    public int getMaxConcurrentSinks(ExportProfile profile, int sampleRate, int numChannels) {
+        return MAX_CONCURRENT_SINKS;
+    }
+}
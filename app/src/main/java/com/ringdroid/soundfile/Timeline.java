@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A virtual concatenation of segments of several PcmSources (e.g. SoundFile.getPcmSource() of
+ * several files), itself read as a PcmSource: SamplePlayer plays it and TrimPipeline writes it
+ * like a single file. No sample is copied: every read() is served by the sources of the segments
+ * it covers.
+ * <p>
+ * Each segment may overlap the end of the previous one, the two being cross-faded over the
+ * overlap with equal power gains (sin / cos). Segments whose sampling rate or number of channels
+ * differ from the ones of the timeline are converted on the fly (cf. PcmConverter); a seek in the
+ * middle of such a segment restarts the resampler a little earlier, on the same sample grid, so
+ * that the samples read don't depend on where reading started.
+ * <p>
+ * 多个PcmSource片段的虚拟拼接，本身作为PcmSource读取。不复制任何样本。每个片段可以与前一个片段的结尾重叠，
+ * 重叠部分以等功率增益交叉淡入淡出。采样率或通道数不同的片段会被实时转换。
+ */
+public class Timeline implements PcmSource {
+    // Number of samples per channel read from a source at a time.
+    // 一次从源读取的每个通道的样本数。
+    private static final int BLOCK_SIZE = 1024;
+
+    private final int mSampleRate;
+    private final int mChannels;
+    private final List<Segment> mSegments;
+    private long mNumSamples;
+    private long mPosition;  // next sample (per channel) to read.
+    private int mCurrent;    // index of the last segment starting at or before mPosition.
+    private final short[] mMixBuffer;  // samples of the incoming segment of a crossfade.
+
+    public Timeline(int sampleRate, int channels) {
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mSegments = new ArrayList<Segment>();
+        mNumSamples = 0;
+        mPosition = 0;
+        mCurrent = 0;
+        mMixBuffer = new short[BLOCK_SIZE * channels];
+    }
+
+    // Append numSamples samples (per channel, at the rate of source) of source, starting at
+    // startSample, cross-fading their first crossfadeSamples samples (at the rate of the timeline)
+    // with the end of the timeline. The crossfade is shortened if either segment is too short for
+    // it. The timeline owns source from now on (cf. close()): each segment needs a source of its
+    // own, even when several segments come from the same file.
+    // Returns the position of the segment in the timeline, in samples per channel.
+    // 追加source中从startSample开始的numSamples个样本，其前crossfadeSamples个样本与时间线的结尾交叉淡入淡出。
+    // 返回片段在时间线中的位置。
+    public long addSegment(PcmSource source, long startSample, long numSamples,
+                           long crossfadeSamples) {
+        startSample = Math.max(0, Math.min(startSample, source.getNumSamples()));
+        numSamples = Math.max(0, Math.min(numSamples, source.getNumSamples() - startSample));
+        Segment segment = new Segment(source, startSample, numSamples, mSampleRate, mChannels);
+        long crossfade = 0;
+        if (!mSegments.isEmpty()) {
+            Segment previous = mSegments.get(mSegments.size() - 1);
+            // At most two segments overlap at any time.
+            // 任何时候最多两个片段重叠。
+            crossfade = Math.min(crossfadeSamples, previous.mLength - previous.mFadeIn);
+            crossfade = Math.max(0, Math.min(crossfade, segment.mLength));
+        }
+        segment.mStart = mNumSamples - crossfade;
+        segment.mFadeIn = crossfade;
+        mSegments.add(segment);
+        mNumSamples = segment.mStart + segment.mLength;
+        return segment.mStart;
+    }
+
+    // Same as above, with times in seconds.
+    // 同上，时间以秒为单位。
+    public long addSegment(PcmSource source, double startTime, double endTime,
+                           double crossfadeSecs) {
+        long startSample = (long) (startTime * source.getSampleRate());
+        long endSample = (long) (endTime * source.getSampleRate());
+        return addSegment(source, startSample, endSample - startSample,
+                (long) (crossfadeSecs * mSampleRate));
+    }
+
+    public int getNumSegments() {
+        return mSegments.size();
+    }
+
+    // Position (in samples per channel) of segment i in the timeline.
+    // 片段i在时间线中的位置。
+    public long getSegmentStart(int i) {
+        return mSegments.get(i).mStart;
+    }
+
+    // Length (in samples per channel, at the rate of the timeline) of segment i.
+    // 片段i的长度。
+    public long getSegmentLength(int i) {
+        return mSegments.get(i).mLength;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    public long getNumSamples() {
+        return mNumSamples;
+    }
+
+    public void seek(long sample) {
+        mPosition = Math.max(0, Math.min(sample, mNumSamples));
+        mCurrent = 0;
+    }
+
+    public int read(short[] buffer, int offset, int numSamples) throws IOException {
+        int count = (int) Math.max(0, Math.min(numSamples, mNumSamples - mPosition));
+        int done = 0;
+        while (done < count) {
+            while (mCurrent + 1 < mSegments.size()
+                    && mSegments.get(mCurrent + 1).mStart <= mPosition) {
+                mCurrent++;
+            }
+            Segment segment = mSegments.get(mCurrent);
+            Segment previous = mCurrent > 0 ? mSegments.get(mCurrent - 1) : null;
+            long end = segment.mStart + segment.mLength;
+            if (mCurrent + 1 < mSegments.size()) {
+                end = Math.min(end, mSegments.get(mCurrent + 1).mStart);
+            }
+            boolean fading = previous != null && mPosition < segment.mStart + segment.mFadeIn;
+            if (fading) {
+                end = Math.min(end, segment.mStart + segment.mFadeIn);
+            }
+            int n = (int) Math.min(count - done, end - mPosition);
+            int out = offset + done * mChannels;
+            if (!fading) {
+                segment.read(mPosition - segment.mStart, buffer, out, n);
+            } else {
+                n = Math.min(n, BLOCK_SIZE);
+                previous.read(mPosition - previous.mStart, buffer, out, n);
+                segment.read(mPosition - segment.mStart, mMixBuffer, 0, n);
+                crossfade(buffer, out, mMixBuffer, n, mPosition - segment.mStart,
+                        segment.mFadeIn);
+            }
+            mPosition += n;
+            done += n;
+        }
+        return count;
+    }
+
+    // Close the sources of all the segments.
+    // 关闭所有片段的源。
+    public void close() {
+        for (Segment segment : mSegments) {
+            segment.mSource.close();
+        }
+    }
+
+    // Write the whole timeline into outputFile, with the sink given by sinkFactory for profile,
+    // processed by processor (null for none). Returns the statistics of the run, cf.
+    // TrimPipeline.run(). The timeline is left open.
+    // 将整个时间线写入outputFile。返回运行统计信息。
+    public TrimResult writeFile(PcmSinkFactory sinkFactory, ExportProfile profile,
+                                PcmProcessor processor, File outputFile,
+                                TrimPipeline.ProgressListener progressListener)
+            throws IOException {
+        TrimPipeline pipeline = new TrimPipeline(sinkFactory, profile);
+        if (processor != null) {
+            pipeline.setProcessor(processor);
+        }
+        ExportRegion region = new ExportRegion(0, mNumSamples, mSampleRate, outputFile);
+        return pipeline.run(this, Collections.singletonList(region), progressListener);
+    }
+
+    // Mix numSamples samples of incoming into buffer (holding the outgoing segment), position
+    // being the offset of the first sample in a crossfade of length samples.
+    // 将incoming的numSamples个样本混入buffer。
+    private void crossfade(short[] buffer, int offset, short[] incoming, int numSamples,
+                           long position, long length) {
+        int k = offset;
+        int j = 0;
+        for (int i = 0; i < numSamples; i++) {
+            double angle = 0.5 * Math.PI * (position + i + 0.5) / length;
+            float gainIn = (float) Math.sin(angle);
+            float gainOut = (float) Math.cos(angle);
+            for (int c = 0; c < mChannels; c++) {
+                float value = buffer[k] * gainOut + incoming[j++] * gainIn;
+                buffer[k++] = clip(value);
+            }
+        }
+    }
+
+    private static short clip(float value) {
+        if (value > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (value < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) Math.round(value);
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+
+    // One segment: its source, where it is in the timeline and, when its format differs from
+    // the one of the timeline, the state of its conversion.
+    // 一个片段：其源、在时间线中的位置，以及格式不同时的转换状态。
+    private static class Segment {
+        private final PcmSource mSource;
+        private final long mSrcStart;
+        private final long mSrcLength;
+        private final int mChannels;
+        private long mStart;   // in the timeline.
+        private long mLength;  // at the rate of the timeline.
+        private long mFadeIn;  // overlap with the previous segment.
+        private long mNext;    // offset in the segment of the next sample read() returns.
+
+        // Conversion, null when the source has the format of the timeline.
+        // 转换，当源具有时间线的格式时为null。
+        private final PcmConverter mConverter;
+        private final int mL;  // reduced ratio of the rates: dst / src = mL / mM.
+        private final int mM;
+        private final long mPriming;  // source samples read before the first one needed.
+        private short[] mIn;
+        private short[] mOut;
+        private int mOutPos;
+        private int mOutFill;
+        private long mSrcPos;  // next source sample to convert, relative to mSrcStart.
+        private boolean mFlushed;
+        private long mDiscard;  // converted samples to drop after a seek.
+
+        Segment(PcmSource source, long srcStart, long srcLength, int sampleRate, int channels) {
+            mSource = source;
+            mSrcStart = srcStart;
+            mSrcLength = srcLength;
+            mChannels = channels;
+            mNext = -1;
+            int srcSampleRate = source.getSampleRate();
+            int gcd = gcd(srcSampleRate, sampleRate);
+            mL = sampleRate / gcd;
+            mM = srcSampleRate / gcd;
+            mConverter = new PcmConverter(srcSampleRate, source.getChannels(), sampleRate,
+                    channels);
+            if (mConverter.isPassthrough()) {
+                mLength = srcLength;
+                mPriming = 0;
+                return;
+            }
+            mLength = PolyphaseResampler.getNumOutputFrames(srcSampleRate, sampleRate, srcLength);
+            // More than half the length of the resampling filter (cf. PolyphaseResampler).
+            // 大于重采样滤波器长度的一半。
+            mPriming = srcSampleRate == sampleRate ? 0 : 32 * ((mM + mL - 1) / mL) + 1;
+            mIn = new short[BLOCK_SIZE * source.getChannels()];
+            int maxOut = Math.max(mConverter.getMaxOutputFrames(BLOCK_SIZE),
+                    mConverter.getMaxOutputFrames(0));
+            mOut = new short[maxOut * channels];
+        }
+
+        // Read numSamples samples into buffer, starting at offset position of the segment.
+        // 从片段的position处开始，将numSamples个样本读入buffer。
+        void read(long position, short[] buffer, int offset, int numSamples)
+                throws IOException {
+            if (mConverter.isPassthrough()) {
+                if (position != mNext) {
+                    mSource.seek(mSrcStart + position);
+                }
+                int done = 0;
+                while (done < numSamples) {
+                    int numRead = mSource.read(buffer, offset + done * mChannels,
+                            numSamples - done);
+                    if (numRead <= 0) {
+                        break;
+                    }
+                    done += numRead;
+                }
+                // Should not happen: pad with silence.
+                // 不应该发生：用静音填充。
+                Arrays.fill(buffer, offset + done * mChannels,
+                        offset + numSamples * mChannels, (short) 0);
+                mNext = position + numSamples;
+                return;
+            }
+            if (position != mNext) {
+                seekConverted(position);
+            }
+            int done = 0;
+            while (done < numSamples) {
+                if (mOutPos == mOutFill) {
+                    convert();
+                    continue;
+                }
+                int count = Math.min(numSamples - done, mOutFill - mOutPos);
+                System.arraycopy(mOut, mOutPos * mChannels, buffer, offset + done * mChannels,
+                        count * mChannels);
+                mOutPos += count;
+                done += count;
+            }
+            mNext = position + numSamples;
+        }
+
+        // Restart the conversion from a source sample falling on output sample b * mL (for some
+        // b), mPriming samples or more before the one output position needs.
+        // 从落在输出样本b * mL上的源样本重新开始转换。
+        private void seekConverted(long position) throws IOException {
+            long srcPosition = position * mM / mL;
+            long b = Math.max(0, (srcPosition - mPriming) / mM);
+            mSrcPos = b * mM;
+            mDiscard = position - b * mL;
+            mConverter.reset();
+            mFlushed = false;
+            mOutPos = 0;
+            mOutFill = 0;
+            mSource.seek(mSrcStart + mSrcPos);
+        }
+
+        // Convert the next block of the source into mOut.
+        // 将源的下一个块转换到mOut中。
+        private void convert() throws IOException {
+            int produced;
+            int count = (int) Math.min(BLOCK_SIZE, mSrcLength - mSrcPos);
+            if (count > 0) {
+                int srcChannels = mSource.getChannels();
+                int done = 0;
+                while (done < count) {
+                    int numRead = mSource.read(mIn, done * srcChannels, count - done);
+                    if (numRead <= 0) {
+                        break;
+                    }
+                    done += numRead;
+                }
+                Arrays.fill(mIn, done * srcChannels, count * srcChannels, (short) 0);
+                produced = mConverter.process(mIn, 0, count, mOut, 0);
+                mSrcPos += count;
+            } else if (!mFlushed) {
+                produced = mConverter.flush(mOut, 0);
+                mFlushed = true;
+            } else {
+                // Past the end of the segment: should not happen.
+                // 超过片段结尾：不应该发生。
+                produced = mOut.length / mChannels;
+                Arrays.fill(mOut, 0, produced * mChannels, (short) 0);
+            }
+            int skip = (int) Math.min(mDiscard, produced);
+            mDiscard -= skip;
+            mOutPos = skip;
+            mOutFill = produced;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One input file of a batch, and how to cut it: a selection (start and end time), optionally split
+ * into pieces of a given length. Output files are named after the input file.
+ * <p>
+ * 批处理的一个输入文件，以及如何剪切它。
+ */
+public class TrimJob {
+    private final File mInputFile;
+    private final File mOutputDir;
+    private final float mStartTime;
+    private final float mEndTime;     // negative => end of the input.
+    private final float mPieceSecs;   // 0 => a single piece.
+    private int mRawSampleRate;       // 0 => the input is a WAV file.
+    private int mRawChannels;
+    private SilenceDetector mSilenceDetector;  // null => keep the silence.
+
+    public TrimJob(File inputFile, File outputDir, float startTime, float endTime,
+                   float pieceSecs) {
+        mInputFile = inputFile;
+        mOutputDir = outputDir;
+        mStartTime = startTime;
+        mEndTime = endTime;
+        mPieceSecs = pieceSecs;
+        mRawSampleRate = 0;
+        mRawChannels = 0;
+    }
+
+    // Read the input as raw 16 bits little-endian PCM with the given format instead of WAV.
+    // 将输入读取为具有给定格式的原始PCM。
+    public void setRawFormat(int sampleRate, int channels) {
+        mRawSampleRate = sampleRate;
+        mRawChannels = channels;
+    }
+
+    // Cut the leading and trailing silence of the selection, as found by detector.
+    // 剪掉选区开头和结尾的静音。
+    public void setSilenceDetector(SilenceDetector detector) {
+        mSilenceDetector = detector;
+    }
+
+    public SilenceDetector getSilenceDetector() {
+        return mSilenceDetector;
+    }
+
+    public File getInputFile() {
+        return mInputFile;
+    }
+
+    public PcmSource openSource() throws IOException {
+        if (mRawSampleRate > 0) {
+            return PcmFileSource.openRaw(mInputFile, mRawSampleRate, mRawChannels);
+        }
+        return PcmFileSource.openWav(mInputFile);
+    }
+
+    // The regions to write for a source of duration seconds, with profile.
+    // 要写入的区域。
+    public List<ExportRegion> getRegions(double duration, ExportProfile profile) {
+        return getRegions(0, duration, profile);
+    }
+
+    // Same as above, the selection being also limited to the active part of the source, from
+    // activeStart to activeEnd seconds (cf. SilenceDetector).
+    // 同上，选区也限制在源的活动部分。
+    public List<ExportRegion> getRegions(double activeStart, double activeEnd,
+                                         ExportProfile profile) {
+        String name = mInputFile.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        float start = (float) Math.min(Math.max(mStartTime, activeStart), activeEnd);
+        float end = (float) ((mEndTime < 0) ? activeEnd : Math.min(mEndTime, activeEnd));
+        List<ExportRegion> regions = new ArrayList<ExportRegion>();
+        if (mPieceSecs <= 0) {
+            if (end > start) {
+                regions.add(new ExportRegion(start, end,
+                        new File(mOutputDir, name + profile.getExtension())));
+            }
+            return regions;
+        }
+        for (int i = 0; start + i * mPieceSecs < end; i++) {
+            float t = start + i * mPieceSecs;
+            String pieceName = name + " " + (i + 1) + profile.getExtension();
+            regions.add(new ExportRegion(t, Math.min(t + mPieceSecs, end),
+                    new File(mOutputDir, pieceName)));
+        }
+        return regions;
+    }
+
+    // Bounds of the selection, in samples (per channel) of a source sampled at sampleRate, also
+    // limited to the active part of the source, from activeStart to activeEnd samples. The
+    // selection is empty if getSelectionEnd() <= getSelectionStart().
+    // 选区的边界（以样本为单位），也限制在源的活动部分。
+    public long getSelectionStart(int sampleRate, long activeStart, long activeEnd) {
+        long start = (long) ((double) mStartTime * sampleRate);
+        return Math.min(Math.max(start, activeStart), activeEnd);
+    }
+
+    public long getSelectionEnd(int sampleRate, long activeStart, long activeEnd) {
+        if (mEndTime < 0) {
+            return activeEnd;
+        }
+        return Math.min((long) ((double) mEndTime * sampleRate), activeEnd);
+    }
+
+    public String toString() {
+        return mInputFile.getName();
+    }
+}
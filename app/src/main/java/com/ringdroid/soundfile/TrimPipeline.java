@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * UI-free trimming engine: cuts regions out of a PcmSource, applies fades and gain (cf.
+ * PcmProcessor), and writes each region with the PcmSink given by a PcmSinkFactory for the output
+ * profile.
+ * <p>
+ * Regions are sorted by start time, and the source is read once, block by block, each block being
+ * fed to the sinks of all the regions it overlaps. The number of sinks open at the same time is
+ * bounded by the factory: a region which cannot get a sink when it starts is postponed to another
+ * pass. Memory use is one block plus whatever the sinks keep, whatever the length of the source.
+ * <p>
+ * 无界面的剪辑引擎：从PcmSource中剪切区域，应用淡入淡出，然后写入每个区域。源只读取一次。
+ */
+public class TrimPipeline {
+    // Number of samples per channel read from the source at a time.
+    // 一次从源读取的每个通道的样本数。
+    public static final int BLOCK_SIZE = 1024;
+
+    // Progress listener interface.
+    // 进度监听
+    public interface ProgressListener {
+        /**
+         * Called periodically with values between 0.0 and 1.0. Return true to continue, false to
+         * cancel.
+         */
+        boolean reportProgress(double fractionComplete);
+    }
+
+    private final PcmSinkFactory mSinkFactory;
+    private final ExportProfile mProfile;
+    private PcmProcessor mProcessor;
+
+    public TrimPipeline(PcmSinkFactory sinkFactory, ExportProfile profile) {
+        mSinkFactory = sinkFactory;
+        mProfile = profile;
+        mProcessor = new PcmProcessor();
+    }
+
+    // Linear fade in and fade out applied to every region, in seconds (0 for none).
+    // 应用于每个区域的线性淡入和淡出，以秒为单位（0表示无）。
+    public void setFades(float fadeInSecs, float fadeOutSecs) {
+        mProcessor.setFades(fadeInSecs, fadeOutSecs);
+    }
+
+    // Processing applied to every region (fades, gain, limiter), replacing setFades().
+    // 应用于每个区域的处理（淡入淡出、增益、限制器），替换setFades（）。
+    public void setProcessor(PcmProcessor processor) {
+        mProcessor = processor;
+    }
+
+    // Write regions from source. The source is left open.
+    // Returns the statistics of the run; if the progress listener asked to stop, files already
+    // written are kept and the others are deleted.
+    // 从源写入区域。 返回运行统计信息。
+    public TrimResult run(PcmSource source, List<ExportRegion> regions,
+                          ProgressListener progressListener) throws IOException {
+        long startNanos = System.nanoTime();
+        final int sampleRate = source.getSampleRate();
+        int channels = source.getChannels();
+        long numSamples = source.getNumSamples();
+        List<ExportRegion> pending = new ArrayList<ExportRegion>(regions);
+        Collections.sort(pending, new Comparator<ExportRegion>() {
+            public int compare(ExportRegion a, ExportRegion b) {
+                return Float.compare(a.getStartTime(), b.getStartTime());
+            }
+        });
+        int maxSinks = Math.max(1,
+                mSinkFactory.getMaxConcurrentSinks(mProfile, sampleRate, channels));
+        long totalSamples = 0;
+        for (ExportRegion region : pending) {
+            totalSamples += Math.max(0, region.getNumSamples(sampleRate));
+        }
+        long samplesRead = 0;
+        long samplesWritten = 0;
+        long bytesWritten = 0;
+        int numFiles = 0;
+
+        short[] block = new short[BLOCK_SIZE * channels];
+        short[] processed = new short[BLOCK_SIZE * channels];
+        List<PcmSink> sinks = new ArrayList<PcmSink>();
+        List<PcmProcessor.Region> processors = new ArrayList<PcmProcessor.Region>();
+        List<ExportRegion> active = new ArrayList<ExportRegion>();
+        try {
+            while (!pending.isEmpty()) {
+                // One pass over the source.
+                // 一次遍历源。
+                List<ExportRegion> postponed = new ArrayList<ExportRegion>();
+                long position = pending.get(0).getStartSample(sampleRate);
+                long sourcePosition = -1;
+                while (!pending.isEmpty() || !active.isEmpty()) {
+                    // Start the sinks of the regions starting in this block, if there is room
+                    // left.
+                    while (!pending.isEmpty()
+                            && pending.get(0).getStartSample(sampleRate) < position + BLOCK_SIZE) {
+                        ExportRegion region = pending.remove(0);
+                        if (active.size() >= maxSinks) {
+                            postponed.add(region);
+                            continue;
+                        }
+                        PcmSink sink = mSinkFactory.create(
+                                mProfile, sampleRate, channels, region.getOutputFile());
+                        sinks.add(sink);
+                        processors.add(mProcessor.start(
+                                sampleRate, channels, region.getNumSamples(sampleRate)));
+                        active.add(region);
+                        sink.start(region.getNumSamples(sampleRate));
+                    }
+                    if (active.isEmpty()) {
+                        if (pending.isEmpty()) {
+                            break;
+                        }
+                        // Nothing to write until the next region: skip the gap.
+                        position = pending.get(0).getStartSample(sampleRate);
+                        continue;
+                    }
+
+                    // Read the next block once, and feed it to every active sink.
+                    // 读取下一个块一次，并将其提供给每个活动的接收器。
+                    int blockSize = (int) Math.max(0, Math.min(BLOCK_SIZE, numSamples - position));
+                    if (blockSize > 0) {
+                        if (sourcePosition != position) {
+                            source.seek(position);
+                        }
+                        blockSize = readFully(source, block, blockSize);
+                        sourcePosition = position + blockSize;
+                        samplesRead += blockSize;
+                    }
+                    long blockEnd = position + BLOCK_SIZE;
+                    for (int i = active.size() - 1; i >= 0; i--) {
+                        ExportRegion region = active.get(i);
+                        PcmSink sink = sinks.get(i);
+                        PcmProcessor.Region processor = processors.get(i);
+                        long regionStart = region.getStartSample(sampleRate);
+                        long regionEnd = regionStart + region.getNumSamples(sampleRate);
+                        long from = Math.max(position, regionStart);
+                        long to = Math.min(Math.min(blockEnd, regionEnd), position + blockSize);
+                        if (to > from) {
+                            int offset = (int) (from - position) * channels;
+                            int count = (int) (to - from);
+                            if (processor.isPassthrough(from - regionStart, count)) {
+                                sink.write(block, offset, count);
+                            } else {
+                                processor.process(block, offset, count, processed, 0,
+                                        from - regionStart);
+                                sink.write(processed, 0, count);
+                            }
+                            samplesWritten += count;
+                        }
+                        if (regionEnd <= blockEnd || blockSize < BLOCK_SIZE) {
+                            // This region is done (or there are no samples left for it).
+                            sink.finish();
+                            sink.release();
+                            sinks.remove(i);
+                            processors.remove(i);
+                            active.remove(i);
+                            bytesWritten += region.getOutputFile().length();
+                            numFiles++;
+                        }
+                    }
+                    position = blockEnd;
+                    if (progressListener != null && totalSamples > 0
+                            && !progressListener.reportProgress(
+                                    (double) samplesWritten / totalSamples)) {
+                        for (int i = 0; i < active.size(); i++) {
+                            sinks.get(i).release();
+                            active.get(i).getOutputFile().delete();
+                        }
+                        sinks.clear();
+                        processors.clear();
+                        return new TrimResult(numFiles, samplesRead, samplesWritten,
+                                bytesWritten, sampleRate, System.nanoTime() - startNanos, true);
+                    }
+                }
+                pending = postponed;
+            }
+        } finally {
+            for (PcmSink sink : sinks) {
+                sink.release();
+            }
+        }
+        return new TrimResult(numFiles, samplesRead, samplesWritten, bytesWritten, sampleRate,
+                System.nanoTime() - startNanos, false);
+    }
+
+    // Read numSamples samples per channel, unless the source ends before.
+    private static int readFully(PcmSource source, short[] buffer, int numSamples)
+            throws IOException {
+        int total = 0;
+        while (total < numSamples) {
+            int count = source.read(buffer, total * source.getChannels(), numSamples - total);
+            if (count <= 0) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+/**
+ * What a TrimPipeline run did, and how fast.
+ * <p>
+ * TrimPipeline运行的结果和速度。
+ */
+public class TrimResult {
+    private final int mNumFiles;
+    private final long mSamplesRead;     // per channel.
+    private final long mSamplesWritten;  // per channel, all the files together.
+    private final long mBytesWritten;
+    private final int mSampleRate;
+    private final long mElapsedNanos;
+    private final boolean mCancelled;
+
+    TrimResult(int numFiles, long samplesRead, long samplesWritten, long bytesWritten,
+               int sampleRate, long elapsedNanos, boolean cancelled) {
+        mNumFiles = numFiles;
+        mSamplesRead = samplesRead;
+        mSamplesWritten = samplesWritten;
+        mBytesWritten = bytesWritten;
+        mSampleRate = sampleRate;
+        mElapsedNanos = elapsedNanos;
+        mCancelled = cancelled;
+    }
+
+    // Number of files completed.
+    public int getNumFiles() {
+        return mNumFiles;
+    }
+
+    public long getSamplesRead() {
+        return mSamplesRead;
+    }
+
+    public long getSamplesWritten() {
+        return mSamplesWritten;
+    }
+
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    // True if the progress listener stopped the run.
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    // Seconds of audio written, all the files together.
+    // 写入的音频秒数。
+    public double getAudioSeconds() {
+        return (double) mSamplesWritten / mSampleRate;
+    }
+
+    // Seconds of audio written per second of processing.
+    // 每秒处理写入的音频秒数。
+    public double getRealtimeFactor() {
+        return mElapsedNanos > 0 ? getAudioSeconds() / (mElapsedNanos / 1e9) : 0;
+    }
+
+    public String toString() {
+        return String.format("%d files, %.1f s of audio in %.1f ms (%.0fx realtime, %.2f MB out)",
+                mNumFiles, getAudioSeconds(), mElapsedNanos / 1e6, getRealtimeFactor(),
+                mBytesWritten / (1024.0 * 1024.0));
+    }
+}
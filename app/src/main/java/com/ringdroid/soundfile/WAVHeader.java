@@ -76,7 +76,7 @@ public class WAVHeader {
     }
 
     private void setHeader() {
-        byte[] header = new byte[46];
+        byte[] header = new byte[44];
         int offset = 0;
         int size;
 
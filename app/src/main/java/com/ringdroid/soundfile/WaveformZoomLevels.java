@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+/**
+ * The shape contour of a waveform at several zoom levels, computed from the frame gains.
+ * <p>
+ * Gains are smoothed, scaled to 0 - 255, re-calibrated so that the 5% quietest frames are at 0
+ * and the 1% loudest are at the top, and turned into heights between 0 and 1. Level 0 has two
+ * values per frame (interpolated), level 1 one value per frame, and each following level half
+ * as many values as the previous one.
+ * <p>
+ * 根据帧增益计算出的多个缩放级别的波形轮廓。
+ */
+public class WaveformZoomLevels {
+    private static final int NUM_ZOOM_LEVELS = 5;
+
+    private final int[] mLenByZoomLevel;
+    private final double[][] mValuesByZoomLevel;
+    private final double[] mZoomFactorByZoomLevel;
+    private final int mDefaultZoomLevel;
+
+    public WaveformZoomLevels(int[] frameGains, int numFrames) {
+        double[] smoothedGains = new double[numFrames];
+        if (numFrames == 1) {
+            smoothedGains[0] = frameGains[0];
+        } else if (numFrames == 2) {
+            smoothedGains[0] = frameGains[0];
+            smoothedGains[1] = frameGains[1];
+        } else if (numFrames > 2) {
+            smoothedGains[0] = (double) (
+                    (frameGains[0] / 2.0) +
+                            (frameGains[1] / 2.0));
+            for (int i = 1; i < numFrames - 1; i++) {
+                smoothedGains[i] = (double) (
+                        (frameGains[i - 1] / 3.0) +
+                                (frameGains[i] / 3.0) +
+                                (frameGains[i + 1] / 3.0));
+            }
+            smoothedGains[numFrames - 1] = (double) (
+                    (frameGains[numFrames - 2] / 2.0) +
+                            (frameGains[numFrames - 1] / 2.0));
+        }
+
+        // Make sure the range is no more than 0 - 255
+        // 确保范围不超过0-255
+        double maxGain = 1.0;
+        for (int i = 0; i < numFrames; i++) {
+            if (smoothedGains[i] > maxGain) {
+                maxGain = smoothedGains[i];
+            }
+        }
+        double scaleFactor = 1.0;
+        if (maxGain > 255.0) {
+            scaleFactor = 255 / maxGain;
+        }
+
+        // Build histogram of 256 bins and figure out the new scaled max
+        // 建立256个bin的直方图并找出新的缩放最大值
+        maxGain = 0;
+        int gainHist[] = new int[256];
+        for (int i = 0; i < numFrames; i++) {
+            int smoothedGain = (int) (smoothedGains[i] * scaleFactor);
+            if (smoothedGain < 0)
+                smoothedGain = 0;
+            if (smoothedGain > 255)
+                smoothedGain = 255;
+
+            if (smoothedGain > maxGain)
+                maxGain = smoothedGain;
+
+            gainHist[smoothedGain]++;
+        }
+
+        // Re-calibrate the min to be 5%
+        // 将最小值重新校准为5％
+        double minGain = 0;
+        int sum = 0;
+        while (minGain < 255 && sum < numFrames / 20) {
+            sum += gainHist[(int) minGain];
+            minGain++;
+        }
+
+        // Re-calibrate the max to be 99%
+        // 将最大值重新校准为99％
+        sum = 0;
+        while (maxGain > 2 && sum < numFrames / 100) {
+            sum += gainHist[(int) maxGain];
+            maxGain--;
+        }
+
+        // Compute the heights
+        // 计算高度
+        double[] heights = new double[numFrames];
+        double range = maxGain - minGain;
+        for (int i = 0; i < numFrames; i++) {
+            double value = (smoothedGains[i] * scaleFactor - minGain) / range;
+            if (value < 0.0)
+                value = 0.0;
+            if (value > 1.0)
+                value = 1.0;
+            heights[i] = value * value;
+        }
+
+        mLenByZoomLevel = new int[NUM_ZOOM_LEVELS];
+        mZoomFactorByZoomLevel = new double[NUM_ZOOM_LEVELS];
+        mValuesByZoomLevel = new double[NUM_ZOOM_LEVELS][];
+
+        // Level 0 is doubled, with interpolated values
+        // 级别0加倍，并带有插值
+        mLenByZoomLevel[0] = numFrames * 2;
+        mZoomFactorByZoomLevel[0] = 2.0;
+        mValuesByZoomLevel[0] = new double[mLenByZoomLevel[0]];
+        if (numFrames > 0) {
+            mValuesByZoomLevel[0][0] = 0.5 * heights[0];
+            mValuesByZoomLevel[0][1] = heights[0];
+        }
+        for (int i = 1; i < numFrames; i++) {
+            mValuesByZoomLevel[0][2 * i] = 0.5 * (heights[i - 1] + heights[i]);
+            mValuesByZoomLevel[0][2 * i + 1] = heights[i];
+        }
+
+        // Level 1 is normal
+        // 1级是正常的
+        mLenByZoomLevel[1] = numFrames;
+        mValuesByZoomLevel[1] = heights;
+        mZoomFactorByZoomLevel[1] = 1.0;
+
+        // 3 more levels are each halved
+        // 将另外3个级别减半
+        for (int j = 2; j < NUM_ZOOM_LEVELS; j++) {
+            mLenByZoomLevel[j] = mLenByZoomLevel[j - 1] / 2;
+            mValuesByZoomLevel[j] = new double[mLenByZoomLevel[j]];
+            mZoomFactorByZoomLevel[j] = mZoomFactorByZoomLevel[j - 1] / 2.0;
+            for (int i = 0; i < mLenByZoomLevel[j]; i++) {
+                mValuesByZoomLevel[j][i] =
+                        0.5 * (mValuesByZoomLevel[j - 1][2 * i] +
+                                mValuesByZoomLevel[j - 1][2 * i + 1]);
+            }
+        }
+
+        if (numFrames > 5000) {
+            mDefaultZoomLevel = 3;
+        } else if (numFrames > 1000) {
+            mDefaultZoomLevel = 2;
+        } else if (numFrames > 300) {
+            mDefaultZoomLevel = 1;
+        } else {
+            mDefaultZoomLevel = 0;
+        }
+    }
+
+    public int getNumZoomLevels() {
+        return NUM_ZOOM_LEVELS;
+    }
+
+    // Number of values at zoomLevel.
+    public int getLength(int zoomLevel) {
+        return mLenByZoomLevel[zoomLevel];
+    }
+
+    // Number of values per frame at zoomLevel.
+    public double getZoomFactor(int zoomLevel) {
+        return mZoomFactorByZoomLevel[zoomLevel];
+    }
+
+    // Heights (between 0 and 1) at zoomLevel.
+    public double[] getValues(int zoomLevel) {
+        return mValuesByZoomLevel[zoomLevel];
+    }
+
+    // Zoom level to start with, depending on the length of the audio.
+    // 起始缩放级别，取决于音频的长度。
+    public int getDefaultZoomLevel() {
+        return mDefaultZoomLevel;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.soundfile;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sorted positions of the zero crossings of a stream (of the sum of its channels), to move cut
+ * points where they don't click. Built block by block as the samples are decoded, and searched
+ * with a binary search.
+ * <p>
+ * To keep it compact, at most one crossing is kept per BUCKET_SAMPLES samples: 4 bytes per 64
+ * samples at worst, whatever the signal.
+ * <p>
+ * 流的过零点的排序位置，用于将剪切点移到不会产生咔嗒声的位置。每BUCKET_SAMPLES个样本最多保留一个过零点。
+ */
+public class ZeroCrossingIndex {
+    public static final int BUCKET_SAMPLES = 64;
+
+    private final int mChannels;
+    private final long mFirstSample;  // position of the first sample added.
+    // Positions of the crossings relative to mFirstSample: the first sample of the new sign.
+    // 过零点相对于mFirstSample的位置：新符号的第一个样本。
+    private int[] mCrossings;
+    private int mNumCrossings;
+    private long mPosition;           // next sample added, relative to mFirstSample.
+    private boolean mNegative;        // sign of the last sample added.
+    private long mLastBucket;         // bucket of the last crossing kept.
+
+    public ZeroCrossingIndex(int channels) {
+        this(channels, 0);
+    }
+
+    // Index of a part of a stream, the first sample added being sample firstSample.
+    // 流的一部分的索引，第一个添加的样本是firstSample。
+    public ZeroCrossingIndex(int channels, long firstSample) {
+        mChannels = channels;
+        mFirstSample = firstSample;
+        mCrossings = new int[1024];
+        mNumCrossings = 0;
+        mPosition = 0;
+        mNegative = false;
+        mLastBucket = -1;
+    }
+
+    // Index of the samples from start to end (per channel) of source, read right away. Used where
+    // the samples are decoded on demand, around the point to snap.
+    // source从start到end的样本的索引，立即读取。
+    public static ZeroCrossingIndex build(PcmSource source, long start, long end)
+            throws IOException {
+        start = Math.max(0, start);
+        end = Math.min(source.getNumSamples(), end);
+        ZeroCrossingIndex index = new ZeroCrossingIndex(source.getChannels(), start);
+        short[] buffer = new short[4096 * source.getChannels()];
+        source.seek(start);
+        for (long position = start; position < end; ) {
+            int count = source.read(buffer, 0, (int) Math.min(4096, end - position));
+            if (count <= 0) {
+                break;
+            }
+            index.add(buffer, 0, count);
+            position += count;
+        }
+        return index;
+    }
+
+    // Add numSamples samples per channel (interleaved), starting at offset.
+    // 添加numSamples个样本（交错）。
+    public void add(short[] samples, int offset, int numSamples) {
+        boolean negative = mNegative;
+        long position = mPosition;
+        for (int i = 0; i < numSamples; i++) {
+            int sum = 0;
+            for (int c = 0; c < mChannels; c++) {
+                sum += samples[offset++];
+            }
+            if ((sum < 0) != negative) {
+                negative = !negative;
+                long bucket = position / BUCKET_SAMPLES;
+                if (position > 0 && bucket != mLastBucket) {
+                    if (mNumCrossings == mCrossings.length) {
+                        mCrossings = Arrays.copyOf(mCrossings, mNumCrossings * 2);
+                    }
+                    mCrossings[mNumCrossings++] = (int) position;
+                    mLastBucket = bucket;
+                }
+            }
+            position++;
+        }
+        mNegative = negative;
+        mPosition = position;
+    }
+
+    public int getNumCrossings() {
+        return mNumCrossings;
+    }
+
+    // Release the memory reserved for crossings to come, once all the samples are added.
+    // 添加完所有样本后，释放为后续过零点保留的内存。
+    public void trimToSize() {
+        mCrossings = Arrays.copyOf(mCrossings, mNumCrossings);
+    }
+
+    // The crossing nearest to sample, if it is at most maxDistance samples away. Returns -1
+    // otherwise.
+    // 最接近sample的过零点（如果距离最多maxDistance个样本）。否则返回-1。
+    public long findNearest(long sample, long maxDistance) {
+        long target = sample - mFirstSample;
+        int low = 0;
+        int high = mNumCrossings;
+        // First crossing at or after target.
+        // 目标处或之后的第一个过零点。
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mCrossings[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        long nearest = -1;
+        long distance = maxDistance + 1;
+        if (low < mNumCrossings) {
+            nearest = mCrossings[low];
+            distance = nearest - target;
+        }
+        if (low > 0 && target - mCrossings[low - 1] < distance) {
+            nearest = mCrossings[low - 1];
+            distance = target - nearest;
+        }
+        if (nearest < 0 || distance > maxDistance) {
+            return -1;
+        }
+        return mFirstSample + nearest;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.benchmark;
+
+import com.ringdroid.soundfile.FrameGains;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The frame gain loop run by SoundFile after decoding or recording.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FrameGainsBenchmark {
+    @Param({"5", "60", "600", "3600"})
+    public int seconds;
+
+    @Param({"1", "2"})
+    public int channels;
+
+    private ShortBuffer mSamples;
+    private int mNumFrames;
+
+    @Setup
+    public void setUp() {
+        mSamples = ShortBuffer.wrap(SyntheticPcm.generate(seconds, channels));
+        mNumFrames = SyntheticPcm.getNumFrames(seconds);
+    }
+
+    @Benchmark
+    public int[] computeFrameGains() {
+        mSamples.rewind();
+        return FrameGains.compute(mSamples, channels, SyntheticPcm.SAMPLES_PER_FRAME, mNumFrames);
+    }
+}
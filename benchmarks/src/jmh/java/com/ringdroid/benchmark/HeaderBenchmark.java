@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.benchmark;
+
+import com.ringdroid.soundfile.MP4Header;
+import com.ringdroid.soundfile.MP4HeaderWriter;
+import com.ringdroid.soundfile.WAVHeader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation of the WAV and M4A headers written in front of exported files. The size of the MP4
+ * header (its stsz table) grows with the number of AAC frames.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HeaderBenchmark {
+    @Param({"5", "60", "600", "3600"})
+    public int seconds;
+
+    private int[] mFrameSizes;
+    private ByteBuffer mHeaderBuffer;
+
+    @Setup
+    public void setUp() {
+        // AAC at 128kbps: ~370 bytes per frame, varying with the content. The first "frame" is
+        // the codec config.
+        int[] gains = SyntheticPcm.generateFrameGains(seconds);
+        mFrameSizes = new int[gains.length + 1];
+        mFrameSizes[0] = 2;
+        for (int i = 0; i < gains.length; i++) {
+            mFrameSizes[i + 1] = 280 + gains[i];
+        }
+        mHeaderBuffer = ByteBuffer.allocate(newMP4HeaderWriter().getSize());
+    }
+
+    @Benchmark
+    public byte[] wavHeader() {
+        return WAVHeader.getWAVHeader(
+                SyntheticPcm.SAMPLE_RATE, 2, seconds * SyntheticPcm.SAMPLE_RATE);
+    }
+
+    @Benchmark
+    public byte[] mp4Header() {
+        return MP4Header.getMP4Header(SyntheticPcm.SAMPLE_RATE, 2, mFrameSizes, 128000);
+    }
+
+    // Layout and serialization into a preallocated buffer, as done when exporting.
+    @Benchmark
+    public ByteBuffer mp4HeaderIntoBuffer() {
+        mHeaderBuffer.clear();
+        newMP4HeaderWriter().write(mHeaderBuffer);
+        return mHeaderBuffer;
+    }
+
+    private MP4HeaderWriter newMP4HeaderWriter() {
+        return new MP4HeaderWriter(SyntheticPcm.SAMPLE_RATE, 2, mFrameSizes, mFrameSizes.length,
+                128000, 1024, 2);
+    }
+}
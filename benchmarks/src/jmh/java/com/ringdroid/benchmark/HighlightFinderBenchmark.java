@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.benchmark;
+
+import com.ringdroid.soundfile.HighlightFinder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The chorus search: gathering the features in the decode pass, frame by frame as SoundFile
+ * does, and the self-similarity search run when the file opens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HighlightFinderBenchmark {
+    private static final int CHANNELS = 2;
+
+    @Param({"30", "300"})
+    public int seconds;
+
+    private short[] mSamples;
+    private HighlightFinder mFinder;
+
+    @Setup
+    public void setUp() {
+        mSamples = SyntheticPcm.generate(seconds, CHANNELS);
+        mFinder = accumulate();
+    }
+
+    @Benchmark
+    public HighlightFinder accumulate() {
+        int numSamples = mSamples.length / CHANNELS;
+        int frame = SyntheticPcm.SAMPLES_PER_FRAME;
+        HighlightFinder.Accumulator accumulator =
+                new HighlightFinder.Accumulator(SyntheticPcm.SAMPLE_RATE, CHANNELS);
+        for (int position = 0; position < numSamples; position += frame) {
+            accumulator.add(mSamples, position * CHANNELS, Math.min(frame, numSamples - position));
+        }
+        return accumulator.getFinder();
+    }
+
+    @Benchmark
+    public long findHighlight() {
+        return mFinder.findHighlight(15);
+    }
+}
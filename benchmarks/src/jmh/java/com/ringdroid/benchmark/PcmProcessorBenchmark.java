@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.benchmark;
+
+import com.ringdroid.soundfile.PcmProcessor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the export DSP stage over a whole region, block by block as the exports do: fades
+ * only (most blocks pass through), gain on every sample, and gain plus limiter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PcmProcessorBenchmark {
+    private static final int BLOCK_SIZE = 1024;
+    private static final int CHANNELS = 2;
+
+    @Param({"30", "600"})
+    public int seconds;
+
+    @Param({"fades", "gain", "limiter"})
+    public String processing;
+
+    private short[] mSamples;
+    private short[] mProcessed;
+    private PcmProcessor mProcessor;
+
+    @Setup
+    public void setUp() {
+        mSamples = SyntheticPcm.generate(seconds, CHANNELS);
+        mProcessed = new short[BLOCK_SIZE * CHANNELS];
+        mProcessor = new PcmProcessor();
+        mProcessor.setFades(1, 2);
+        if (!processing.equals("fades")) {
+            mProcessor.setGainDb(6);
+        }
+        if (processing.equals("limiter")) {
+            mProcessor.setLimiter(true, -1);
+        }
+    }
+
+    @Benchmark
+    public short[] processAll() {
+        int numSamples = mSamples.length / CHANNELS;
+        PcmProcessor.Region region =
+                mProcessor.start(SyntheticPcm.SAMPLE_RATE, CHANNELS, numSamples);
+        for (int position = 0; position < numSamples; position += BLOCK_SIZE) {
+            int count = Math.min(BLOCK_SIZE, numSamples - position);
+            if (!region.isPassthrough(position, count)) {
+                region.process(mSamples, position * CHANNELS, count, mProcessed, 0, position);
+            }
+        }
+        return mProcessed;
+    }
+}
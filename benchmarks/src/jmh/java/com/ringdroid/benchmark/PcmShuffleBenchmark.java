@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.benchmark;
+
+import com.ringdroid.soundfile.PcmConverter;
+import com.ringdroid.soundfile.PcmUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sample shuffling done on export: the left/right swap of WAV export, and the mono to stereo
+ * duplication done before feeding a stereo encoder (PcmConverter, block by block, as
+ * AudioEncoder.write() does).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PcmShuffleBenchmark {
+    private static final int BLOCK_SIZE = 1024;
+
+    @Param({"5", "60", "600", "3600"})
+    public int seconds;
+
+    private byte[] mStereoBytes;
+    private short[] mMonoSamples;
+    private short[] mStereoBlock;
+
+    @Setup
+    public void setUp() {
+        mStereoBytes = SyntheticPcm.generateBytes(seconds, 2);
+        mMonoSamples = SyntheticPcm.generate(seconds, 1);
+        mStereoBlock = new short[2 * BLOCK_SIZE];
+    }
+
+    @Benchmark
+    public byte[] swapLeftRightChannels() {
+        PcmUtils.swapLeftRightChannels(mStereoBytes);
+        return mStereoBytes;
+    }
+
+    @Benchmark
+    public short[] monoToStereo() {
+        PcmConverter converter = new PcmConverter(
+                SyntheticPcm.SAMPLE_RATE, 1, SyntheticPcm.SAMPLE_RATE, 2);
+        for (int pos = 0; pos < mMonoSamples.length; pos += BLOCK_SIZE) {
+            int count = Math.min(BLOCK_SIZE, mMonoSamples.length - pos);
+            converter.process(mMonoSamples, pos, count, mStereoBlock, 0);
+        }
+        return mStereoBlock;
+    }
+}
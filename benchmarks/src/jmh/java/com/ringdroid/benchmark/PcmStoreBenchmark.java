@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.benchmark;
+
+import com.ringdroid.soundfile.PcmSource;
+import com.ringdroid.soundfile.PcmStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading decoded samples back from a PcmStore, block by block as the player and the exports
+ * do, for each sample encoding (2: 16 bits, 3: 8 bits, 4: float).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PcmStoreBenchmark {
+    private static final int BLOCK_SIZE = 1024;
+    private static final int CHANNELS = 2;
+
+    @Param({"60", "600"})
+    public int seconds;
+
+    @Param({"2", "3", "4"})
+    public int encoding;
+
+    private PcmStore mStore;
+    private short[] mBlock;
+
+    @Setup
+    public void setUp() throws IOException {
+        short[] samples = SyntheticPcm.generate(seconds, CHANNELS);
+        mStore = new PcmStore(CHANNELS, encoding, Long.MAX_VALUE, null);
+        mStore.append(samples, 0, samples.length);
+        mBlock = new short[BLOCK_SIZE * CHANNELS];
+    }
+
+    @TearDown
+    public void tearDown() {
+        mStore.release();
+    }
+
+    @Benchmark
+    public short[] readAll() throws IOException {
+        PcmSource source = mStore.newSource(SyntheticPcm.SAMPLE_RATE);
+        while (source.read(mBlock, 0, BLOCK_SIZE) > 0) {
+            // Only the reading is measured.
+        }
+        source.close();
+        return mBlock;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.benchmark;
+
+import com.ringdroid.soundfile.PcmConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sampling rate conversion of a stereo stream, block by block as the encoders and SamplePlayer
+ * do: polyphase filter (exports, playback) against linear interpolation (preview).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResamplerBenchmark {
+    private static final int BLOCK_SIZE = 1024;
+
+    @Param({"5", "60"})
+    public int seconds;
+
+    @Param({"48000", "22050", "16000"})
+    public int dstSampleRate;
+
+    private short[] mSamples;
+    private short[] mOut;
+
+    @Setup
+    public void setUp() {
+        mSamples = SyntheticPcm.generate(seconds, 2);
+        mOut = new short[2 * (BLOCK_SIZE * 2 + 256)];
+    }
+
+    @Benchmark
+    public short[] polyphase() {
+        return resample(PcmConverter.RESAMPLE_POLYPHASE);
+    }
+
+    @Benchmark
+    public short[] linear() {
+        return resample(PcmConverter.RESAMPLE_LINEAR);
+    }
+
+    private short[] resample(int resampling) {
+        PcmConverter converter = new PcmConverter(
+                SyntheticPcm.SAMPLE_RATE, 2, dstSampleRate, 2, resampling);
+        int numFrames = mSamples.length / 2;
+        for (int pos = 0; pos < numFrames; pos += BLOCK_SIZE) {
+            int count = Math.min(BLOCK_SIZE, numFrames - pos);
+            converter.process(mSamples, pos * 2, count, mOut, 0);
+        }
+        converter.flush(mOut, 0);
+        return mOut;
+    }
+}
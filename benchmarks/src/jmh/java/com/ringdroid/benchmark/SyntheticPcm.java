@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.benchmark;
+
+/**
+ * Deterministic synthetic audio for the benchmarks: a few sine waves under a slowly changing
+ * envelope, plus some noise, so that gains and headers depend on the actual content.
+ */
+public class SyntheticPcm {
+    public static final int SAMPLE_RATE = 44100;
+    public static final int SAMPLES_PER_FRAME = 1024;
+
+    private SyntheticPcm() {
+    }
+
+    // Interleaved 16 bits PCM, seconds long.
+    public static short[] generate(int seconds, int channels) {
+        int numSamples = seconds * SAMPLE_RATE;
+        short[] samples = new short[numSamples * channels];
+        int seed = 12345;
+        for (int i = 0; i < numSamples; i++) {
+            double t = (double) i / SAMPLE_RATE;
+            double envelope = 0.5 + 0.5 * Math.sin(2 * Math.PI * t / 7.3);
+            double value = 0.5 * Math.sin(2 * Math.PI * 440 * t)
+                    + 0.3 * Math.sin(2 * Math.PI * 1250 * t);
+            for (int c = 0; c < channels; c++) {
+                seed = seed * 1103515245 + 12345;
+                double noise = ((seed >> 16) & 0x7FFF) / 32768.0 - 0.5;
+                samples[i * channels + c] = (short) (20000 * envelope * value + 2000 * noise);
+            }
+        }
+        return samples;
+    }
+
+    // Same as generate(), as little-endian bytes.
+    public static byte[] generateBytes(int seconds, int channels) {
+        short[] samples = generate(seconds, channels);
+        byte[] bytes = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            bytes[2 * i] = (byte) samples[i];
+            bytes[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        return bytes;
+    }
+
+    // Number of frames of SAMPLES_PER_FRAME samples covering seconds of audio.
+    public static int getNumFrames(int seconds) {
+        return (seconds * SAMPLE_RATE + SAMPLES_PER_FRAME - 1) / SAMPLES_PER_FRAME;
+    }
+
+    // Frame gains (0 - 181, like FrameGains.compute() on 16 bits PCM) for seconds of audio,
+    // without generating the PCM itself.
+    public static int[] generateFrameGains(int seconds) {
+        int numFrames = getNumFrames(seconds);
+        int[] gains = new int[numFrames];
+        int seed = 6789;
+        for (int i = 0; i < numFrames; i++) {
+            double t = (double) i * SAMPLES_PER_FRAME / SAMPLE_RATE;
+            seed = seed * 1103515245 + 12345;
+            double noise = ((seed >> 16) & 0x7FFF) / 32768.0;
+            gains[i] = (int) (150 * (0.5 + 0.5 * Math.sin(2 * Math.PI * t / 7.3)) + 30 * noise);
+        }
+        return gains;
+    }
+}
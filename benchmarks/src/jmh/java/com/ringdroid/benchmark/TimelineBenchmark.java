@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.benchmark;
+
+import com.ringdroid.soundfile.PcmStore;
+import com.ringdroid.soundfile.Timeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a Timeline of three segments of a PcmStore, block by block as the player and the
+ * exports do: plain concatenation, crossfades at the joins, and a middle segment at another
+ * sampling rate (converted on the fly).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TimelineBenchmark {
+    private static final int BLOCK_SIZE = 1024;
+    private static final int CHANNELS = 2;
+
+    @Param({"60"})
+    public int seconds;
+
+    @Param({"0", "2"})
+    public int crossfadeSecs;
+
+    // Sampling rate the middle segment is read at.
+    @Param({"44100", "48000"})
+    public int middleSampleRate;
+
+    private PcmStore mStore;
+    private short[] mBlock;
+
+    @Setup
+    public void setUp() throws IOException {
+        short[] samples = SyntheticPcm.generate(seconds, CHANNELS);
+        mStore = new PcmStore(CHANNELS, 2, Long.MAX_VALUE, null);
+        mStore.append(samples, 0, samples.length);
+        mBlock = new short[BLOCK_SIZE * CHANNELS];
+    }
+
+    @TearDown
+    public void tearDown() {
+        mStore.release();
+    }
+
+    @Benchmark
+    public short[] readAll() throws IOException {
+        Timeline timeline = new Timeline(SyntheticPcm.SAMPLE_RATE, CHANNELS);
+        double third = seconds / 3.0;
+        timeline.addSegment(mStore.newSource(SyntheticPcm.SAMPLE_RATE), 0, third, 0);
+        timeline.addSegment(mStore.newSource(middleSampleRate), 0, third, crossfadeSecs);
+        timeline.addSegment(mStore.newSource(SyntheticPcm.SAMPLE_RATE), 0, third, crossfadeSecs);
+        while (timeline.read(mBlock, 0, BLOCK_SIZE) > 0) {
+            // Only the reading is measured.
+        }
+        timeline.close();
+        return mBlock;
+    }
+}
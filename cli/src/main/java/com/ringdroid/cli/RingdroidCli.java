@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ringdroid.cli;
+
+import com.ringdroid.soundfile.BatchTrimmer;
+import com.ringdroid.soundfile.ExportProfile;
+import com.ringdroid.soundfile.SilenceDetector;
+import com.ringdroid.soundfile.StandInSinkFactory;
+import com.ringdroid.soundfile.TrimJob;
+import com.ringdroid.soundfile.TrimResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Command-line front end of the trimming engine, runnable on a desktop JVM.
+ * <p>
+ * Reads WAV or raw PCM files (a single file or every file of a directory), cuts them and writes
+ * the result as WAV, raw PCM, or through the stand-in encoders for the encoded profiles. Jobs run
+ * in parallel and the throughput of each one is reported.
+ */
+public class RingdroidCli {
+    private static final String USAGE =
+            "Usage: ringdroid-cli [options] <input file or directory> <output directory>\n"
+            + "Options:\n"
+            + "  --start SECS        start of the selection (default: 0)\n"
+            + "  --end SECS          end of the selection (default: end of the input)\n"
+            + "  --split SECS        cut the selection into pieces of SECS seconds\n"
+            + "  --join SECS         join the selections of all the inputs into a single file,\n"
+            + "                      cross-fading them over SECS seconds (e.g. 0)\n"
+            + "  --fade-in SECS      fade in applied to every output file\n"
+            + "  --fade-out SECS     fade out applied to every output file\n"
+            + "  --gain DB           gain applied to every output file\n"
+            + "  --limit DB          keep the peaks below DB dBFS (e.g. -1)\n"
+            + "  --trim-silence DB   cut the leading and trailing silence, below DB dBFS\n"
+            + "                      (e.g. -50)\n"
+            + "  --format NAME       wav, pcm, aac32, aac64, aac64frag, aac96, heaac, amrwb\n"
+            + "                      (default: wav)\n"
+            + "                      encoded formats use stand-in codecs (no decodable audio)\n"
+            + "  --rate HZ           resample the output files to HZ (default: keep the rate\n"
+            + "                      of the input, or the one the format requires)\n"
+            + "  --raw RATE,CHANNELS read the inputs as raw 16 bits little-endian PCM\n"
+            + "  --jobs N            number of files processed in parallel\n"
+            + "                      (default: number of processors)\n";
+
+    public static void main(String[] args) throws Exception {
+        float start = 0;
+        float end = -1;
+        float split = 0;
+        float join = -1;
+        float fadeIn = 0;
+        float fadeOut = 0;
+        float gain = 0;
+        boolean limit = false;
+        float limitDb = 0;
+        SilenceDetector silenceDetector = null;
+        ExportProfile profile = ExportProfile.WAV;
+        int outputSampleRate = 0;
+        int rawSampleRate = 0;
+        int rawChannels = 0;
+        int numJobs = Runtime.getRuntime().availableProcessors();
+        List<String> paths = new ArrayList<String>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    paths.add(arg);
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                if (arg.equals("--start")) {
+                    start = Float.parseFloat(value);
+                } else if (arg.equals("--end")) {
+                    end = Float.parseFloat(value);
+                } else if (arg.equals("--split")) {
+                    split = Float.parseFloat(value);
+                } else if (arg.equals("--join")) {
+                    join = Float.parseFloat(value);
+                } else if (arg.equals("--fade-in")) {
+                    fadeIn = Float.parseFloat(value);
+                } else if (arg.equals("--fade-out")) {
+                    fadeOut = Float.parseFloat(value);
+                } else if (arg.equals("--gain")) {
+                    gain = Float.parseFloat(value);
+                } else if (arg.equals("--limit")) {
+                    limit = true;
+                    limitDb = Float.parseFloat(value);
+                } else if (arg.equals("--trim-silence")) {
+                    silenceDetector = new SilenceDetector(Float.parseFloat(value),
+                            SilenceDetector.DEFAULT_PADDING_MS);
+                } else if (arg.equals("--format")) {
+                    profile = getProfile(value);
+                } else if (arg.equals("--rate")) {
+                    outputSampleRate = Integer.parseInt(value);
+                } else if (arg.equals("--raw")) {
+                    String[] format = value.split(",");
+                    if (format.length != 2) {
+                        throw new IllegalArgumentException("Invalid raw format: " + value);
+                    }
+                    rawSampleRate = Integer.parseInt(format[0]);
+                    rawChannels = Integer.parseInt(format[1]);
+                } else if (arg.equals("--jobs")) {
+                    numJobs = Integer.parseInt(value);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (paths.size() != 2) {
+                throw new IllegalArgumentException("Expected an input and an output directory");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        File input = new File(paths.get(0));
+        File outputDir = new File(paths.get(1));
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            System.err.println("Cannot create " + outputDir);
+            System.exit(1);
+        }
+        File[] inputFiles;
+        if (input.isDirectory()) {
+            inputFiles = input.listFiles();
+            if (inputFiles == null) {
+                inputFiles = new File[0];
+            }
+            Arrays.sort(inputFiles);
+        } else {
+            inputFiles = new File[] {input};
+        }
+        List<TrimJob> jobs = new ArrayList<TrimJob>();
+        for (File file : inputFiles) {
+            String name = file.getName().toLowerCase();
+            boolean isRaw = name.endsWith(".pcm") || name.endsWith(".raw");
+            if (!file.isFile() || (rawSampleRate > 0 ? !isRaw : !name.endsWith(".wav"))) {
+                continue;
+            }
+            TrimJob job = new TrimJob(file, outputDir, start, end, split);
+            if (rawSampleRate > 0) {
+                job.setRawFormat(rawSampleRate, rawChannels);
+            }
+            job.setSilenceDetector(silenceDetector);
+            jobs.add(job);
+        }
+        if (jobs.isEmpty()) {
+            System.err.println("No input file found in " + input);
+            System.exit(1);
+        }
+
+        BatchTrimmer trimmer = new BatchTrimmer(new StandInSinkFactory(),
+                profile.withSampleRate(outputSampleRate), numJobs);
+        trimmer.setFades(fadeIn, fadeOut);
+        trimmer.getProcessor().setGainDb(gain);
+        trimmer.getProcessor().setLimiter(limit, limitDb);
+        if (join >= 0) {
+            File outputFile = new File(outputDir, "joined" + profile.getExtension());
+            try {
+                TrimResult result = trimmer.join(jobs, join, outputFile);
+                System.out.println(outputFile.getName() + " (" + jobs.size() + " inputs): "
+                        + result);
+            } catch (IOException e) {
+                System.err.println(outputFile.getName() + ": FAILED: " + e);
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+        long startNanos = System.nanoTime();
+        final int[] numFailed = new int[1];
+        List<TrimResult> results = trimmer.run(jobs, new BatchTrimmer.Listener() {
+            public synchronized void onJobDone(TrimJob job, TrimResult result) {
+                System.out.println(job + ": " + result);
+            }
+
+            public synchronized void onJobFailed(TrimJob job, Exception e) {
+                System.err.println(job + ": FAILED: " + e);
+                numFailed[0]++;
+            }
+        });
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        int numFiles = 0;
+        double audioSeconds = 0;
+        long bytesWritten = 0;
+        for (TrimResult result : results) {
+            if (result != null) {
+                numFiles += result.getNumFiles();
+                audioSeconds += result.getAudioSeconds();
+                bytesWritten += result.getBytesWritten();
+            }
+        }
+        System.out.println(String.format(
+                "Total: %d jobs (%d failed), %d files, %.1f s of audio in %.1f ms "
+                        + "(%.0fx realtime, %.2f MB out, %d workers)",
+                jobs.size(), numFailed[0], numFiles, audioSeconds, elapsedNanos / 1e6,
+                audioSeconds / (elapsedNanos / 1e9), bytesWritten / (1024.0 * 1024.0), numJobs));
+        System.exit(numFailed[0] > 0 ? 1 : 0);
+    }
+
+    private static ExportProfile getProfile(String name) {
+        if (name.equals("wav")) {
+            return ExportProfile.WAV;
+        } else if (name.equals("pcm")) {
+            return ExportProfile.RAW_PCM;
+        } else if (name.equals("aac32")) {
+            return ExportProfile.AAC_LC_32;
+        } else if (name.equals("aac64")) {
+            return ExportProfile.AAC_LC_64;
+        } else if (name.equals("aac64frag")) {
+            return ExportProfile.AAC_LC_64_FRAGMENTED;
+        } else if (name.equals("aac96")) {
+            return ExportProfile.AAC_LC_96;
+        } else if (name.equals("heaac")) {
+            return ExportProfile.HE_AAC;
+        } else if (name.equals("amrwb")) {
+            return ExportProfile.AMR_WB;
+        }
+        throw new IllegalArgumentException("Unknown format " + name);
+    }
+}